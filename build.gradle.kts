@@ -24,6 +24,15 @@ repositories {
     mavenCentral()
 }
 
+// Source set for the JMH benchmarks in src/jmh, run with the jmh task
+val jmh: SourceSet by sourceSets.creating {
+    compileClasspath += sourceSets.main.get().output
+    runtimeClasspath += sourceSets.main.get().output
+}
+configurations[jmh.implementationConfigurationName].extendsFrom(configurations.implementation.get())
+configurations[jmh.runtimeOnlyConfigurationName].extendsFrom(configurations.runtimeOnly.get())
+val jmhVersion = "1.37"
+
 dependencies {
     testImplementation(platform("org.junit:junit-bom:5.10.0"))
     testImplementation("org.junit.jupiter:junit-jupiter:5.10.0")
@@ -33,6 +42,8 @@ dependencies {
     implementation("com.fasterxml.jackson.core:jackson-databind:2.19.0")
     implementation("com.fasterxml.jackson.dataformat:jackson-dataformat-yaml:2.19.0")
     runtimeOnly("org.apache.logging.log4j:log4j-core:2.22.1")
+    "jmhImplementation"("org.openjdk.jmh:jmh-core:$jmhVersion")
+    "jmhAnnotationProcessor"("org.openjdk.jmh:jmh-generator-annprocess:$jmhVersion")
 }
 
 publishing {
@@ -57,6 +68,43 @@ tasks.test {
     useJUnitPlatform()
 }
 
+tasks.register<JavaExec>("jmh") {
+    // Runs the benchmarks with the stub docker CLI of src/jmh/bin first on the PATH and the gc profiler for
+    // allocation rates. Further JMH arguments can be passed with -PjmhArgs, e.g. -PjmhArgs="Compose -f 2"
+    group = "verification"
+    description = "Runs the JMH benchmarks and writes the results to build/reports/jmh/results.json."
+    dependsOn(jmh.classesTaskName)
+    classpath = jmh.runtimeClasspath
+    mainClass.set("org.openjdk.jmh.Main")
+    val results = layout.buildDirectory.file("reports/jmh/results.json")
+    doFirst { results.get().asFile.parentFile.mkdirs() }
+    environment("PATH", file("src/jmh/bin").absolutePath + File.pathSeparator + System.getenv("PATH"))
+    systemProperty("vidar.metrics.jmx", "false")
+    args("-prof", "gc", "-rf", "json", "-rff", results.get().asFile.absolutePath)
+    (project.findProperty("jmhArgs") as String?)?.let { args(it.split(" ").filter(String::isNotBlank)) }
+}
+
+tasks.register<JavaExec>("scaleTest") {
+    // Drives Vidar end to end with the fake docker and git CLIs of src/jmh/scale/bin. The fakes sleep
+    // -PfakeLatencyMs milliseconds per call and fail -PfakeFailurePercent percent of the calls.
+    group = "verification"
+    description = "Runs the scale harness and writes the results to build/reports/scale/results.csv."
+    dependsOn(jmh.classesTaskName)
+    classpath = jmh.runtimeClasspath
+    mainClass.set("com.dmoser.codyssey.vidar.benchmark.ScaleHarness")
+    val state = layout.buildDirectory.dir("scale/state").get().asFile
+    doFirst { state.deleteRecursively() }
+    environment("PATH", file("src/jmh/scale/bin").absolutePath + File.pathSeparator + System.getenv("PATH"))
+    environment("VIDAR_FAKE_STATE", state.absolutePath)
+    environment("VIDAR_FAKE_LATENCY_MS", project.findProperty("fakeLatencyMs") ?: "20")
+    environment("VIDAR_FAKE_FAILURE_PERCENT", project.findProperty("fakeFailurePercent") ?: "0")
+    systemProperty("vidar.metrics.jmx", "false")
+    systemProperty("vidar.scale.report", layout.buildDirectory.file("reports/scale/results.csv").get().asFile.absolutePath)
+    listOf("vidar.scale.plugins", "vidar.scale.services", "vidar.scale.concurrency").forEach { name ->
+        project.findProperty(name)?.let { systemProperty(name, it) }
+    }
+}
+
 tasks.javadoc {
     // First, generate some comments for the generated Constants class
     dependsOn("addJavadocToBuildConfig")
@@ -0,0 +1,83 @@
+package com.dmoser.codyssey.vidar.benchmark;
+
+import com.dmoser.codyssey.vidar.compose.ComposeParser;
+import com.dmoser.codyssey.vidar.service.ComposeService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures listing services, scanning variables and reading the .env file of a synthetic project.
+ * With `cold` the caches of the parser and the .env file are dropped before every call, which is the cost of the
+ * first call after a file changed.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ComposeServiceBenchmark {
+
+    @Param({"20"})
+    public int plugins;
+
+    @Param({"5"})
+    public int servicesPerPlugin;
+
+    @Param({"false", "true"})
+    public boolean cold;
+
+    private Path root;
+    private ComposeService composeService;
+
+    @Setup
+    public void setUp() throws IOException {
+        root = Fixtures.project(plugins, servicesPerPlugin, 8);
+        composeService = ComposeService.get(root.toString());
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        Fixtures.delete(root);
+    }
+
+    @Benchmark
+    public Set<String> ls() {
+        if (cold) {
+            ComposeParser.get().invalidate();
+        }
+        return composeService.ls();
+    }
+
+    @Benchmark
+    public Set<String> getVariables() {
+        if (cold) {
+            ComposeParser.get().invalidate();
+        }
+        return composeService.getVariables();
+    }
+
+    @Benchmark
+    public Set<Map.Entry<String, String>> getEnv() {
+        if (cold) {
+            composeService.envStore().invalidate();
+        }
+        return composeService.getEnv();
+    }
+}
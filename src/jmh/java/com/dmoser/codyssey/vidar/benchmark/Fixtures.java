@@ -0,0 +1,107 @@
+package com.dmoser.codyssey.vidar.benchmark;
+
+import com.dmoser.codyssey.vidar.service.FileService;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Synthetic Vidar projects for the benchmarks.
+ * A project has a root compose file including every plugin under `apps/`. Every plugin has a compose file with
+ * services that reference variables with and without defaults, and a `.env` file setting half of them.
+ */
+final class Fixtures {
+
+    private Fixtures() {
+    }
+
+    /**
+     * Creates a project in a new temporary directory.
+     *
+     * @param plugins              The number of plugins.
+     * @param servicesPerPlugin    The number of services of every plugin.
+     * @param variablesPerService  The number of variables every service references.
+     * @return The root of the project.
+     * @throws IOException When the files could not be written.
+     */
+    static Path project(int plugins, int servicesPerPlugin, int variablesPerService) throws IOException {
+        Path root = Files.createTempDirectory("vidar-benchmark");
+        List<String> includes = new ArrayList<>();
+        StringBuilder rootEnv = new StringBuilder("# Root environment\n");
+        for (int p = 0; p < plugins; p++) {
+            plugin(root.resolve("apps"), p, servicesPerPlugin, variablesPerService);
+            includes.add("apps/" + pluginName(p) + "/docker-compose.yml");
+            rootEnv.append("ROOT_").append(p).append("=root\n");
+        }
+        StringBuilder rootCompose = new StringBuilder("include:\n");
+        includes.forEach(include -> rootCompose.append("  - ").append(include).append('\n'));
+        Files.writeString(root.resolve("docker-compose.yml"), rootCompose);
+        Files.writeString(root.resolve(".env"), rootEnv);
+        return root;
+    }
+
+    /**
+     * Creates a plugin with a compose file and a `.env` file.
+     *
+     * @param directory           The directory the plugin directory is created in.
+     * @param plugin              The number of the plugin.
+     * @param servicesPerPlugin   The number of services of the plugin.
+     * @param variablesPerService The number of variables every service references.
+     * @return The directory of the plugin.
+     * @throws IOException When the files could not be written.
+     */
+    static Path plugin(Path directory, int plugin, int servicesPerPlugin, int variablesPerService) throws IOException {
+        String name = pluginName(plugin);
+        Path pluginDir = Files.createDirectories(directory.resolve(name));
+        StringBuilder compose = new StringBuilder("services:\n");
+        StringBuilder env = new StringBuilder("# Environment of " + name + "\n");
+        for (int s = 0; s < servicesPerPlugin; s++) {
+            String service = name + "-service" + s;
+            compose.append("  ").append(service).append(":\n")
+                    .append("    image: registry.example.com/").append(name).append("/service").append(s)
+                    .append(":${").append(variable(plugin, s, 0)).append(":-latest}\n")
+                    .append("    ports:\n")
+                    .append("      - \"${").append(variable(plugin, s, 1)).append(":-8080}:80\"\n")
+                    .append("    environment:\n");
+            for (int v = 2; v < variablesPerService; v++) {
+                compose.append("      VALUE_").append(v).append(": \"${").append(variable(plugin, s, v)).append("}\"\n");
+            }
+            if (s > 0) {
+                compose.append("    depends_on:\n      - ").append(name).append("-service0\n");
+            }
+            for (int v = 0; v < variablesPerService; v += 2) {
+                env.append(variable(plugin, s, v)).append('=').append("value-").append(v).append('\n');
+            }
+        }
+        Files.writeString(pluginDir.resolve("docker-compose.yml"), compose);
+        Files.writeString(pluginDir.resolve(".env"), env);
+        return pluginDir;
+    }
+
+    /**
+     * Returns the name of a plugin.
+     *
+     * @param plugin The number of the plugin.
+     * @return The name.
+     */
+    static String pluginName(int plugin) {
+        return "plugin" + plugin;
+    }
+
+    /**
+     * Deletes a project.
+     *
+     * @param root The root of the project.
+     * @throws IOException When the files could not be deleted.
+     */
+    static void delete(Path root) throws IOException {
+        FileService.get().delete(root);
+    }
+
+    private static String variable(int plugin, int service, int variable) {
+        return "P" + plugin + "_S" + service + "_V" + variable;
+    }
+}
@@ -0,0 +1,199 @@
+package com.dmoser.codyssey.vidar.benchmark;
+
+import com.dmoser.codyssey.vidar.Vidar;
+import com.dmoser.codyssey.vidar.docker.ImagePuller;
+import com.dmoser.codyssey.vidar.metrics.CommandMetrics;
+import com.dmoser.codyssey.vidar.metrics.CommandStats;
+import com.dmoser.codyssey.vidar.service.ServiceStatus;
+import com.dmoser.codyssey.vidar.service.SystemService;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Predicate;
+
+/**
+ * Load harness driving Vidar end to end with a growing number of synthetic plugins.
+ * Every round installs, starts, queries, resolves the variables of and removes all plugins, one call per plugin with
+ * the configured concurrency, and reports throughput and latency percentiles per operation. The images of all
+ * plugins are pulled with a single pre-pull call before starting them.
+ * It is meant to run with the fake docker and git CLIs of `src/jmh/scale/bin` on the `PATH`, see the scaleTest task.
+ * <p>
+ * Configuration with system properties:
+ * <ul>
+ *     <li>{@value #PLUGINS_PROPERTY}: comma separated plugin counts of the rounds, default 25,50,100,200</li>
+ *     <li>{@value #SERVICES_PROPERTY}: services per plugin, default 3</li>
+ *     <li>{@value #CONCURRENCY_PROPERTY}: plugins handled at the same time, default 8</li>
+ *     <li>{@value #REPORT_PROPERTY}: optional path of a CSV report</li>
+ * </ul>
+ */
+public final class ScaleHarness {
+
+    static final String PLUGINS_PROPERTY = "vidar.scale.plugins";
+    static final String SERVICES_PROPERTY = "vidar.scale.services";
+    static final String CONCURRENCY_PROPERTY = "vidar.scale.concurrency";
+    static final String REPORT_PROPERTY = "vidar.scale.report";
+
+    private static final int VARIABLES_PER_SERVICE = 6;
+    private static final String ROW_FORMAT = "%8s  %-13s %10s %10s %10s %10s %10s %9s%n";
+    private static final String CSV_HEADER = "plugins,operation,ops_per_second,p50_ms,p90_ms,p99_ms,max_ms,failures";
+
+    private ScaleHarness() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        int[] pluginCounts = Arrays.stream(System.getProperty(PLUGINS_PROPERTY, "25,50,100,200").split(","))
+                .map(String::strip)
+                .mapToInt(Integer::parseInt)
+                .toArray();
+        int services = Integer.getInteger(SERVICES_PROPERTY, 3);
+        int concurrency = Integer.getInteger(CONCURRENCY_PROPERTY, 8);
+        String report = System.getProperty(REPORT_PROPERTY);
+
+        String docker = SystemService.get().executeCommand("docker --version").content();
+        if (!docker.contains("fake")) {
+            System.err.println("Warning: docker on the PATH is not the fake CLI of src/jmh/scale/bin: " + docker);
+        }
+
+        System.out.printf(ROW_FORMAT, "plugins", "operation", "ops/s", "p50 ms", "p90 ms", "p99 ms", "max ms", "failures");
+        List<Result> results = new ArrayList<>();
+        for (int plugins : pluginCounts) {
+            List<Result> round = round(plugins, services, concurrency);
+            round.forEach(result -> System.out.print(result.format()));
+            results.addAll(round);
+        }
+
+        System.out.println();
+        System.out.println("Commands issued, by kind:");
+        CommandMetrics.get().snapshot().values().stream()
+                .sorted(Comparator.comparingLong(CommandStats::count).reversed())
+                .forEach(stats -> System.out.printf(Locale.ROOT, "%8d  %-30s failed %6d  p50 %8.2f ms  p99 %8.2f ms%n",
+                        stats.count(), stats.kind(), stats.count() - stats.exitCodes().getOrDefault(0, 0L),
+                        stats.p50().toNanos() / 1e6, stats.p99().toNanos() / 1e6));
+
+        if (report != null) {
+            List<String> lines = new ArrayList<>(List.of(CSV_HEADER));
+            results.forEach(result -> lines.add(result.csv()));
+            Path reportFile = Path.of(report);
+            Files.createDirectories(reportFile.toAbsolutePath().getParent());
+            Files.write(reportFile, lines);
+            System.out.println("Report written to " + reportFile);
+        }
+        System.exit(0);
+    }
+
+    private static List<Result> round(int plugins, int services, int concurrency) throws IOException {
+        Path root = Files.createTempDirectory("vidar-scale");
+        Path remotes = Files.createDirectories(root.resolve("remotes"));
+        Path project = Files.createDirectories(root.resolve("project"));
+        Files.createDirectories(project.resolve("apps"));
+        List<String> names = new ArrayList<>();
+        for (int p = 0; p < plugins; p++) {
+            Fixtures.plugin(remotes, p, services, VARIABLES_PER_SERVICE);
+            names.add(Fixtures.pluginName(p));
+        }
+
+        try {
+            Vidar vidar = new Vidar(project);
+            List<Result> results = new ArrayList<>();
+            results.add(measure(plugins, "add", names, concurrency, name -> {
+                vidar.add("file://" + remotes.resolve(name));
+                return Files.exists(project.resolve("apps").resolve(name).resolve("docker-compose.yml"))
+                        && vidar.plugin(name).isPresent();
+            }));
+            results.add(measure(plugins, "prePull", List.of("all"), 1, ignored -> vidar.prePull(progress -> {
+            }).values().stream().noneMatch(ImagePuller.PullStatus.FAILED::equals)));
+            results.add(measure(plugins, "start", names, concurrency,
+                    name -> vidar.start(name).values().stream().allMatch(ServiceStatus::isRunning)));
+            results.add(measure(plugins, "state", names, concurrency, name -> !vidar.state(name).contains(ServiceStatus.STATE_NONE)));
+            results.add(measure(plugins, "variableInfo", names, concurrency, name -> !vidar.variableInfo(name).isEmpty()));
+            results.add(measure(plugins, "remove", names, concurrency, name -> {
+                vidar.remove(name);
+                return !Files.exists(project.resolve("apps").resolve(name));
+            }));
+            return results;
+        } finally {
+            Fixtures.delete(root);
+        }
+    }
+
+    /**
+     * Runs an operation once for every plugin, with at most concurrency operations at the same time.
+     * An operation failed when it threw or returned false.
+     */
+    private static Result measure(int plugins, String operation, List<String> names, int concurrency, Predicate<String> action) {
+        long[] latencies = new long[names.size()];
+        AtomicInteger failures = new AtomicInteger();
+        Semaphore permits = new Semaphore(concurrency);
+        long start = System.nanoTime();
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int i = 0; i < names.size(); i++) {
+                int index = i;
+                futures.add(executor.submit(() -> {
+                    permits.acquireUninterruptibly();
+                    long callStart = System.nanoTime();
+                    try {
+                        if (!action.test(names.get(index))) {
+                            failures.incrementAndGet();
+                        }
+                    } catch (RuntimeException e) {
+                        failures.incrementAndGet();
+                    } finally {
+                        latencies[index] = System.nanoTime() - callStart;
+                        permits.release();
+                    }
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } catch (Exception e) {
+            throw new IllegalStateException(e);
+        }
+        long wall = System.nanoTime() - start;
+        Arrays.sort(latencies);
+        return new Result(plugins, operation, names.size() / (wall / 1e9),
+                percentile(latencies, 0.5), percentile(latencies, 0.9), percentile(latencies, 0.99),
+                latencies.length == 0 ? 0 : latencies[latencies.length - 1], failures.get());
+    }
+
+    private static long percentile(long[] sorted, double quantile) {
+        if (sorted.length == 0) {
+            return 0;
+        }
+        int index = (int) Math.ceil(quantile * sorted.length) - 1;
+        return sorted[Math.max(0, Math.min(sorted.length - 1, index))];
+    }
+
+    /**
+     * The measurements of one operation in one round.
+     */
+    private record Result(int plugins, String operation, double opsPerSecond, long p50, long p90, long p99, long max,
+                          int failures) {
+
+        private String format() {
+            return String.format(Locale.ROOT, ROW_FORMAT, plugins, operation, String.format(Locale.ROOT, "%.1f", opsPerSecond),
+                    millis(p50), millis(p90), millis(p99), millis(max), failures);
+        }
+
+        private String csv() {
+            return String.join(",", String.valueOf(plugins), operation, String.format(Locale.ROOT, "%.2f", opsPerSecond),
+                    millis(p50), millis(p90), millis(p99), millis(max), String.valueOf(failures));
+        }
+
+        private static String millis(long nanos) {
+            return String.format(Locale.ROOT, "%.2f", nanos / 1e6);
+        }
+    }
+}
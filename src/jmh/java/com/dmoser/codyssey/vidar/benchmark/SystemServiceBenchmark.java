@@ -0,0 +1,75 @@
+package com.dmoser.codyssey.vidar.benchmark;
+
+import com.dmoser.codyssey.vidar.metrics.MetricsRegistry;
+import com.dmoser.codyssey.vidar.service.CommandExecutor;
+import com.dmoser.codyssey.vidar.service.CommandResult;
+import com.dmoser.codyssey.vidar.service.ProcessExecutor;
+import com.dmoser.codyssey.vidar.service.ShellPoolExecutor;
+import com.dmoser.codyssey.vidar.service.SystemService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the cost of executing a command, including process handling and metrics.
+ * The docker command is answered by the stub on the `PATH` of the jmh task.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SystemServiceBenchmark {
+
+    @Param({"process", "shell"})
+    public String executor;
+
+    @Param({"true", "false"})
+    public boolean metrics;
+
+    private CommandExecutor commandExecutor;
+    private SystemService systemService;
+
+    @Setup
+    public void setUp() {
+        commandExecutor = executor.equals("shell") ? new ShellPoolExecutor(4) : new ProcessExecutor();
+        systemService = metrics
+                ? new SystemService(16, commandExecutor)
+                : new SystemService(16, commandExecutor, MetricsRegistry.NONE);
+    }
+
+    @TearDown
+    public void tearDown() {
+        if (commandExecutor instanceof ShellPoolExecutor pool) {
+            pool.close();
+        }
+    }
+
+    @Benchmark
+    public CommandResult executeBuiltin() {
+        return systemService.executeCommand("true");
+    }
+
+    @Benchmark
+    public CommandResult executeDocker() {
+        return systemService.executeCommand("docker --version");
+    }
+
+    @Benchmark
+    public CommandResult executeDockerArgs() {
+        return systemService.executeArgs(List.of("docker", "--version"));
+    }
+}
@@ -0,0 +1,57 @@
+package com.dmoser.codyssey.vidar.benchmark;
+
+import com.dmoser.codyssey.vidar.Vidar;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures resolving the variables of a plugin of a synthetic project.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class VidarBenchmark {
+
+    @Param({"20"})
+    public int plugins;
+
+    @Param({"5", "50"})
+    public int servicesPerPlugin;
+
+    private Path root;
+    private Vidar vidar;
+
+    @Setup
+    public void setUp() throws IOException {
+        root = Fixtures.project(plugins, servicesPerPlugin, 8);
+        vidar = new Vidar(root);
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        Fixtures.delete(root);
+    }
+
+    @Benchmark
+    public Map<String, String> variableInfo() {
+        return vidar.variableInfo("plugin0");
+    }
+}
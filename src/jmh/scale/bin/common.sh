@@ -0,0 +1,21 @@
+# Shared by the fake docker and git CLIs of the scale harness.
+#   VIDAR_FAKE_LATENCY_MS      Milliseconds every call sleeps before answering. Default 0.
+#   VIDAR_FAKE_FAILURE_PERCENT Percentage of calls failing with exit code 1. Default 0.
+
+fake_delay() {
+    latency="${VIDAR_FAKE_LATENCY_MS:-0}"
+    if [ "$latency" -gt 0 ]; then
+        sleep "$(printf '%d.%03d' $((latency / 1000)) $((latency % 1000)))"
+    fi
+}
+
+fake_maybe_fail() {
+    percent="${VIDAR_FAKE_FAILURE_PERCENT:-0}"
+    if [ "$percent" -gt 0 ]; then
+        roll=$(( $(od -An -N2 -tu2 /dev/urandom | tr -d ' ') % 100 ))
+        if [ "$roll" -lt "$percent" ]; then
+            echo "injected failure of $(basename "$0") $*" >&2
+            exit 1
+        fi
+    fi
+}
@@ -0,0 +1,15 @@
+package com.dmoser.codyssey.vidar;
+
+import java.util.List;
+
+/**
+ * A record containing the metadata of an installed plugin, as stored in the plugin registry.
+ *
+ * @param name        The name of the plugin.
+ * @param repository  The url of the repository the plugin was cloned from. Empty when it is unknown.
+ * @param commit      The commit checked out. Empty when it is unknown.
+ * @param composeHash The SHA-256 hash of the docker-compose.yml of the plugin. Empty when it has none.
+ * @param services    The sorted names of the services of the plugin.
+ */
+public record PluginInfo(String name, String repository, String commit, String composeHash, List<String> services) {
+}
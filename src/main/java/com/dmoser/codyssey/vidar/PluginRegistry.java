@@ -0,0 +1,183 @@
+package com.dmoser.codyssey.vidar;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+
+/**
+ * Persisted index of all installed plugins, stored as `.vidar/plugins.json` inside the project root.
+ * The index is kept in memory and read again when the file changes. Changes hold a lock file, re-read the index and
+ * replace the file atomically, so concurrent processes do not lose each other's entries.
+ */
+public class PluginRegistry {
+
+    static final String INDEX_FILE = ".vidar/plugins.json";
+
+    private static final ObjectMapper MAPPER = new ObjectMapper().enable(SerializationFeature.INDENT_OUTPUT);
+    private static final TypeReference<List<PluginInfo>> PLUGIN_LIST = new TypeReference<>() {
+    };
+    private static final Map<Path, PluginRegistry> registries = new ConcurrentHashMap<>();
+
+    private final Path file;
+    private final Path lockFile;
+    private Map<String, PluginInfo> plugins;
+    private FileTime loadedModified;
+
+    private PluginRegistry(Path root) {
+        this.file = root.resolve(INDEX_FILE);
+        this.lockFile = file.resolveSibling(file.getFileName() + ".lock");
+    }
+
+    /**
+     * Returns the registry of a project.
+     *
+     * @param root The project root.
+     * @return The registry shared by all callers of the same project.
+     */
+    public static PluginRegistry of(Path root) {
+        return registries.computeIfAbsent(root.toAbsolutePath().normalize(), PluginRegistry::new);
+    }
+
+    /**
+     * Checks if the index was written before.
+     *
+     * @return true when the index file exists.
+     */
+    public boolean exists() {
+        return Files.exists(file);
+    }
+
+    /**
+     * Returns all registered plugins.
+     *
+     * @return The plugins keyed and sorted by name.
+     */
+    public synchronized Map<String, PluginInfo> all() {
+        return Collections.unmodifiableMap(new TreeMap<>(load()));
+    }
+
+    /**
+     * Returns a registered plugin.
+     *
+     * @param name The name of the plugin.
+     * @return The plugin, or an empty optional when it is not registered.
+     */
+    public synchronized Optional<PluginInfo> get(String name) {
+        return Optional.ofNullable(load().get(name));
+    }
+
+    /**
+     * Adds or replaces plugins with a single write.
+     *
+     * @param infos The plugins.
+     * @throws UncheckedIOException When the index could not be written.
+     */
+    public void putAll(Collection<PluginInfo> infos) {
+        modify(index -> infos.forEach(info -> index.put(info.name(), info)));
+    }
+
+    /**
+     * Removes plugins with a single write.
+     *
+     * @param names The names of the plugins.
+     * @throws UncheckedIOException When the index could not be written.
+     */
+    public void removeAll(Collection<String> names) {
+        modify(index -> names.forEach(index::remove));
+    }
+
+    /**
+     * Replaces the whole index.
+     *
+     * @param infos All plugins.
+     * @throws UncheckedIOException When the index could not be written.
+     */
+    public void replace(Collection<PluginInfo> infos) {
+        modify(index -> {
+            index.clear();
+            infos.forEach(info -> index.put(info.name(), info));
+        });
+    }
+
+    private synchronized void modify(Consumer<Map<String, PluginInfo>> modification) {
+        try {
+            Files.createDirectories(file.getParent());
+            try (FileChannel channel = FileChannel.open(lockFile, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+                 FileLock ignored = channel.lock()) {
+                Map<String, PluginInfo> index = new TreeMap<>(load());
+                modification.accept(index);
+                Path temp = Files.createTempFile(file.getParent(), file.getFileName().toString(), ".tmp");
+                try {
+                    MAPPER.writeValue(temp.toFile(), List.copyOf(index.values()));
+                    Files.move(temp, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+                } finally {
+                    Files.deleteIfExists(temp);
+                }
+                plugins = index;
+                loadedModified = Files.getLastModifiedTime(file);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private Map<String, PluginInfo> load() {
+        try {
+            if (!Files.exists(file)) {
+                plugins = new TreeMap<>();
+                loadedModified = null;
+                return plugins;
+            }
+            FileTime modified = Files.getLastModifiedTime(file);
+            if (plugins == null || !modified.equals(loadedModified)) {
+                Map<String, PluginInfo> index = new TreeMap<>();
+                MAPPER.readValue(file.toFile(), PLUGIN_LIST).forEach(info -> index.put(info.name(), info));
+                plugins = index;
+                loadedModified = modified;
+            }
+            return plugins;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Calculates the SHA-256 hash of a file.
+     *
+     * @param file The file.
+     * @return The hash in hex, or an empty string when the file does not exist.
+     */
+    static String hash(Path file) {
+        if (!Files.exists(file)) {
+            return "";
+        }
+        try {
+            return HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(Files.readAllBytes(file)));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,32 @@
+package com.dmoser.codyssey.vidar;
+
+/**
+ * A record containing the outcome of a bulk operation for a single plugin.
+ *
+ * @param plugin     The name of the plugin.
+ * @param successful true when the operation succeeded.
+ * @param error      The reason of the failure. Empty when the operation succeeded.
+ */
+public record PluginResult(String plugin, boolean successful, String error) {
+
+    /**
+     * Create the result of a successful operation.
+     *
+     * @param plugin The name of the plugin.
+     * @return The result.
+     */
+    public static PluginResult success(String plugin) {
+        return new PluginResult(plugin, true, "");
+    }
+
+    /**
+     * Create the result of a failed operation.
+     *
+     * @param plugin The name of the plugin.
+     * @param error  The reason of the failure.
+     * @return The result.
+     */
+    public static PluginResult failure(String plugin, String error) {
+        return new PluginResult(plugin, false, error);
+    }
+}
@@ -0,0 +1,35 @@
+package com.dmoser.codyssey.vidar;
+
+import java.util.List;
+import java.util.Set;
+
+/**
+ * A record containing the outcome of updating a single plugin.
+ *
+ * @param plugin       The name of the plugin.
+ * @param successful   true when the plugin was updated.
+ * @param error        The reason of the failure. Empty when the update succeeded.
+ * @param oldHead      The commit before the update. Empty when it failed.
+ * @param newHead      The commit after the update. Empty when it failed.
+ * @param changedFiles The files changed by the update, relative to the plugin directory.
+ * @param restarted    The names of the services that were restarted because of the update.
+ */
+public record PluginUpdate(String plugin,
+                           boolean successful,
+                           String error,
+                           String oldHead,
+                           String newHead,
+                           List<String> changedFiles,
+                           Set<String> restarted) {
+
+    /**
+     * Create the result of a failed update.
+     *
+     * @param plugin The name of the plugin.
+     * @param error  The reason of the failure.
+     * @return The result.
+     */
+    public static PluginUpdate failure(String plugin, String error) {
+        return new PluginUpdate(plugin, false, error, "", "", List.of(), Set.of());
+    }
+}
@@ -1,29 +1,75 @@
 package com.dmoser.codyssey.vidar;
 
+import com.dmoser.codyssey.vidar.compose.ComposeModel;
+import com.dmoser.codyssey.vidar.compose.DependencyCycleException;
+import com.dmoser.codyssey.vidar.compose.InterpolationException;
+import com.dmoser.codyssey.vidar.compose.RootComposeFile;
+import com.dmoser.codyssey.vidar.compose.ServiceDefinition;
+import com.dmoser.codyssey.vidar.compose.VariableInfo;
+import com.dmoser.codyssey.vidar.compose.VariableSources;
+import com.dmoser.codyssey.vidar.docker.ImagePuller;
 import com.dmoser.codyssey.vidar.service.ComposeService;
 import com.dmoser.codyssey.vidar.service.EnvironmentService;
+import com.dmoser.codyssey.vidar.service.FileService;
 import com.dmoser.codyssey.vidar.service.GitService;
+import com.dmoser.codyssey.vidar.service.GitUpdate;
+import com.dmoser.codyssey.vidar.service.ReadinessPolicy;
+import com.dmoser.codyssey.vidar.service.ServiceStatus;
 import com.dmoser.codyssey.vidar.service.SystemService;
-import com.fasterxml.jackson.databind.ObjectMapper;
-import com.fasterxml.jackson.dataformat.yaml.YAMLFactory;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
-import java.io.File;
 import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.function.BiFunction;
+import java.util.function.Consumer;
+import java.util.function.Function;
 import java.util.stream.Collectors;
 
 public class Vidar {
 
     private static final Logger log = LogManager.getLogger(Vidar.class);
-    private static final String LOG_WARN_SYSTEM_DEPENDENCIES_NOT_MET = "";
+    private static final String LOG_WARN_SYSTEM_DEPENDENCIES_NOT_MET = "Not all system dependencies are met, Vidar might not work as expected";
+    private static final String LOG_WARN_ENVIRONMENT_CHECK_FAILED = "Could not check the system dependencies: {}";
+    private static final String LOG_WARN_ROOT_COMPOSE_NOT_UPDATED = "Could not remove plugin {} from the root compose file: {}";
+    private static final String LOG_WARN_ROOT_COMPOSE_UPDATE_FAILED = "Could not update the root compose file: {}";
+    private static final String LOG_WARN_PLUGIN_FAILED = "Operation on plugin {} failed: {}";
+    private static final String LOG_WARN_START_UNPLANNED = "Could not plan the start order, starting without dependencies: {}";
+    private static final String LOG_WARN_IMAGE_NOT_RESOLVED = "Not pulling the image of service {}: {}";
+    private static final String LOG_WARN_UPDATE_UNPARSABLE = "Could not parse the compose file of plugin {}, restarting all its services: {}";
+
+    /**
+     * System property for the maximum number of plugins that are installed or removed at the same time.
+     */
+    public static final String PLUGIN_CONCURRENCY_PROPERTY = "vidar.plugin.concurrency";
+    private static final int DEFAULT_PLUGIN_CONCURRENCY = 8;
+
+    /**
+     * System property for the maximum number of images that are pulled at the same time by {@link #prePull(Consumer)}.
+     */
+    public static final String PULL_CONCURRENCY_PROPERTY = "vidar.pull.concurrency";
+    private static final int DEFAULT_PULL_CONCURRENCY = 4;
+    private static final Executor START_EXECUTOR = runnable -> Thread.ofVirtual().name("vidar-start").start(runnable);
     private final Path path;
     SystemService systemService;
     EnvironmentService environmentService;
     GitService gitService;
     ComposeService composeService;
+    RootComposeFile rootCompose;
+    PluginRegistry registry;
+    FileService fileService;
+    ImagePuller imagePuller;
 
     public Vidar(Path path) throws IOException {
         this.path = path;
@@ -32,128 +78,404 @@ public class Vidar {
         environmentService = EnvironmentService.get();
         gitService = GitService.get();
         composeService = ComposeService.get(path.toRealPath().toString());
+        rootCompose = RootComposeFile.of(path.toRealPath().resolve("docker-compose.yml"));
+        registry = PluginRegistry.of(path.toRealPath());
+        fileService = FileService.get();
+        imagePuller = new ImagePuller();
 
-        if (!environmentService.validateEnvironment()) {
-            log.warn(LOG_WARN_SYSTEM_DEPENDENCIES_NOT_MET);
-        }
+        // The probes run in the background and only warn, commands do not wait for them
+        environmentService.validateEnvironmentAsync().whenComplete((valid, error) -> {
+            if (error != null) {
+                Throwable cause = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+                log.warn(LOG_WARN_ENVIRONMENT_CHECK_FAILED, cause.toString());
+            } else if (!valid) {
+                log.warn(LOG_WARN_SYSTEM_DEPENDENCIES_NOT_MET);
+            }
+        });
     }
 
     public String add(String gitClonePath) {
         String repoName = gitService.extractRepoName(gitClonePath);
+        gitService.clone(gitClonePath, path.resolve("apps"));
+
+        // TODO CHECK FOR DOCKER COMPOSE IN GIT DIR
+        rootCompose.include(List.of(includePath(repoName)));
+        registry.putAll(List.of(describe(repoName)));
+        return repoName;
+    }
+
+    public void remove(String pluginName) {
+        stop(pluginName);
+        delete(pluginName);
         try {
-            gitService.clone(gitClonePath, path.resolve("apps"));
+            rootCompose.exclude(List.of(includePath(pluginName)));
+            registry.removeAll(List.of(pluginName));
+        } catch (UncheckedIOException e) {
+            log.warn(LOG_WARN_ROOT_COMPOSE_NOT_UPDATED, pluginName, e.getMessage());
+        }
+    }
 
-            // TODO CHECK FOR DOCKER COMPOSE IN GIT DIR
-            // TODO ADD COMPOSE TO MAIN INCLUDE
+    /**
+     * Installs many plugins. The repositories are cloned in parallel, at most {@value PLUGIN_CONCURRENCY_PROPERTY}
+     * (default 8) at the same time, and the root compose file is updated once at the end.
+     * A plugin fails when its repository could not be cloned or contains no docker-compose.yml. Clones without
+     * docker-compose.yml are deleted again.
+     *
+     * @param gitClonePaths The urls of the repositories.
+     * @return The result of every plugin, in the order of the urls.
+     */
+    public List<PluginResult> addAll(Collection<String> gitClonePaths) {
+        Map<String, String> urls = new LinkedHashMap<>();
+        gitClonePaths.forEach(url -> urls.putIfAbsent(gitService.extractRepoName(url), url));
 
-            ObjectMapper mapper = new ObjectMapper(new YAMLFactory());
+        List<PluginResult> results = forEachPlugin(urls.keySet(), pluginName -> {
+            if (!gitService.clone(urls.get(pluginName), path.resolve("apps"))) {
+                return PluginResult.failure(pluginName, "Could not clone " + urls.get(pluginName));
+            }
+            if (!Files.exists(path.resolve(includePath(pluginName)))) {
+                delete(pluginName);
+                return PluginResult.failure(pluginName, "Repository contains no docker-compose.yml");
+            }
+            return PluginResult.success(pluginName);
+        }, PluginResult::failure);
+        return updateIncludes(results, true);
+    }
 
-            // Load YAML into a Map
-            File file = new File(path.toRealPath() + "/docker-compose.yml");
-            System.out.println(file.getAbsoluteFile().getAbsolutePath());
-            Map<String, Object> yaml = mapper.readValue(file, Map.class);
+    /**
+     * Removes many plugins. The services of all plugins are stopped with a single compose call first, because the
+     * root compose file can not be used while it includes a deleted plugin. Then the plugins are deleted in parallel,
+     * at most {@value PLUGIN_CONCURRENCY_PROPERTY} (default 8) at the same time, and the root compose file is updated
+     * once at the end. A plugin fails and is kept when one of its services still has a container.
+     *
+     * @param pluginNames The names of the plugins.
+     * @return The result of every plugin, in the order of the names.
+     */
+    public List<PluginResult> removeAll(Collection<String> pluginNames) {
+        Map<String, Set<String>> services = new LinkedHashMap<>();
+        new LinkedHashSet<>(pluginNames).forEach(pluginName -> services.put(pluginName, services(pluginName)));
+        Map<String, ServiceStatus> stopped = composeService.downBatch(services.values().stream()
+                .flatMap(Set::stream)
+                .collect(Collectors.toCollection(LinkedHashSet::new)));
 
-            // Get the list and add an item
-            List<String> items = (List<String>) yaml.get("include");
-            if (items == null) {
-                items = new ArrayList<>();
-                yaml.put("include", items);
+        List<PluginResult> results = forEachPlugin(services.keySet(), pluginName -> {
+            List<String> remaining = services.get(pluginName).stream()
+                    .filter(service -> !stopped.getOrDefault(service, ServiceStatus.none(service)).state().equals(ServiceStatus.STATE_NONE))
+                    .toList();
+            if (!remaining.isEmpty()) {
+                return PluginResult.failure(pluginName, "Could not stop services " + remaining);
             }
+            delete(pluginName);
+            return PluginResult.success(pluginName);
+        }, PluginResult::failure);
+        return updateIncludes(results, false);
+    }
+
+    /**
+     * Updates all plugins. The repositories are fetched and fast-forwarded in parallel, at most
+     * {@value PLUGIN_CONCURRENCY_PROPERTY} (default 8) at the same time. See {@link #update(String)}.
+     *
+     * @return The result of every plugin.
+     */
+    public List<PluginUpdate> updateAll() {
+        return forEachPlugin(ls(), this::update, PluginUpdate::failure);
+    }
+
+    /**
+     * Fetches and fast-forwards a plugin and restarts the running services affected by the update.
+     * A change of the compose files or the .env file of the plugin affects all services, a change inside a build
+     * context or an env file only affects the services using it. Services with a changed build context are rebuilt.
+     * Plugins without relevant changes are not touched.
+     *
+     * @param pluginName The name of the plugin.
+     * @return The result of the update.
+     */
+    public PluginUpdate update(String pluginName) {
+        Path pluginPath;
+        try {
+            pluginPath = path.toRealPath().resolve("apps").resolve(pluginName);
+        } catch (IOException e) {
+            return PluginUpdate.failure(pluginName, e.getMessage());
+        }
+        Optional<GitUpdate> gitUpdate = gitService.update(pluginPath);
+        if (gitUpdate.isEmpty()) {
+            return PluginUpdate.failure(pluginName, "Could not fast-forward " + pluginPath);
+        }
+        GitUpdate update = gitUpdate.get();
+        if (update.isChanged()) {
+            registry.putAll(List.of(describe(pluginName)));
+        }
+        Set<String> restarted = update.changedFiles().isEmpty()
+                ? Set.of()
+                : restartAffected(pluginName, pluginPath, update.changedFiles());
+        return new PluginUpdate(pluginName, true, "", update.oldHead(), update.newHead(), update.changedFiles(), restarted);
+    }
 
+    private Set<String> restartAffected(String pluginName, Path pluginPath, List<String> changedFiles) {
+        ComposeService plugin = composeService.child("apps/" + pluginName);
+        Set<Path> changed = changedFiles.stream()
+                .map(file -> pluginPath.resolve(file).normalize())
+                .collect(Collectors.toSet());
 
-            String dockerComposePath = "apps/" + repoName + "/docker-compose.yml";
-            if (!items.contains(dockerComposePath)) {
-                items.add(dockerComposePath);
+        Set<String> affected = new TreeSet<>();
+        boolean build = false;
+        try {
+            ComposeModel model = plugin.model();
+            boolean projectChanged = changed.contains(pluginPath.resolve(".env"))
+                    || model.sources().stream().anyMatch(changed::contains);
+            for (ServiceDefinition service : model.services().values()) {
+                boolean contextChanged = !service.build().isEmpty()
+                        && changed.stream().anyMatch(file -> file.startsWith(Path.of(service.build())));
+                boolean envChanged = service.envFiles().stream().map(Path::of).anyMatch(changed::contains);
+                if (projectChanged || contextChanged || envChanged) {
+                    affected.add(service.name());
+                }
+                build |= contextChanged;
             }
+        } catch (IOException e) {
+            // The compose file can not be parsed, let compose decide what to recreate
+            log.warn(LOG_WARN_UPDATE_UNPARSABLE, pluginName, e.getMessage());
+            affected.addAll(plugin.ls());
+            build = true;
+        }
+        if (affected.isEmpty()) {
+            return Set.of();
+        }
 
-            // Save back to the same file
-            mapper.writeValue(file, yaml);
-        } catch (Exception e) {
-            throw new RuntimeException(e);
+        // Stopped services stay stopped
+        Set<String> running = composeService.status(affected)
+                .values()
+                .stream()
+                .filter(ServiceStatus::isRunning)
+                .map(ServiceStatus::service)
+                .collect(Collectors.toCollection(TreeSet::new));
+        composeService.upBatch(running, build);
+        return running;
+    }
+
+    /**
+     * Runs an operation for every plugin on virtual threads with bounded concurrency and collects the results.
+     * Exceptions of the operation are reported as failure of the plugin.
+     */
+    private <T> List<T> forEachPlugin(Collection<String> pluginNames, Function<String, T> operation,
+                                      BiFunction<String, String, T> failure) {
+        Semaphore permits = new Semaphore(Math.max(1, Integer.getInteger(PLUGIN_CONCURRENCY_PROPERTY, DEFAULT_PLUGIN_CONCURRENCY)));
+        List<Future<T>> futures = new ArrayList<>();
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (String pluginName : pluginNames) {
+                futures.add(executor.submit(() -> {
+                    permits.acquire();
+                    try {
+                        return operation.apply(pluginName);
+                    } catch (RuntimeException e) {
+                        log.warn(LOG_WARN_PLUGIN_FAILED, pluginName, e.getMessage());
+                        return failure.apply(pluginName, String.valueOf(e.getMessage()));
+                    } finally {
+                        permits.release();
+                    }
+                }));
+            }
         }
-        return repoName;
+        List<T> results = new ArrayList<>();
+        Iterator<String> names = pluginNames.iterator();
+        for (Future<T> future : futures) {
+            String pluginName = names.next();
+            try {
+                results.add(future.get());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                results.add(failure.apply(pluginName, "Interrupted"));
+            } catch (ExecutionException e) {
+                results.add(failure.apply(pluginName, String.valueOf(e.getCause().getMessage())));
+            }
+        }
+        return results;
     }
 
-    public void remove(String pluginName) {
-        stop(pluginName);
-        systemService.rm(path.resolve("apps").resolve(pluginName));
+    /**
+     * Adds or removes the includes and registry entries of all successful plugins with a single write each. When a
+     * write fails, all successful plugins are reported as failed.
+     */
+    private List<PluginResult> updateIncludes(List<PluginResult> results, boolean add) {
+        List<String> paths = results.stream()
+                .filter(PluginResult::successful)
+                .map(result -> includePath(result.plugin()))
+                .toList();
+        List<String> plugins = results.stream()
+                .filter(PluginResult::successful)
+                .map(PluginResult::plugin)
+                .toList();
         try {
-            ObjectMapper mapper = new ObjectMapper(new YAMLFactory());
-
-            // Load YAML into a Map
-            File file = new File(path.toRealPath() + "/docker-compose.yml");
-            System.out.println(file.getAbsoluteFile().getAbsolutePath());
-            Map<String, Object> yaml = mapper.readValue(file, Map.class);
-
-            // Get the list and add an item
-            List<String> items = (List<String>) yaml.get("include");
-            if (items == null) {
-                items = new ArrayList<>();
-                yaml.put("include", items);
+            rootCompose.update(add ? paths : List.of(), add ? List.of() : paths);
+            if (add) {
+                registry.putAll(forEachPlugin(plugins, this::describe, (pluginName, error) -> null).stream()
+                        .filter(Objects::nonNull)
+                        .toList());
+            } else {
+                registry.removeAll(plugins);
             }
+            return results;
+        } catch (UncheckedIOException e) {
+            log.warn(LOG_WARN_ROOT_COMPOSE_UPDATE_FAILED, e.getMessage());
+            return results.stream()
+                    .map(result -> result.successful()
+                            ? PluginResult.failure(result.plugin(), "Could not update the root compose file: " + e.getMessage())
+                            : result)
+                    .toList();
+        }
+    }
 
-            items.remove("apps/" + pluginName + "/docker-compose.yml");
+    private static String includePath(String pluginName) {
+        return "apps/" + pluginName + "/docker-compose.yml";
+    }
+
+    /**
+     * Starts all services of a plugin together with the services they depend on, also from other plugins.
+     * Services are started in dependency order, independent services concurrently. When the root compose file can
+     * not be parsed, the services of the plugin are started with a single compose call without their dependencies.
+     *
+     * @param pluginName The name of the plugin.
+     * @return The status of every started service, keyed by service name in start order.
+     * @throws DependencyCycleException When the services depend on each other in a cycle. Nothing is started then.
+     */
+    public Map<String, ServiceStatus> start(String pluginName) {
+        return startInWaves(services(pluginName), ReadinessPolicy.defaults());
+    }
 
-            // Save back to the same file
-            mapper.writeValue(file, yaml);
-        } catch (Exception e) {
+    /**
+     * Starts all services of all installed plugins in dependency order, independent services concurrently.
+     * The time to start all plugins follows the longest chain of dependencies instead of the number of services.
+     *
+     * @return The status of every started service, keyed by service name in start order.
+     * @throws DependencyCycleException When the services depend on each other in a cycle. Nothing is started then.
+     */
+    public Map<String, ServiceStatus> startAll() {
+        Set<String> services = new LinkedHashSet<>();
+        ls().forEach(pluginName -> services.addAll(services(pluginName)));
+        return startInWaves(services, ReadinessPolicy.defaults());
+    }
+
+    /**
+     * Pulls the images of all installed plugins before starting them, so that `compose up` does not pull them one
+     * after another. Images used by many plugins are pulled once, images that are present are skipped and at most
+     * {@value PULL_CONCURRENCY_PROPERTY} (default 4) images are pulled at the same time.
+     * Images of services that are built, and images with variables that can not be resolved, are not pulled.
+     *
+     * @param progress Called whenever an image was found to be present or finished pulling.
+     * @return The outcome for every image, keyed by normalized reference.
+     * @throws UncheckedIOException When the root compose file could not be read or the present images could not be listed.
+     */
+    public Map<String, ImagePuller.PullStatus> prePull(Consumer<ImagePuller.PullProgress> progress) {
+        VariableSources sources = new VariableSources()
+                .with(VariableSources.ENVIRONMENT, toMap(systemService.getEnv()))
+                .with(VariableSources.DOT_ENV, toMap(composeService.getEnv()));
+        Set<String> images = new LinkedHashSet<>();
+        try {
+            for (ServiceDefinition service : composeService.model().services().values()) {
+                Object pullPolicy = service.definition().get("pull_policy");
+                if (service.image().isEmpty() || !service.build().isEmpty() || "never".equals(pullPolicy) || "build".equals(pullPolicy)) {
+                    continue;
+                }
+                try {
+                    images.add(sources.interpolate(service.image()));
+                } catch (InterpolationException e) {
+                    log.warn(LOG_WARN_IMAGE_NOT_RESOLVED, service.name(), e.getMessage());
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
         }
+        int concurrency = Integer.getInteger(PULL_CONCURRENCY_PROPERTY, DEFAULT_PULL_CONCURRENCY);
+        return imagePuller.pullAll(images, concurrency, progress);
     }
 
-    public void start(String pluginName) {
-        String pluginPath = "apps/" + pluginName;
-        composeService.child(pluginPath)
-                .ls()
-                .forEach(composeService::up);
+    /**
+     * Starts all services of a plugin like {@link #start(String)} without blocking, and waits for the started services
+     * to become ready, that is healthy or running when they have no healthcheck. Waiting does not block a thread, so
+     * many plugins can be started and waited for at the same time.
+     *
+     * @param pluginName The name of the plugin.
+     * @param policy     How long and how often to check the services.
+     * @return A future completing with the last status of every started service, keyed by service name.
+     * It completes exceptionally with a {@link DependencyCycleException} when the services depend on each other in a cycle.
+     */
+    public CompletableFuture<Map<String, ServiceStatus>> startAsync(String pluginName, ReadinessPolicy policy) {
+        return CompletableFuture.supplyAsync(() -> startInWaves(services(pluginName), policy), START_EXECUTOR)
+                .thenCompose(started -> {
+                    // Services that were not started because their dependencies are down are not waited for
+                    List<String> created = started.values().stream()
+                            .filter(status -> !status.state().equals(ServiceStatus.STATE_NONE))
+                            .map(ServiceStatus::service)
+                            .toList();
+                    return composeService.awaitReady(created, policy).thenApply(ready -> {
+                        Map<String, ServiceStatus> statusMap = new LinkedHashMap<>(started);
+                        statusMap.putAll(ready);
+                        return statusMap;
+                    });
+                });
     }
 
-    public void stop(String pluginName) {
-        String pluginPath = "apps/" + pluginName;
-        composeService.child(pluginPath)
-                .ls()
-                .forEach(composeService::down);
+    private Map<String, ServiceStatus> startInWaves(Collection<String> services, ReadinessPolicy policy) {
+        try {
+            return composeService.upInWaves(services, policy);
+        } catch (IOException | IllegalArgumentException e) {
+            log.warn(LOG_WARN_START_UNPLANNED, e.getMessage());
+            return composeService.upBatch(services);
+        }
     }
 
+    /**
+     * Stops all services of a plugin with a single compose call.
+     *
+     * @param pluginName The name of the plugin.
+     * @return The status of every service of the plugin after stopping, keyed by service name.
+     */
+    public Map<String, ServiceStatus> stop(String pluginName) {
+        return composeService.downBatch(services(pluginName));
+    }
+
+    /**
+     * Returns the state of all services of a plugin from a single status query.
+     *
+     * @param pluginName The name of the plugin.
+     * @return The states in the form of `{service:state,...}`.
+     */
     public String state(String pluginName) {
-        String pluginPath = "apps/" + pluginName;
-        return composeService.child(pluginPath)
-                .ls()
+        return composeService.status(services(pluginName))
+                .values()
                 .stream()
-                .map(service -> service + ":" + composeService.state(service))
+                .map(status -> status.service() + ":" + status.state())
                 .collect(Collectors.joining(",", "{", "}"));
     }
 
     /**
      * create a map containing all variables used by this plugin. Variables, that are not initialized will have empty values.
      *
-     * @param pluginName
-     * @return
+     * @param pluginName The name of the plugin.
+     * @return The values of the variables keyed by name.
      */
     public Map<String, String> variableInfo(String pluginName) {
-        String pluginPath = "apps/" + pluginName;
-        Map<String, String> varMap = new HashMap<>();
-
-        composeService.child(pluginPath)
-                .getVariables()
-                .forEach(variable -> varMap.put(variable, ""));
-
+        Map<String, String> varMap = new LinkedHashMap<>();
+        variables(pluginName).forEach((name, variable) -> varMap.put(name, variable.value()));
+        return varMap;
+    }
 
-        // Add values from the environment.
-        systemService.getEnv().forEach(e -> {
-            if (!varMap.containsKey(e.getKey())) {
-                return;
-            }
-            varMap.put(e.getKey(), e.getValue());
-        });
+    /**
+     * Resolves all variables used by this plugin, including the files its compose file includes.
+     * Values from the environment take precedence over the .env file, like they do in compose.
+     *
+     * @param pluginName The name of the plugin.
+     * @return The variables with their value, default and source, keyed and sorted by name.
+     */
+    public Map<String, VariableInfo> variables(String pluginName) {
+        String pluginPath = "apps/" + pluginName;
+        VariableSources sources = new VariableSources()
+                .with(VariableSources.ENVIRONMENT, toMap(systemService.getEnv()))
+                .with(VariableSources.DOT_ENV, toMap(composeService.getEnv()));
+        return composeService.child(pluginPath).variables(sources);
+    }
 
-        // Add value to variable when exist in .env file.
-        composeService.getEnv().forEach(e -> {
-            if (!varMap.containsKey(e.getKey())) {
-                return;
-            }
-            varMap.put(e.getKey(), e.getValue());
-        });
-        return varMap;
+    private static Map<String, String> toMap(Set<Map.Entry<String, String>> entries) {
+        return entries.stream().collect(Collectors.toMap(Map.Entry::getKey, Map.Entry::getValue, (a, b) -> b));
     }
 
     /**
@@ -167,15 +489,80 @@ public class Vidar {
     }
 
     /**
-     * Lists all plugins
+     * Set many variables inside the .env file with a single write.
      *
-     * @return
+     * @param variables The variables.
+     */
+    public void variableSetAll(Map<String, String> variables) {
+        composeService.setEnv(variables);
+    }
+
+    /**
+     * Lists all plugins. The names are read from the plugin registry, which is built from the apps folder on first use.
+     *
+     * @return The sorted names of all plugins.
      */
     public Set<String> ls() {
+        return index().keySet();
+    }
+
+    /**
+     * Returns the registry entry of a plugin.
+     *
+     * @param pluginName The name of the plugin.
+     * @return The plugin, or an empty optional when it is not installed.
+     */
+    public Optional<PluginInfo> plugin(String pluginName) {
+        return Optional.ofNullable(index().get(pluginName));
+    }
+
+    /**
+     * Rebuilds the plugin registry from the plugins inside the apps folder.
+     * Needed when plugins were added, changed or removed without Vidar.
+     *
+     * @return All plugins keyed by name.
+     */
+    public Map<String, PluginInfo> reindex() {
+        Set<String> pluginNames = fileService.listDirectories(path.resolve("apps"));
+        registry.replace(forEachPlugin(pluginNames, this::describe, (pluginName, error) -> null).stream()
+                .filter(Objects::nonNull)
+                .toList());
+        return registry.all();
+    }
+
+    private Map<String, PluginInfo> index() {
+        if (!registry.exists()) {
+            return reindex();
+        }
+        return registry.all();
+    }
+
+    /**
+     * Returns the services of a plugin from the registry, parsing the compose file only for unregistered plugins.
+     */
+    private Set<String> services(String pluginName) {
+        return plugin(pluginName)
+                .<Set<String>>map(info -> new LinkedHashSet<>(info.services()))
+                .orElseGet(() -> composeService.child("apps/" + pluginName).ls());
+    }
+
+    /**
+     * Collects the registry entry of an installed plugin.
+     */
+    private PluginInfo describe(String pluginName) {
+        Path pluginPath = path.resolve("apps").resolve(pluginName);
+        return new PluginInfo(pluginName,
+                gitService.remoteUrl(pluginPath).orElse(""),
+                gitService.head(pluginPath).orElse(""),
+                PluginRegistry.hash(pluginPath.resolve("docker-compose.yml")),
+                composeService.child("apps/" + pluginName).ls().stream().sorted().toList());
+    }
+
+    private void delete(String pluginName) {
         try {
-            return systemService.ls(path.toRealPath() + "/apps");
+            fileService.delete(path.resolve("apps").resolve(pluginName));
         } catch (IOException e) {
-            return Set.of();
+            throw new UncheckedIOException(e);
         }
     }
 }
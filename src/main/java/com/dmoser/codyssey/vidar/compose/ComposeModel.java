@@ -0,0 +1,32 @@
+package com.dmoser.codyssey.vidar.compose;
+
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * A record containing the parsed model of a compose file.
+ *
+ * @param file     The compose file.
+ * @param name     The project name from the top-level `name` element. Empty when it is not set.
+ * @param services The services keyed by name.
+ * @param networks The names of the top-level networks.
+ * @param volumes  The names of the top-level volumes.
+ * @param sources  All files the model was read from, including included, extended and override files.
+ */
+public record ComposeModel(Path file,
+                           String name,
+                           Map<String, ServiceDefinition> services,
+                           Set<String> networks,
+                           Set<String> volumes,
+                           Set<Path> sources) {
+
+    /**
+     * Returns the names of all services.
+     *
+     * @return The names of all services.
+     */
+    public Set<String> serviceNames() {
+        return services.keySet();
+    }
+}
@@ -0,0 +1,414 @@
+package com.dmoser.codyssey.vidar.compose;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.yaml.YAMLFactory;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+
+/**
+ * Parses compose files in-process. Follows `include`, `extends` and override files.
+ * Parsed models are cached per file and invalidated when the modification time or size of any source file changes.
+ */
+public class ComposeParser {
+
+    static final ObjectMapper MAPPER = new ObjectMapper(new YAMLFactory());
+
+    private static final Logger log = LogManager.getLogger(ComposeParser.class);
+    private static final String LOG_DEBUG_CACHE_HIT = "Using cached compose model of {}";
+    private static final String LOG_DEBUG_PARSE = "Parsing compose file {}";
+
+    /**
+     * Keys whose lists are replaced instead of concatenated when merging.
+     */
+    private static final Set<String> REPLACED_LISTS = Set.of("command", "entrypoint", "test");
+
+    private static final ComposeParser instance = new ComposeParser();
+
+    private final Map<List<Path>, CacheEntry> cache = new ConcurrentHashMap<>();
+
+    /**
+     * Get the shared parser, so that all services share one cache.
+     *
+     * @return The shared instance.
+     */
+    public static ComposeParser get() {
+        return instance;
+    }
+
+    /**
+     * Parses a compose file.
+     *
+     * @param file      The compose file.
+     * @param overrides Files merged on top of the compose file, in order.
+     * @return The model.
+     * @throws IOException When a file could not be read, is not valid or includes itself.
+     */
+    public ComposeModel parse(Path file, Path... overrides) throws IOException {
+        List<Path> key = key(file, overrides);
+        CacheEntry cached = cache.get(key);
+        if (cached != null && cached.isValid()) {
+            log.debug(LOG_DEBUG_CACHE_HIT, file);
+            return cached.model();
+        }
+
+        // Every file is stamped before it is read, so a change during parsing invalidates the entry
+        Map<Path, FileStamp> sources = new LinkedHashMap<>();
+        Map<String, Object> tree = load(key.getFirst(), sources, new ArrayDeque<>());
+        for (Path override : key.subList(1, key.size())) {
+            merge(tree, load(override, sources, new ArrayDeque<>()));
+        }
+        ComposeModel model = toModel(key.getFirst(), tree, sources);
+        cache.put(key, new CacheEntry(model, sources));
+        return model;
+    }
+
+    /**
+     * Returns all variable references in the values of a compose file and the files it includes, extends or overrides.
+     * The references are cached together with the model, so the files are only scanned again after one of them changed.
+     *
+     * @param file      The compose file.
+     * @param overrides Files merged on top of the compose file, in order.
+     * @return The references in the order they appear, file by file in the order of their paths.
+     * @throws IOException When a file could not be read, is not valid or contains an invalid reference.
+     */
+    public List<VariableReference> variableReferences(Path file, Path... overrides) throws IOException {
+        ComposeModel model = parse(file, overrides);
+        CacheEntry cached = cache.get(key(file, overrides));
+        if (cached != null && cached.model() == model && cached.references != null) {
+            return cached.references;
+        }
+        List<VariableReference> references = List.copyOf(Interpolation.scan(model.sources().stream().sorted().toList()));
+        // Only attach the references to the entry of the model they were scanned from
+        if (cached != null && cached.model() == model) {
+            cached.references = references;
+        }
+        return references;
+    }
+
+    private static List<Path> key(Path file, Path... overrides) {
+        List<Path> key = new ArrayList<>();
+        key.add(file.toAbsolutePath().normalize());
+        for (Path override : overrides) {
+            key.add(override.toAbsolutePath().normalize());
+        }
+        return key;
+    }
+
+    /**
+     * Removes all cached models.
+     */
+    public void invalidate() {
+        cache.clear();
+    }
+
+    /**
+     * Reads a file and everything it includes into one raw tree.
+     * Relative paths of `build`, `env_file` and `extends.file` are made absolute, since they are relative to the
+     * file they are defined in.
+     */
+    private Map<String, Object> load(Path file, Map<Path, FileStamp> sources, Deque<Path> stack) throws IOException {
+        if (stack.contains(file)) {
+            throw new IOException("Compose file " + file + " includes itself through " + stack);
+        }
+        stack.push(file);
+        sources.putIfAbsent(file, FileStamp.of(file));
+        log.debug(LOG_DEBUG_PARSE, file);
+
+        Map<String, Object> raw = readTree(file);
+        Path directory = file.getParent();
+        rebasePaths(raw, directory);
+
+        Map<String, Object> result = new LinkedHashMap<>();
+        for (Path include : includes(raw.remove("include"), directory)) {
+            merge(result, load(include, sources, stack));
+        }
+        merge(result, raw);
+        stack.pop();
+        return result;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Map<String, Object> readTree(Path file) throws IOException {
+        Object tree = MAPPER.readValue(file.toFile(), Object.class);
+        if (tree == null) {
+            return new LinkedHashMap<>();
+        }
+        if (!(tree instanceof Map)) {
+            throw new IOException("Compose file " + file + " is not a mapping");
+        }
+        return (Map<String, Object>) tree;
+    }
+
+    /**
+     * Collects the paths of the `include` element. Entries are either paths or objects with a `path` element,
+     * which itself is either a path or a list of paths.
+     */
+    private static List<Path> includes(Object include, Path directory) {
+        List<Path> paths = new ArrayList<>();
+        if (!(include instanceof List<?> entries)) {
+            return paths;
+        }
+        for (Object entry : entries) {
+            Object path = entry instanceof Map<?, ?> map ? map.get("path") : entry;
+            if (path instanceof List<?> pathList) {
+                pathList.forEach(p -> paths.add(directory.resolve(p.toString()).normalize()));
+            } else if (path != null) {
+                paths.add(directory.resolve(path.toString()).normalize());
+            }
+        }
+        return paths;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static void rebasePaths(Map<String, Object> raw, Path directory) {
+        if (!(raw.get("services") instanceof Map<?, ?> services)) {
+            return;
+        }
+        for (Object value : services.values()) {
+            if (!(value instanceof Map<?, ?>)) {
+                continue;
+            }
+            Map<String, Object> service = (Map<String, Object>) value;
+            Object build = service.get("build");
+            if (build instanceof String context) {
+                service.put("build", rebase(context, directory));
+            } else if (build instanceof Map<?, ?> buildMap) {
+                // The context defaults to the directory of the compose file
+                Object context = buildMap.get("context");
+                ((Map<String, Object>) buildMap).put("context", rebase(context instanceof String path ? path : ".", directory));
+            }
+            Object envFile = service.get("env_file");
+            if (envFile instanceof String path) {
+                service.put("env_file", rebase(path, directory));
+            } else if (envFile instanceof List<?> paths) {
+                service.put("env_file", paths.stream()
+                        .map(p -> p instanceof Map<?, ?> m && m.get("path") != null ? m.get("path") : p)
+                        .map(p -> rebase(p.toString(), directory))
+                        .toList());
+            }
+            if (service.get("extends") instanceof Map<?, ?> extendsMap && extendsMap.get("file") instanceof String path) {
+                ((Map<String, Object>) extendsMap).put("file", rebase(path, directory));
+            }
+        }
+    }
+
+    private static String rebase(String path, Path directory) {
+        // Urls like git contexts and interpolated paths are kept as they are
+        if (path.contains("://") || path.startsWith("$") || path.startsWith("git@")) {
+            return path;
+        }
+        return directory.resolve(path).normalize().toString();
+    }
+
+    /**
+     * Merges a tree into another one. Mappings are merged recursively, lists are concatenated without duplicates and
+     * scalars are replaced.
+     */
+    @SuppressWarnings("unchecked")
+    static void merge(Map<String, Object> target, Map<String, Object> source) {
+        for (Map.Entry<String, Object> entry : source.entrySet()) {
+            Object current = target.get(entry.getKey());
+            Object value = entry.getValue();
+            if (current instanceof Map<?, ?> currentMap && value instanceof Map<?, ?> valueMap) {
+                Map<String, Object> merged = new LinkedHashMap<>((Map<String, Object>) currentMap);
+                merge(merged, (Map<String, Object>) valueMap);
+                target.put(entry.getKey(), merged);
+            } else if (current instanceof List<?> currentList && value instanceof List<?> valueList
+                    && !REPLACED_LISTS.contains(entry.getKey())) {
+                LinkedHashSet<Object> merged = new LinkedHashSet<>(currentList);
+                merged.addAll(valueList);
+                target.put(entry.getKey(), new ArrayList<>(merged));
+            } else {
+                target.put(entry.getKey(), value);
+            }
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private ComposeModel toModel(Path file, Map<String, Object> tree, Map<Path, FileStamp> sources) throws IOException {
+        Map<String, Object> rawServices = tree.get("services") instanceof Map<?, ?> map
+                ? (Map<String, Object>) map
+                : Map.of();
+
+        Map<String, ServiceDefinition> services = new LinkedHashMap<>();
+        for (String name : rawServices.keySet()) {
+            Map<String, Object> definition = resolveExtends(name, rawServices, sources, new ArrayDeque<>());
+            services.put(name, toService(name, definition));
+        }
+        return new ComposeModel(file,
+                scalar(tree.get("name")),
+                Collections.unmodifiableMap(services),
+                keys(tree.get("networks")),
+                keys(tree.get("volumes")),
+                Set.copyOf(sources.keySet()));
+    }
+
+    /**
+     * Returns the definition of a service with the services it extends merged underneath it.
+     */
+    @SuppressWarnings("unchecked")
+    private Map<String, Object> resolveExtends(String name, Map<String, Object> services, Map<Path, FileStamp> sources,
+                                               Deque<String> stack) throws IOException {
+        if (!(services.get(name) instanceof Map<?, ?> rawDefinition)) {
+            throw new IOException("Service " + name + " is not defined");
+        }
+        Map<String, Object> definition = new LinkedHashMap<>((Map<String, Object>) rawDefinition);
+        Object extendsElement = definition.remove("extends");
+        if (extendsElement == null) {
+            return definition;
+        }
+
+        String baseName;
+        Map<String, Object> baseServices = services;
+        if (extendsElement instanceof Map<?, ?> extendsMap) {
+            baseName = String.valueOf(extendsMap.get("service"));
+            if (extendsMap.get("file") instanceof String baseFile) {
+                Map<String, Object> baseTree = load(Path.of(baseFile), sources, new ArrayDeque<>());
+                baseServices = baseTree.get("services") instanceof Map<?, ?> map ? (Map<String, Object>) map : Map.of();
+            }
+        } else {
+            baseName = extendsElement.toString();
+        }
+
+        String frame = baseServices == services ? baseName : baseName + "@" + System.identityHashCode(baseServices);
+        if (stack.contains(frame)) {
+            throw new IOException("Service " + name + " extends itself through " + stack);
+        }
+        stack.push(frame);
+        Map<String, Object> base = resolveExtends(baseName, baseServices, sources, stack);
+        stack.pop();
+
+        // depends_on is not inherited
+        base.remove("depends_on");
+        merge(base, definition);
+        return base;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static ServiceDefinition toService(String name, Map<String, Object> definition) {
+        Object build = definition.get("build");
+        String buildContext = build instanceof Map<?, ?> buildMap
+                ? String.valueOf(((Map<String, Object>) buildMap).getOrDefault("context", "."))
+                : build == null ? "" : build.toString();
+
+        return new ServiceDefinition(name,
+                scalar(definition.get("image")),
+                buildContext,
+                List.copyOf(keys(definition.get("depends_on"))),
+                toList(definition.get("ports"), ComposeParser::port),
+                toList(definition.get("volumes"), ComposeParser::volume),
+                List.copyOf(keys(definition.get("networks"))),
+                Collections.unmodifiableMap(definition));
+    }
+
+    /**
+     * Returns a scalar as string. An element without a value, like `image:`, is empty.
+     */
+    private static String scalar(Object element) {
+        return element == null ? "" : element.toString();
+    }
+
+    /**
+     * Returns the names of a mapping or the values of a list.
+     */
+    private static Set<String> keys(Object element) {
+        Set<String> keys = new LinkedHashSet<>();
+        if (element instanceof Map<?, ?> map) {
+            map.keySet().forEach(key -> keys.add(key.toString()));
+        } else if (element instanceof Collection<?> list) {
+            list.forEach(value -> keys.add(value.toString()));
+        }
+        return Collections.unmodifiableSet(keys);
+    }
+
+    private static List<String> toList(Object element, Function<Object, String> mapper) {
+        if (!(element instanceof List<?> list)) {
+            return List.of();
+        }
+        return list.stream().map(mapper).toList();
+    }
+
+    /**
+     * Converts the long port syntax to the short one.
+     */
+    private static String port(Object port) {
+        if (!(port instanceof Map<?, ?> map)) {
+            return port.toString();
+        }
+        String target = String.valueOf(map.get("target"));
+        Object published = map.get("published");
+        Object protocol = map.get("protocol");
+        return (published == null ? "" : published + ":") + target + (protocol == null ? "" : "/" + protocol);
+    }
+
+    /**
+     * Converts the long volume syntax to the short one.
+     */
+    private static String volume(Object volume) {
+        if (!(volume instanceof Map<?, ?> map)) {
+            return volume.toString();
+        }
+        Object source = map.get("source");
+        return (source == null ? "" : source + ":") + map.get("target");
+    }
+
+    /**
+     * The modification time, size and file key (the inode on unix) of a file. All are null when the file does not exist.
+     * The file key catches files that were atomically replaced within the resolution of the modification time.
+     */
+    record FileStamp(FileTime modified, Long size, Object fileKey) {
+        static FileStamp of(Path file) {
+            try {
+                BasicFileAttributes attributes = Files.readAttributes(file, BasicFileAttributes.class);
+                return new FileStamp(attributes.lastModifiedTime(), attributes.size(), attributes.fileKey());
+            } catch (IOException e) {
+                return new FileStamp(null, null, null);
+            }
+        }
+    }
+
+    /**
+     * A cached model, valid as long as its source files did not change. The variable references are scanned on first use.
+     */
+    private static final class CacheEntry {
+        private final ComposeModel model;
+        private final Map<Path, FileStamp> stamps;
+        private volatile List<VariableReference> references;
+
+        CacheEntry(ComposeModel model, Map<Path, FileStamp> stamps) {
+            this.model = model;
+            this.stamps = stamps;
+        }
+
+        ComposeModel model() {
+            return model;
+        }
+
+        boolean isValid() {
+            for (Map.Entry<Path, FileStamp> entry : stamps.entrySet()) {
+                if (!entry.getValue().equals(FileStamp.of(entry.getKey()))) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+}
@@ -0,0 +1,25 @@
+package com.dmoser.codyssey.vidar.compose;
+
+import java.util.List;
+
+/**
+ * Thrown when the `depends_on` relations of services form a cycle, so there is no order to start them in.
+ */
+public class DependencyCycleException extends RuntimeException {
+
+    private final List<String> cycle;
+
+    public DependencyCycleException(List<String> cycle) {
+        super("Services depend on each other in a cycle: " + String.join(" -> ", cycle));
+        this.cycle = List.copyOf(cycle);
+    }
+
+    /**
+     * Returns the services of the cycle.
+     *
+     * @return The services in dependency order, starting and ending with the same service.
+     */
+    public List<String> cycle() {
+        return cycle;
+    }
+}
@@ -0,0 +1,387 @@
+package com.dmoser.codyssey.vidar.compose;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Pattern;
+
+/**
+ * Cached view of a `.env` file.
+ * The parsed file is kept in memory and invalidated when the file changes on disk. Writes keep comments, blank lines
+ * and the order of all entries and replace the file atomically, so readers never see a partially written file.
+ * Instances are shared per file and safe for concurrent readers and writers.
+ */
+public class EnvStore {
+
+    private static final Logger log = LogManager.getLogger(EnvStore.class);
+    private static final String LOG_DEBUG_INVALIDATED = "Env file {} changed on disk";
+    private static final String LOG_WARN_NOT_WATCHED = "Can not watch env file {}, it is read on every access: {}";
+
+    private static final Pattern KEY_PATTERN = Pattern.compile("[A-Za-z_][A-Za-z0-9_.-]*");
+    private static final Pattern PLAIN_VALUE_PATTERN = Pattern.compile("[A-Za-z0-9_./:@,+=%-]*");
+    private static final String EXPORT_PREFIX = "export ";
+
+    private static final Map<Path, EnvStore> stores = new ConcurrentHashMap<>();
+    private static final Map<WatchKey, Path> watchedDirectories = new ConcurrentHashMap<>();
+    private static WatchService watchService;
+
+    private final Path file;
+    private volatile boolean watched;
+    private volatile EnvFile cached;
+    private final AtomicLong generation = new AtomicLong();
+
+    private EnvStore(Path file) {
+        this.file = file;
+    }
+
+    /**
+     * Returns the store of a `.env` file. The file does not need to exist.
+     *
+     * @param file The path of the file.
+     * @return The store shared by all callers of the same file.
+     */
+    public static EnvStore of(Path file) {
+        Path normalized = file.toAbsolutePath().normalize();
+        EnvStore store = stores.computeIfAbsent(normalized, EnvStore::new);
+        if (!store.watched) {
+            store.watched = watch(normalized.getParent());
+        }
+        return store;
+    }
+
+    /**
+     * Returns the path of the file.
+     *
+     * @return The path.
+     */
+    public Path file() {
+        return file;
+    }
+
+    /**
+     * Returns all variables of the file.
+     *
+     * @return The variables in the order of the file.
+     */
+    public Map<String, String> values() {
+        return read().values();
+    }
+
+    /**
+     * Returns the value of a variable.
+     *
+     * @param key The name of the variable.
+     * @return The value, or an empty optional when the file does not set the variable.
+     */
+    public Optional<String> get(String key) {
+        return Optional.ofNullable(values().get(key));
+    }
+
+    /**
+     * Sets a single variable.
+     *
+     * @param key   The name of the variable.
+     * @param value The value.
+     */
+    public void set(String key, String value) {
+        setAll(Map.of(key, value));
+    }
+
+    /**
+     * Sets many variables with a single write. Existing variables keep their position, new variables are appended
+     * in the iteration order of the map. A variable that is set more than once keeps the position of its last entry,
+     * the entry that is read, and its other entries are dropped.
+     *
+     * @param variables The variables.
+     * @throws IllegalArgumentException When a name is not a valid variable name.
+     * @throws UncheckedIOException     When the file could not be written.
+     */
+    public synchronized void setAll(Map<String, String> variables) {
+        variables.keySet().forEach(EnvStore::validateKey);
+        // Read from disk instead of the cache, so concurrent external edits are not overwritten
+        EnvFile current = load();
+        Map<String, Integer> lastEntries = new HashMap<>();
+        for (int i = 0; i < current.lines().size(); i++) {
+            String key = current.lines().get(i).key();
+            if (key != null && variables.containsKey(key)) {
+                lastEntries.put(key, i);
+            }
+        }
+        List<Line> lines = new ArrayList<>();
+        for (int i = 0; i < current.lines().size(); i++) {
+            Line line = current.lines().get(i);
+            Integer last = line.key() == null ? null : lastEntries.get(line.key());
+            if (last == null) {
+                lines.add(line);
+            } else if (last == i) {
+                lines.add(Line.entry(line.key(), variables.get(line.key()), line.raw().stripLeading().startsWith(EXPORT_PREFIX)));
+            }
+        }
+        variables.forEach((key, value) -> {
+            if (!lastEntries.containsKey(key)) {
+                lines.add(Line.entry(key, value, false));
+            }
+        });
+        write(lines);
+    }
+
+    /**
+     * Removes a variable.
+     *
+     * @param key The name of the variable.
+     * @throws UncheckedIOException When the file could not be written.
+     */
+    public synchronized void remove(String key) {
+        EnvFile current = load();
+        if (!current.values().containsKey(key)) {
+            return;
+        }
+        write(current.lines().stream().filter(line -> !key.equals(line.key())).toList());
+    }
+
+    /**
+     * Drops the cached file, so the next access reads it again.
+     */
+    public void invalidate() {
+        generation.incrementAndGet();
+        cached = null;
+    }
+
+    private EnvFile read() {
+        EnvFile envFile = cached;
+        if (envFile == null) {
+            long loadedGeneration = generation.get();
+            envFile = load();
+            // Only cache the file when it did not change while it was read
+            synchronized (this) {
+                if (watched && generation.get() == loadedGeneration) {
+                    cached = envFile;
+                }
+            }
+        }
+        return envFile;
+    }
+
+    private EnvFile load() {
+        try {
+            return parse(Files.readString(file, StandardCharsets.UTF_8));
+        } catch (NoSuchFileException e) {
+            return new EnvFile(List.of(), Map.of());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private void write(List<Line> lines) {
+        StringBuilder content = new StringBuilder();
+        lines.forEach(line -> content.append(line.raw()).append('\n'));
+        long writtenGeneration = generation.get();
+        try {
+            Files.createDirectories(file.getParent());
+            Path temp = Files.createTempFile(file.getParent(), "." + file.getFileName(), ".tmp");
+            try {
+                Files.writeString(temp, content, StandardCharsets.UTF_8);
+                if (Files.exists(file)) {
+                    try {
+                        Files.setPosixFilePermissions(temp, Files.getPosixFilePermissions(file));
+                    } catch (UnsupportedOperationException ignored) {
+                    }
+                }
+                Files.move(temp, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } finally {
+                Files.deleteIfExists(temp);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        EnvFile written = parse(content.toString());
+        synchronized (this) {
+            cached = watched && generation.get() == writtenGeneration ? written : null;
+        }
+    }
+
+    private static void validateKey(String key) {
+        if (!KEY_PATTERN.matcher(key).matches()) {
+            throw new IllegalArgumentException("Invalid variable name " + key);
+        }
+    }
+
+    /**
+     * Parses the content of a `.env` file. Supports comments, blank lines, `export` prefixes, unquoted values with
+     * inline comments, single quoted literal values and double quoted values with escapes, spanning multiple lines.
+     * Lines that can not be parsed are kept as they are.
+     */
+    static EnvFile parse(String content) {
+        List<Line> lines = new ArrayList<>();
+        Map<String, String> values = new LinkedHashMap<>();
+        int pos = 0;
+        while (pos < content.length()) {
+            int end = content.indexOf('\n', pos);
+            if (end < 0) {
+                end = content.length();
+            }
+            String raw = content.substring(pos, end);
+            String definition = raw.strip();
+            if (definition.startsWith(EXPORT_PREFIX)) {
+                definition = definition.substring(EXPORT_PREFIX.length()).stripLeading();
+            }
+            int equals = definition.indexOf('=');
+            String key = equals > 0 ? definition.substring(0, equals).strip() : "";
+            if (definition.startsWith("#") || !KEY_PATTERN.matcher(key).matches()) {
+                lines.add(new Line(raw, null));
+                pos = end + 1;
+                continue;
+            }
+
+            int valueStart = content.indexOf('=', pos) + 1;
+            while (valueStart < end && (content.charAt(valueStart) == ' ' || content.charAt(valueStart) == '\t')) {
+                valueStart++;
+            }
+            char quote = valueStart < content.length() ? content.charAt(valueStart) : 0;
+            String value;
+            if (quote == '"' || quote == '\'') {
+                StringBuilder sb = new StringBuilder();
+                int i = valueStart + 1;
+                while (i < content.length() && content.charAt(i) != quote) {
+                    char c = content.charAt(i);
+                    if (quote == '"' && c == '\\' && i + 1 < content.length()) {
+                        char escaped = content.charAt(++i);
+                        sb.append(switch (escaped) {
+                            case 'n' -> '\n';
+                            case 'r' -> '\r';
+                            case 't' -> '\t';
+                            default -> escaped;
+                        });
+                    } else {
+                        sb.append(c);
+                    }
+                    i++;
+                }
+                value = sb.toString();
+                // A quoted value might span several lines, the entry ends with the line of the closing quote
+                end = content.indexOf('\n', Math.min(i, content.length()));
+                if (end < 0) {
+                    end = content.length();
+                }
+                raw = content.substring(pos, end);
+            } else {
+                value = content.substring(valueStart, end);
+                int comment = value.indexOf(" #");
+                if (comment >= 0) {
+                    value = value.substring(0, comment);
+                }
+                value = value.strip();
+            }
+            lines.add(new Line(raw, key));
+            values.put(key, value);
+            pos = end + 1;
+        }
+        return new EnvFile(List.copyOf(lines), Collections.unmodifiableMap(values));
+    }
+
+    /**
+     * Formats a value, quoting it when it contains characters with a special meaning.
+     */
+    static String format(String value) {
+        if (PLAIN_VALUE_PATTERN.matcher(value).matches()) {
+            return value;
+        }
+        if (value.indexOf('\'') < 0 && value.indexOf('\n') < 0 && value.indexOf('\r') < 0) {
+            return "'" + value + "'";
+        }
+        return '"' + value.replace("\\", "\\\\")
+                .replace("\"", "\\\"")
+                .replace("\n", "\\n")
+                .replace("\r", "\\r") + '"';
+    }
+
+    private static synchronized boolean watch(Path directory) {
+        try {
+            if (watchService == null) {
+                watchService = FileSystems.getDefault().newWatchService();
+                Thread.ofVirtual().name("vidar-env-watcher").start(EnvStore::watchLoop);
+            }
+            if (watchedDirectories.containsValue(directory)) {
+                return true;
+            }
+            WatchKey key = directory.register(watchService, StandardWatchEventKinds.ENTRY_CREATE,
+                    StandardWatchEventKinds.ENTRY_MODIFY, StandardWatchEventKinds.ENTRY_DELETE);
+            watchedDirectories.put(key, directory);
+            return true;
+        } catch (IOException e) {
+            log.warn(LOG_WARN_NOT_WATCHED, directory, e.getMessage());
+            return false;
+        }
+    }
+
+    private static void watchLoop() {
+        while (true) {
+            WatchKey key;
+            try {
+                key = watchService.take();
+            } catch (InterruptedException | ClosedWatchServiceException e) {
+                return;
+            }
+            Path directory = watchedDirectories.get(key);
+            for (WatchEvent<?> event : key.pollEvents()) {
+                if (directory == null) {
+                    continue;
+                }
+                if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                    stores.values().stream().filter(store -> store.file.getParent().equals(directory)).forEach(EnvStore::invalidate);
+                } else if (event.context() instanceof Path name) {
+                    EnvStore store = stores.get(directory.resolve(name));
+                    if (store != null) {
+                        log.debug(LOG_DEBUG_INVALIDATED, store.file);
+                        store.invalidate();
+                    }
+                }
+            }
+            if (!key.reset()) {
+                // The directory is gone, the stores of its files read from disk again until it is watched again
+                watchedDirectories.remove(key);
+                stores.values().stream().filter(store -> store.file.getParent().equals(directory)).forEach(store -> {
+                    store.watched = false;
+                    store.invalidate();
+                });
+            }
+        }
+    }
+
+    record EnvFile(List<Line> lines, Map<String, String> values) {
+    }
+
+    /**
+     * A line of the file. Entries may span several physical lines.
+     *
+     * @param raw The text of the line as written in the file.
+     * @param key The name of the variable, or null when the line is no entry.
+     */
+    record Line(String raw, String key) {
+        static Line entry(String key, String value, boolean export) {
+            return new Line((export ? EXPORT_PREFIX : "") + key + "=" + format(value), key);
+        }
+    }
+}
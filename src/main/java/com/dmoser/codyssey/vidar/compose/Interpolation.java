@@ -0,0 +1,220 @@
+package com.dmoser.codyssey.vidar.compose;
+
+import com.fasterxml.jackson.databind.JsonNode;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.function.Function;
+
+/**
+ * Single pass scanner and resolver for the variable syntax of compose files.
+ * Supports `$VAR`, `${VAR}`, `${VAR:-default}`, `${VAR-default}`, `${VAR:?error}`, `${VAR?error}`, `${VAR:+replacement}`,
+ * `${VAR+replacement}`, nested references inside arguments and `$$` as an escaped `$`.
+ */
+public final class Interpolation {
+
+    private static final String[] MODIFIERS = {":-", ":?", ":+", "-", "?", "+"};
+
+    private Interpolation() {
+    }
+
+    /**
+     * Finds all variable references in a value, including references nested inside default values.
+     *
+     * @param text The value.
+     * @param file The file containing the value.
+     * @return The references in the order they appear.
+     * @throws InterpolationException When a braced reference is invalid.
+     */
+    public static List<VariableReference> scan(String text, Path file) {
+        Scanner scanner = new Scanner(text, null, file);
+        scanner.run(false);
+        return scanner.references;
+    }
+
+    /**
+     * Finds all variable references in the values of compose files. Keys and comments are not interpolated by compose
+     * and therefore ignored.
+     *
+     * @param files The compose files, e.g. {@link ComposeModel#sources()}.
+     * @return The references in the order they appear, file by file.
+     * @throws IOException When a file could not be read or contains an invalid reference.
+     */
+    public static List<VariableReference> scan(Collection<Path> files) throws IOException {
+        List<VariableReference> references = new ArrayList<>();
+        for (Path file : files) {
+            try {
+                scanNode(ComposeParser.MAPPER.readTree(file.toFile()), file, references);
+            } catch (InterpolationException e) {
+                throw new IOException("Invalid interpolation in " + file + ": " + e.getMessage(), e);
+            }
+        }
+        return references;
+    }
+
+    private static void scanNode(JsonNode node, Path file, List<VariableReference> references) {
+        if (node == null) {
+            return;
+        }
+        if (node.isTextual()) {
+            references.addAll(scan(node.asText(), file));
+        } else if (node.isContainerNode()) {
+            node.forEach(child -> scanNode(child, file, references));
+        }
+    }
+
+    /**
+     * Interpolates a value.
+     *
+     * @param text   The value.
+     * @param lookup Returns the value of a variable, or null when the variable is unset.
+     * @return The interpolated value. Unset variables without default are replaced with an empty string.
+     * @throws InterpolationException When the value is invalid or a required variable has no value.
+     */
+    public static String interpolate(String text, Function<String, String> lookup) {
+        return new Scanner(text, lookup, null).run(false);
+    }
+
+    private static final class Scanner {
+
+        private final String text;
+        private final Path file;
+        private final List<VariableReference> references = new ArrayList<>();
+        private Function<String, String> lookup;
+        private int pos;
+
+        Scanner(String text, Function<String, String> lookup, Path file) {
+            this.text = text;
+            this.lookup = lookup;
+            this.file = file;
+        }
+
+        /**
+         * Reads until the end of the text, or until the closing brace of the enclosing reference when nested.
+         */
+        String run(boolean nested) {
+            StringBuilder out = new StringBuilder();
+            while (pos < text.length()) {
+                char c = text.charAt(pos);
+                if (nested && c == '}') {
+                    return out.toString();
+                }
+                if (c != '$' || pos + 1 == text.length()) {
+                    out.append(c);
+                    pos++;
+                    continue;
+                }
+                char next = text.charAt(pos + 1);
+                if (next == '$') {
+                    out.append('$');
+                    pos += 2;
+                } else if (next == '{') {
+                    pos += 2;
+                    out.append(braced());
+                } else if (isNameStart(next)) {
+                    pos++;
+                    String name = readName();
+                    references.add(new VariableReference(name, "", "", file));
+                    String value = valueOf(name);
+                    out.append(value == null ? "" : value);
+                } else {
+                    out.append(c);
+                    pos++;
+                }
+            }
+            if (nested) {
+                throw new InterpolationException("Missing closing brace in " + text);
+            }
+            return out.toString();
+        }
+
+        private String braced() {
+            int start = pos - 2;
+            String name = readName();
+            if (name.isEmpty()) {
+                throw new InterpolationException("Invalid interpolation format for " + text.substring(start));
+            }
+            String modifier = "";
+            if (pos < text.length() && text.charAt(pos) != '}') {
+                for (String candidate : MODIFIERS) {
+                    if (text.startsWith(candidate, pos)) {
+                        modifier = candidate;
+                        break;
+                    }
+                }
+                if (modifier.isEmpty()) {
+                    throw new InterpolationException("Invalid interpolation format for " + text.substring(start));
+                }
+                pos += modifier.length();
+            }
+
+            String value = valueOf(name);
+            boolean unset = value == null;
+            boolean empty = unset || value.isEmpty();
+            boolean argumentUsed = switch (modifier) {
+                case ":-", ":?" -> empty;
+                case "-", "?" -> unset;
+                case ":+" -> !empty;
+                case "+" -> !unset;
+                default -> false;
+            };
+
+            int argumentStart = pos;
+            String argument = "";
+            if (!modifier.isEmpty()) {
+                // Arguments are only evaluated when used, so unused nested required variables do not fail
+                Function<String, String> outerLookup = lookup;
+                if (!argumentUsed) {
+                    lookup = null;
+                }
+                argument = run(true);
+                lookup = outerLookup;
+            } else if (pos >= text.length()) {
+                throw new InterpolationException("Missing closing brace in " + text.substring(start));
+            }
+            references.add(new VariableReference(name, modifier, text.substring(argumentStart, pos), file));
+            pos++;
+
+            if (lookup == null) {
+                return "";
+            }
+            return switch (modifier) {
+                case ":-", "-" -> argumentUsed ? argument : value;
+                case ":?", "?" -> {
+                    if (argumentUsed) {
+                        throw new InterpolationException("Required variable " + name + " is missing a value: " + argument);
+                    }
+                    yield value;
+                }
+                case ":+", "+" -> argumentUsed ? argument : "";
+                default -> unset ? "" : value;
+            };
+        }
+
+        private String valueOf(String name) {
+            return lookup == null ? null : lookup.apply(name);
+        }
+
+        private String readName() {
+            int start = pos;
+            if (pos < text.length() && isNameStart(text.charAt(pos))) {
+                pos++;
+                while (pos < text.length() && (isNameStart(text.charAt(pos)) || isDigit(text.charAt(pos)))) {
+                    pos++;
+                }
+            }
+            return text.substring(start, pos);
+        }
+
+        private static boolean isNameStart(char c) {
+            return c == '_' || c >= 'a' && c <= 'z' || c >= 'A' && c <= 'Z';
+        }
+
+        private static boolean isDigit(char c) {
+            return c >= '0' && c <= '9';
+        }
+    }
+}
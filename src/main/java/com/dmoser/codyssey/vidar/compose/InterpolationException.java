@@ -0,0 +1,12 @@
+package com.dmoser.codyssey.vidar.compose;
+
+/**
+ * Thrown when a value can not be interpolated, either because of an invalid reference or because a required variable
+ * has no value.
+ */
+public class InterpolationException extends RuntimeException {
+
+    public InterpolationException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,211 @@
+package com.dmoser.codyssey.vidar.compose;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.yaml.YAMLFactory;
+import com.fasterxml.jackson.dataformat.yaml.YAMLGenerator;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Manages the `include` list of the root compose file, which includes the compose files of all plugins.
+ * Mutations of concurrent callers are applied in batches: whoever holds the lock writes all pending mutations with a
+ * single write. Writes hold a lock file, so other processes do not interleave, and replace the file atomically.
+ */
+public class RootComposeFile {
+
+    private static final Logger log = LogManager.getLogger(RootComposeFile.class);
+    private static final String LOG_DEBUG_WRITE = "Writing {} with {} include mutations";
+
+    private static final ObjectMapper MAPPER = new ObjectMapper(new YAMLFactory()
+            .disable(YAMLGenerator.Feature.WRITE_DOC_START_MARKER)
+            .enable(YAMLGenerator.Feature.MINIMIZE_QUOTES)
+            .enable(YAMLGenerator.Feature.ALWAYS_QUOTE_NUMBERS_AS_STRINGS)
+            .enable(YAMLGenerator.Feature.INDENT_ARRAYS_WITH_INDICATOR));
+    private static final String INCLUDE = "include";
+
+    private static final Map<Path, RootComposeFile> files = new ConcurrentHashMap<>();
+
+    private final Path file;
+    private final Path lockFile;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final ConcurrentLinkedQueue<Mutation> pending = new ConcurrentLinkedQueue<>();
+    private volatile CachedTree cached;
+
+    private RootComposeFile(Path file) {
+        this.file = file;
+        this.lockFile = file.resolveSibling("." + file.getFileName() + ".lock");
+    }
+
+    /**
+     * Returns the manager of a root compose file.
+     *
+     * @param file The path of the root compose file.
+     * @return The manager shared by all callers of the same file.
+     */
+    public static RootComposeFile of(Path file) {
+        return files.computeIfAbsent(file.toAbsolutePath().normalize(), RootComposeFile::new);
+    }
+
+    /**
+     * Returns the included files. Entries in the long syntax are reported with their first path.
+     *
+     * @return The included paths as written in the file.
+     * @throws UncheckedIOException When the file could not be read.
+     */
+    public List<String> includes() {
+        List<String> includes = new ArrayList<>();
+        if (tree().get(INCLUDE) instanceof List<?> entries) {
+            entries.forEach(entry -> includes.add(includePath(entry)));
+        }
+        return includes;
+    }
+
+    /**
+     * Adds includes. Paths that are already included are skipped.
+     *
+     * @param paths The paths relative to the root compose file.
+     */
+    public void include(Collection<String> paths) {
+        update(paths, List.of());
+    }
+
+    /**
+     * Removes includes.
+     *
+     * @param paths The paths relative to the root compose file.
+     */
+    public void exclude(Collection<String> paths) {
+        update(List.of(), paths);
+    }
+
+    /**
+     * Adds and removes includes with a single write. The file is not written when nothing changed.
+     * Blocks until the mutation was written, possibly together with the mutations of concurrent callers.
+     *
+     * @param added   The paths to add.
+     * @param removed The paths to remove.
+     * @throws UncheckedIOException When the file could not be written.
+     */
+    public void update(Collection<String> added, Collection<String> removed) {
+        Mutation mutation = new Mutation(List.copyOf(added), List.copyOf(removed), new CompletableFuture<>());
+        pending.add(mutation);
+        lock.lock();
+        try {
+            // A previous lock holder might already have written this mutation
+            if (!mutation.done().isDone()) {
+                flush();
+            }
+        } finally {
+            lock.unlock();
+        }
+        try {
+            mutation.done().join();
+        } catch (CompletionException e) {
+            throw (RuntimeException) e.getCause();
+        }
+    }
+
+    private void flush() {
+        List<Mutation> batch = new ArrayList<>();
+        Mutation next;
+        while ((next = pending.poll()) != null) {
+            batch.add(next);
+        }
+        if (batch.isEmpty()) {
+            return;
+        }
+        try (FileChannel channel = FileChannel.open(lockFile, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+             FileLock ignored = channel.lock()) {
+            Map<String, Object> tree = new LinkedHashMap<>(tree());
+            List<Object> includes = tree.get(INCLUDE) instanceof List<?> entries ? new ArrayList<>(entries) : new ArrayList<>();
+            List<Object> before = List.copyOf(includes);
+            for (Mutation mutation : batch) {
+                includes.removeIf(entry -> mutation.removed().contains(includePath(entry)));
+                for (String path : mutation.added()) {
+                    if (includes.stream().noneMatch(entry -> includePath(entry).equals(path))) {
+                        includes.add(path);
+                    }
+                }
+            }
+            if (!includes.equals(before)) {
+                log.debug(LOG_DEBUG_WRITE, file, batch.size());
+                tree.put(INCLUDE, includes);
+                write(tree);
+            }
+            batch.forEach(mutation -> mutation.done().complete(null));
+        } catch (IOException e) {
+            UncheckedIOException failure = new UncheckedIOException(e);
+            batch.forEach(mutation -> mutation.done().completeExceptionally(failure));
+        } catch (RuntimeException e) {
+            batch.forEach(mutation -> mutation.done().completeExceptionally(e));
+        }
+    }
+
+    private void write(Map<String, Object> tree) throws IOException {
+        Path temp = Files.createTempFile(file.getParent(), "." + file.getFileName(), ".tmp");
+        try {
+            MAPPER.writeValue(temp.toFile(), tree);
+            Files.move(temp, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+        cached = new CachedTree(tree, ComposeParser.FileStamp.of(file));
+    }
+
+    /**
+     * Returns the parsed file. The tree is cached until the file changes on disk and must not be modified.
+     */
+    @SuppressWarnings("unchecked")
+    private Map<String, Object> tree() {
+        CachedTree current = cached;
+        ComposeParser.FileStamp stamp = ComposeParser.FileStamp.of(file);
+        if (current != null && current.stamp().equals(stamp)) {
+            return current.tree();
+        }
+        Map<String, Object> tree = new LinkedHashMap<>();
+        if (Files.exists(file)) {
+            try {
+                if (MAPPER.readValue(file.toFile(), Object.class) instanceof Map<?, ?> value) {
+                    tree = (Map<String, Object>) value;
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+        cached = new CachedTree(tree, stamp);
+        return tree;
+    }
+
+    private static String includePath(Object entry) {
+        Object path = entry instanceof Map<?, ?> map ? map.get("path") : entry;
+        if (path instanceof List<?> pathList) {
+            path = pathList.isEmpty() ? "" : pathList.getFirst();
+        }
+        return String.valueOf(path);
+    }
+
+    private record Mutation(List<String> added, List<String> removed, CompletableFuture<Void> done) {
+    }
+
+    private record CachedTree(Map<String, Object> tree, ComposeParser.FileStamp stamp) {
+    }
+}
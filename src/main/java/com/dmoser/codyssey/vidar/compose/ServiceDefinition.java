@@ -0,0 +1,74 @@
+package com.dmoser.codyssey.vidar.compose;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A record containing the definition of a compose service after includes, extends and overrides were applied.
+ * Values are not interpolated.
+ *
+ * @param name       The name of the service.
+ * @param image      The image of the service. Empty when the service is only built.
+ * @param build      The absolute path of the build context. Empty when the service is not built.
+ * @param dependsOn  The names of the services this service depends on.
+ * @param ports      The ports in the form of `[PUBLISHED]:[TARGET]/[PROTOCOL]`.
+ * @param volumes    The volumes in the form of `[SOURCE]:[TARGET]`.
+ * @param networks   The names of the networks the service is attached to.
+ * @param definition The merged raw definition of the service.
+ */
+public record ServiceDefinition(String name,
+                                String image,
+                                String build,
+                                List<String> dependsOn,
+                                List<String> ports,
+                                List<String> volumes,
+                                List<String> networks,
+                                Map<String, Object> definition) {
+
+    /**
+     * The `depends_on` condition requiring the dependency to be started. It is the default condition.
+     */
+    public static final String CONDITION_STARTED = "service_started";
+
+    /**
+     * The `depends_on` condition requiring the dependency to be healthy.
+     */
+    public static final String CONDITION_HEALTHY = "service_healthy";
+
+    /**
+     * The `depends_on` condition requiring the dependency to have exited with code 0.
+     */
+    public static final String CONDITION_COMPLETED_SUCCESSFULLY = "service_completed_successfully";
+
+    /**
+     * Returns the conditions of the services this service depends on.
+     *
+     * @return The condition keyed by the name of the dependency, {@value CONDITION_STARTED} when none is given.
+     */
+    public Map<String, String> dependsOnConditions() {
+        Map<String, String> conditions = new LinkedHashMap<>();
+        dependsOn.forEach(dependency -> conditions.put(dependency, CONDITION_STARTED));
+        if (definition.get("depends_on") instanceof Map<?, ?> dependencies) {
+            dependencies.forEach((dependency, options) -> {
+                if (options instanceof Map<?, ?> map && map.get("condition") != null) {
+                    conditions.put(String.valueOf(dependency), String.valueOf(map.get("condition")));
+                }
+            });
+        }
+        return conditions;
+    }
+
+    /**
+     * Returns the env files of the service.
+     *
+     * @return The absolute paths of the env files. Empty when the service has none.
+     */
+    public List<String> envFiles() {
+        Object envFile = definition.get("env_file");
+        if (envFile instanceof List<?> envFiles) {
+            return envFiles.stream().map(String::valueOf).toList();
+        }
+        return envFile == null ? List.of() : List.of(envFile.toString());
+    }
+}
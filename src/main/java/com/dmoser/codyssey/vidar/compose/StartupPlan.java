@@ -0,0 +1,140 @@
+package com.dmoser.codyssey.vidar.compose;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * The order to start services in, derived from their `depends_on` relations.
+ * Services are grouped into waves. The services of a wave only depend on services of earlier waves, so a wave can be
+ * started at once after the previous waves are up, and the number of waves is the length of the critical path.
+ *
+ * @param waves         The waves in start order, every wave sorted by name.
+ * @param prerequisites The services every planned service directly depends on.
+ * @param conditions    The `depends_on` condition of every prerequisite, keyed by planned service and prerequisite.
+ */
+public record StartupPlan(List<List<String>> waves,
+                          Map<String, Set<String>> prerequisites,
+                          Map<String, Map<String, String>> conditions) {
+
+    /**
+     * Plans to start services together with everything they transitively depend on.
+     * Dependencies that are not defined are ignored, as they can not be started.
+     *
+     * @param services The definitions of all services, e.g. of the root compose file including every plugin.
+     * @param targets  The names of the services to start.
+     * @return The plan.
+     * @throws DependencyCycleException When the services depend on each other in a cycle.
+     * @throws IllegalArgumentException When a target is not defined.
+     */
+    public static StartupPlan of(Map<String, ServiceDefinition> services, Collection<String> targets) {
+        Map<String, Set<String>> prerequisites = new LinkedHashMap<>();
+        Map<String, Map<String, String>> conditions = new LinkedHashMap<>();
+        List<String> pending = new ArrayList<>(new TreeSet<>(targets));
+        while (!pending.isEmpty()) {
+            String name = pending.removeLast();
+            if (prerequisites.containsKey(name)) {
+                continue;
+            }
+            ServiceDefinition service = services.get(name);
+            if (service == null) {
+                throw new IllegalArgumentException("Service " + name + " is not defined");
+            }
+            Set<String> dependencies = new TreeSet<>();
+            Map<String, String> dependencyConditions = new LinkedHashMap<>();
+            service.dependsOnConditions().forEach((dependency, condition) -> {
+                if (services.containsKey(dependency)) {
+                    dependencies.add(dependency);
+                    dependencyConditions.put(dependency, condition);
+                    pending.add(dependency);
+                }
+            });
+            prerequisites.put(name, Collections.unmodifiableSet(dependencies));
+            conditions.put(name, Collections.unmodifiableMap(dependencyConditions));
+        }
+
+        // Kahn's algorithm, a wave holds every service whose prerequisites are all in earlier waves
+        Map<String, Integer> missing = new HashMap<>();
+        Map<String, List<String>> dependents = new HashMap<>();
+        prerequisites.forEach((name, dependencies) -> {
+            missing.put(name, dependencies.size());
+            dependencies.forEach(dependency -> dependents.computeIfAbsent(dependency, key -> new ArrayList<>()).add(name));
+        });
+        List<List<String>> waves = new ArrayList<>();
+        Set<String> wave = new TreeSet<>();
+        missing.forEach((name, count) -> {
+            if (count == 0) {
+                wave.add(name);
+            }
+        });
+        int planned = 0;
+        while (!wave.isEmpty()) {
+            waves.add(List.copyOf(wave));
+            planned += wave.size();
+            Set<String> next = new TreeSet<>();
+            for (String name : wave) {
+                for (String dependent : dependents.getOrDefault(name, List.of())) {
+                    if (missing.merge(dependent, -1, Integer::sum) == 0) {
+                        next.add(dependent);
+                    }
+                }
+            }
+            wave.clear();
+            wave.addAll(next);
+        }
+        if (planned < prerequisites.size()) {
+            throw new DependencyCycleException(findCycle(prerequisites, missing));
+        }
+        return new StartupPlan(List.copyOf(waves), Collections.unmodifiableMap(prerequisites), Collections.unmodifiableMap(conditions));
+    }
+
+    /**
+     * Returns all planned services.
+     *
+     * @return The services in start order.
+     */
+    public List<String> services() {
+        return waves.stream().flatMap(List::stream).toList();
+    }
+
+    /**
+     * Returns the condition a planned service waits for before it is started after one of its prerequisites.
+     *
+     * @param service      The name of the planned service.
+     * @param prerequisite The name of the prerequisite.
+     * @return The `depends_on` condition, e.g. {@value ServiceDefinition#CONDITION_HEALTHY}.
+     */
+    public String condition(String service, String prerequisite) {
+        return conditions.getOrDefault(service, Map.of()).getOrDefault(prerequisite, ServiceDefinition.CONDITION_STARTED);
+    }
+
+    /**
+     * Finds a cycle among the services that could not be planned. Every such service has an unplanned prerequisite,
+     * so following them must eventually revisit a service.
+     */
+    private static List<String> findCycle(Map<String, Set<String>> prerequisites, Map<String, Integer> missing) {
+        String current = new TreeSet<>(missing.entrySet().stream()
+                .filter(entry -> entry.getValue() > 0)
+                .map(Map.Entry::getKey)
+                .toList()).first();
+        List<String> path = new ArrayList<>();
+        Set<String> visited = new HashSet<>();
+        while (visited.add(current)) {
+            path.add(current);
+            current = prerequisites.get(current).stream()
+                    .filter(dependency -> missing.get(dependency) > 0)
+                    .findFirst()
+                    .orElseThrow();
+        }
+        List<String> cycle = new ArrayList<>(path.subList(path.indexOf(current), path.size()));
+        cycle.add(current);
+        return cycle;
+    }
+}
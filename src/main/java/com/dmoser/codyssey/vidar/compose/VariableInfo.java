@@ -0,0 +1,32 @@
+package com.dmoser.codyssey.vidar.compose;
+
+import java.nio.file.Path;
+import java.util.Set;
+
+/**
+ * A record containing a variable used by a compose project and the value compose would use for it.
+ *
+ * @param name         The name of the variable.
+ * @param value        The resolved value. The default value when no source sets the variable, otherwise empty.
+ * @param source       The name of the source the value came from, {@link #SOURCE_DEFAULT} or empty when it is unset.
+ * @param defaultValue The default value of the first reference that defines one. Empty when there is none.
+ * @param required     true when at least one reference requires a value.
+ * @param files        The compose files referencing the variable.
+ */
+public record VariableInfo(String name, String value, String source, String defaultValue, boolean required,
+                           Set<Path> files) {
+
+    /**
+     * The source of values taken from the default of a reference.
+     */
+    public static final String SOURCE_DEFAULT = "default";
+
+    /**
+     * Checks if compose would get a value for the variable.
+     *
+     * @return true when a source sets the variable or a default is used.
+     */
+    public boolean isSet() {
+        return !source.isEmpty();
+    }
+}
@@ -0,0 +1,33 @@
+package com.dmoser.codyssey.vidar.compose;
+
+import java.nio.file.Path;
+import java.util.Optional;
+
+/**
+ * A record containing a single variable reference inside a compose file.
+ *
+ * @param name     The name of the variable.
+ * @param modifier The modifier of a braced reference. One of `:-`, `-`, `:?`, `?`, `:+`, `+` or empty.
+ * @param argument The raw text after the modifier, e.g. the default value or the error message. Empty without modifier.
+ * @param file     The compose file containing the reference.
+ */
+public record VariableReference(String name, String modifier, String argument, Path file) {
+
+    /**
+     * Returns the default value of the reference.
+     *
+     * @return The default value for `${VAR:-default}` and `${VAR-default}`, otherwise empty.
+     */
+    public Optional<String> defaultValue() {
+        return modifier.equals(":-") || modifier.equals("-") ? Optional.of(argument) : Optional.empty();
+    }
+
+    /**
+     * Checks if compose refuses to start without a value for the variable.
+     *
+     * @return true for `${VAR:?error}` and `${VAR?error}`.
+     */
+    public boolean isRequired() {
+        return modifier.equals(":?") || modifier.equals("?");
+    }
+}
@@ -0,0 +1,128 @@
+package com.dmoser.codyssey.vidar.compose;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * Layered sources of variable values. Layers added first take precedence over layers added later, so the layers are
+ * added in the order compose uses: explicit overrides, then the process environment, then the `.env` file.
+ */
+public class VariableSources {
+
+    /**
+     * The name of the layer holding explicit overrides.
+     */
+    public static final String OVERRIDES = "overrides";
+    /**
+     * The name of the layer holding the process environment.
+     */
+    public static final String ENVIRONMENT = "environment";
+    /**
+     * The name of the layer holding the `.env` file.
+     */
+    public static final String DOT_ENV = ".env";
+
+    private final List<Map.Entry<String, Map<String, String>>> layers = new ArrayList<>();
+
+    /**
+     * Adds a layer with a lower precedence than all layers added before.
+     *
+     * @param name   The name of the layer, reported as the source of its values.
+     * @param values The values of the layer.
+     * @return This object.
+     */
+    public VariableSources with(String name, Map<String, String> values) {
+        layers.add(Map.entry(name, Map.copyOf(values)));
+        return this;
+    }
+
+    /**
+     * Looks up a variable.
+     *
+     * @param name The name of the variable.
+     * @return The name of the first layer setting the variable and its value. Empty when no layer sets it.
+     */
+    public Optional<Map.Entry<String, String>> lookup(String name) {
+        for (Map.Entry<String, Map<String, String>> layer : layers) {
+            String value = layer.getValue().get(name);
+            if (value != null) {
+                return Optional.of(Map.entry(layer.getKey(), value));
+            }
+        }
+        return Optional.empty();
+    }
+
+    /**
+     * Returns the value of a variable.
+     *
+     * @param name The name of the variable.
+     * @return The value, or null when no layer sets the variable.
+     */
+    public String value(String name) {
+        return lookup(name).map(Map.Entry::getValue).orElse(null);
+    }
+
+    /**
+     * Interpolates a value with the variables of these sources.
+     *
+     * @param text The value.
+     * @return The interpolated value.
+     * @throws InterpolationException When the value is invalid or a required variable has no value.
+     */
+    public String interpolate(String text) {
+        return Interpolation.interpolate(text, this::value);
+    }
+
+    /**
+     * Resolves all variables referenced by a compose project the way compose would.
+     *
+     * @param references The references found in the compose files.
+     * @return The variables keyed and sorted by name.
+     */
+    public Map<String, VariableInfo> resolve(List<VariableReference> references) {
+        Map<String, List<VariableReference>> byName = new LinkedHashMap<>();
+        references.stream()
+                .sorted(Comparator.comparing(VariableReference::name))
+                .forEach(reference -> byName.computeIfAbsent(reference.name(), k -> new ArrayList<>()).add(reference));
+
+        Map<String, VariableInfo> variables = new LinkedHashMap<>();
+        byName.forEach((name, nameReferences) -> {
+            String defaultValue = nameReferences.stream()
+                    .map(VariableReference::defaultValue)
+                    .flatMap(Optional::stream)
+                    .findFirst()
+                    .orElse("");
+            boolean required = nameReferences.stream().anyMatch(VariableReference::isRequired);
+            Set<Path> files = nameReferences.stream()
+                    .map(VariableReference::file)
+                    .collect(Collectors.toCollection(LinkedHashSet::new));
+            Optional<Map.Entry<String, String>> found = lookup(name);
+            // ${VAR:-default} also uses the default when the variable is set but empty
+            boolean defaultUsed = nameReferences.stream().anyMatch(r -> r.modifier().equals(":-")
+                    && found.map(Map.Entry::getValue).orElse("").isEmpty()
+                    || r.modifier().equals("-") && found.isEmpty());
+            String value;
+            String source;
+            if (defaultUsed) {
+                value = defaultValue;
+                source = VariableInfo.SOURCE_DEFAULT;
+            } else if (found.isPresent()) {
+                value = found.get().getValue();
+                source = found.get().getKey();
+            } else {
+                value = "";
+                source = "";
+            }
+            variables.put(name, new VariableInfo(name, value, source, defaultValue, required, files));
+        });
+        return variables;
+    }
+}
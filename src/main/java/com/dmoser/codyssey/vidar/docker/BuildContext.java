@@ -0,0 +1,135 @@
+package com.dmoser.codyssey.vidar.docker;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HexFormat;
+import java.util.List;
+
+/**
+ * Content hash of a docker build context.
+ * The hash covers the relative path, the executable bit and the content of every file that is sent to the daemon,
+ * which are all files not excluded by the `.dockerignore` file, and always the Dockerfile. Timestamps are not part
+ * of the hash, so a fresh clone of the same commit has the same hash. Files are hashed in parallel.
+ */
+public final class BuildContext {
+
+    static final String DOCKERFILE = "Dockerfile";
+
+    private static final HexFormat HEX = HexFormat.of();
+
+    private BuildContext() {
+    }
+
+    /**
+     * Computes the hash of a build context.
+     *
+     * @param context The directory of the build context, containing the Dockerfile.
+     * @return The sha256 hash in hex.
+     * @throws IOException When the context could not be read.
+     */
+    public static String hash(Path context) throws IOException {
+        List<Entry> entries = entries(context);
+        List<String> lines;
+        try {
+            lines = entries.parallelStream().map(BuildContext::describe).toList();
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+        MessageDigest digest = sha256();
+        for (String line : lines) {
+            digest.update(line.getBytes(StandardCharsets.UTF_8));
+        }
+        return HEX.formatHex(digest.digest());
+    }
+
+    /**
+     * Lists all entries of the context that are sent to the daemon, sorted by relative path.
+     */
+    private static List<Entry> entries(Path context) throws IOException {
+        DockerIgnore ignore = DockerIgnore.of(context);
+        List<Entry> entries = new ArrayList<>();
+        Files.walkFileTree(context, new SimpleFileVisitor<>() {
+            @Override
+            public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attributes) {
+                String relative = relative(context, dir);
+                if (relative.isEmpty()) {
+                    return FileVisitResult.CONTINUE;
+                }
+                if (ignore.canSkipDirectory(relative)) {
+                    return FileVisitResult.SKIP_SUBTREE;
+                }
+                if (!ignore.isExcluded(relative)) {
+                    entries.add(new Entry(dir, relative, attributes));
+                }
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attributes) {
+                String relative = relative(context, file);
+                if (!ignore.isExcluded(relative) || relative.equals(DOCKERFILE) || relative.equals(DockerIgnore.FILE_NAME)) {
+                    entries.add(new Entry(file, relative, attributes));
+                }
+                return FileVisitResult.CONTINUE;
+            }
+        });
+        entries.sort((a, b) -> a.relative().compareTo(b.relative()));
+        return entries;
+    }
+
+    private static String relative(Path context, Path path) {
+        return context.relativize(path).toString().replace('\\', '/');
+    }
+
+    /**
+     * Describes an entry as one line of the context hash.
+     */
+    private static String describe(Entry entry) {
+        try {
+            if (entry.attributes().isSymbolicLink()) {
+                return entry.relative() + "\0l\0" + Files.readSymbolicLink(entry.path()) + "\n";
+            }
+            if (entry.attributes().isDirectory()) {
+                return entry.relative() + "\0d\n";
+            }
+            String mode = Files.isExecutable(entry.path()) ? "x" : "f";
+            return entry.relative() + "\0" + mode + "\0" + hashFile(entry.path()) + "\n";
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static String hashFile(Path file) throws IOException {
+        MessageDigest digest = sha256();
+        byte[] buffer = new byte[64 * 1024];
+        try (InputStream in = Files.newInputStream(file, LinkOption.NOFOLLOW_LINKS)) {
+            int read;
+            while ((read = in.read(buffer)) >= 0) {
+                digest.update(buffer, 0, read);
+            }
+        }
+        return HEX.formatHex(digest.digest());
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private record Entry(Path path, String relative, BasicFileAttributes attributes) {
+    }
+}
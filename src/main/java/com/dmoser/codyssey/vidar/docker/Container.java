@@ -1,10 +1,20 @@
 package com.dmoser.codyssey.vidar.docker;
 
+import com.dmoser.codyssey.vidar.service.LogFollower;
+import com.dmoser.codyssey.vidar.service.ReadinessPolicy;
+import com.dmoser.codyssey.vidar.service.Command;
 import com.dmoser.codyssey.vidar.service.SystemService;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
+import java.time.Duration;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
 
 /**
  * Docker commands that are tied to containers.
@@ -19,20 +29,75 @@ public class Container {
     private static final String LOG_DEBUG_START_CONTAINER = "Start container with id {}. Exec cmd is {}";
     private static final String LOG_DEBUG_STOP_CONTAINER = "Stop container with id {}. EXec cmd is {}";
 
+    private static final String LOG_DEBUG_NOT_READY = "Container {} is {} after {} checks, checking again in {}";
+    private static final String LOG_WARN_READINESS_DEADLINE = "Container {} did not become ready within {}";
+
+    private static final String LOG_DEBUG_CONNECT_NETWORK = "Connect container {} to network {}. Status is {}";
+    private static final String LOG_INFO_PULL_MISSING_IMAGE = "Image {} of container {} is missing, pulling it";
+
     private static final String CMD_START = "docker start %s";
     private static final String CMD_STOP = "docker stop %s";
+    private static final String CMD_REMOVE = "docker rm %s";
+    private static final String CMD_PULL = "docker pull %s";
+    private static final String CMD_LOGS = "docker logs --follow --timestamps --tail %s %s";
+    private static final String CMD_INSPECT = "docker inspect --format";
+    private static final String FORMAT_STATE = "{{.State.Status}} {{if .State.Health}}{{.State.Health.Status}}{{end}}";
+
+
+    private static final String CMD_EXISTS = "docker ps -a --format={{.Names}}";
+    private static final String CMD_IS_RUNNING = "docker ps --format={{.Names}}";
 
+    private static final String API_INSPECT = "/containers/%s/json";
+    private static final String API_CREATE = "/containers/create?name=%s";
+    private static final String API_START = "/containers/%s/start";
+    private static final String API_STOP = "/containers/%s/stop";
+    private static final String API_REMOVE = "/containers/%s?force=true";
+    private static final String API_CONNECT_NETWORK = "/networks/%s/connect";
 
-    private static final String CMD_EXISTS = "docker ps -a --format=\"{{.Names}}\" | grep -Fx %s";
-    private static final String CMD_IS_RUNNING = "docker ps --format=\"{{.Names}}\" | grep -Fx %s";
+    private static final Executor READINESS_EXECUTOR = runnable -> Thread.ofVirtual().name("vidar-readiness").start(runnable);
 
     SystemService systemService = SystemService.get();
+    final EngineClient engine;
+    private volatile ContainerStateIndex index;
 
     /**
-     * Default constructor.
+     * Default constructor. Commands are sent through the docker CLI.
      */
     public Container() {
+        this(null);
+    }
+
+    /**
+     * Constructor for sending commands through the Docker Engine API.
+     *
+     * @param engine The client of the docker daemon, or null to use the docker CLI.
+     */
+    public Container(EngineClient engine) {
+        this.engine = engine;
+    }
+
+    /**
+     * Starts an in-memory index of all container states, fed by the docker events stream.
+     * While the index is synced, {@link #exists(String)} and {@link #isRunning(String)} are answered from it.
+     *
+     * @return The index. Closing it stops the subscription.
+     */
+    public synchronized ContainerStateIndex watch() {
+        if (index == null) {
+            index = ContainerStateIndex.start(engine);
+        }
+        return index;
+    }
 
+    /**
+     * Takes a snapshot of all containers with a single listing.
+     * Checks over many containers should use it instead of one query per container.
+     *
+     * @return The snapshot.
+     * @throws java.io.UncheckedIOException When the listing failed.
+     */
+    public ContainerInventory inventory() {
+        return ContainerInventory.load(engine, systemService);
     }
 
     /**
@@ -42,10 +107,36 @@ public class Container {
      * @return true when the container exists.
      */
     public boolean exists(String containerName) {
-        String cmd = CMD_EXISTS.formatted(containerName);
-        String response = systemService.executeCommand(cmd).content();
-        log.debug(LOG_DEBUG_CHECK_CONTAINER_EXISTS, containerName, response, cmd);
-        return !response.equals("error") && !response.isEmpty();
+        ContainerStateIndex stateIndex = index;
+        if (stateIndex != null && stateIndex.isSynced()) {
+            return stateIndex.exists(containerName);
+        }
+        return queryExists(containerName);
+    }
+
+    /**
+     * Checks if a container exists in a snapshot.
+     *
+     * @param containerName The name of the container.
+     * @param inventory     The snapshot taken with {@link #inventory()}.
+     * @return true when the container exists.
+     */
+    public boolean exists(String containerName, ContainerInventory inventory) {
+        return inventory.exists(containerName);
+    }
+
+    /**
+     * Checks if a container exists by asking the daemon. Used after changes, which the index might not have seen yet.
+     */
+    private boolean queryExists(String containerName) {
+        if (engine != null) {
+            EngineResponse response = engine.get(API_INSPECT.formatted(containerName));
+            log.debug(LOG_DEBUG_CHECK_CONTAINER_EXISTS, containerName, response.status(), API_INSPECT.formatted(containerName));
+            return response.isSuccessful();
+        }
+        boolean found = listNames(CMD_EXISTS).contains(containerName);
+        log.debug(LOG_DEBUG_CHECK_CONTAINER_EXISTS, containerName, found, CMD_EXISTS);
+        return found;
     }
 
     /**
@@ -55,10 +146,44 @@ public class Container {
      * @return true when the container is running.
      */
     public boolean isRunning(String containerName) {
-        String cmd = CMD_IS_RUNNING.formatted(containerName);
-        String response = systemService.executeCommand(cmd).content();
-        log.debug(LOG_DEBUG_CHECK_CONTAINER_RUNNING, containerName, response, cmd);
-        return !response.equals("error") && !response.isEmpty();
+        ContainerStateIndex stateIndex = index;
+        if (stateIndex != null && stateIndex.isSynced()) {
+            return stateIndex.isRunning(containerName);
+        }
+        return queryIsRunning(containerName);
+    }
+
+    /**
+     * Checks if a container is running in a snapshot.
+     *
+     * @param containerName The name of the container.
+     * @param inventory     The snapshot taken with {@link #inventory()}.
+     * @return true when the container is running.
+     */
+    public boolean isRunning(String containerName, ContainerInventory inventory) {
+        return inventory.isRunning(containerName);
+    }
+
+    /**
+     * Checks if a container is running by asking the daemon. Used after changes, which the index might not have seen yet.
+     */
+    private boolean queryIsRunning(String containerName) {
+        if (engine != null) {
+            EngineResponse response = engine.get(API_INSPECT.formatted(containerName));
+            log.debug(LOG_DEBUG_CHECK_CONTAINER_RUNNING, containerName, response.status(), API_INSPECT.formatted(containerName));
+            return response.isSuccessful() && response.json().path("State").path("Running").asBoolean(false);
+        }
+        boolean found = listNames(CMD_IS_RUNNING).contains(containerName);
+        log.debug(LOG_DEBUG_CHECK_CONTAINER_RUNNING, containerName, found, CMD_IS_RUNNING);
+        return found;
+    }
+
+    /**
+     * Lists the names of containers. The names are filtered in Java, so no shell pipeline is needed.
+     */
+    private List<String> listNames(String command) {
+        var result = systemService.executeArgs(Command.format(command).argv());
+        return result.exitCode() == 0 ? result.content().lines().map(String::strip).toList() : List.of();
     }
 
     /**
@@ -69,13 +194,19 @@ public class Container {
      * @return true when the container is removed.
      */
     public boolean rm(String containerName) {
+        if (engine != null) {
+            // A forced delete stops a running container in the same request.
+            EngineResponse response = engine.delete(API_REMOVE.formatted(containerName));
+            log.debug(LOG_DEBUG_REMOVE_CONTAINER, containerName, API_REMOVE.formatted(containerName));
+            return response.isSuccessful() || response.isNotFound();
+        }
         if (isRunning(containerName)) {
             stop(containerName);
         }
-        String cmd = "docker rm %s".formatted(containerName);
+        Command cmd = Command.format(CMD_REMOVE, containerName);
         log.debug(LOG_DEBUG_REMOVE_CONTAINER, containerName, cmd);
-        systemService.executeCommand(cmd);
-        return !exists(containerName);
+        systemService.executeArgs(cmd.argv());
+        return !queryExists(containerName);
     }
 
 
@@ -97,37 +228,30 @@ public class Container {
                           List<String> env,
                           List<String> networks
     ) {
-        StringBuilder sb = new StringBuilder();
-        sb.append("docker create");
+        if (engine != null) {
+            return createWithEngine(imageName, containerName, volumes, ports, env, networks);
+        }
+        Command cmd = Command.of("docker", "create");
         for (String volume : volumes) {
-            sb.append(" --volume ");
-            sb.append(volume);
+            cmd.args("--volume", volume);
         }
 
         for (String port : ports) {
-            sb.append(" --publish ");
-            sb.append(port);
+            cmd.args("--publish", port);
         }
 
         for (String environment : env) {
-            sb.append(" --env ");
-            sb.append(environment);
+            cmd.args("--env", environment);
         }
 
         for (String network : networks) {
-            sb.append(" --network ");
-            sb.append(network);
+            cmd.args("--network", network);
         }
 
-        sb.append(" --name ");
-        sb.append(containerName);
-        sb.append(" ");
-        sb.append(imageName);
-
-        String cmd = sb.toString();
-        String containerId = systemService.executeCommand(cmd).content();
+        cmd.args("--name", containerName, imageName);
+        String containerId = systemService.executeArgs(cmd.argv()).content();
         log.debug(LOG_DEBUG_CREATE_CONTAINER, containerName, imageName, containerId, cmd);
-        return exists(containerName);
+        return queryExists(containerName);
 
     }
 
@@ -138,10 +262,104 @@ public class Container {
      * @return true when the container is running.
      */
     public boolean start(String containerName) {
-        String cmd = CMD_START.formatted(containerName);
+        if (engine != null) {
+            log.debug(LOG_DEBUG_START_CONTAINER, containerName, API_START.formatted(containerName));
+            engine.post(API_START.formatted(containerName), null);
+            return queryIsRunning(containerName);
+        }
+        Command cmd = Command.format(CMD_START, containerName);
         log.debug(LOG_DEBUG_START_CONTAINER, containerName, cmd);
-        systemService.executeCommand(cmd);
-        return isRunning(containerName);
+        systemService.executeArgs(cmd.argv());
+        return queryIsRunning(containerName);
+    }
+
+    /**
+     * Start a container without blocking and wait for it to become ready as described in
+     * {@link #awaitReady(String, ReadinessPolicy)}.
+     *
+     * @param containerName The name of the container.
+     * @param policy        How long and how often to check the container.
+     * @return A future completing with true when the container became ready before its deadline.
+     */
+    public CompletableFuture<Boolean> startAsync(String containerName, ReadinessPolicy policy) {
+        return CompletableFuture.runAsync(() -> {
+            if (engine != null) {
+                log.debug(LOG_DEBUG_START_CONTAINER, containerName, API_START.formatted(containerName));
+                engine.post(API_START.formatted(containerName), null);
+            } else {
+                Command cmd = Command.format(CMD_START, containerName);
+                log.debug(LOG_DEBUG_START_CONTAINER, containerName, cmd);
+                systemService.executeArgs(cmd.argv());
+            }
+        }, READINESS_EXECUTOR).thenCompose(ignored -> awaitReady(containerName, policy));
+    }
+
+    /**
+     * Waits for a container to become ready without blocking. A container is ready when it is healthy, or running when
+     * it has no healthcheck. It is inspected right away and then with the exponential backoff of the policy.
+     * While the {@link #watch() index} is synced, every docker event of the container triggers the next check
+     * right away, so state and health changes are noticed without waiting for the backoff.
+     * Cancelling the future stops the checks.
+     *
+     * @param containerName The name of the container.
+     * @param policy        How long and how often to check the container. The deadline is looked up by container name.
+     * @return A future completing with true when the container became ready, or false when it stopped, does not exist
+     * or did not become ready before its deadline.
+     */
+    public CompletableFuture<Boolean> awaitReady(String containerName, ReadinessPolicy policy) {
+        CompletableFuture<Boolean> future = new CompletableFuture<>();
+        ReadinessCheck check = new ReadinessCheck(containerName, policy, future);
+        ContainerStateIndex stateIndex = index;
+        if (stateIndex != null && stateIndex.isSynced()) {
+            stateIndex.addListener(check);
+            future.whenComplete((ready, throwable) -> stateIndex.removeListener(check));
+        }
+        READINESS_EXECUTOR.execute(() -> check.run(1));
+        return future;
+    }
+
+    /**
+     * Follows the logs of a container, starting with its last {@value LogFollower#DEFAULT_BUFFER_SIZE} lines.
+     * Lines are dropped for subscribers that fall behind.
+     *
+     * @param containerName The name of the container.
+     * @return The started follower. It has to be closed to stop following.
+     * @throws java.io.UncheckedIOException When the docker CLI could not be started.
+     */
+    public LogFollower logs(String containerName) {
+        return logs(containerName, LogFollower.DEFAULT_BUFFER_SIZE, LogFollower.OverflowPolicy.DROP);
+    }
+
+    /**
+     * Follows the logs of a container, starting with its last lines. The logs are always read through the docker CLI,
+     * which demultiplexes stdout and stderr of the container.
+     *
+     * @param containerName The name of the container.
+     * @param bufferSize    The number of lines kept for tailing, which is also the number of earlier lines that are read.
+     * @param policy        What happens when a subscriber falls behind.
+     * @return The started follower. It has to be closed to stop following.
+     * @throws java.io.UncheckedIOException When the docker CLI could not be started.
+     */
+    public LogFollower logs(String containerName, int bufferSize, LogFollower.OverflowPolicy policy) {
+        List<String> command = Command.format(CMD_LOGS, bufferSize, containerName).argv();
+        return LogFollower.start(containerName, command, bufferSize, policy);
+    }
+
+    /**
+     * Returns the state and the health of a container, e.g. `running healthy`, `running` without a healthcheck or
+     * an empty string when the container does not exist.
+     */
+    private String inspectState(String containerName) {
+        if (engine != null) {
+            EngineResponse response = engine.get(API_INSPECT.formatted(containerName));
+            if (!response.isSuccessful()) {
+                return "";
+            }
+            var state = response.json().path("State");
+            return (state.path("Status").asText("") + " " + state.path("Health").path("Status").asText("")).trim();
+        }
+        var result = systemService.executeArgs(Command.format(CMD_INSPECT).args(FORMAT_STATE, containerName).argv());
+        return result.exitCode() == 0 ? result.content().trim() : "";
     }
 
     /**
@@ -151,9 +369,144 @@ public class Container {
      * @return true if the container is stopped.
      */
     public boolean stop(String containerName) {
-        String cmd = CMD_STOP.formatted(containerName);
+        if (engine != null) {
+            log.debug(LOG_DEBUG_STOP_CONTAINER, containerName, API_STOP.formatted(containerName));
+            EngineResponse response = engine.post(API_STOP.formatted(containerName), null);
+            // 304 means the container was already stopped.
+            return response.isSuccessful() || response.status() == 304;
+        }
+        Command cmd = Command.format(CMD_STOP, containerName);
         log.debug(LOG_DEBUG_STOP_CONTAINER, containerName, cmd);
-        systemService.executeCommand(cmd);
-        return exists(containerName) && !isRunning(containerName);
+        systemService.executeArgs(cmd.argv());
+        return queryExists(containerName) && !queryIsRunning(containerName);
+    }
+
+    private boolean createWithEngine(String imageName,
+                                     String containerName,
+                                     List<String> volumes,
+                                     List<String> ports,
+                                     List<String> env,
+                                     List<String> networks
+    ) {
+        ObjectNode body = EngineClient.MAPPER.createObjectNode();
+        body.put("Image", imageName);
+        ArrayNode envNode = body.putArray("Env");
+        env.forEach(envNode::add);
+
+        ObjectNode hostConfig = body.putObject("HostConfig");
+        ArrayNode binds = hostConfig.putArray("Binds");
+        volumes.forEach(binds::add);
+
+        ObjectNode exposedPorts = body.putObject("ExposedPorts");
+        ObjectNode portBindings = hostConfig.putObject("PortBindings");
+        for (String port : ports) {
+            // [EXTERNAL_PORT]:[INTERNAL_PORT], optionally prefixed with a host ip and suffixed with a protocol
+            int separator = port.lastIndexOf(':');
+            String internal = port.substring(separator + 1);
+            String external = separator < 0 ? "" : port.substring(0, separator);
+            String hostIp = "";
+            int ipSeparator = external.lastIndexOf(':');
+            if (ipSeparator >= 0) {
+                hostIp = external.substring(0, ipSeparator);
+                external = external.substring(ipSeparator + 1);
+            }
+            String key = internal.contains("/") ? internal : internal + "/tcp";
+            exposedPorts.putObject(key);
+            ObjectNode binding = EngineClient.MAPPER.createObjectNode();
+            binding.put("HostIp", hostIp);
+            binding.put("HostPort", external);
+            ArrayNode bindings = portBindings.has(key) ? (ArrayNode) portBindings.get(key) : portBindings.putArray(key);
+            bindings.add(binding);
+        }
+
+        if (!networks.isEmpty()) {
+            hostConfig.put("NetworkMode", networks.getFirst());
+        }
+
+        EngineResponse response = engine.post(API_CREATE.formatted(containerName), body.toString());
+        if (isMissingImage(response)) {
+            // Unlike `docker create`, the daemon does not pull missing images.
+            // Pulling through the CLI uses the credentials of the docker config.
+            log.info(LOG_INFO_PULL_MISSING_IMAGE, imageName, containerName);
+            if (systemService.executeArgs(Command.format(CMD_PULL, imageName).argv()).exitCode() != 0) {
+                return false;
+            }
+            response = engine.post(API_CREATE.formatted(containerName), body.toString());
+        }
+        log.debug(LOG_DEBUG_CREATE_CONTAINER, containerName, imageName, response.json().path("Id").asText(""), API_CREATE.formatted(containerName));
+        if (!response.isSuccessful()) {
+            return false;
+        }
+
+        for (String network : networks.subList(Math.min(1, networks.size()), networks.size())) {
+            ObjectNode connect = EngineClient.MAPPER.createObjectNode();
+            connect.put("Container", containerName);
+            EngineResponse connectResponse = engine.post(API_CONNECT_NETWORK.formatted(network), connect.toString());
+            log.debug(LOG_DEBUG_CONNECT_NETWORK, containerName, network, connectResponse.status());
+        }
+        return true;
+    }
+
+    private static boolean isMissingImage(EngineResponse response) {
+        return response.isNotFound() && response.json().path("message").asText("").startsWith("No such image");
+    }
+
+    /**
+     * The readiness checks of one container. Docker events of the container cut the current backoff short.
+     */
+    private final class ReadinessCheck implements Consumer<String> {
+        private final String containerName;
+        private final ReadinessPolicy policy;
+        private final CompletableFuture<Boolean> future;
+        private final long start = System.nanoTime();
+        private volatile CompletableFuture<Void> wakeUp = new CompletableFuture<>();
+
+        private ReadinessCheck(String containerName, ReadinessPolicy policy, CompletableFuture<Boolean> future) {
+            this.containerName = containerName;
+            this.policy = policy;
+            this.future = future;
+        }
+
+        @Override
+        public void accept(String eventContainerName) {
+            if (eventContainerName.equals(containerName)) {
+                wakeUp.complete(null);
+            }
+        }
+
+        private void run(int attempt) {
+            if (future.isDone()) {
+                return;
+            }
+            // Armed before inspecting, so an event arriving during the inspection triggers another check
+            CompletableFuture<Void> sleep = new CompletableFuture<>();
+            wakeUp = sleep;
+            try {
+                String state = inspectState(containerName);
+                if (state.equals("running") || state.equals("running healthy")) {
+                    future.complete(true);
+                    return;
+                }
+                if (state.isEmpty() || state.startsWith("exited") || state.startsWith("dead")) {
+                    future.complete(false);
+                    return;
+                }
+                Duration untilDeadline = policy.deadline(containerName).minusNanos(System.nanoTime() - start);
+                if (untilDeadline.isNegative() || untilDeadline.isZero()) {
+                    log.warn(LOG_WARN_READINESS_DEADLINE, containerName, policy.deadline(containerName));
+                    future.complete(false);
+                    return;
+                }
+                Duration delay = policy.delay(attempt);
+                if (untilDeadline.compareTo(delay) < 0) {
+                    delay = untilDeadline;
+                }
+                log.debug(LOG_DEBUG_NOT_READY, containerName, state, attempt, delay);
+                sleep.completeOnTimeout(null, delay.toNanos(), TimeUnit.NANOSECONDS)
+                        .thenRunAsync(() -> run(attempt + 1), READINESS_EXECUTOR);
+            } catch (RuntimeException e) {
+                future.completeExceptionally(e);
+            }
+        }
     }
 }
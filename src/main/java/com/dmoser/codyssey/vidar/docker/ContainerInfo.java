@@ -0,0 +1,44 @@
+package com.dmoser.codyssey.vidar.docker;
+
+import java.util.Map;
+
+/**
+ * A record containing the information of a container at the time of a listing.
+ *
+ * @param name    The name of the container.
+ * @param id      The id of the container.
+ * @param image   The image the container was created from.
+ * @param state   The state of the container, e.g. running, exited, created, paused.
+ * @param labels  The labels of the container.
+ * @param project The compose project of the container. Empty when it was not created by compose.
+ * @param service The compose service of the container. Empty when it was not created by compose.
+ */
+public record ContainerInfo(String name, String id, String image, String state, Map<String, String> labels,
+                            String project, String service) {
+
+    static final String LABEL_PROJECT = "com.docker.compose.project";
+    static final String LABEL_SERVICE = "com.docker.compose.service";
+
+    /**
+     * Create the information of a container. The compose project and service are taken from the labels.
+     *
+     * @param name   The name of the container.
+     * @param id     The id of the container.
+     * @param image  The image the container was created from.
+     * @param state  The state of the container.
+     * @param labels The labels of the container.
+     */
+    public ContainerInfo(String name, String id, String image, String state, Map<String, String> labels) {
+        this(name, id, image, state, Map.copyOf(labels),
+                labels.getOrDefault(LABEL_PROJECT, ""), labels.getOrDefault(LABEL_SERVICE, ""));
+    }
+
+    /**
+     * Checks if the container is running.
+     *
+     * @return true when the state is running.
+     */
+    public boolean isRunning() {
+        return state.equals("running");
+    }
+}
@@ -0,0 +1,177 @@
+package com.dmoser.codyssey.vidar.docker;
+
+import com.dmoser.codyssey.vidar.service.CommandResult;
+import com.dmoser.codyssey.vidar.service.Command;
+import com.dmoser.codyssey.vidar.service.SystemService;
+import com.fasterxml.jackson.databind.JsonNode;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * An immutable snapshot of all containers on the host, taken with a single listing.
+ */
+public class ContainerInventory {
+
+    private static final Logger log = LogManager.getLogger(ContainerInventory.class);
+    private static final String LOG_DEBUG_UNPARSABLE_LINE = "Ignoring unparsable container listing line {}";
+
+    private static final String API_LIST = "/containers/json?all=true";
+    private static final String CMD_LIST = "docker ps -a --no-trunc --format json";
+
+    private final Map<String, ContainerInfo> containers;
+
+    /**
+     * Create a snapshot.
+     *
+     * @param containers The containers of the snapshot.
+     */
+    public ContainerInventory(Collection<ContainerInfo> containers) {
+        this.containers = containers.stream()
+                .collect(Collectors.toUnmodifiableMap(ContainerInfo::name, Function.identity(), (first, second) -> first));
+    }
+
+    /**
+     * Lists all containers with a single request or command.
+     *
+     * @param engine        The client of the docker daemon, or null to use the docker CLI.
+     * @param systemService The SystemService used for the docker CLI.
+     * @return The snapshot.
+     * @throws UncheckedIOException When the listing failed.
+     */
+    static ContainerInventory load(EngineClient engine, SystemService systemService) {
+        if (engine != null) {
+            EngineResponse response = engine.get(API_LIST);
+            if (!response.isSuccessful()) {
+                throw new UncheckedIOException(new IOException("Listing containers failed with status " + response.status()));
+            }
+            List<ContainerInfo> list = new ArrayList<>();
+            for (JsonNode container : response.json()) {
+                Map<String, String> labels = new LinkedHashMap<>();
+                container.path("Labels").properties().forEach(e -> labels.put(e.getKey(), e.getValue().asText("")));
+                list.add(new ContainerInfo(
+                        container.path("Names").path(0).asText("").replaceFirst("^/", ""),
+                        container.path("Id").asText(""),
+                        container.path("Image").asText(""),
+                        container.path("State").asText(""),
+                        labels));
+            }
+            return new ContainerInventory(list);
+        }
+
+        CommandResult result = systemService.executeArgs(Command.format(CMD_LIST).argv());
+        if (result.exitCode() != 0) {
+            throw new UncheckedIOException(new IOException("Listing containers failed: " + result.content()));
+        }
+        List<ContainerInfo> list = new ArrayList<>();
+        for (String line : result.content().split("\n")) {
+            if (line.isBlank()) {
+                continue;
+            }
+            try {
+                JsonNode container = EngineClient.MAPPER.readTree(line);
+                list.add(new ContainerInfo(
+                        container.path("Names").asText("").split(",")[0],
+                        container.path("ID").asText(""),
+                        container.path("Image").asText(""),
+                        container.path("State").asText(""),
+                        parseLabels(container.path("Labels").asText(""))));
+            } catch (IOException e) {
+                log.debug(LOG_DEBUG_UNPARSABLE_LINE, line);
+            }
+        }
+        return new ContainerInventory(list);
+    }
+
+    /**
+     * Parses the labels of the CLI listing in the form of `key=value,key=value`.
+     * Values containing commas are joined back together.
+     */
+    static Map<String, String> parseLabels(String labels) {
+        Map<String, String> labelMap = new LinkedHashMap<>();
+        String lastKey = null;
+        for (String part : labels.split(",")) {
+            int separator = part.indexOf('=');
+            if (separator < 0) {
+                if (lastKey != null) {
+                    labelMap.put(lastKey, labelMap.get(lastKey) + "," + part);
+                }
+                continue;
+            }
+            lastKey = part.substring(0, separator);
+            labelMap.put(lastKey, part.substring(separator + 1));
+        }
+        return labelMap;
+    }
+
+    /**
+     * Returns the information of a container.
+     *
+     * @param containerName The name of the container.
+     * @return The information. Empty when the container does not exist.
+     */
+    public Optional<ContainerInfo> get(String containerName) {
+        return Optional.ofNullable(containers.get(containerName));
+    }
+
+    /**
+     * Checks if a container exists.
+     *
+     * @param containerName The name of the container.
+     * @return true when the container exists.
+     */
+    public boolean exists(String containerName) {
+        return containers.containsKey(containerName);
+    }
+
+    /**
+     * Checks if a container is running.
+     *
+     * @param containerName The name of the container.
+     * @return true when the container is running.
+     */
+    public boolean isRunning(String containerName) {
+        return get(containerName).filter(ContainerInfo::isRunning).isPresent();
+    }
+
+    /**
+     * Returns the containers of a compose service.
+     *
+     * @param project The name of the compose project.
+     * @param service The name of the service.
+     * @return The containers of the service.
+     */
+    public List<ContainerInfo> service(String project, String service) {
+        return containers.values().stream()
+                .filter(container -> container.project().equals(project) && container.service().equals(service))
+                .toList();
+    }
+
+    /**
+     * Returns all containers.
+     *
+     * @return The containers keyed by name.
+     */
+    public Map<String, ContainerInfo> all() {
+        return containers;
+    }
+
+    /**
+     * Returns the number of containers.
+     *
+     * @return The number of containers.
+     */
+    public int size() {
+        return containers.size();
+    }
+}
@@ -0,0 +1,296 @@
+package com.dmoser.codyssey.vidar.docker;
+
+import com.dmoser.codyssey.vidar.service.SystemService;
+import com.fasterxml.jackson.databind.JsonNode;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+
+/**
+ * In-memory index of the state of all containers on the host.
+ * The index is seeded by one container listing and then kept up to date by the docker events stream.
+ * When the stream drops, the index is marked as not synced, reseeded and resubscribed.
+ * Listeners are told the name of the container of every event, including health status changes.
+ */
+public class ContainerStateIndex implements AutoCloseable {
+
+    private static final Logger log = LogManager.getLogger(ContainerStateIndex.class);
+    private static final String LOG_INFO_SYNCED = "Container state index synced with {} containers";
+    private static final String LOG_WARN_STREAM_DROPPED = "Docker events stream dropped, resyncing in {}: {}";
+    private static final String LOG_DEBUG_UNPARSABLE_EVENT = "Ignoring unparsable docker event {}";
+
+    private static final String API_EVENTS = "/events?since=%d&filters=%s";
+    private static final String EVENTS_FILTER = "{\"type\":[\"container\"]}";
+    private static final String[] CMD_EVENTS = {"docker", "events", "--filter", "type=container", "--format", "{{json .}}", "--since"};
+
+    private static final Duration MAX_RETRY_DELAY = Duration.ofSeconds(30);
+
+    private final EngineClient engine;
+    private final SystemService systemService;
+    private final Duration retryDelay;
+    private final Map<String, Entry> containers = new ConcurrentHashMap<>();
+    private final Map<String, String> services = new ConcurrentHashMap<>();
+    private final List<Consumer<String>> listeners = new CopyOnWriteArrayList<>();
+    private volatile boolean synced;
+    private volatile boolean closed;
+    private volatile Process eventsProcess;
+    private Thread worker;
+
+    /**
+     * Create an index.
+     *
+     * @param engine        The client of the docker daemon, or null to use the docker CLI.
+     * @param systemService The SystemService used for the docker CLI.
+     * @param retryDelay    The first delay before resyncing after the stream dropped. Doubles up to 30 seconds.
+     */
+    ContainerStateIndex(EngineClient engine, SystemService systemService, Duration retryDelay) {
+        this.engine = engine;
+        this.systemService = systemService;
+        this.retryDelay = retryDelay;
+    }
+
+    /**
+     * Create and start an index.
+     *
+     * @param engine The client of the docker daemon, or null to use the docker CLI.
+     * @return The started index. It might not be synced yet.
+     */
+    public static ContainerStateIndex start(EngineClient engine) {
+        ContainerStateIndex index = new ContainerStateIndex(engine, SystemService.get(), Duration.ofSeconds(1));
+        index.start();
+        return index;
+    }
+
+    synchronized void start() {
+        if (worker == null) {
+            worker = Thread.ofVirtual().name("vidar-container-events").start(this::run);
+        }
+    }
+
+    /**
+     * Checks if the index reflects the current state of the host.
+     *
+     * @return true when the index was seeded and the events stream is connected.
+     */
+    public boolean isSynced() {
+        return synced;
+    }
+
+    /**
+     * Returns the state of a container.
+     *
+     * @param containerName The name of the container.
+     * @return The state, e.g. running, exited, created, paused. Empty when the container does not exist.
+     */
+    public Optional<String> state(String containerName) {
+        return Optional.ofNullable(containers.get(containerName)).map(Entry::state);
+    }
+
+    /**
+     * Returns the state of the container of a compose service.
+     *
+     * @param project The name of the compose project.
+     * @param service The name of the service.
+     * @return The state. Empty when the service has no container.
+     */
+    public Optional<String> state(String project, String service) {
+        return Optional.ofNullable(services.get(project + "/" + service)).flatMap(this::state);
+    }
+
+    /**
+     * Checks if a container exists.
+     *
+     * @param containerName The name of the container.
+     * @return true when the container exists.
+     */
+    public boolean exists(String containerName) {
+        return containers.containsKey(containerName);
+    }
+
+    /**
+     * Checks if a container is running.
+     *
+     * @param containerName The name of the container.
+     * @return true when the container is running.
+     */
+    public boolean isRunning(String containerName) {
+        return state(containerName).filter("running"::equals).isPresent();
+    }
+
+    /**
+     * Returns a copy of the current states.
+     *
+     * @return The states keyed by container name.
+     */
+    public Map<String, String> snapshot() {
+        return containers.entrySet().stream().collect(Collectors.toUnmodifiableMap(Map.Entry::getKey, e -> e.getValue().state()));
+    }
+
+    /**
+     * Adds a listener that is called with the container name of every event after it was applied.
+     * Listeners are called on the thread reading the events stream and must not block.
+     *
+     * @param listener The listener.
+     */
+    public void addListener(Consumer<String> listener) {
+        listeners.add(listener);
+    }
+
+    /**
+     * Removes a listener added with {@link #addListener(Consumer)}.
+     *
+     * @param listener The listener.
+     */
+    public void removeListener(Consumer<String> listener) {
+        listeners.remove(listener);
+    }
+
+    /**
+     * Stops the subscription.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        synced = false;
+        Process process = eventsProcess;
+        if (process != null) {
+            process.destroyForcibly();
+        }
+        Thread thread = worker;
+        if (thread != null) {
+            thread.interrupt();
+        }
+    }
+
+    private void run() {
+        Duration delay = retryDelay;
+        while (!closed) {
+            try {
+                // Events since shortly before the listing are replayed, so nothing between listing and subscribing is lost.
+                long since = Instant.now().getEpochSecond() - 1;
+                seed();
+                synced = true;
+                log.info(LOG_INFO_SYNCED, containers.size());
+                delay = retryDelay;
+                subscribe(since, this::apply);
+                throw new IOException("Stream ended");
+            } catch (Exception e) {
+                synced = false;
+                if (closed) {
+                    return;
+                }
+                log.warn(LOG_WARN_STREAM_DROPPED, delay, e.getMessage());
+                try {
+                    Thread.sleep(delay);
+                } catch (InterruptedException interrupted) {
+                    return;
+                }
+                delay = delay.multipliedBy(2).compareTo(MAX_RETRY_DELAY) > 0 ? MAX_RETRY_DELAY : delay.multipliedBy(2);
+            }
+        }
+    }
+
+    private void seed() {
+        ContainerInventory inventory = ContainerInventory.load(engine, systemService);
+        containers.clear();
+        services.clear();
+        inventory.all().values().forEach(container ->
+                put(container.name(), new Entry(container.state(), container.project(), container.service())));
+    }
+
+    private void subscribe(long since, Consumer<String> lineConsumer) throws IOException, InterruptedException {
+        if (engine != null) {
+            engine.stream(API_EVENTS.formatted(since, URLEncoder.encode(EVENTS_FILTER, StandardCharsets.UTF_8)), lineConsumer);
+            return;
+        }
+        String[] command = new String[CMD_EVENTS.length + 1];
+        System.arraycopy(CMD_EVENTS, 0, command, 0, CMD_EVENTS.length);
+        command[CMD_EVENTS.length] = String.valueOf(since);
+        Process process = new ProcessBuilder(command).redirectError(ProcessBuilder.Redirect.DISCARD).start();
+        eventsProcess = process;
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream(), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                lineConsumer.accept(line);
+            }
+        } finally {
+            process.destroyForcibly();
+            eventsProcess = null;
+        }
+    }
+
+    /**
+     * Applies a container event in the json format of the Engine API.
+     *
+     * @param line The event.
+     */
+    void apply(String line) {
+        JsonNode event;
+        try {
+            event = EngineClient.MAPPER.readTree(line);
+        } catch (IOException e) {
+            log.debug(LOG_DEBUG_UNPARSABLE_EVENT, line);
+            return;
+        }
+        JsonNode attributes = event.path("Actor").path("Attributes");
+        String name = attributes.path("name").asText("");
+        if (name.isEmpty()) {
+            return;
+        }
+        // Actions like "health_status: healthy" carry a suffix.
+        String action = event.path("Action").asText(event.path("status").asText("")).split(":")[0].trim();
+        Entry current = containers.get(name);
+        Entry labelled = new Entry(current == null ? "" : current.state(),
+                attributes.path(ContainerInfo.LABEL_PROJECT).asText(""), attributes.path(ContainerInfo.LABEL_SERVICE).asText(""));
+        switch (action) {
+            case "create" -> put(name, labelled.withState("created"));
+            case "start", "restart", "unpause" -> put(name, labelled.withState("running"));
+            case "pause" -> put(name, labelled.withState("paused"));
+            case "die", "stop" -> put(name, labelled.withState("exited"));
+            case "destroy" -> remove(name);
+            case "rename" -> {
+                String oldName = attributes.path("oldName").asText("").replaceFirst("^/", "");
+                Entry renamed = remove(oldName);
+                put(name, renamed == null ? labelled : renamed);
+            }
+            default -> {
+            }
+        }
+        listeners.forEach(listener -> listener.accept(name));
+    }
+
+    private void put(String name, Entry entry) {
+        containers.put(name, entry);
+        if (!entry.project().isEmpty() && !entry.service().isEmpty()) {
+            services.put(entry.project() + "/" + entry.service(), name);
+        }
+    }
+
+    private Entry remove(String name) {
+        Entry entry = containers.remove(name);
+        if (entry != null) {
+            services.remove(entry.project() + "/" + entry.service(), name);
+        }
+        return entry;
+    }
+
+    private record Entry(String state, String project, String service) {
+        Entry withState(String newState) {
+            return new Entry(newState, project, service);
+        }
+    }
+}
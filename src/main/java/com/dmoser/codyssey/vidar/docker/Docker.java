@@ -1,46 +1,85 @@
 package com.dmoser.codyssey.vidar.docker;
 
 import com.dmoser.codyssey.vidar.service.EnvironmentService;
+import com.dmoser.codyssey.vidar.service.Command;
 import com.dmoser.codyssey.vidar.service.SystemService;
 
 /**
  * Api for sending docker commands.
+ * When the docker daemon socket is reachable, commands are sent through the Docker Engine API.
+ * Otherwise, the docker CLI is used.
  *
  * @param volume    All command which are located under docker volume
  * @param image     All command which are located under docker image
  * @param container All command which are located under docker container
  * @param network   All command which are located under docker network
+ * @param engine    The client of the docker daemon, or null when the docker CLI is used.
  */
-public record Docker(Volume volume, Image image, Container container, Network network) {
+public record Docker(Volume volume, Image image, Container container, Network network, EngineClient engine) {
+
+    private static final String CMD_VERSION = "docker version --format {{.Server.Version}}";
+    private static final String API_VERSION = "/version";
 
     /**
      * The docker api in stance.
      */
     private static Docker instance;
 
+    /**
+     * Create a docker api that sends all commands through the docker CLI.
+     *
+     * @param volume    All command which are located under docker volume
+     * @param image     All command which are located under docker image
+     * @param container All command which are located under docker container
+     * @param network   All command which are located under docker network
+     */
+    public Docker(Volume volume, Image image, Container container, Network network) {
+        this(volume, image, container, network, null);
+    }
+
     /**
      * Get the docker api record.
      *
      * @return This instance.
      */
-    public static Docker api() {
+    public static synchronized Docker api() {
 
         if (instance == null) {
-            if (EnvironmentService.get().isDockerInstalled()) {
+            EngineClient engine = EngineClient.local()
+                    .filter(EngineClient::ping)
+                    .orElse(null);
+            if (engine != null) {
+                instance = create(engine);
+                return instance;
+            }
+            if (!EnvironmentService.get().isDockerInstalled()) {
                 throw new IllegalStateException("Docker needs to be installed for the pluginManager to work!");
             }
-            instance = new Docker(new Volume(), new Image(), new Container(), new Network());
+            instance = create(null);
         }
         return instance;
     }
 
+    /**
+     * Create a docker api that sends all commands to a given daemon.
+     *
+     * @param engine The client of the docker daemon, or null to use the docker CLI.
+     * @return The docker api.
+     */
+    public static Docker create(EngineClient engine) {
+        return new Docker(new Volume(engine), new Image(engine), new Container(engine), new Network(engine), engine);
+    }
+
     /**
      * Return the version of the docker server.
      *
      * @return The version of the docker server.
      */
     public String getVersion() {
-        return SystemService.get().executeCommand("docker version --format '{{.Server.Version}}'").content().trim();
+        if (engine != null) {
+            return engine.get(API_VERSION).json().path("Version").asText("");
+        }
+        return SystemService.get().executeArgs(Command.format(CMD_VERSION).argv()).content().trim();
     }
 
 
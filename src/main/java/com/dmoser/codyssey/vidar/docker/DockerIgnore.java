@@ -0,0 +1,128 @@
+package com.dmoser.codyssey.vidar.docker;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Pattern;
+
+/**
+ * The exclusion rules of a `.dockerignore` file.
+ * Patterns use the syntax of docker: `*` and `?` match within a path segment, `**` matches any number of segments and
+ * a leading `!` re-includes paths. The last matching pattern decides. A pattern also matches everything below the
+ * directories it matches.
+ */
+final class DockerIgnore {
+
+    static final String FILE_NAME = ".dockerignore";
+
+    private final List<Rule> rules;
+
+    private DockerIgnore(List<Rule> rules) {
+        this.rules = rules;
+    }
+
+    /**
+     * Reads the `.dockerignore` file of a build context.
+     *
+     * @param context The build context.
+     * @return The rules. Nothing is excluded when there is no `.dockerignore` file.
+     * @throws IOException When the file could not be read.
+     */
+    static DockerIgnore of(Path context) throws IOException {
+        Path file = context.resolve(FILE_NAME);
+        return Files.isRegularFile(file) ? parse(Files.readAllLines(file)) : new DockerIgnore(List.of());
+    }
+
+    static DockerIgnore parse(List<String> lines) {
+        List<Rule> rules = new ArrayList<>();
+        for (String line : lines) {
+            String pattern = line.strip();
+            if (pattern.isEmpty() || pattern.startsWith("#")) {
+                continue;
+            }
+            boolean include = pattern.startsWith("!");
+            if (include) {
+                pattern = pattern.substring(1).strip();
+            }
+            pattern = clean(pattern);
+            if (!pattern.isEmpty()) {
+                rules.add(new Rule(toRegex(pattern), include));
+            }
+        }
+        return new DockerIgnore(List.copyOf(rules));
+    }
+
+    /**
+     * Checks if a path is excluded from the build context.
+     *
+     * @param relativePath The path relative to the context, separated by `/`.
+     * @return true when the path is excluded.
+     */
+    boolean isExcluded(String relativePath) {
+        boolean excluded = false;
+        for (Rule rule : rules) {
+            if (rule.matches(relativePath)) {
+                excluded = !rule.include();
+            }
+        }
+        return excluded;
+    }
+
+    /**
+     * Checks if a directory can be skipped as a whole, because it is excluded and no pattern re-includes anything.
+     */
+    boolean canSkipDirectory(String relativePath) {
+        return isExcluded(relativePath) && rules.stream().noneMatch(Rule::include);
+    }
+
+    private static String clean(String pattern) {
+        String cleaned = pattern.replace('\\', '/');
+        while (cleaned.startsWith("/") || cleaned.startsWith("./")) {
+            cleaned = cleaned.substring(cleaned.startsWith("/") ? 1 : 2);
+        }
+        while (cleaned.endsWith("/")) {
+            cleaned = cleaned.substring(0, cleaned.length() - 1);
+        }
+        return cleaned;
+    }
+
+    private static Pattern toRegex(String pattern) {
+        StringBuilder regex = new StringBuilder();
+        for (int i = 0; i < pattern.length(); i++) {
+            char c = pattern.charAt(i);
+            if (pattern.startsWith("**/", i)) {
+                regex.append("(.*/)?");
+                i += 2;
+            } else if (pattern.startsWith("**", i)) {
+                regex.append(".*");
+                i++;
+            } else if (c == '*') {
+                regex.append("[^/]*");
+            } else if (c == '?') {
+                regex.append("[^/]");
+            } else if (c == '[') {
+                int end = pattern.indexOf(']', i + 1);
+                if (end < 0) {
+                    regex.append("\\[");
+                } else {
+                    String characterClass = pattern.substring(i + 1, end).replace("\\", "\\\\");
+                    regex.append('[').append(characterClass.startsWith("^") || characterClass.startsWith("!")
+                            ? "^" + characterClass.substring(1) : characterClass).append(']');
+                    i = end;
+                }
+            } else {
+                regex.append(Pattern.quote(String.valueOf(c)));
+            }
+        }
+        // Matching a directory matches everything inside
+        return Pattern.compile(regex + "(/.*)?");
+    }
+
+    private record Rule(Pattern pattern, boolean include) {
+        boolean matches(String relativePath) {
+            return pattern.matcher(relativePath).matches();
+        }
+    }
+}
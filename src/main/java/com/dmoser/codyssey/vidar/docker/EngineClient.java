@@ -0,0 +1,461 @@
+package com.dmoser.codyssey.vidar.docker;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Locale;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Minimal HTTP/1.1 client for the Docker Engine API that talks directly to the daemon socket.
+ * Connections are kept alive and reused between requests. Every request has a deadline, so a hung daemon does not
+ * block its callers forever.
+ */
+public class EngineClient implements AutoCloseable {
+
+    static final ObjectMapper MAPPER = new ObjectMapper();
+
+    private static final Logger log = LogManager.getLogger(EngineClient.class);
+    private static final String LOG_DEBUG_REQUEST = "Engine request {} {} returned status {}";
+    private static final String LOG_DEBUG_STALE_CONNECTION = "Pooled connection to {} is stale, retrying on a new connection";
+    private static final String LOG_WARN_REQUEST_FAILED = "Engine request {} {} failed: {}";
+
+    /**
+     * System property for the deadline of a request in seconds. Defaults to 60. Streaming requests have no deadline.
+     */
+    public static final String TIMEOUT_PROPERTY = "vidar.engine.timeout";
+    private static final long DEFAULT_TIMEOUT_SECONDS = 60;
+
+    private static final String DEFAULT_SOCKET = "/var/run/docker.sock";
+    private static final String DOCKER_HOST_ENV = "DOCKER_HOST";
+    private static final String UNIX_SCHEME = "unix://";
+    private static final String PING_PATH = "/_ping";
+    private static final int MAX_IDLE_CONNECTIONS = 8;
+
+    /**
+     * Methods that can be sent again when a pooled connection broke before the daemon answered.
+     */
+    private static final Set<String> IDEMPOTENT_METHODS = Set.of("GET", "HEAD", "DELETE");
+
+    private static final ScheduledExecutorService DEADLINES = createDeadlineScheduler();
+
+    private final Path socketPath;
+    private final Duration timeout;
+    private final ConcurrentLinkedDeque<Connection> idle = new ConcurrentLinkedDeque<>();
+
+    /**
+     * Create a client for a given daemon socket with the deadline from the {@value TIMEOUT_PROPERTY} system property.
+     *
+     * @param socketPath The path to the unix socket of the docker daemon.
+     */
+    public EngineClient(Path socketPath) {
+        this(socketPath, Duration.ofSeconds(Long.getLong(TIMEOUT_PROPERTY, DEFAULT_TIMEOUT_SECONDS)));
+    }
+
+    /**
+     * Create a client for a given daemon socket.
+     *
+     * @param socketPath The path to the unix socket of the docker daemon.
+     * @param timeout    The deadline of every request, from sending it until the response was read.
+     */
+    public EngineClient(Path socketPath, Duration timeout) {
+        this.socketPath = socketPath;
+        this.timeout = timeout;
+    }
+
+    private static ScheduledExecutorService createDeadlineScheduler() {
+        ScheduledThreadPoolExecutor scheduler = new ScheduledThreadPoolExecutor(1,
+                Thread.ofPlatform().name("vidar-engine-deadline").daemon().factory());
+        scheduler.setRemoveOnCancelPolicy(true);
+        return Executors.unconfigurableScheduledExecutorService(scheduler);
+    }
+
+    /**
+     * Returns a client for the local docker daemon, if its socket exists.
+     * The socket is taken from `DOCKER_HOST` when it points to a unix socket, otherwise `/var/run/docker.sock` is used.
+     *
+     * @return The client, or an empty optional when no socket could be found.
+     */
+    public static Optional<EngineClient> local() {
+        String dockerHost = System.getenv(DOCKER_HOST_ENV);
+        Path socket;
+        if (dockerHost == null || dockerHost.isBlank()) {
+            socket = Path.of(DEFAULT_SOCKET);
+        } else if (dockerHost.startsWith(UNIX_SCHEME)) {
+            socket = Path.of(dockerHost.substring(UNIX_SCHEME.length()));
+        } else {
+            return Optional.empty();
+        }
+        if (!Files.exists(socket)) {
+            return Optional.empty();
+        }
+        return Optional.of(new EngineClient(socket));
+    }
+
+    /**
+     * Checks if the daemon answers on the socket.
+     *
+     * @return true when the daemon responded to a ping.
+     */
+    public boolean ping() {
+        return get(PING_PATH).isSuccessful();
+    }
+
+    /**
+     * Sends a GET request.
+     *
+     * @param path The request path including the query string.
+     * @return The response.
+     */
+    public EngineResponse get(String path) {
+        return request("GET", path, null);
+    }
+
+    /**
+     * Sends a POST request.
+     *
+     * @param path The request path including the query string.
+     * @param body The JSON body, or null when the request has no body.
+     * @return The response.
+     */
+    public EngineResponse post(String path, String body) {
+        return request("POST", path, body);
+    }
+
+    /**
+     * Sends a DELETE request.
+     *
+     * @param path The request path including the query string.
+     * @return The response.
+     */
+    public EngineResponse delete(String path) {
+        return request("DELETE", path, null);
+    }
+
+    /**
+     * Sends a request to the daemon. A stale pooled connection is retried once on a fresh connection, unless the daemon
+     * might have received the request already: only requests that could not be sent and idempotent requests without
+     * any response bytes are retried. A request that passes the deadline is not retried.
+     *
+     * @param method The HTTP method.
+     * @param path   The request path including the query string.
+     * @param body   The JSON body, or null when the request has no body.
+     * @return The response. The status is 0 when the daemon could not be reached.
+     */
+    public EngineResponse request(String method, String path, String body) {
+        Connection pooled = idle.pollFirst();
+        if (pooled != null) {
+            try {
+                return exchange(pooled, method, path, body);
+            } catch (IOException e) {
+                pooled.close();
+                if (!pooled.isRetryable(method)) {
+                    log.warn(LOG_WARN_REQUEST_FAILED, method, path, e.getMessage());
+                    return new EngineResponse(0, "");
+                }
+                log.debug(LOG_DEBUG_STALE_CONNECTION, socketPath);
+            }
+        }
+        try {
+            return exchange(new Connection(socketPath), method, path, body);
+        } catch (IOException e) {
+            log.warn(LOG_WARN_REQUEST_FAILED, method, path, e.getMessage());
+            return new EngineResponse(0, "");
+        }
+    }
+
+    private EngineResponse exchange(Connection connection, String method, String path, String body) throws IOException {
+        boolean keepAlive = false;
+        // Closing the channel makes the blocked write or read fail
+        ScheduledFuture<?> deadline = DEADLINES.schedule(connection::expire, timeout.toNanos(), TimeUnit.NANOSECONDS);
+        try {
+            connection.write(method, path, body);
+            Response response = connection.read(method);
+            keepAlive = response.keepAlive();
+            log.debug(LOG_DEBUG_REQUEST, method, path, response.status());
+            return new EngineResponse(response.status(), response.body());
+        } catch (IOException e) {
+            if (connection.isExpired()) {
+                throw new IOException("Daemon did not respond within " + timeout, e);
+            }
+            throw e;
+        } finally {
+            deadline.cancel(false);
+            if (keepAlive && !connection.isExpired() && idle.size() < MAX_IDLE_CONNECTIONS) {
+                idle.offerFirst(connection);
+            } else {
+                connection.close();
+            }
+        }
+    }
+
+    /**
+     * Sends a GET request for a streaming endpoint like `/events` and passes every line of the body to a consumer.
+     * The request uses its own connection and blocks until the daemon ends the stream.
+     * Interrupting the calling thread closes the connection.
+     *
+     * @param path         The request path including the query string.
+     * @param lineConsumer The consumer of the lines.
+     * @throws IOException When the daemon could not be reached, the request failed or the stream broke.
+     */
+    public void stream(String path, Consumer<String> lineConsumer) throws IOException {
+        Connection connection = new Connection(socketPath);
+        try {
+            connection.write("GET", path, null);
+            connection.stream(lineConsumer);
+        } finally {
+            connection.close();
+        }
+    }
+
+    /**
+     * Closes all idle connections.
+     */
+    @Override
+    public void close() {
+        Connection connection;
+        while ((connection = idle.pollFirst()) != null) {
+            connection.close();
+        }
+    }
+
+    private record Response(int status, String body, boolean keepAlive) {
+    }
+
+    private record Head(int status, long contentLength, boolean chunked, boolean keepAlive) {
+    }
+
+    /**
+     * A single keep-alive connection to the daemon socket.
+     */
+    private static final class Connection {
+
+        private final SocketChannel channel;
+        private final InputStream in;
+        private final OutputStream out;
+        private volatile boolean sent;
+        private volatile boolean answered;
+        private volatile boolean expired;
+
+        Connection(Path socketPath) throws IOException {
+            channel = SocketChannel.open(StandardProtocolFamily.UNIX);
+            try {
+                channel.connect(UnixDomainSocketAddress.of(socketPath));
+            } catch (IOException e) {
+                channel.close();
+                throw e;
+            }
+            in = new BufferedInputStream(Channels.newInputStream(channel));
+            out = Channels.newOutputStream(channel);
+        }
+
+        /**
+         * Checks if the last request can be sent again after it failed. The daemon never saw a request that could not
+         * be sent, and an idempotent request can be repeated as long as no response arrived.
+         */
+        boolean isRetryable(String method) {
+            if (expired || answered) {
+                return false;
+            }
+            return !sent || IDEMPOTENT_METHODS.contains(method);
+        }
+
+        boolean isExpired() {
+            return expired;
+        }
+
+        /**
+         * Closes the connection because the request passed its deadline.
+         */
+        void expire() {
+            expired = true;
+            close();
+        }
+
+        void write(String method, String path, String body) throws IOException {
+            sent = false;
+            answered = false;
+            byte[] payload = body == null ? new byte[0] : body.getBytes(StandardCharsets.UTF_8);
+            StringBuilder sb = new StringBuilder();
+            sb.append(method).append(' ').append(path).append(" HTTP/1.1\r\n");
+            sb.append("Host: docker\r\n");
+            if (body != null) {
+                sb.append("Content-Type: application/json\r\n");
+            }
+            sb.append("Content-Length: ").append(payload.length).append("\r\n");
+            sb.append("\r\n");
+            out.write(sb.toString().getBytes(StandardCharsets.US_ASCII));
+            out.write(payload);
+            out.flush();
+            sent = true;
+        }
+
+        Response read(String method) throws IOException {
+            Head head = readHead();
+            boolean keepAlive = head.keepAlive();
+            ByteArrayOutputStream body = new ByteArrayOutputStream();
+            if (method.equals("HEAD") || head.status() == 204 || head.status() == 304 || head.status() / 100 == 1) {
+                // No body
+            } else if (head.chunked()) {
+                new ChunkedInputStream().transferTo(body);
+            } else if (head.contentLength() >= 0) {
+                readFixed(body, head.contentLength());
+            } else {
+                in.transferTo(body);
+                keepAlive = false;
+            }
+            return new Response(head.status(), body.toString(StandardCharsets.UTF_8).trim(), keepAlive);
+        }
+
+        /**
+         * Passes every line of a streamed response body to a consumer until the daemon ends the stream.
+         */
+        void stream(Consumer<String> lineConsumer) throws IOException {
+            Head head = readHead();
+            if (head.status() != 200) {
+                throw new IOException("Stream request failed with status " + head.status());
+            }
+            InputStream body = head.chunked() ? new ChunkedInputStream() : in;
+            BufferedReader reader = new BufferedReader(new InputStreamReader(body, StandardCharsets.UTF_8));
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (!line.isBlank()) {
+                    lineConsumer.accept(line);
+                }
+            }
+        }
+
+        private Head readHead() throws IOException {
+            String statusLine = readLine();
+            String[] statusParts = statusLine.split(" ", 3);
+            if (statusParts.length < 2 || !statusParts[0].startsWith("HTTP/")) {
+                throw new IOException("Malformed status line: " + statusLine);
+            }
+            int status = Integer.parseInt(statusParts[1]);
+            boolean keepAlive = !statusParts[0].equals("HTTP/1.0");
+            long contentLength = -1;
+            boolean chunked = false;
+
+            String line;
+            while (!(line = readLine()).isEmpty()) {
+                int colon = line.indexOf(':');
+                if (colon < 0) {
+                    continue;
+                }
+                String name = line.substring(0, colon).trim().toLowerCase(Locale.ROOT);
+                String value = line.substring(colon + 1).trim();
+                switch (name) {
+                    case "content-length" -> contentLength = Long.parseLong(value);
+                    case "transfer-encoding" -> chunked = value.toLowerCase(Locale.ROOT).contains("chunked");
+                    case "connection" -> keepAlive = !value.equalsIgnoreCase("close");
+                    default -> {
+                    }
+                }
+            }
+            return new Head(status, contentLength, chunked, keepAlive);
+        }
+
+        private void readFixed(ByteArrayOutputStream body, long length) throws IOException {
+            byte[] buffer = new byte[8192];
+            long remaining = length;
+            while (remaining > 0) {
+                int read = in.read(buffer, 0, (int) Math.min(buffer.length, remaining));
+                if (read < 0) {
+                    throw new EOFException("Connection closed before the response body was complete");
+                }
+                body.write(buffer, 0, read);
+                remaining -= read;
+            }
+        }
+
+        /**
+         * Decodes a chunked response body. Ends after the last chunk and its trailers were read.
+         */
+        private final class ChunkedInputStream extends InputStream {
+
+            private long remaining;
+            private boolean finished;
+
+            @Override
+            public int read() throws IOException {
+                byte[] single = new byte[1];
+                return read(single, 0, 1) < 0 ? -1 : single[0] & 0xff;
+            }
+
+            @Override
+            public int read(byte[] buffer, int offset, int length) throws IOException {
+                if (finished) {
+                    return -1;
+                }
+                if (remaining == 0) {
+                    String sizeLine = readLine();
+                    int extension = sizeLine.indexOf(';');
+                    remaining = Long.parseLong((extension < 0 ? sizeLine : sizeLine.substring(0, extension)).trim(), 16);
+                    if (remaining == 0) {
+                        // Skip trailers
+                        while (!readLine().isEmpty()) {
+                        }
+                        finished = true;
+                        return -1;
+                    }
+                }
+                int read = in.read(buffer, offset, (int) Math.min(length, remaining));
+                if (read < 0) {
+                    throw new EOFException("Connection closed before the chunk was complete");
+                }
+                remaining -= read;
+                if (remaining == 0) {
+                    readLine();
+                }
+                return read;
+            }
+        }
+
+        private String readLine() throws IOException {
+            ByteArrayOutputStream line = new ByteArrayOutputStream();
+            int c;
+            while ((c = in.read()) != '\n') {
+                if (c < 0) {
+                    throw new EOFException("Connection closed by the daemon");
+                }
+                answered = true;
+                if (c != '\r') {
+                    line.write(c);
+                }
+            }
+            return line.toString(StandardCharsets.US_ASCII);
+        }
+
+        void close() {
+            try {
+                channel.close();
+            } catch (IOException ignored) {
+            }
+        }
+    }
+}
@@ -0,0 +1,49 @@
+package com.dmoser.codyssey.vidar.docker;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.MissingNode;
+
+import java.io.IOException;
+
+/**
+ * A record containing the response of a Docker Engine API request.
+ *
+ * @param status The HTTP status code of the response. 0 when the daemon could not be reached.
+ * @param body   The body of the response. Empty when the response has no body.
+ */
+public record EngineResponse(int status, String body) {
+
+    /**
+     * Checks if the request was successful.
+     *
+     * @return true when the status code is in the 2xx range.
+     */
+    public boolean isSuccessful() {
+        return status >= 200 && status < 300;
+    }
+
+    /**
+     * Checks if the requested object does not exist.
+     *
+     * @return true when the status code is 404.
+     */
+    public boolean isNotFound() {
+        return status == 404;
+    }
+
+    /**
+     * Parses the body as JSON.
+     *
+     * @return The parsed body, or a missing node when the body is empty or not valid JSON.
+     */
+    public JsonNode json() {
+        if (body.isEmpty()) {
+            return MissingNode.getInstance();
+        }
+        try {
+            return EngineClient.MAPPER.readTree(body);
+        } catch (IOException e) {
+            return MissingNode.getInstance();
+        }
+    }
+}
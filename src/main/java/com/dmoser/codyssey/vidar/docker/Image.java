@@ -1,11 +1,29 @@
 package com.dmoser.codyssey.vidar.docker;
 
+import com.dmoser.codyssey.vidar.service.Command;
 import com.dmoser.codyssey.vidar.service.SystemService;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
+import java.io.IOException;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+
 /**
  * Docker commands that are tied to images.
+ * Builds are content addressed: the hash of the build context is stored as the {@value #LABEL_CONTEXT_HASH} label of
+ * the image and in a local index, and a build is skipped when an image of the same context already exists.
  */
 public class Image {
 
@@ -13,12 +31,68 @@ public class Image {
     private static final String LOG_DEBUG_IMAGE_RM = "Removing image with name: {}. Exec cmd is {}";
     private static final String LOG_DEBUG_IMAGE_CHECK = "Checking if image {} exists. Response is {}. Exec cmd is {}";
     private static final String LOG_DEBUG_IMAGE_BUILD = "Building image with name {} and dockerfilePath {}. Exec cmd is {}";
+    private static final String LOG_DEBUG_BUILD_SKIPPED = "Image {} is up to date with context {}, skipping the build";
+    private static final String LOG_DEBUG_BUILD_TAGGED = "Tagged image {} of context {} as {}, skipping the build";
+    private static final String LOG_WARN_CONTEXT_NOT_HASHED = "Could not hash build context {}, building without cache: {}";
+    private static final String LOG_WARN_BUILD_FAILED = "Building image {} failed: {}";
 
     /**
-     * Default constructor.
+     * The label holding the content hash of the build context an image was built from.
+     */
+    public static final String LABEL_CONTEXT_HASH = "com.dmoser.vidar.context-hash";
+    private static final String INDEX_FILE = "image-builds.json";
+
+    private static final String CMD_BUILD = "docker build -t %s %s";
+    private static final String CMD_BUILD_LABELLED = "docker build --label %s -t %s %s";
+    private static final String CMD_INSPECT = "docker image inspect --format";
+    private static final String FORMAT_INSPECT = "{{.Id}} {{index .Config.Labels \"%s\"}}";
+    private static final String CMD_TAG = "docker tag %s %s";
+    private static final String CMD_REMOVE = "docker image rm %s";
+    private static final String CMD_LIST = "docker images --filter reference=%s --format {{.Repository}}:{{.Tag}}";
+
+    private static final String API_INSPECT = "/images/%s/json";
+    private static final String API_REMOVE = "/images/%s";
+    private static final String API_TAG = "/images/%s/tag?repo=%s&tag=%s";
+
+    private static ImageBuildIndex sharedIndex;
+
+    SystemService systemService = SystemService.get();
+    final EngineClient engine;
+    private final ImageBuildIndex index;
+
+    /**
+     * Default constructor. Commands are sent through the docker CLI.
      */
     public Image() {
+        this(null);
+    }
+
+    /**
+     * Constructor for sending commands through the Docker Engine API.
+     * Builds are always sent through the docker CLI, since they need the build context as a tar stream.
+     *
+     * @param engine The client of the docker daemon, or null to use the docker CLI.
+     */
+    public Image(EngineClient engine) {
+        this(engine, sharedIndex());
+    }
+
+    /**
+     * Constructor for testcases, so that the build index can be replaced.
+     *
+     * @param engine The client of the docker daemon, or null to use the docker CLI.
+     * @param index  The index of built images.
+     */
+    Image(EngineClient engine, ImageBuildIndex index) {
+        this.engine = engine;
+        this.index = index;
+    }
 
+    private static synchronized ImageBuildIndex sharedIndex() {
+        if (sharedIndex == null) {
+            sharedIndex = new ImageBuildIndex(SystemService.cacheDirectory().resolve(INDEX_FILE));
+        }
+        return sharedIndex;
     }
 
     /**
@@ -28,9 +102,14 @@ public class Image {
      * @return true if the image is removed.
      */
     public boolean rm(String imageName) {
-        String cmd = "docker image rm %s".formatted(imageName);
+        if (engine != null) {
+            log.debug(LOG_DEBUG_IMAGE_RM, imageName, API_REMOVE.formatted(imageName));
+            EngineResponse response = engine.delete(API_REMOVE.formatted(imageName));
+            return response.isSuccessful() || response.isNotFound();
+        }
+        Command cmd = Command.format(CMD_REMOVE, imageName);
         log.debug(LOG_DEBUG_IMAGE_RM, imageName, cmd);
-        SystemService.get().executeCommand(cmd);
+        systemService.executeArgs(cmd.argv());
         return !exists(imageName);
     }
 
@@ -41,23 +120,138 @@ public class Image {
      * @return true if the image exists.
      */
     public boolean exists(String imageName) {
-        String cmd = "docker images --filter \"reference=%s\" --format \"{{.Repository}}:{{.Tag}}\"".formatted(imageName);
-        String response = SystemService.get().executeCommand(cmd).content();
+        if (engine != null) {
+            EngineResponse response = engine.get(API_INSPECT.formatted(imageName));
+            log.debug(LOG_DEBUG_IMAGE_CHECK, imageName, response.status(), API_INSPECT.formatted(imageName));
+            return response.isSuccessful();
+        }
+        Command cmd = Command.format(CMD_LIST, imageName);
+        String response = systemService.executeArgs(cmd.argv()).content();
         log.debug(LOG_DEBUG_IMAGE_CHECK, imageName, response, cmd);
         return !response.equals("error") && !response.isEmpty();
     }
 
     /**
-     * Build an Image.
+     * Build an Image, unless it is up to date.
+     * The build is skipped when the image already carries the hash of the build context, and replaced by tagging when
+     * an image of the same context was built before under another name.
      *
      * @param dockerfilePath The path to the dockerfile, without the Dockerfile.
      * @param imageName      The tag under which the image should be saved under.
-     * @return true when the image was build successfully.
+     * @return true when the image was build successfully or is up to date.
      */
     public boolean build(String dockerfilePath, String imageName) {
-        String cmd = "docker build  -t %s %s".formatted(imageName, dockerfilePath);
+        String contextHash;
+        try {
+            contextHash = BuildContext.hash(Path.of(dockerfilePath));
+        } catch (IOException e) {
+            log.warn(LOG_WARN_CONTEXT_NOT_HASHED, dockerfilePath, e.getMessage());
+            return buildImage(dockerfilePath, imageName, null);
+        }
+        Optional<BuiltImage> existing = inspect(imageName);
+        if (existing.isPresent() && existing.get().contextHash().equals(contextHash)) {
+            log.debug(LOG_DEBUG_BUILD_SKIPPED, imageName, contextHash);
+            index.put(contextHash, existing.get().id());
+            return true;
+        }
+        Optional<String> built = index.get(contextHash);
+        if (built.isPresent() && tag(built.get(), imageName)) {
+            log.debug(LOG_DEBUG_BUILD_TAGGED, built.get(), contextHash, imageName);
+            return true;
+        }
+        return buildImage(dockerfilePath, imageName, contextHash);
+    }
+
+    /**
+     * Builds many images, at most maxConcurrency at the same time. Images that are up to date are skipped as in
+     * {@link #build(String, String)}, so only the images with changed build contexts are built.
+     *
+     * @param builds         The paths to the dockerfiles, keyed by image name.
+     * @param maxConcurrency The maximum number of builds running at the same time.
+     * @return For every image name in the order of the builds, true when the image was built or is up to date.
+     */
+    public Map<String, Boolean> buildAll(Map<String, String> builds, int maxConcurrency) {
+        Semaphore permits = new Semaphore(Math.max(1, maxConcurrency));
+        List<Future<Boolean>> futures = new ArrayList<>();
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            builds.forEach((imageName, dockerfilePath) -> futures.add(executor.submit(() -> {
+                permits.acquire();
+                try {
+                    return build(dockerfilePath, imageName);
+                } finally {
+                    permits.release();
+                }
+            })));
+        }
+        Map<String, Boolean> results = new LinkedHashMap<>();
+        int i = 0;
+        for (String imageName : builds.keySet()) {
+            try {
+                results.put(imageName, futures.get(i++).get());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                results.put(imageName, false);
+            } catch (ExecutionException e) {
+                log.warn(LOG_WARN_BUILD_FAILED, imageName, e.getCause().getMessage());
+                results.put(imageName, false);
+            }
+        }
+        return results;
+    }
+
+    private boolean buildImage(String dockerfilePath, String imageName, String contextHash) {
+        Command cmd = contextHash == null
+                ? Command.format(CMD_BUILD, imageName, dockerfilePath)
+                : Command.format(CMD_BUILD_LABELLED, LABEL_CONTEXT_HASH + "=" + contextHash, imageName, dockerfilePath);
         log.debug(LOG_DEBUG_IMAGE_BUILD, imageName, dockerfilePath, cmd);
-        SystemService.get().executeCommand(cmd);
-        return exists(imageName);
+        systemService.executeArgs(cmd.argv());
+        Optional<BuiltImage> built = inspect(imageName);
+        if (built.isPresent() && contextHash != null && built.get().contextHash().equals(contextHash)) {
+            index.put(contextHash, built.get().id());
+        }
+        return built.isPresent();
+    }
+
+    /**
+     * Returns the id and the context hash of an image.
+     */
+    private Optional<BuiltImage> inspect(String imageName) {
+        if (engine != null) {
+            EngineResponse response = engine.get(API_INSPECT.formatted(imageName));
+            if (!response.isSuccessful()) {
+                return Optional.empty();
+            }
+            var image = response.json();
+            return Optional.of(new BuiltImage(image.path("Id").asText(""),
+                    image.path("Config").path("Labels").path(LABEL_CONTEXT_HASH).asText("")));
+        }
+        var result = systemService.executeArgs(Command.format(CMD_INSPECT).args(FORMAT_INSPECT.formatted(LABEL_CONTEXT_HASH), imageName).argv());
+        if (result.exitCode() != 0 || result.content().isBlank()) {
+            return Optional.empty();
+        }
+        String[] parts = result.content().strip().split(" ", 2);
+        // The template prints <no value> for a missing label
+        String contextHash = parts.length < 2 || parts[1].startsWith("<") ? "" : parts[1];
+        return Optional.of(new BuiltImage(parts[0], contextHash));
+    }
+
+    private boolean tag(String imageId, String imageName) {
+        if (engine != null) {
+            // The tag is the part after the last colon, unless that colon belongs to the port of a registry
+            int separator = imageName.lastIndexOf(':');
+            boolean hasTag = separator > imageName.lastIndexOf('/');
+            String repository = hasTag ? imageName.substring(0, separator) : imageName;
+            String tag = hasTag ? imageName.substring(separator + 1) : "latest";
+            EngineResponse response = engine.post(API_TAG.formatted(imageId,
+                    URLEncoder.encode(repository, StandardCharsets.UTF_8), URLEncoder.encode(tag, StandardCharsets.UTF_8)), null);
+            return response.isSuccessful();
+        }
+        return systemService.executeArgs(Command.format(CMD_TAG, imageId, imageName).argv()).exitCode() == 0;
+    }
+
+    /**
+     * The id of an image and the hash of the build context it was built from.
+     */
+    private record BuiltImage(String id, String contextHash) {
     }
 }
@@ -0,0 +1,88 @@
+package com.dmoser.codyssey.vidar.docker;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Local index of the images built by Vidar, mapping the content hash of a build context to the id of the image built
+ * from it. The index is persisted as json, so it survives restarts. Entries might point to images that were removed
+ * in the meantime.
+ */
+final class ImageBuildIndex {
+
+    private static final Logger log = LogManager.getLogger(ImageBuildIndex.class);
+    private static final String LOG_WARN_NOT_WRITTEN = "Could not write image build index {}: {}";
+
+    private static final TypeReference<Map<String, String>> INDEX_TYPE = new TypeReference<>() {
+    };
+
+    private final Path file;
+    private Map<String, String> images;
+
+    /**
+     * Create an index.
+     *
+     * @param file The file the index is persisted in, or null to keep it in memory only.
+     */
+    ImageBuildIndex(Path file) {
+        this.file = file;
+    }
+
+    /**
+     * Returns the image built from a build context.
+     *
+     * @param contextHash The hash of the build context.
+     * @return The id of the image. Empty when no image was built from the context.
+     */
+    synchronized Optional<String> get(String contextHash) {
+        return Optional.ofNullable(load().get(contextHash));
+    }
+
+    /**
+     * Records the image built from a build context and persists the index.
+     *
+     * @param contextHash The hash of the build context.
+     * @param imageId     The id of the image.
+     */
+    synchronized void put(String contextHash, String imageId) {
+        load().put(contextHash, imageId);
+        if (file == null) {
+            return;
+        }
+        try {
+            Files.createDirectories(file.toAbsolutePath().getParent());
+            Path temp = Files.createTempFile(file.toAbsolutePath().getParent(), file.getFileName().toString(), ".tmp");
+            try {
+                EngineClient.MAPPER.writeValue(temp.toFile(), images);
+                Files.move(temp, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } finally {
+                Files.deleteIfExists(temp);
+            }
+        } catch (IOException e) {
+            log.warn(LOG_WARN_NOT_WRITTEN, file, e.getMessage());
+        }
+    }
+
+    private Map<String, String> load() {
+        if (images == null) {
+            images = new HashMap<>();
+            try {
+                if (file != null && Files.exists(file)) {
+                    images.putAll(EngineClient.MAPPER.readValue(file.toFile(), INDEX_TYPE));
+                }
+            } catch (IOException ignored) {
+                // A broken index is ignored and overwritten
+            }
+        }
+        return images;
+    }
+}
@@ -0,0 +1,240 @@
+package com.dmoser.codyssey.vidar.docker;
+
+import com.dmoser.codyssey.vidar.service.Command;
+import com.dmoser.codyssey.vidar.service.SystemService;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+/**
+ * Pulls many images ahead of starting services, instead of one after another inside every `compose up`.
+ * References are normalized and deduplicated, images that are already present are skipped with a single listing,
+ * and the remaining images are pulled concurrently with a limit. Pulls always go through the docker CLI, so that
+ * credentials of the docker config are used.
+ */
+public class ImagePuller {
+
+    private static final Logger log = LogManager.getLogger(ImagePuller.class);
+    private static final String LOG_INFO_PULLING = "Pulling {} images, {} of {} are already present";
+    private static final String LOG_WARN_PULL_FAILED = "Could not pull image {}: {}";
+    private static final String LOG_DEBUG_PULLED = "Pulled image {} ({} of {})";
+
+    private static final String CMD_LIST = "docker images --format {{.Repository}}:{{.Tag}}@{{.Digest}}";
+    private static final String CMD_PULL = "docker pull %s";
+    private static final String API_LIST = "/images/json";
+
+    private static final String DEFAULT_REGISTRY = "docker.io/";
+    private static final String OFFICIAL_NAMESPACE = "library/";
+
+    SystemService systemService = SystemService.get();
+    final EngineClient engine;
+
+    /**
+     * The outcome of pulling an image.
+     */
+    public enum PullStatus {
+        /**
+         * The image was already present and not pulled.
+         */
+        PRESENT,
+        /**
+         * The image was pulled.
+         */
+        PULLED,
+        /**
+         * The image could not be pulled.
+         */
+        FAILED
+    }
+
+    /**
+     * A record reporting that pulling an image finished.
+     *
+     * @param image    The normalized reference of the image.
+     * @param status   The outcome.
+     * @param finished The number of images that finished so far, including this one.
+     * @param total    The number of images.
+     */
+    public record PullProgress(String image, PullStatus status, int finished, int total) {
+    }
+
+    /**
+     * Default constructor. Present images are listed through the docker CLI.
+     */
+    public ImagePuller() {
+        this(null);
+    }
+
+    /**
+     * Constructor for listing present images through the Docker Engine API.
+     *
+     * @param engine The client of the docker daemon, or null to use the docker CLI.
+     */
+    public ImagePuller(EngineClient engine) {
+        this.engine = engine;
+    }
+
+    /**
+     * Pulls all images that are not present yet.
+     *
+     * @param images         The references of the images. Duplicates, also in different spellings, are pulled once.
+     * @param maxConcurrency The maximum number of pulls running at the same time.
+     * @param progress       Called whenever an image was found to be present or finished pulling, possibly from many
+     *                       threads at the same time.
+     * @return The outcome for every normalized reference, in the order of the images.
+     * @throws UncheckedIOException When the present images could not be listed.
+     */
+    public Map<String, PullStatus> pullAll(Collection<String> images, int maxConcurrency, Consumer<PullProgress> progress) {
+        Set<String> references = new LinkedHashSet<>();
+        images.stream().filter(image -> !image.isBlank()).map(ImagePuller::normalize).forEach(references::add);
+        Set<String> present = present();
+
+        Map<String, PullStatus> results = new LinkedHashMap<>();
+        List<String> missing = new ArrayList<>();
+        for (String reference : references) {
+            if (present.contains(reference)) {
+                results.put(reference, PullStatus.PRESENT);
+            } else {
+                results.put(reference, null);
+                missing.add(reference);
+            }
+        }
+        int total = references.size();
+        AtomicInteger finished = new AtomicInteger();
+        results.forEach((reference, status) -> {
+            if (status == PullStatus.PRESENT) {
+                progress.accept(new PullProgress(reference, status, finished.incrementAndGet(), total));
+            }
+        });
+        log.info(LOG_INFO_PULLING, missing.size(), total - missing.size(), total);
+
+        Semaphore permits = new Semaphore(Math.max(1, maxConcurrency));
+        List<Future<PullStatus>> futures = new ArrayList<>();
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (String reference : missing) {
+                futures.add(executor.submit(() -> {
+                    permits.acquire();
+                    PullStatus status;
+                    try {
+                        status = pull(reference);
+                    } finally {
+                        permits.release();
+                    }
+                    int done = finished.incrementAndGet();
+                    log.debug(LOG_DEBUG_PULLED, reference, done, total);
+                    progress.accept(new PullProgress(reference, status, done, total));
+                    return status;
+                }));
+            }
+        }
+        for (int i = 0; i < missing.size(); i++) {
+            try {
+                results.put(missing.get(i), futures.get(i).get());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                results.put(missing.get(i), PullStatus.FAILED);
+            } catch (ExecutionException e) {
+                log.warn(LOG_WARN_PULL_FAILED, missing.get(i), e.getCause().getMessage());
+                results.put(missing.get(i), PullStatus.FAILED);
+            }
+        }
+        return results;
+    }
+
+    private PullStatus pull(String reference) {
+        var result = systemService.executeArgs(Command.format(CMD_PULL, reference).argv());
+        if (result.exitCode() != 0) {
+            log.warn(LOG_WARN_PULL_FAILED, reference, result.content());
+            return PullStatus.FAILED;
+        }
+        return PullStatus.PULLED;
+    }
+
+    /**
+     * Lists the normalized references of all present images, by tag and by digest, with a single listing.
+     */
+    private Set<String> present() {
+        Set<String> present = new HashSet<>();
+        if (engine != null) {
+            EngineResponse response = engine.get(API_LIST);
+            if (!response.isSuccessful()) {
+                throw new UncheckedIOException(new IOException("Listing images failed with status " + response.status()));
+            }
+            for (var image : response.json()) {
+                image.path("RepoTags").forEach(tag -> present.add(normalize(tag.asText())));
+                image.path("RepoDigests").forEach(digest -> present.add(normalize(digest.asText())));
+            }
+            return present;
+        }
+        var result = systemService.executeArgs(Command.format(CMD_LIST).argv());
+        if (result.exitCode() != 0) {
+            throw new UncheckedIOException(new IOException("Listing images failed: " + result.content()));
+        }
+        for (String line : result.content().split("\n")) {
+            int separator = line.lastIndexOf('@');
+            if (line.isBlank() || separator < 0) {
+                continue;
+            }
+            String tagged = line.substring(0, separator).strip();
+            String digest = line.substring(separator + 1).strip();
+            int tag = tagged.lastIndexOf(':');
+            String repository = tag > tagged.lastIndexOf('/') ? tagged.substring(0, tag) : tagged;
+            if (repository.equals("<none>")) {
+                continue;
+            }
+            if (!tagged.endsWith(":<none>")) {
+                present.add(normalize(tagged));
+            }
+            if (digest.startsWith("sha256:")) {
+                present.add(normalize(repository + "@" + digest));
+            }
+        }
+        return present;
+    }
+
+    /**
+     * Normalizes an image reference, so that different spellings of the same image are equal.
+     * The default registry and the namespace of official images are removed, and the tag latest is added when the
+     * reference has neither a tag nor a digest.
+     *
+     * @param reference The reference, e.g. `nginx`, `docker.io/library/nginx:1.27` or `ghcr.io/org/app@sha256:...`.
+     * @return The normalized reference, e.g. `nginx:latest`.
+     */
+    public static String normalize(String reference) {
+        String normalized = reference.strip();
+        if (normalized.startsWith(DEFAULT_REGISTRY)) {
+            normalized = normalized.substring(DEFAULT_REGISTRY.length());
+        }
+        if (normalized.startsWith(OFFICIAL_NAMESPACE)) {
+            normalized = normalized.substring(OFFICIAL_NAMESPACE.length());
+        }
+        // A digest pins the content, so the tag next to it does not matter
+        int digest = normalized.indexOf('@');
+        if (digest >= 0) {
+            String name = normalized.substring(0, digest);
+            int tag = name.lastIndexOf(':');
+            if (tag > name.lastIndexOf('/')) {
+                name = name.substring(0, tag);
+            }
+            return name + normalized.substring(digest);
+        }
+        return normalized.lastIndexOf(':') > normalized.lastIndexOf('/') ? normalized : normalized + ":latest";
+    }
+}
@@ -1,5 +1,6 @@
 package com.dmoser.codyssey.vidar.docker;
 
+import com.dmoser.codyssey.vidar.service.Command;
 import com.dmoser.codyssey.vidar.service.SystemService;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
@@ -18,13 +19,28 @@ public class Network {
 
     private static final String CMD_CREATE = "docker network create %s";
     private static final String CMD_REMOVE = "docker network rm %s";
-    private static final String CMD_EXISTS = "docker network ls  --format={{.Name}} | grep -Fx %s";
+    private static final String CMD_EXISTS = "docker network ls --format={{.Name}}";
+
+    private static final String API_CREATE = "/networks/create";
+    private static final String API_ITEM = "/networks/%s";
+
+    SystemService systemService = SystemService.get();
+    final EngineClient engine;
 
     /**
-     * Default constructor.
+     * Default constructor. Commands are sent through the docker CLI.
      */
     public Network() {
+        this(null);
+    }
 
+    /**
+     * Constructor for sending commands through the Docker Engine API.
+     *
+     * @param engine The client of the docker daemon, or null to use the docker CLI.
+     */
+    public Network(EngineClient engine) {
+        this.engine = engine;
     }
 
     /**
@@ -37,9 +53,14 @@ public class Network {
         if (networkName == null || networkName.isEmpty()) {
             throw new IllegalStateException(EXCEPTION_UNNAMED_NETWORKS);
         }
-        String cmd = CMD_CREATE.formatted(networkName);
+        if (engine != null) {
+            log.debug(LOG_NETWORK_CREATE, networkName, API_CREATE);
+            EngineResponse response = engine.post(API_CREATE, EngineClient.MAPPER.createObjectNode().put("Name", networkName).toString());
+            return response.isSuccessful() || exists(networkName);
+        }
+        Command cmd = Command.format(CMD_CREATE, networkName);
         log.debug(LOG_NETWORK_CREATE, networkName, cmd);
-        SystemService.get().executeCommand(cmd);
+        systemService.executeArgs(cmd.argv());
         return exists(networkName);
     }
 
@@ -54,9 +75,14 @@ public class Network {
             log.warn(LOG_NETWORK_REMOVE_UNNAMED);
             return true;
         }
-        String cmd = CMD_REMOVE.formatted(networkName);
+        if (engine != null) {
+            log.debug(LOG_NETWORK_REMOVE, networkName, API_ITEM.formatted(networkName));
+            EngineResponse response = engine.delete(API_ITEM.formatted(networkName));
+            return response.isSuccessful() || response.isNotFound();
+        }
+        Command cmd = Command.format(CMD_REMOVE, networkName);
         log.debug(LOG_NETWORK_REMOVE, networkName, cmd);
-        SystemService.get().executeCommand(cmd);
+        systemService.executeArgs(cmd.argv());
         return !exists(networkName);
     }
 
@@ -67,10 +93,16 @@ public class Network {
      * @return true when the network exists.
      */
     public boolean exists(String networkName) {
-        String cmd = CMD_EXISTS.formatted(networkName);
-        String response = SystemService.get().executeCommand(cmd).content();
-        log.debug(LOG_NETWORK_EXISTS, networkName, response, cmd);
-        return response.equals(networkName);
+        if (engine != null) {
+            EngineResponse response = engine.get(API_ITEM.formatted(networkName));
+            log.debug(LOG_NETWORK_EXISTS, networkName, response.status(), API_ITEM.formatted(networkName));
+            // The daemon also resolves ids and id prefixes, so the name has to be compared.
+            return response.isSuccessful() && response.json().path("Name").asText("").equals(networkName);
+        }
+        // Names are compared in Java instead of piping the listing through grep
+        boolean exists = systemService.executeArgs(Command.format(CMD_EXISTS).argv()).content().lines().anyMatch(networkName::equals);
+        log.debug(LOG_NETWORK_EXISTS, networkName, exists, CMD_EXISTS);
+        return exists;
     }
 
 }
@@ -1,5 +1,6 @@
 package com.dmoser.codyssey.vidar.docker;
 
+import com.dmoser.codyssey.vidar.service.Command;
 import com.dmoser.codyssey.vidar.service.SystemService;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
@@ -19,13 +20,28 @@ public class Volume {
 
     private static final String CMD_CREATE = "docker volume create %s";
     private static final String CMD_REMOVE = "docker volume rm %s";
-    private static final String CMD_EXISTS = "docker volume ls  --format={{.Name}} | grep -Fx %s";
+    private static final String CMD_EXISTS = "docker volume ls --format={{.Name}}";
+
+    private static final String API_CREATE = "/volumes/create";
+    private static final String API_ITEM = "/volumes/%s";
+
+    SystemService systemService = SystemService.get();
+    final EngineClient engine;
 
     /**
-     * Default constructor.
+     * Default constructor. Commands are sent through the docker CLI.
      */
     public Volume() {
+        this(null);
+    }
 
+    /**
+     * Constructor for sending commands through the Docker Engine API.
+     *
+     * @param engine The client of the docker daemon, or null to use the docker CLI.
+     */
+    public Volume(EngineClient engine) {
+        this.engine = engine;
     }
 
     /**
@@ -38,9 +54,14 @@ public class Volume {
         if (volumeName == null || volumeName.isEmpty()) {
             throw new IllegalStateException(EXCEPTION_UNNAMED_VOLUMES);
         }
-        String cmd = CMD_CREATE.formatted(volumeName);
+        if (engine != null) {
+            log.debug(LOG_VOLUME_CREATE, volumeName, API_CREATE);
+            EngineResponse response = engine.post(API_CREATE, EngineClient.MAPPER.createObjectNode().put("Name", volumeName).toString());
+            return response.isSuccessful() || exists(volumeName);
+        }
+        Command cmd = Command.format(CMD_CREATE, volumeName);
         log.debug(LOG_VOLUME_CREATE, volumeName, cmd);
-        SystemService.get().executeCommand(cmd);
+        systemService.executeArgs(cmd.argv());
         return exists(volumeName);
     }
 
@@ -55,9 +76,14 @@ public class Volume {
             log.warn(LOG_VOLUME_REMOVE_UNNAMED);
             return true;
         }
-        String cmd = CMD_REMOVE.formatted(volumeName);
+        if (engine != null) {
+            log.debug(LOG_VOLUME_REMOVE, volumeName, API_ITEM.formatted(volumeName));
+            EngineResponse response = engine.delete(API_ITEM.formatted(volumeName));
+            return response.isSuccessful() || response.isNotFound();
+        }
+        Command cmd = Command.format(CMD_REMOVE, volumeName);
         log.debug(LOG_VOLUME_REMOVE, volumeName, cmd);
-        SystemService.get().executeCommand(cmd);
+        systemService.executeArgs(cmd.argv());
         return !exists(volumeName);
     }
 
@@ -68,10 +94,14 @@ public class Volume {
      * @return true when the volume exists.
      */
     public boolean exists(String volumeName) {
-        String cmd = CMD_EXISTS.formatted(volumeName);
-        String response = SystemService.get().executeCommand(cmd).content();
-        log.debug(LOG_VOLUME_EXISTS, volumeName, response, cmd);
-        return response.equals(volumeName);
+        if (engine != null) {
+            EngineResponse response = engine.get(API_ITEM.formatted(volumeName));
+            log.debug(LOG_VOLUME_EXISTS, volumeName, response.status(), API_ITEM.formatted(volumeName));
+            return response.isSuccessful() && response.json().path("Name").asText("").equals(volumeName);
+        }
+        boolean exists = systemService.executeArgs(Command.format(CMD_EXISTS).argv()).content().lines().anyMatch(volumeName::equals);
+        log.debug(LOG_VOLUME_EXISTS, volumeName, exists, CMD_EXISTS);
+        return exists;
     }
 
 }
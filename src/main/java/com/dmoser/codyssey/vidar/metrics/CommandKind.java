@@ -0,0 +1,62 @@
+package com.dmoser.codyssey.vidar.metrics;
+
+import java.util.Set;
+import java.util.regex.Pattern;
+
+/**
+ * Groups commands by the program and subcommand they run, e.g. `git clone` or `docker compose up`.
+ * Arguments like paths and names are dropped, so the number of kinds stays small.
+ */
+public final class CommandKind {
+
+    private static final Pattern WORD = Pattern.compile("[a-z][a-z0-9-]*");
+    private static final Set<String> TOOLS_WITH_SUBCOMMANDS = Set.of("docker", "git");
+    private static final Set<String> GROUPS = Set.of("compose", "container", "image", "network", "volume", "system", "buildx", "sparse-checkout", "remote", "submodule");
+    private static final Set<String> OPTIONS_WITH_VALUE = Set.of(
+            "-C", "-c", "--git-dir", "--work-tree",
+            "-f", "--file", "-p", "--project-name", "--project-directory", "--env-file", "--profile",
+            "-H", "--host", "--context", "--config", "--log-level");
+
+    private CommandKind() {
+    }
+
+    /**
+     * Returns the kind of a shell command.
+     *
+     * @param command The command.
+     * @return The program followed by its subcommands, or just the program for programs without subcommands.
+     */
+    public static String of(String command) {
+        String[] tokens = command.strip().split("\\s+");
+        int i = 0;
+        // Skip leading variable assignments
+        while (i < tokens.length && tokens[i].contains("=") && !tokens[i].startsWith("-")) {
+            i++;
+        }
+        if (i >= tokens.length || tokens[i].isEmpty()) {
+            return "unknown";
+        }
+        String program = tokens[i].substring(tokens[i].lastIndexOf('/') + 1);
+        StringBuilder kind = new StringBuilder(program);
+        if (!TOOLS_WITH_SUBCOMMANDS.contains(program)) {
+            return kind.toString();
+        }
+        for (i++; i < tokens.length; i++) {
+            String token = tokens[i];
+            if (token.startsWith("-")) {
+                if (OPTIONS_WITH_VALUE.contains(token)) {
+                    i++;
+                }
+                continue;
+            }
+            if (!WORD.matcher(token).matches()) {
+                break;
+            }
+            kind.append(' ').append(token);
+            if (!GROUPS.contains(token)) {
+                break;
+            }
+        }
+        return kind.toString();
+    }
+}
@@ -0,0 +1,25 @@
+package com.dmoser.codyssey.vidar.metrics;
+
+import java.util.Map;
+
+/**
+ * JMX view of the commands of one kind.
+ */
+public interface CommandKindMXBean {
+
+    String getKind();
+
+    long getCount();
+
+    long getInFlight();
+
+    long getOutputBytes();
+
+    double getLatencyP50Millis();
+
+    double getLatencyP99Millis();
+
+    double getLatencyMeanMillis();
+
+    Map<Integer, Long> getExitCodes();
+}
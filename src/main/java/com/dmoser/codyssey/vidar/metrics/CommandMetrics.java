@@ -0,0 +1,266 @@
+package com.dmoser.codyssey.vidar.metrics;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import javax.management.InstanceAlreadyExistsException;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.time.Duration;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * In memory {@link MetricsRegistry} keeping counters, exit codes, in-flight gauges, output sizes and latency
+ * quantiles per kind of command.
+ * The measurements can be read with {@link #snapshot()}, as Prometheus text with {@link #prometheus()} and over JMX
+ * when the registry is registered with {@link #registerMBeans()}.
+ */
+public class CommandMetrics implements MetricsRegistry, CommandMetricsMXBean {
+
+    private static final Logger log = LogManager.getLogger(CommandMetrics.class);
+    private static final String LOG_WARN_MBEAN_NOT_REGISTERED = "Could not register command metrics MBean {}: {}";
+
+    /**
+     * System property to disable the JMX registration of the shared registry.
+     */
+    public static final String JMX_PROPERTY = "vidar.metrics.jmx";
+
+    /**
+     * The exit code recorded when executing a command threw an exception.
+     */
+    public static final int EXIT_CODE_EXCEPTION = -1;
+
+    static final String JMX_DOMAIN = "com.dmoser.codyssey.vidar";
+    private static final String JMX_TYPE = "CommandMetrics";
+    private static final double NANOS_PER_MILLI = 1_000_000d;
+    private static final double NANOS_PER_SECOND = 1_000_000_000d;
+
+    private static CommandMetrics instance;
+
+    private final Map<String, KindMetrics> kinds = new ConcurrentHashMap<>();
+    private volatile MBeanServer mBeanServer;
+
+    /**
+     * Get the shared registry. It is registered over JMX unless the {@value JMX_PROPERTY} system property is false.
+     *
+     * @return The shared instance.
+     */
+    public static synchronized CommandMetrics get() {
+        if (instance == null) {
+            instance = new CommandMetrics();
+            if (Boolean.parseBoolean(System.getProperty(JMX_PROPERTY, "true"))) {
+                instance.registerMBeans();
+            }
+        }
+        return instance;
+    }
+
+    @Override
+    public void commandStarted(String kind) {
+        metrics(kind).inFlight.incrementAndGet();
+    }
+
+    @Override
+    public void commandFinished(String kind, int exitCode, Duration duration, long outputBytes) {
+        KindMetrics metrics = metrics(kind);
+        metrics.inFlight.decrementAndGet();
+        metrics.outputBytes.add(outputBytes);
+        metrics.exitCodes.computeIfAbsent(exitCode, code -> new LongAdder()).increment();
+        metrics.latency.record(duration.toNanos());
+    }
+
+    /**
+     * Returns the measurements of all kinds of commands.
+     *
+     * @return The measurements, sorted by kind.
+     */
+    public Map<String, CommandStats> snapshot() {
+        Map<String, CommandStats> snapshot = new TreeMap<>();
+        kinds.forEach((kind, metrics) -> snapshot.put(kind, metrics.stats()));
+        return snapshot;
+    }
+
+    /**
+     * Formats all measurements in the Prometheus text exposition format.
+     *
+     * @return The measurements.
+     */
+    public String prometheus() {
+        Map<String, CommandStats> snapshot = snapshot();
+        StringBuilder text = new StringBuilder();
+
+        text.append("# HELP vidar_commands_total Finished commands.\n");
+        text.append("# TYPE vidar_commands_total counter\n");
+        snapshot.values().forEach(stats -> sample(text, "vidar_commands_total", stats.kind(), null, stats.count()));
+
+        text.append("# HELP vidar_command_exit_codes_total Finished commands per exit code.\n");
+        text.append("# TYPE vidar_command_exit_codes_total counter\n");
+        snapshot.values().forEach(stats -> new TreeMap<>(stats.exitCodes()).forEach((code, count) ->
+                sample(text, "vidar_command_exit_codes_total", stats.kind(), "code=\"" + code + "\"", count)));
+
+        text.append("# HELP vidar_commands_in_flight Running commands.\n");
+        text.append("# TYPE vidar_commands_in_flight gauge\n");
+        snapshot.values().forEach(stats -> sample(text, "vidar_commands_in_flight", stats.kind(), null, stats.inFlight()));
+
+        text.append("# HELP vidar_command_output_bytes_total Bytes written to stdout and stderr by finished commands.\n");
+        text.append("# TYPE vidar_command_output_bytes_total counter\n");
+        snapshot.values().forEach(stats -> sample(text, "vidar_command_output_bytes_total", stats.kind(), null, stats.outputBytes()));
+
+        text.append("# HELP vidar_command_duration_seconds Wall time of finished commands.\n");
+        text.append("# TYPE vidar_command_duration_seconds summary\n");
+        snapshot.values().forEach(stats -> {
+            sample(text, "vidar_command_duration_seconds", stats.kind(), "quantile=\"0.5\"", seconds(stats.p50()));
+            sample(text, "vidar_command_duration_seconds", stats.kind(), "quantile=\"0.99\"", seconds(stats.p99()));
+            sample(text, "vidar_command_duration_seconds_sum", stats.kind(), null, seconds(stats.total()));
+            sample(text, "vidar_command_duration_seconds_count", stats.kind(), null, stats.count());
+        });
+        return text.toString();
+    }
+
+    /**
+     * Registers this registry and every kind of command as MBeans of the platform MBean server.
+     * Kinds seen later are registered when they first occur.
+     */
+    public void registerMBeans() {
+        mBeanServer = ManagementFactory.getPlatformMBeanServer();
+        register(this, objectName(null));
+        kinds.values().forEach(metrics -> register(metrics, objectName(metrics.kind)));
+    }
+
+    @Override
+    public Set<String> getKinds() {
+        return new TreeSet<>(kinds.keySet());
+    }
+
+    @Override
+    public long getInFlight() {
+        return kinds.values().stream().mapToLong(metrics -> metrics.inFlight.get()).sum();
+    }
+
+    @Override
+    public String getPrometheusText() {
+        return prometheus();
+    }
+
+    private KindMetrics metrics(String kind) {
+        KindMetrics metrics = kinds.get(kind);
+        if (metrics != null) {
+            return metrics;
+        }
+        return kinds.computeIfAbsent(kind, key -> {
+            KindMetrics created = new KindMetrics(key);
+            if (mBeanServer != null) {
+                register(created, objectName(key));
+            }
+            return created;
+        });
+    }
+
+    private void register(Object mBean, ObjectName name) {
+        try {
+            mBeanServer.registerMBean(mBean, name);
+        } catch (InstanceAlreadyExistsException e) {
+            // Registered by another registry of the same JVM
+        } catch (JMException e) {
+            log.warn(LOG_WARN_MBEAN_NOT_REGISTERED, name, e.getMessage());
+        }
+    }
+
+    static ObjectName objectName(String kind) {
+        try {
+            String name = JMX_DOMAIN + ":type=" + JMX_TYPE;
+            return new ObjectName(kind == null ? name : name + ",kind=" + ObjectName.quote(kind));
+        } catch (JMException e) {
+            throw new IllegalArgumentException(e);
+        }
+    }
+
+    private static void sample(StringBuilder text, String name, String kind, String label, Object value) {
+        text.append(name).append("{kind=\"").append(escape(kind)).append('"');
+        if (label != null) {
+            text.append(',').append(label);
+        }
+        text.append("} ").append(value).append('\n');
+    }
+
+    private static String escape(String value) {
+        return value.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+    }
+
+    private static String seconds(Duration duration) {
+        return String.format(Locale.ROOT, "%.6f", duration.toNanos() / NANOS_PER_SECOND);
+    }
+
+    /**
+     * The measurements of one kind of command.
+     */
+    private static final class KindMetrics implements CommandKindMXBean {
+        private final String kind;
+        private final AtomicLong inFlight = new AtomicLong();
+        private final LongAdder outputBytes = new LongAdder();
+        private final Map<Integer, LongAdder> exitCodes = new ConcurrentHashMap<>();
+        private final LatencyHistogram latency = new LatencyHistogram();
+
+        private KindMetrics(String kind) {
+            this.kind = kind;
+        }
+
+        private CommandStats stats() {
+            return new CommandStats(kind, latency.count(), inFlight.get(), outputBytes.sum(),
+                    Duration.ofNanos(latency.quantileNanos(0.5)), Duration.ofNanos(latency.quantileNanos(0.99)),
+                    Duration.ofNanos(latency.sumNanos()), getExitCodes());
+        }
+
+        @Override
+        public String getKind() {
+            return kind;
+        }
+
+        @Override
+        public long getCount() {
+            return latency.count();
+        }
+
+        @Override
+        public long getInFlight() {
+            return inFlight.get();
+        }
+
+        @Override
+        public long getOutputBytes() {
+            return outputBytes.sum();
+        }
+
+        @Override
+        public double getLatencyP50Millis() {
+            return latency.quantileNanos(0.5) / NANOS_PER_MILLI;
+        }
+
+        @Override
+        public double getLatencyP99Millis() {
+            return latency.quantileNanos(0.99) / NANOS_PER_MILLI;
+        }
+
+        @Override
+        public double getLatencyMeanMillis() {
+            long count = latency.count();
+            return count == 0 ? 0 : latency.sumNanos() / NANOS_PER_MILLI / count;
+        }
+
+        @Override
+        public Map<Integer, Long> getExitCodes() {
+            Map<Integer, Long> codes = new TreeMap<>();
+            exitCodes.forEach((code, count) -> codes.put(code, count.sum()));
+            return codes;
+        }
+    }
+}
@@ -0,0 +1,15 @@
+package com.dmoser.codyssey.vidar.metrics;
+
+import java.util.Set;
+
+/**
+ * JMX view of all commands.
+ */
+public interface CommandMetricsMXBean {
+
+    Set<String> getKinds();
+
+    long getInFlight();
+
+    String getPrometheusText();
+}
@@ -0,0 +1,20 @@
+package com.dmoser.codyssey.vidar.metrics;
+
+import java.time.Duration;
+import java.util.Map;
+
+/**
+ * A snapshot of the measurements of one kind of command.
+ *
+ * @param kind        The kind of the commands.
+ * @param count       The number of finished commands.
+ * @param inFlight    The number of running commands.
+ * @param outputBytes The number of UTF-8 bytes the finished commands wrote to stdout and stderr.
+ * @param p50         The median duration.
+ * @param p99         The 99th percentile of the duration.
+ * @param total       The summed duration of all finished commands.
+ * @param exitCodes   The number of finished commands per exit code.
+ */
+public record CommandStats(String kind, long count, long inFlight, long outputBytes, Duration p50, Duration p99,
+                           Duration total, Map<Integer, Long> exitCodes) {
+}
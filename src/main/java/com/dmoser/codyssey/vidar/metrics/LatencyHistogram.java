@@ -0,0 +1,71 @@
+package com.dmoser.codyssey.vidar.metrics;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A lock free histogram of durations with logarithmic buckets.
+ * Every power of two is split into {@value #SUB_BUCKETS} buckets, so quantiles are accurate to about 9 percent.
+ */
+final class LatencyHistogram {
+
+    private static final int SUB_BUCKETS = 8;
+    private static final int BUCKETS = Long.SIZE * SUB_BUCKETS;
+    private static final double LOG_2 = Math.log(2);
+
+    private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+    private final LongAdder count = new LongAdder();
+    private final LongAdder sumNanos = new LongAdder();
+
+    void record(long nanos) {
+        buckets.incrementAndGet(index(nanos));
+        count.increment();
+        sumNanos.add(Math.max(0, nanos));
+    }
+
+    long count() {
+        return count.sum();
+    }
+
+    long sumNanos() {
+        return sumNanos.sum();
+    }
+
+    /**
+     * Returns the upper bound of the bucket containing the quantile.
+     *
+     * @param quantile The quantile between 0 and 1.
+     * @return The duration in nanoseconds, or 0 when nothing was recorded.
+     */
+    long quantileNanos(double quantile) {
+        long[] snapshot = new long[BUCKETS];
+        long total = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            snapshot[i] = buckets.get(i);
+            total += snapshot[i];
+        }
+        if (total == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(quantile * total));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += snapshot[i];
+            if (seen >= rank) {
+                return upperBound(i);
+            }
+        }
+        return upperBound(BUCKETS - 1);
+    }
+
+    static int index(long nanos) {
+        if (nanos <= 1) {
+            return 0;
+        }
+        return Math.min(BUCKETS - 1, (int) (Math.log(nanos) / LOG_2 * SUB_BUCKETS));
+    }
+
+    static long upperBound(int index) {
+        return (long) Math.ceil(Math.pow(2, (index + 1) / (double) SUB_BUCKETS));
+    }
+}
@@ -0,0 +1,40 @@
+package com.dmoser.codyssey.vidar.metrics;
+
+import java.time.Duration;
+
+/**
+ * Receives the measurements of the commands executed by the {@link com.dmoser.codyssey.vidar.service.SystemService}.
+ * Implementations are called concurrently from the threads executing the commands and must not block.
+ */
+public interface MetricsRegistry {
+
+    /**
+     * A registry dropping all measurements.
+     */
+    MetricsRegistry NONE = new MetricsRegistry() {
+        @Override
+        public void commandStarted(String kind) {
+        }
+
+        @Override
+        public void commandFinished(String kind, int exitCode, Duration duration, long outputBytes) {
+        }
+    };
+
+    /**
+     * Called before a command is started.
+     *
+     * @param kind The kind of the command, see {@link CommandKind#of(String)}.
+     */
+    void commandStarted(String kind);
+
+    /**
+     * Called after a command finished, timed out or failed to start.
+     *
+     * @param kind        The kind of the command, see {@link CommandKind#of(String)}.
+     * @param exitCode    The exit code of the command, or {@value CommandMetrics#EXIT_CODE_EXCEPTION} when it threw.
+     * @param duration    The wall time of the command.
+     * @param outputBytes The number of UTF-8 bytes captured from stdout and stderr.
+     */
+    void commandFinished(String kind, int exitCode, Duration duration, long outputBytes);
+}
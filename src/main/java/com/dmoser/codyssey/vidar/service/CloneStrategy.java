@@ -0,0 +1,25 @@
+package com.dmoser.codyssey.vidar.service;
+
+/**
+ * How a plugin repository is cloned.
+ */
+public enum CloneStrategy {
+    /**
+     * Clone the full history of all branches.
+     */
+    FULL,
+    /**
+     * Clone only the latest commit of the default branch.
+     */
+    SHALLOW,
+    /**
+     * Clone the latest commit without file contents and check out only the files compose needs: the files in the
+     * root of the repository plus the build contexts and env files of the services. Contents are fetched on demand.
+     */
+    SPARSE,
+    /**
+     * Clone the full history, taking all objects already known from a local mirror in the Vidar cache directory.
+     * The mirror is created or updated first and the clone does not depend on it afterwards.
+     */
+    REFERENCE
+}
@@ -0,0 +1,150 @@
+package com.dmoser.codyssey.vidar.service;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.regex.Pattern;
+
+/**
+ * Builds the argument vector of a command, so that the command can be executed without a shell.
+ * Every argument is passed to the program as it is, so names and paths never have to be quoted or escaped.
+ */
+public final class Command {
+
+    private static final Pattern SAFE = Pattern.compile("[A-Za-z0-9_@%+=:,./-]+");
+    private static final String PLACEHOLDER = "%s";
+
+    private final List<String> arguments = new ArrayList<>();
+
+    private Command() {
+    }
+
+    /**
+     * Starts a command.
+     *
+     * @param arguments The program and its first arguments.
+     * @return The command.
+     */
+    public static Command of(String... arguments) {
+        return new Command().args(arguments);
+    }
+
+    /**
+     * Creates a command from a template like `docker network rm %s`.
+     * The template is split into arguments at spaces, then every `%s` is replaced by the next value. The value stays a
+     * single argument, even when it contains spaces. A collection replacing a `%s` that is a whole argument is
+     * expanded into one argument per element.
+     *
+     * @param template The template. Arguments of the template can not contain spaces.
+     * @param values   The values of the placeholders.
+     * @return The command.
+     * @throws IllegalArgumentException When the number of values does not match the placeholders.
+     */
+    public static Command format(String template, Object... values) {
+        Command command = new Command();
+        int next = 0;
+        for (String token : template.strip().split(" +")) {
+            if (!token.contains(PLACEHOLDER)) {
+                command.arg(token);
+                continue;
+            }
+            if (next >= values.length) {
+                throw new IllegalArgumentException("Missing value for " + token + " in " + template);
+            }
+            Object value = values[next++];
+            if (token.equals(PLACEHOLDER) && value instanceof Collection<?> collection) {
+                collection.forEach(element -> command.arg(String.valueOf(element)));
+            } else if (token.indexOf(PLACEHOLDER) != token.lastIndexOf(PLACEHOLDER)) {
+                throw new IllegalArgumentException("More than one placeholder in " + token + " of " + template);
+            } else {
+                command.arg(token.replace(PLACEHOLDER, String.valueOf(value)));
+            }
+        }
+        if (next != values.length) {
+            throw new IllegalArgumentException("Too many values for " + template);
+        }
+        return command;
+    }
+
+    /**
+     * Appends an argument.
+     *
+     * @param argument The argument.
+     * @return This command.
+     */
+    public Command arg(String argument) {
+        arguments.add(argument);
+        return this;
+    }
+
+    /**
+     * Appends arguments.
+     *
+     * @param arguments The arguments.
+     * @return This command.
+     */
+    public Command args(String... arguments) {
+        return args(List.of(arguments));
+    }
+
+    /**
+     * Appends arguments.
+     *
+     * @param arguments The arguments.
+     * @return This command.
+     */
+    public Command args(Collection<String> arguments) {
+        this.arguments.addAll(arguments);
+        return this;
+    }
+
+    /**
+     * Returns the argument vector.
+     *
+     * @return The program followed by its arguments.
+     */
+    public List<String> argv() {
+        return List.copyOf(arguments);
+    }
+
+    /**
+     * Returns the command as the shell would read it.
+     *
+     * @return The arguments joined by spaces, quoted where needed.
+     */
+    @Override
+    public String toString() {
+        return join(arguments);
+    }
+
+    /**
+     * Joins an argument vector into a shell command, quoting only the arguments that need it.
+     * Used for logging and for executors that can only run shell commands.
+     *
+     * @param argv The program followed by its arguments.
+     * @return The shell command.
+     */
+    public static String join(List<String> argv) {
+        StringBuilder command = new StringBuilder();
+        for (String argument : argv) {
+            if (!command.isEmpty()) {
+                command.append(' ');
+            }
+            command.append(quote(argument));
+        }
+        return command.toString();
+    }
+
+    /**
+     * Quotes an argument as a single shell word. Arguments without special characters are kept as they are.
+     *
+     * @param argument The argument.
+     * @return The quoted argument.
+     */
+    static String quote(String argument) {
+        if (SAFE.matcher(argument).matches()) {
+            return argument;
+        }
+        return "'" + argument.replace("'", "'\\''") + "'";
+    }
+}
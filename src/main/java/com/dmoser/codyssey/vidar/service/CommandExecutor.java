@@ -0,0 +1,34 @@
+package com.dmoser.codyssey.vidar.service;
+
+import java.time.Duration;
+import java.util.List;
+
+/**
+ * Runs shell commands and argument vectors for the {@link SystemService}.
+ */
+public interface CommandExecutor {
+
+    /**
+     * Executes a shell command.
+     * The command must not read from stdin. Implementations kill the command when the deadline passes or the calling
+     * thread is interrupted.
+     *
+     * @param command The command, interpreted by /bin/sh.
+     * @param timeout The deadline of the command, or null to wait until it exits.
+     * @return The ProcessResult of the command.
+     */
+    ProcessResult execute(String command, Duration timeout);
+
+    /**
+     * Executes a program without interpreting its arguments.
+     * The default implementation quotes the arguments and runs them as a shell command, implementations that start
+     * processes themselves should start the program directly.
+     *
+     * @param command The program and its arguments.
+     * @param timeout The deadline of the command, or null to wait until it exits.
+     * @return The ProcessResult of the command.
+     */
+    default ProcessResult execute(List<String> command, Duration timeout) {
+        return execute(Command.join(command), timeout);
+    }
+}
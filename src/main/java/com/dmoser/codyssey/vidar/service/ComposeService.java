@@ -1,29 +1,67 @@
 package com.dmoser.codyssey.vidar.service;
 
-import java.io.FileInputStream;
-import java.io.FileOutputStream;
+import com.dmoser.codyssey.vidar.compose.ComposeModel;
+import com.dmoser.codyssey.vidar.compose.ComposeParser;
+import com.dmoser.codyssey.vidar.compose.EnvStore;
+import com.dmoser.codyssey.vidar.compose.InterpolationException;
+import com.dmoser.codyssey.vidar.compose.DependencyCycleException;
+import com.dmoser.codyssey.vidar.compose.ServiceDefinition;
+import com.dmoser.codyssey.vidar.compose.StartupPlan;
+import com.dmoser.codyssey.vidar.compose.VariableInfo;
+import com.dmoser.codyssey.vidar.compose.VariableReference;
+import com.dmoser.codyssey.vidar.compose.VariableSources;
+import com.dmoser.codyssey.vidar.docker.ContainerStateIndex;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
 import java.io.IOException;
-import java.nio.file.Files;
+import java.io.UncheckedIOException;
 import java.nio.file.Path;
+import java.time.Duration;
 import java.util.*;
-import java.util.regex.Matcher;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Predicate;
 import java.util.regex.Pattern;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
 public class ComposeService {
 
+    private static final Logger log = LogManager.getLogger(ComposeService.class);
+    private static final String LOG_DEBUG_PARSER_FALLBACK = "Could not parse compose file in {}, falling back to the compose CLI: {}";
+    private static final String LOG_WARN_UNREADABLE_VARIABLES = "Could not read the variables of compose file in {}: {}";
+    private static final String LOG_WARN_UNPARSABLE_STATUS = "Could not parse status line {} of compose file {}";
+    private static final String LOG_DEBUG_STARTING_WAVE = "Starting wave {} of {}: {}";
+    private static final String LOG_WARN_PREREQUISITES_DOWN = "Not starting service {}, because its dependencies {} are not up";
+    private static final String LOG_DEBUG_NOT_READY = "Services {} are not ready after {} checks, checking again in {}";
+    private static final String LOG_WARN_READINESS_DEADLINE = "Service {} did not become ready within {}, its state is {} {}";
+    private static final String LOG_WARN_STOPPED_WHILE_WAITING = "Service {} stopped with exit code {} before it became ready";
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+    private static final Executor READINESS_EXECUTOR = runnable -> Thread.ofVirtual().name("vidar-readiness").start(runnable);
+
     private static final String DOCKER_COMPOSE_LS_COMMAND = "docker compose --file %s config --services --no-interpolate";
     private static final String DOCKER_COMPOSE_UP_ALL_COMMAND = "docker compose --file %s up";
     private static final String DOCKER_COMPOSE_UP_MULTIPLE_COMMAND = "docker compose --file %s up %s";
     private static final String DOCKER_COMPOSE_DOWN_ALL_COMMAND = "docker compose --file %s down";
     private static final String DOCKER_COMPOSE_DOWN_MULTIPLE_COMMAND = "docker compose --file %s down %s";
     private static final String DOCKER_COMPOSE_STATE_COMMAND = "docker compose --file %s ps %s --all --format {{.State}}";
+    private static final String DOCKER_COMPOSE_UP_BATCH_COMMAND = "docker compose --file %s up -d --no-deps %s";
+    private static final String DOCKER_COMPOSE_UP_BUILD_BATCH_COMMAND = "docker compose --file %s up -d --no-deps --build %s";
+    private static final String DOCKER_COMPOSE_STATUS_COMMAND = "docker compose --file %s ps %s --all --format json";
     private static final String DOCKER_COMPOSE_CONFIG_COMMAND = "docker compose --file %s config --variables";
+    private static final String PROJECT_NAME_VARIABLE = "COMPOSE_PROJECT_NAME";
+    private static final Pattern PROJECT_NAME_INVALID = Pattern.compile("[^a-z0-9_-]");
+    private static final Pattern PROJECT_NAME_VALID = Pattern.compile("[a-z0-9][a-z0-9_-]*");
+    private static final String DOCKER_COMPOSE_LOGS_COMMAND = "docker compose --file %s logs --follow --timestamps --no-color --no-log-prefix --tail %s %s";
 
     final String path;
     SystemService systemService;
     EnvironmentService environmentService;
+    private volatile ContainerStateIndex index;
 
     /**
      * Constructor for testcases, so that SystemService and EnvironmentService can be mocked.
@@ -41,12 +79,22 @@ public class ComposeService {
         return new ComposeService(path, SystemService.get(), EnvironmentService.get());
     }
 
+    /**
+     * Uses an index of all container states. While the index is synced, {@link #state(String)} and
+     * {@link #stateAsync(String)} are answered from it instead of running the compose CLI.
+     *
+     * @param index The index, e.g. from {@link com.dmoser.codyssey.vidar.docker.Container#watch()}, or null to always
+     *              use the compose CLI.
+     */
+    public void watch(ContainerStateIndex index) {
+        this.index = index;
+    }
+
     /**
      * Starts all services defined in the Compose file
      */
     public void up() {
-        String execString = String.format(DOCKER_COMPOSE_UP_ALL_COMMAND, path + "/docker-compose.yml");
-        systemService.executeCommand(execString);
+        systemService.executeArgs(Command.format(DOCKER_COMPOSE_UP_ALL_COMMAND, composeFile()).argv());
     }
 
     /**
@@ -55,16 +103,26 @@ public class ComposeService {
      * @param serviceNames The names of the services.
      */
     public void up(String... serviceNames) {
-        String execString = String.format(DOCKER_COMPOSE_UP_MULTIPLE_COMMAND, path + "/docker-compose.yml", String.join(" ", serviceNames));
-        systemService.executeCommand(execString);
+        systemService.executeArgs(Command.format(DOCKER_COMPOSE_UP_MULTIPLE_COMMAND, composeFile(), List.of(serviceNames)).argv());
+    }
+
+    /**
+     * Start one or more services with a given name without blocking.
+     *
+     * @param serviceNames The names of the services.
+     * @return A future completing when the command returned.
+     */
+    public CompletableFuture<Void> upAsync(String... serviceNames) {
+        List<String> command = Command.format(DOCKER_COMPOSE_UP_MULTIPLE_COMMAND, composeFile(), List.of(serviceNames)).argv();
+        return systemService.executeArgsAsync(command).thenAccept(result -> {
+        });
     }
 
     /**
      * Stops all services defined in the Compose file.
      */
     public void down() {
-        String execString = String.format(DOCKER_COMPOSE_DOWN_ALL_COMMAND, path + "/docker-compose.yml");
-        systemService.executeCommand(execString);
+        systemService.executeArgs(Command.format(DOCKER_COMPOSE_DOWN_ALL_COMMAND, composeFile()).argv());
     }
 
     /**
@@ -73,8 +131,349 @@ public class ComposeService {
      * @param serviceNames The names of the services.
      */
     public void down(String... serviceNames) {
-        String execString = String.format(DOCKER_COMPOSE_DOWN_MULTIPLE_COMMAND, path + "/docker-compose.yml", String.join(" ", serviceNames));
-        systemService.executeCommand(execString);
+        systemService.executeArgs(Command.format(DOCKER_COMPOSE_DOWN_MULTIPLE_COMMAND, composeFile(), List.of(serviceNames)).argv());
+    }
+
+    /**
+     * Stops one or more services with a given name without blocking.
+     *
+     * @param serviceNames The names of the services.
+     * @return A future completing when the command returned.
+     */
+    public CompletableFuture<Void> downAsync(String... serviceNames) {
+        List<String> command = Command.format(DOCKER_COMPOSE_DOWN_MULTIPLE_COMMAND, composeFile(), List.of(serviceNames)).argv();
+        return systemService.executeArgsAsync(command).thenAccept(result -> {
+        });
+    }
+
+    /**
+     * Starts a batch of services detached with a single compose call and returns their status from a single status query.
+     * Dependencies of the services are not started.
+     *
+     * @param serviceNames The names of the services.
+     * @return The status of every requested service, keyed by service name.
+     */
+    public Map<String, ServiceStatus> upBatch(Collection<String> serviceNames) {
+        return upBatch(serviceNames, false);
+    }
+
+    /**
+     * Starts a batch of services detached with a single compose call and returns their status from a single status query.
+     * Running services are only recreated when their configuration or image changed.
+     *
+     * @param serviceNames The names of the services.
+     * @param build        true to rebuild the images of the services before starting them.
+     * @return The status of every requested service, keyed by service name.
+     */
+    public Map<String, ServiceStatus> upBatch(Collection<String> serviceNames, boolean build) {
+        if (serviceNames.isEmpty()) {
+            return Map.of();
+        }
+        String command = build ? DOCKER_COMPOSE_UP_BUILD_BATCH_COMMAND : DOCKER_COMPOSE_UP_BATCH_COMMAND;
+        systemService.executeArgs(Command.format(command, composeFile(), serviceNames).argv());
+        return status(serviceNames);
+    }
+
+    /**
+     * Starts a batch of services detached with a single compose call without blocking, and waits for them to become
+     * ready as described in {@link #awaitReady(Collection, ReadinessPolicy)}. Dependencies of the services are not started.
+     *
+     * @param serviceNames The names of the services.
+     * @param policy       How long and how often to check the services.
+     * @return A future completing with the last status of every requested service, keyed by service name.
+     */
+    public CompletableFuture<Map<String, ServiceStatus>> upDetached(Collection<String> serviceNames, ReadinessPolicy policy) {
+        if (serviceNames.isEmpty()) {
+            return CompletableFuture.completedFuture(Map.of());
+        }
+        List<String> command = Command.format(DOCKER_COMPOSE_UP_BATCH_COMMAND, composeFile(), serviceNames).argv();
+        return systemService.executeArgsAsync(command).thenCompose(result -> {
+            if (result.exitCode() != 0) {
+                // Compose could not create or start the containers, so waiting would only run into the deadlines
+                return CompletableFuture.supplyAsync(() -> status(serviceNames), READINESS_EXECUTOR);
+            }
+            return awaitReady(serviceNames, policy);
+        });
+    }
+
+    /**
+     * Waits for services to become ready without blocking. A service is ready when its container is healthy, or running
+     * when it has no healthcheck. All pending services are checked with a single status query, first right away and
+     * then with the exponential backoff of the policy. A service is no longer waited for when it became ready, its
+     * container stopped or its deadline passed. Cancelling the future stops the checks.
+     *
+     * @param serviceNames The names of the services.
+     * @param policy       How long and how often to check the services.
+     * @return A future completing with the last status of every requested service, keyed by service name.
+     * Services that are not {@link ServiceStatus#isReady() ready} stopped or passed their deadline.
+     */
+    public CompletableFuture<Map<String, ServiceStatus>> awaitReady(Collection<String> serviceNames, ReadinessPolicy policy) {
+        return awaitStatus(serviceNames, policy, ServiceStatus::isReady);
+    }
+
+    /**
+     * Waits without blocking until every service reached a status or passed its deadline, checking like
+     * {@link #awaitReady(Collection, ReadinessPolicy)}. Services that stopped are no longer waited for either.
+     */
+    private CompletableFuture<Map<String, ServiceStatus>> awaitStatus(Collection<String> serviceNames, ReadinessPolicy policy,
+                                                                      Predicate<ServiceStatus> reached) {
+        if (serviceNames.isEmpty()) {
+            return CompletableFuture.completedFuture(Map.of());
+        }
+        Map<String, ServiceStatus> statusMap = new LinkedHashMap<>();
+        serviceNames.forEach(service -> statusMap.put(service, ServiceStatus.none(service)));
+        CompletableFuture<Map<String, ServiceStatus>> future = new CompletableFuture<>();
+        Set<String> pending = new LinkedHashSet<>(serviceNames);
+        long start = System.nanoTime();
+        READINESS_EXECUTOR.execute(() -> checkReadiness(statusMap, pending, policy, reached, start, 1, future));
+        return future;
+    }
+
+    /**
+     * Does one round of readiness checks and schedules the next round while services are pending.
+     * Rounds run one after another, so the maps need no synchronization.
+     */
+    private void checkReadiness(Map<String, ServiceStatus> statusMap, Set<String> pending, ReadinessPolicy policy,
+                                Predicate<ServiceStatus> reached, long start, int attempt, CompletableFuture<Map<String, ServiceStatus>> future) {
+        if (future.isDone()) {
+            return;
+        }
+        try {
+            Map<String, ServiceStatus> current = status(pending);
+            Duration elapsed = Duration.ofNanos(System.nanoTime() - start);
+            for (ServiceStatus status : current.values()) {
+                statusMap.put(status.service(), status);
+                if (reached.test(status)) {
+                    pending.remove(status.service());
+                } else if (status.isStopped()) {
+                    log.warn(LOG_WARN_STOPPED_WHILE_WAITING, status.service(), status.exitCode());
+                    pending.remove(status.service());
+                } else if (elapsed.compareTo(policy.deadline(status.service())) >= 0) {
+                    log.warn(LOG_WARN_READINESS_DEADLINE, status.service(), policy.deadline(status.service()), status.state(), status.health());
+                    pending.remove(status.service());
+                }
+            }
+            if (pending.isEmpty()) {
+                future.complete(Collections.unmodifiableMap(statusMap));
+                return;
+            }
+            // Never sleep past the next deadline
+            Duration untilDeadline = pending.stream().map(policy::deadline).min(Comparator.naturalOrder()).orElseThrow().minus(elapsed);
+            Duration delay = policy.delay(attempt);
+            if (untilDeadline.compareTo(delay) < 0) {
+                delay = untilDeadline.isNegative() ? Duration.ZERO : untilDeadline;
+            }
+            log.debug(LOG_DEBUG_NOT_READY, pending, attempt, delay);
+            CompletableFuture.delayedExecutor(delay.toNanos(), TimeUnit.NANOSECONDS, READINESS_EXECUTOR)
+                    .execute(() -> checkReadiness(statusMap, pending, policy, reached, start, attempt + 1, future));
+        } catch (RuntimeException e) {
+            future.completeExceptionally(e);
+        }
+    }
+
+    /**
+     * Plans to start services together with everything they depend on, including services of other included files.
+     *
+     * @param serviceNames The names of the services.
+     * @return The plan.
+     * @throws IOException              When the compose file could not be read or is not valid.
+     * @throws DependencyCycleException When the services depend on each other in a cycle.
+     */
+    public StartupPlan startupPlan(Collection<String> serviceNames) throws IOException {
+        return StartupPlan.of(model().services(), serviceNames);
+    }
+
+    /**
+     * Starts services together with everything they depend on in waves of the {@link #startupPlan(Collection)}, waiting
+     * for the `depends_on` conditions with the {@link ReadinessPolicy#defaults() default policy}.
+     *
+     * @param serviceNames The names of the services.
+     * @return The status of every planned service after starting, keyed by service name in start order.
+     * @throws IOException              When the compose file could not be read or is not valid.
+     * @throws DependencyCycleException When the services depend on each other in a cycle. Nothing is started then.
+     * @see #upInWaves(Collection, ReadinessPolicy)
+     */
+    public Map<String, ServiceStatus> upInWaves(Collection<String> serviceNames) throws IOException {
+        return upInWaves(serviceNames, ReadinessPolicy.defaults());
+    }
+
+    /**
+     * Starts services together with everything they depend on in waves of the {@link #startupPlan(Collection)}.
+     * Every wave is started detached with a single compose call once the previous waves are up, so the services of a
+     * wave start concurrently. As the waves bypass the `depends_on` handling of compose, its conditions are waited for
+     * here: before a wave starts, prerequisites with `service_healthy` are awaited until they are
+     * {@link ServiceStatus#isReady() ready} and prerequisites with `service_completed_successfully` until they exited.
+     * Services whose dependencies do not meet their conditions are not started.
+     *
+     * @param serviceNames The names of the services.
+     * @param policy       How long and how often to check prerequisites with a condition.
+     * @return The status of every planned service after starting, keyed by service name in start order.
+     * @throws IOException              When the compose file could not be read or is not valid.
+     * @throws DependencyCycleException When the services depend on each other in a cycle. Nothing is started then.
+     */
+    public Map<String, ServiceStatus> upInWaves(Collection<String> serviceNames, ReadinessPolicy policy) throws IOException {
+        StartupPlan plan = startupPlan(serviceNames);
+        Map<String, ServiceStatus> statusMap = new LinkedHashMap<>();
+        for (int i = 0; i < plan.waves().size(); i++) {
+            awaitConditions(plan, plan.waves().get(i), statusMap, policy);
+            List<String> ready = new ArrayList<>();
+            for (String service : plan.waves().get(i)) {
+                Set<String> dependencies = plan.prerequisites().get(service);
+                if (dependencies.stream().allMatch(dependency -> meets(statusMap.get(dependency), plan.condition(service, dependency)))) {
+                    ready.add(service);
+                } else {
+                    log.warn(LOG_WARN_PREREQUISITES_DOWN, service, dependencies);
+                    statusMap.put(service, ServiceStatus.none(service));
+                }
+            }
+            log.debug(LOG_DEBUG_STARTING_WAVE, i + 1, plan.waves().size(), ready);
+            statusMap.putAll(upBatch(ready));
+        }
+        return statusMap;
+    }
+
+    /**
+     * Waits for the started prerequisites of a wave whose dependents need them healthy or completed.
+     * Both kinds are checked at the same time, each with a single status query per round.
+     */
+    private void awaitConditions(StartupPlan plan, List<String> wave, Map<String, ServiceStatus> statusMap, ReadinessPolicy policy) {
+        Set<String> healthy = new TreeSet<>();
+        Set<String> completed = new TreeSet<>();
+        for (String service : wave) {
+            plan.conditions().get(service).forEach((dependency, condition) -> {
+                ServiceStatus status = statusMap.get(dependency);
+                if (status.state().equals(ServiceStatus.STATE_NONE)) {
+                    return;
+                }
+                if (condition.equals(ServiceDefinition.CONDITION_HEALTHY) && !status.isReady()) {
+                    healthy.add(dependency);
+                } else if (condition.equals(ServiceDefinition.CONDITION_COMPLETED_SUCCESSFULLY) && !status.isStopped()) {
+                    completed.add(dependency);
+                }
+            });
+        }
+        CompletableFuture<Map<String, ServiceStatus>> ready = awaitStatus(healthy, policy, ServiceStatus::isReady);
+        CompletableFuture<Map<String, ServiceStatus>> stopped = awaitStatus(completed, policy, ServiceStatus::isStopped);
+        statusMap.putAll(ready.join());
+        statusMap.putAll(stopped.join());
+    }
+
+    private static boolean meets(ServiceStatus status, String condition) {
+        return switch (condition) {
+            case ServiceDefinition.CONDITION_HEALTHY -> status.isReady();
+            case ServiceDefinition.CONDITION_COMPLETED_SUCCESSFULLY -> status.isCompleted();
+            default -> status.isUp();
+        };
+    }
+
+    /**
+     * Stops a batch of services with a single compose call and returns their status from a single status query.
+     *
+     * @param serviceNames The names of the services.
+     * @return The status of every requested service, keyed by service name.
+     */
+    public Map<String, ServiceStatus> downBatch(Collection<String> serviceNames) {
+        if (serviceNames.isEmpty()) {
+            return Map.of();
+        }
+        systemService.executeArgs(Command.format(DOCKER_COMPOSE_DOWN_MULTIPLE_COMMAND, composeFile(), serviceNames).argv());
+        return status(serviceNames);
+    }
+
+    /**
+     * Returns the status of a batch of services with a single status query.
+     *
+     * @param serviceNames The names of the services.
+     * @return The status of every requested service, keyed by service name. Services without a container have the state none.
+     */
+    public Map<String, ServiceStatus> status(Collection<String> serviceNames) {
+        Map<String, ServiceStatus> statusMap = new LinkedHashMap<>();
+        serviceNames.forEach(service -> statusMap.put(service, ServiceStatus.none(service)));
+        if (serviceNames.isEmpty()) {
+            return statusMap;
+        }
+
+        var result = systemService.executeArgs(Command.format(DOCKER_COMPOSE_STATUS_COMMAND, composeFile(), serviceNames).argv());
+        if (result.exitCode() != 0) {
+            return statusMap;
+        }
+        for (ServiceStatus status : parseStatus(result.content())) {
+            if (statusMap.containsKey(status.service())) {
+                statusMap.put(status.service(), status);
+            }
+        }
+        return statusMap;
+    }
+
+    /**
+     * Parses the output of `docker compose ps --format json`.
+     * Newer compose versions print one object per line, older ones print a single array.
+     */
+    private List<ServiceStatus> parseStatus(String content) {
+        List<ServiceStatus> statusList = new ArrayList<>();
+        for (String line : content.split("\n")) {
+            if (line.isBlank()) {
+                continue;
+            }
+            try {
+                JsonNode node = MAPPER.readTree(line);
+                if (node.isArray()) {
+                    node.forEach(element -> statusList.add(toStatus(element)));
+                } else {
+                    statusList.add(toStatus(node));
+                }
+            } catch (IOException e) {
+                log.warn(LOG_WARN_UNPARSABLE_STATUS, line, path);
+            }
+        }
+        return statusList;
+    }
+
+    private static ServiceStatus toStatus(JsonNode node) {
+        return new ServiceStatus(
+                node.path("Service").asText(""),
+                node.path("Name").asText(""),
+                node.path("State").asText(ServiceStatus.STATE_NONE),
+                node.path("Health").asText(""),
+                node.path("ExitCode").asInt(0));
+    }
+
+    /**
+     * Follows the logs of a service, starting with its last {@value LogFollower#DEFAULT_BUFFER_SIZE} lines.
+     * Lines are dropped for subscribers that fall behind.
+     *
+     * @param serviceName The name of the service.
+     * @return The started follower. It has to be closed to stop following.
+     * @throws java.io.UncheckedIOException When the compose CLI could not be started.
+     */
+    public LogFollower logs(String serviceName) {
+        return logs(serviceName, LogFollower.DEFAULT_BUFFER_SIZE, LogFollower.OverflowPolicy.DROP);
+    }
+
+    /**
+     * Follows the logs of a service, starting with its last lines.
+     * The lines are streamed from the compose CLI, so following many services keeps memory bounded by the buffer sizes.
+     *
+     * @param serviceName The name of the service.
+     * @param bufferSize  The number of lines kept for tailing, which is also the number of earlier lines that are read.
+     * @param policy      What happens when a subscriber falls behind.
+     * @return The started follower. It has to be closed to stop following.
+     * @throws java.io.UncheckedIOException When the compose CLI could not be started.
+     */
+    public LogFollower logs(String serviceName, int bufferSize, LogFollower.OverflowPolicy policy) {
+        List<String> command = Command.format(DOCKER_COMPOSE_LOGS_COMMAND, composeFile(), bufferSize, serviceName).argv();
+        return LogFollower.start(serviceName, command, bufferSize, policy);
+    }
+
+    /**
+     * Returns the parsed model of the compose file. The model is cached until the compose file or one of the files it
+     * includes changes.
+     *
+     * @return The model.
+     * @throws IOException When the compose file could not be read or is not valid.
+     */
+    public ComposeModel model() throws IOException {
+        return ComposeParser.get().parse(Path.of(path, "docker-compose.yml"));
     }
 
     /**
@@ -83,8 +482,12 @@ public class ComposeService {
      * @return A set containing the names of all services.
      */
     public Set<String> ls() {
-        String execString = String.format(DOCKER_COMPOSE_LS_COMMAND, path + "/docker-compose.yml");
-        var result = systemService.executeCommand(execString)
+        try {
+            return new HashSet<>(model().serviceNames());
+        } catch (IOException e) {
+            log.debug(LOG_DEBUG_PARSER_FALLBACK, path, e.getMessage());
+        }
+        var result = systemService.executeArgs(Command.format(DOCKER_COMPOSE_LS_COMMAND, composeFile()).argv())
                 .content()
                 .split("\n");
         return Stream.of(result).filter(s -> !s.isBlank()).collect(Collectors.toSet());
@@ -98,8 +501,75 @@ public class ComposeService {
      * @return The state of the service. Either running, exited, none.
      */
     public String state(String serviceName) {
-        String execString = String.format(DOCKER_COMPOSE_STATE_COMMAND, path + "/docker-compose.yml", serviceName);
-        var result = systemService.executeCommand(execString);
+        Optional<String> indexed = indexedState(serviceName);
+        if (indexed.isPresent()) {
+            return indexed.get();
+        }
+        return toState(systemService.executeArgs(Command.format(DOCKER_COMPOSE_STATE_COMMAND, composeFile(), serviceName).argv()));
+    }
+
+    /**
+     * Returns the state of a service without blocking.
+     *
+     * @param serviceName The name of the service.
+     * @return A future completing with the state of the service. Either running, exited, none.
+     */
+    public CompletableFuture<String> stateAsync(String serviceName) {
+        Optional<String> indexed = indexedState(serviceName);
+        if (indexed.isPresent()) {
+            return CompletableFuture.completedFuture(indexed.get());
+        }
+        List<String> command = Command.format(DOCKER_COMPOSE_STATE_COMMAND, composeFile(), serviceName).argv();
+        return systemService.executeArgsAsync(command).thenApply(ComposeService::toState);
+    }
+
+    /**
+     * Looks up the state of a service in the index. Empty when there is no synced index or the project name is unknown.
+     */
+    private Optional<String> indexedState(String serviceName) {
+        ContainerStateIndex stateIndex = index;
+        if (stateIndex == null || !stateIndex.isSynced()) {
+            return Optional.empty();
+        }
+        return projectName().map(project -> stateIndex.state(project, serviceName).orElse(ServiceStatus.STATE_NONE));
+    }
+
+    /**
+     * Resolves the compose project name like the compose CLI: the variable COMPOSE_PROJECT_NAME from the environment
+     * or the .env file, the interpolated top-level `name` element or the normalized name of the directory.
+     * Empty when the name can not be resolved, so the caller falls back to the compose CLI.
+     */
+    private Optional<String> projectName() {
+        String name;
+        try {
+            VariableSources sources = new VariableSources()
+                    .with(VariableSources.ENVIRONMENT, toMap(systemService.getEnv()))
+                    .with(VariableSources.DOT_ENV, toMap(getEnv()));
+            name = sources.value(PROJECT_NAME_VARIABLE);
+            if (name == null || name.isEmpty()) {
+                name = sources.interpolate(model().name());
+            }
+        } catch (IOException | UncheckedIOException | InterpolationException e) {
+            log.debug(LOG_DEBUG_PARSER_FALLBACK, path, e.getMessage());
+            return Optional.empty();
+        }
+        if (name.isEmpty()) {
+            Path fileName = Path.of(path).toAbsolutePath().normalize().getFileName();
+            if (fileName == null) {
+                return Optional.empty();
+            }
+            name = PROJECT_NAME_INVALID.matcher(fileName.toString().toLowerCase(Locale.ROOT)).replaceAll("")
+                    .replaceFirst("^[_-]+", "");
+        }
+        // Compose rejects other names, its answer can not be predicted then
+        return PROJECT_NAME_VALID.matcher(name).matches() ? Optional.of(name) : Optional.empty();
+    }
+
+    private static Map<String, String> toMap(Set<Map.Entry<String, String>> entries) {
+        return entries.stream().collect(Collectors.toMap(Map.Entry::getKey, Map.Entry::getValue, (a, b) -> b));
+    }
+
+    private static String toState(CommandResult result) {
         if (result.exitCode() != 0) {
             return "none";
         }
@@ -107,56 +577,85 @@ public class ComposeService {
     }
 
     public String config() {
-        String execString = String.format(DOCKER_COMPOSE_CONFIG_COMMAND, path + "/docker-compose.yml");
-        var result = systemService.executeCommand(execString);
+        var result = systemService.executeArgs(Command.format(DOCKER_COMPOSE_CONFIG_COMMAND, composeFile()).argv());
         return result.content();
     }
 
     /**
-     * Get a list of all used variables inside this compose file.
+     * Get a list of all used variables inside this compose file and the files it includes.
      *
-     * @return
+     * @return The sorted names of the variables.
      */
     public Set<String> getVariables() {
-        Set<String> varSet = new TreeSet<>();
-        Pattern pattern = Pattern.compile("\\$[a-zA-Z_]+[a-zA-Z0-9_]*");
+        return variableReferences().stream()
+                .map(VariableReference::name)
+                .collect(Collectors.toCollection(TreeSet::new));
+    }
+
+    /**
+     * Returns all variable references inside this compose file and the files it includes, extends or overrides.
+     *
+     * @return The references. Empty when the compose file could not be read.
+     */
+    public List<VariableReference> variableReferences() {
         try {
-            String composeFile = Files.readString(Path.of(path + "/docker-compose.yml"));
-            Matcher matcher = pattern.matcher(composeFile);
-            while (matcher.find()) {
-                varSet.add(matcher.group().replace("$", ""));
-            }
-        } catch (Exception ignored) {
+            return ComposeParser.get().variableReferences(Path.of(path, "docker-compose.yml"));
+        } catch (IOException e) {
+            log.warn(LOG_WARN_UNREADABLE_VARIABLES, path, e.getMessage());
+            return List.of();
         }
-        return varSet;
+    }
 
+    /**
+     * Resolves all variables used by this compose file the way compose would, without invoking the compose CLI.
+     *
+     * @param sources The layered sources of the variable values.
+     * @return The variables keyed and sorted by name.
+     */
+    public Map<String, VariableInfo> variables(VariableSources sources) {
+        return sources.resolve(variableReferences());
     }
 
 
-    public Set<Map.Entry<String, String>> getEnv() {
-        Set<Map.Entry<String, String>> entrySet = new HashSet<>();
-        Properties envFile = new Properties();
-        try {
-            envFile.load(new FileInputStream(path + "/.env"));
-        } catch (IOException e) {
-            throw new RuntimeException(e);
-        }
+    /**
+     * Returns the store of the .env file of this compose file.
+     *
+     * @return The store.
+     */
+    public EnvStore envStore() {
+        return EnvStore.of(Path.of(path, ".env"));
+    }
 
-        envFile.forEach((key, value) -> entrySet.add(
-                Map.entry(key.toString(), value.toString())
-        ));
-        return entrySet;
+    /**
+     * Returns all variables of the .env file.
+     *
+     * @return The variables. Empty when there is no .env file.
+     */
+    public Set<Map.Entry<String, String>> getEnv() {
+        return envStore().values().entrySet();
     }
 
+    /**
+     * Sets a variable inside the .env file.
+     *
+     * @param key   The name of the variable.
+     * @param value The value of the variable.
+     */
     public void setEnv(String key, String value) {
-        Properties envFile = new Properties();
-        try {
-            envFile.load(new FileInputStream(path + "/.env"));
-            envFile.setProperty(key, value);
-            envFile.store(new FileOutputStream(path + "/.env"), "test");
-        } catch (IOException e) {
-            throw new RuntimeException(e);
-        }
+        envStore().set(key, value);
+    }
+
+    /**
+     * Sets many variables inside the .env file with a single write.
+     *
+     * @param variables The variables.
+     */
+    public void setEnv(Map<String, String> variables) {
+        envStore().setAll(variables);
+    }
+
+    private String composeFile() {
+        return path + "/docker-compose.yml";
     }
 
     /**
@@ -166,7 +665,7 @@ public class ComposeService {
      * @return
      */
     public ComposeService child(String childPath) {
-        return new ComposeService(this.path + "/" + path, this.systemService, this.environmentService);
+        return new ComposeService(this.path + "/" + childPath, this.systemService, this.environmentService);
     }
 
 }
@@ -1,31 +1,92 @@
 package com.dmoser.codyssey.vidar.service;
 
 import com.dmoser.codyssey.vidar.Constants;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
+import java.io.File;
+import java.io.IOException;
 import java.lang.module.ModuleDescriptor;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
 
+/**
+ * Checks the tools Vidar depends on.
+ * Every probe runs at most once per instance and probes run concurrently. The shared instance of {@link #get()}
+ * memoizes the probes for the whole JVM and can persist them in a cache file, keyed by the paths, modification times
+ * and sizes of the probed binaries.
+ */
 public class EnvironmentService {
 
     private static final String LOG_WARN_DOCKER_NOT_INSTALLED = "Could not find docker command";
     private static final String LOG_WARN_GIT_NOT_INSTALLED = "Could not find git command";
     private static final String LOG_WARN_DOCKER_COMPOSE_WRONG_VERSION = "Docker compose should have version {}, but has {}";
     private static final String LOG_INFO_ENVIRONMENT_VALID = "Environment check showed no problems. You're ready to go!";
+    private static final String LOG_DEBUG_PROBE_CACHED = "Using cached result of {}";
+    private static final String LOG_WARN_CACHE_NOT_WRITTEN = "Could not write environment cache {}: {}";
 
     private static final String DOCKER_TEST_COMMAND = "docker --version";
     private static final String GIT_TEST_COMMAND = "git --version";
     private static final String DOCKER_COMPOSE_TEST_COMMAND = "docker compose version --short";
+
+    /**
+     * System property to persist the probe results of the shared instance in the Vidar cache directory.
+     */
+    public static final String CACHE_PROPERTY = "vidar.environment.cache";
+    private static final String CACHE_FILE = "environment.json";
+
+    private static final String[] COMPOSE_PLUGIN_DIRECTORIES = {
+            "/usr/local/lib/docker/cli-plugins", "/usr/local/libexec/docker/cli-plugins",
+            "/usr/lib/docker/cli-plugins", "/usr/libexec/docker/cli-plugins"};
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+    private static final TypeReference<Map<String, CachedProbe>> CACHE_TYPE = new TypeReference<>() {
+    };
+    private static final Executor PROBE_EXECUTOR = runnable -> Thread.ofVirtual().name("vidar-probe").start(runnable);
+    private static EnvironmentService instance;
+
     private final SystemService systemService;
+    private final Path cacheFile;
+    private final Map<String, CompletableFuture<CommandResult>> probes = new ConcurrentHashMap<>();
     Logger log = LogManager.getLogger(EnvironmentService.class);
 
 
     public EnvironmentService(SystemService systemService) {
+        this(systemService, null);
+    }
+
+    /**
+     * Create an EnvironmentService that persists its probes.
+     *
+     * @param systemService The SystemService used for the probes.
+     * @param cacheFile     The file the probe results are persisted in, or null to not persist them.
+     */
+    EnvironmentService(SystemService systemService, Path cacheFile) {
         this.systemService = systemService;
+        this.cacheFile = cacheFile;
     }
 
-    public static EnvironmentService get() {
-        return new EnvironmentService(SystemService.get());
+    /**
+     * Get the shared EnvironmentService, so that every probe runs only once per JVM.
+     * The probes are persisted when the {@value CACHE_PROPERTY} system property is true.
+     *
+     * @return The shared instance.
+     */
+    public static synchronized EnvironmentService get() {
+        if (instance == null) {
+            Path cacheFile = Boolean.getBoolean(CACHE_PROPERTY) ? SystemService.cacheDirectory().resolve(CACHE_FILE) : null;
+            instance = new EnvironmentService(SystemService.get(), cacheFile);
+        }
+        return instance;
     }
 
     /**
@@ -34,21 +95,34 @@ public class EnvironmentService {
      * @return True when all dependencies are installed.
      */
     public boolean validateEnvironment() {
-        if (!isDockerInstalled()) {
-            log.warn(LOG_WARN_DOCKER_NOT_INSTALLED);
-            return false;
-        }
-        if (!isDockerComposeMinimumVersion()) {
-            log.warn(LOG_WARN_DOCKER_COMPOSE_WRONG_VERSION);
-            return false;
-        }
+        return validateEnvironmentAsync().join();
+    }
 
-        if (!isGitInstalled()) {
-            log.warn(LOG_WARN_DOCKER_COMPOSE_WRONG_VERSION);
-            return false;
-        }
-        log.info(LOG_INFO_ENVIRONMENT_VALID);
-        return true;
+    /**
+     * Checks if all environment dependencies are installed without blocking. All probes are started at once.
+     *
+     * @return A future completing with true when all dependencies are installed.
+     */
+    public CompletableFuture<Boolean> validateEnvironmentAsync() {
+        CompletableFuture<CommandResult> docker = probe(DOCKER_TEST_COMMAND);
+        CompletableFuture<CommandResult> compose = probe(DOCKER_COMPOSE_TEST_COMMAND);
+        CompletableFuture<CommandResult> git = probe(GIT_TEST_COMMAND);
+        return CompletableFuture.allOf(docker, compose, git).thenApply(ignored -> {
+            if (!isDockerInstalled()) {
+                log.warn(LOG_WARN_DOCKER_NOT_INSTALLED);
+                return false;
+            }
+            if (!isDockerComposeMinimumVersion()) {
+                log.warn(LOG_WARN_DOCKER_COMPOSE_WRONG_VERSION, Constants.COMPOSE_VERSION, compose.join().content());
+                return false;
+            }
+            if (!isGitInstalled()) {
+                log.warn(LOG_WARN_GIT_NOT_INSTALLED);
+                return false;
+            }
+            log.info(LOG_INFO_ENVIRONMENT_VALID);
+            return true;
+        });
     }
 
     /**
@@ -76,13 +150,13 @@ public class EnvironmentService {
      * @return true if Docker compose has the minimal required version. false otherwise.
      */
     public boolean isDockerComposeMinimumVersion() {
-
-        if (!isCommandInstalled(DOCKER_COMPOSE_TEST_COMMAND)) {
+        CommandResult result = probe(DOCKER_COMPOSE_TEST_COMMAND).join();
+        if (result.exitCode() != 0) {
             return false;
         }
 
         var minimumVersion = ModuleDescriptor.Version.parse(Constants.COMPOSE_VERSION);
-        var currentVersion = ModuleDescriptor.Version.parse(systemService.executeCommand(DOCKER_COMPOSE_TEST_COMMAND).content());
+        var currentVersion = ModuleDescriptor.Version.parse(result.content());
 
         return currentVersion.compareTo(minimumVersion) >= 0;
 
@@ -95,8 +169,130 @@ public class EnvironmentService {
      * @return true if the command is installed and the command succeeds; false otherwise.
      */
     private boolean isCommandInstalled(String command) {
-        return systemService.executeCommand(command).exitCode() == 0;
+        return probe(command).join().exitCode() == 0;
     }
 
+    /**
+     * Starts a probe on a virtual thread, unless it was started before.
+     */
+    private CompletableFuture<CommandResult> probe(String command) {
+        return probes.computeIfAbsent(command, key -> CompletableFuture.supplyAsync(() -> runProbe(command), PROBE_EXECUTOR));
+    }
 
+    private CommandResult runProbe(String command) {
+        if (cacheFile == null) {
+            return systemService.executeCommand(command);
+        }
+        String binaryKey = binaryKey(command);
+        CachedProbe cached = readCache().get(command);
+        if (cached != null && cached.binaryKey().equals(binaryKey)) {
+            log.debug(LOG_DEBUG_PROBE_CACHED, command);
+            return new CommandResult(cached.content(), cached.exitCode());
+        }
+        CommandResult result = systemService.executeCommand(command);
+        // A failed probe may be transient, like a timeout, so it is run again next time
+        if (result.exitCode() == 0) {
+            writeCache(command, new CachedProbe(binaryKey, result.content(), result.exitCode()));
+        }
+        return result;
+    }
+
+    /**
+     * Identifies the binaries a probe depends on by their path, modification time and size.
+     */
+    static String binaryKey(String command) {
+        StringBuilder key = new StringBuilder(stamp(findOnPath(command.split(" ")[0])));
+        if (command.equals(DOCKER_COMPOSE_TEST_COMMAND)) {
+            key.append(';').append(stamp(findComposePlugin()));
+        }
+        return key.toString();
+    }
+
+    private static Path findOnPath(String binary) {
+        String pathVariable = System.getenv("PATH");
+        if (pathVariable == null) {
+            return null;
+        }
+        for (String directory : pathVariable.split(File.pathSeparator)) {
+            if (directory.isEmpty()) {
+                continue;
+            }
+            Path candidate = Path.of(directory, binary);
+            if (Files.isExecutable(candidate)) {
+                return candidate;
+            }
+        }
+        return null;
+    }
+
+    private static Path findComposePlugin() {
+        String dockerConfig = System.getenv("DOCKER_CONFIG");
+        Path userPlugins = dockerConfig != null && !dockerConfig.isBlank()
+                ? Path.of(dockerConfig, "cli-plugins")
+                : Path.of(System.getProperty("user.home"), ".docker", "cli-plugins");
+        Path candidate = userPlugins.resolve("docker-compose");
+        if (Files.isExecutable(candidate)) {
+            return candidate;
+        }
+        for (String directory : COMPOSE_PLUGIN_DIRECTORIES) {
+            candidate = Path.of(directory, "docker-compose");
+            if (Files.isExecutable(candidate)) {
+                return candidate;
+            }
+        }
+        return null;
+    }
+
+    private static String stamp(Path binary) {
+        if (binary == null) {
+            return "missing";
+        }
+        try {
+            Path realPath = binary.toRealPath();
+            BasicFileAttributes attributes = Files.readAttributes(realPath, BasicFileAttributes.class);
+            return realPath + "@" + attributes.lastModifiedTime().toMillis() + "/" + attributes.size();
+        } catch (IOException e) {
+            return "missing";
+        }
+    }
+
+    private Map<String, CachedProbe> readCache() {
+        try {
+            if (Files.exists(cacheFile)) {
+                return MAPPER.readValue(cacheFile.toFile(), CACHE_TYPE);
+            }
+        } catch (IOException ignored) {
+            // A broken cache is ignored and overwritten
+        }
+        return Map.of();
+    }
+
+    private void writeCache(String command, CachedProbe probe) {
+        synchronized (EnvironmentService.class) {
+            try {
+                Map<String, CachedProbe> cache = new HashMap<>(readCache());
+                cache.put(command, probe);
+                Files.createDirectories(cacheFile.getParent());
+                Path temp = Files.createTempFile(cacheFile.getParent(), cacheFile.getFileName().toString(), ".tmp");
+                try {
+                    MAPPER.writeValue(temp.toFile(), cache);
+                    Files.move(temp, cacheFile, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+                } finally {
+                    Files.deleteIfExists(temp);
+                }
+            } catch (IOException e) {
+                log.warn(LOG_WARN_CACHE_NOT_WRITTEN, cacheFile, e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * A persisted probe result.
+     *
+     * @param binaryKey The paths, modification times and sizes of the probed binaries.
+     * @param content   The output of the probe.
+     * @param exitCode  The exit code of the probe.
+     */
+    record CachedProbe(String binaryKey, String content, int exitCode) {
+    }
 }
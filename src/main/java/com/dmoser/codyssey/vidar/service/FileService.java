@@ -0,0 +1,137 @@
+package com.dmoser.codyssey.vidar.service;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.NotDirectoryException;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Used for everything that has to do with the filesystem. Works in-process with NIO instead of forking commands.
+ */
+public class FileService {
+
+    private static final FileService instance = new FileService();
+
+    FileService() {
+    }
+
+    public static FileService get() {
+        return instance;
+    }
+
+    /**
+     * Lists the entries of a directory. Hidden entries are skipped, like `ls` does.
+     *
+     * @param directory The directory.
+     * @return The sorted names of the entries. Empty when the directory does not exist.
+     */
+    public Set<String> list(Path directory) {
+        return list(directory, false);
+    }
+
+    /**
+     * Lists the subdirectories of a directory. Hidden directories are skipped.
+     *
+     * @param directory The directory.
+     * @return The sorted names of the subdirectories. Empty when the directory does not exist.
+     */
+    public Set<String> listDirectories(Path directory) {
+        return list(directory, true);
+    }
+
+    private Set<String> list(Path directory, boolean directoriesOnly) {
+        Set<String> names = new TreeSet<>();
+        try (DirectoryStream<Path> entries = Files.newDirectoryStream(directory,
+                entry -> !entry.getFileName().toString().startsWith(".") && (!directoriesOnly || Files.isDirectory(entry)))) {
+            entries.forEach(entry -> names.add(entry.getFileName().toString()));
+        } catch (NoSuchFileException | NotDirectoryException e) {
+            return names;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return names;
+    }
+
+    /**
+     * Deletes a file or a directory with everything inside. The subtrees of a directory are deleted in parallel.
+     * Symbolic links are deleted, not followed. Does nothing when the path does not exist.
+     *
+     * @param path The file or directory.
+     * @throws IOException When something could not be deleted.
+     */
+    public void delete(Path path) throws IOException {
+        if (!Files.isDirectory(path, LinkOption.NOFOLLOW_LINKS)) {
+            Files.deleteIfExists(path);
+            return;
+        }
+        List<Path> children = new ArrayList<>();
+        try (DirectoryStream<Path> entries = Files.newDirectoryStream(path)) {
+            entries.forEach(children::add);
+        } catch (NoSuchFileException e) {
+            return;
+        }
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            List<Future<Void>> futures = new ArrayList<>();
+            for (Path child : children) {
+                futures.add(executor.submit(() -> {
+                    deleteTree(child);
+                    return null;
+                }));
+            }
+            for (Future<Void> future : futures) {
+                future.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while deleting " + path, e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException cause) {
+                throw cause;
+            }
+            throw new IOException(e.getCause());
+        }
+        Files.deleteIfExists(path);
+    }
+
+    private static void deleteTree(Path root) throws IOException {
+        Files.walkFileTree(root, new SimpleFileVisitor<>() {
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+                Files.deleteIfExists(file);
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFileFailed(Path file, IOException exc) throws IOException {
+                if (exc instanceof NoSuchFileException) {
+                    return FileVisitResult.CONTINUE;
+                }
+                throw exc;
+            }
+
+            @Override
+            public FileVisitResult postVisitDirectory(Path dir, IOException exc) throws IOException {
+                if (exc != null && !(exc instanceof NoSuchFileException)) {
+                    throw exc;
+                }
+                Files.deleteIfExists(dir);
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+}
@@ -1,10 +1,24 @@
 package com.dmoser.codyssey.vidar.service;
 
+import com.dmoser.codyssey.vidar.compose.ComposeModel;
+import com.dmoser.codyssey.vidar.compose.ComposeParser;
+import com.dmoser.codyssey.vidar.compose.ServiceDefinition;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
 import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * Used for everything that has to do with git.
@@ -19,14 +33,48 @@ public class GitService {
     private static final String LOG_DEBUG_GIT_CLONE_RESULT = "{}";
     private static final String LOG_ERROR_GIT_CLONE_FAILED = "Failed to clone git repository {}";
     private static final String GIT_IS_REPOSITORY_COMMAND = "git --git-dir %s/.git rev-parse --show-toplevel";
-    private static final String GIT_PULL_COMMAND = "git --git-dir %s/.git rev-parse --show-toplevel";
+    private static final String GIT_PULL_COMMAND = "git -C %s pull --ff-only --quiet";
+    private static final String GIT_HEAD_COMMAND = "git -C %s rev-parse HEAD";
+    private static final String GIT_REMOTE_URL_COMMAND = "git -C %s remote get-url origin";
+    private static final String GIT_DIFF_NAMES_COMMAND = "git -C %s diff --name-only %s %s";
+    private static final String LOG_WARN_SPARSE_FALLBACK = "Could not determine the compose paths of {}, checking out everything: {}";
     private static final String GIT_CLONE_COMMAND = "git clone %s %s";
+    private static final String GIT_CLONE_SHALLOW_COMMAND = "git clone --depth 1 %s %s";
+    private static final String GIT_CLONE_SPARSE_COMMAND = "git clone --depth 1 --filter=blob:none --sparse %s %s";
+    private static final String GIT_SPARSE_CHECKOUT_ADD_COMMAND = "git -C %s sparse-checkout add %s";
+    private static final String GIT_SPARSE_CHECKOUT_DISABLE_COMMAND = "git -C %s sparse-checkout disable";
+    private static final String GIT_CLONE_MIRROR_COMMAND = "git clone --mirror %s %s";
+    private static final String GIT_FETCH_MIRROR_COMMAND = "git -C %s fetch --prune origin";
+    private static final String GIT_CLONE_REFERENCE_COMMAND = "git clone --reference %s --dissociate %s %s";
 
+    /**
+     * System property for the default clone strategy. One of {@link CloneStrategy}, SHALLOW when not set.
+     */
+    public static final String CLONE_STRATEGY_PROPERTY = "vidar.git.clone.strategy";
+
+    private static final Map<Path, Object> mirrorLocks = new ConcurrentHashMap<>();
 
     final SystemService systemService;
+    final Path cacheDirectory;
+
+    /**
+     * Constructor for testcases, so that the SystemService can be mocked.
+     *
+     * @param systemService The SystemService of this GitService.
+     */
+    public GitService(SystemService systemService) {
+        this(systemService, SystemService.cacheDirectory());
+    }
 
-    GitService(SystemService systemService) {
+    /**
+     * Constructor for testcases, so that the cache directory can be changed.
+     *
+     * @param systemService  The SystemService of this GitService.
+     * @param cacheDirectory The Vidar cache directory, see {@link SystemService#cacheDirectory()}.
+     */
+    GitService(SystemService systemService, Path cacheDirectory) {
         this.systemService = systemService;
+        this.cacheDirectory = cacheDirectory;
     }
 
     public static GitService get() {
@@ -44,37 +92,200 @@ public class GitService {
     }
 
     /**
-     * Clones a git repository into a folder
+     * Clones a git repository into a folder with the strategy of the {@value CLONE_STRATEGY_PROPERTY} system property.
      *
      * @param url  The url of the repository
      * @param path The plugin base dir where this plugin should be saved in.
+     * @return true when the repository was cloned.
      */
     public boolean clone(String url, Path path) {
+        return clone(url, path, CloneStrategy.valueOf(System.getProperty(CLONE_STRATEGY_PROPERTY, CloneStrategy.SHALLOW.name())));
+    }
+
+    /**
+     * Clones a git repository into a folder
+     *
+     * @param url      The url of the repository
+     * @param path     The plugin base dir where this plugin should be saved in.
+     * @param strategy How the repository is cloned.
+     * @return true when the repository was cloned.
+     */
+    public boolean clone(String url, Path path, CloneStrategy strategy) {
+        Path target;
         try {
-            String pathString = path.toRealPath() + "/" + extractRepoName(url);
-            String execString = String.format(GIT_CLONE_COMMAND, url, pathString);
-            var result = systemService.executeCommand(execString);
-            return result.exitCode() == 0;
+            target = path.toRealPath().resolve(extractRepoName(url));
         } catch (IOException e) {
             return false;
         }
+        log.info(LOG_INFO_GIT_CLONE, url);
+        boolean cloned = switch (strategy) {
+            case FULL -> execute(Command.format(GIT_CLONE_COMMAND, url, target));
+            case SHALLOW -> execute(Command.format(GIT_CLONE_SHALLOW_COMMAND, url, target));
+            case SPARSE -> cloneSparse(url, target);
+            case REFERENCE -> cloneWithReference(url, target);
+        };
+        if (!cloned) {
+            log.error(LOG_ERROR_GIT_CLONE_FAILED, url);
+        }
+        return cloned;
+    }
+
+    /**
+     * Clones without file contents and only checks out the root of the repository, then adds the directories of the
+     * build contexts and env files of all services. Falls back to a full checkout when the compose file can not be
+     * parsed, e.g. because it includes files from subdirectories, or when one of the directories is the root itself.
+     */
+    private boolean cloneSparse(String url, Path target) {
+        if (!execute(Command.format(GIT_CLONE_SPARSE_COMMAND, url, target))) {
+            return false;
+        }
+        try {
+            ComposeModel model = ComposeParser.get().parse(target.resolve("docker-compose.yml"));
+            Set<String> directories = new TreeSet<>();
+            for (ServiceDefinition service : model.services().values()) {
+                addDirectory(directories, target, service.build());
+                service.envFiles().forEach(file -> addDirectory(directories, target, Path.of(file).getParent()));
+            }
+            if (directories.contains("")) {
+                // The cone of the root only contains its files, so a build context at the root needs everything
+                return execute(Command.format(GIT_SPARSE_CHECKOUT_DISABLE_COMMAND, target));
+            }
+            return directories.isEmpty()
+                    || execute(Command.format(GIT_SPARSE_CHECKOUT_ADD_COMMAND, target, directories));
+        } catch (IOException e) {
+            log.warn(LOG_WARN_SPARSE_FALLBACK, url, e.getMessage());
+            return execute(Command.format(GIT_SPARSE_CHECKOUT_DISABLE_COMMAND, target));
+        }
+    }
+
+    /**
+     * Adds a directory relative to the root of the repository. The root itself is added as an empty string,
+     * directories outside of the repository are ignored.
+     */
+    private static void addDirectory(Set<String> directories, Path root, Object directory) {
+        if (directory == null) {
+            return;
+        }
+        Path relative = root.relativize(root.resolve(directory.toString()).normalize());
+        if (!relative.startsWith("..")) {
+            directories.add(relative.toString());
+        }
+    }
+
+    /**
+     * Creates or updates the mirror of the repository in the cache directory and clones with the mirror as reference.
+     * The clone is dissociated, so it stays valid when the cache is deleted.
+     */
+    private boolean cloneWithReference(String url, Path target) {
+        Path mirror = mirrorPath(url);
+        synchronized (mirrorLocks.computeIfAbsent(mirror, key -> new Object())) {
+            boolean mirrorReady;
+            if (Files.isDirectory(mirror)) {
+                mirrorReady = execute(Command.format(GIT_FETCH_MIRROR_COMMAND, mirror));
+            } else {
+                try {
+                    Files.createDirectories(mirror.getParent());
+                } catch (IOException e) {
+                    return false;
+                }
+                mirrorReady = execute(Command.format(GIT_CLONE_MIRROR_COMMAND, url, mirror));
+            }
+            if (!mirrorReady) {
+                return execute(Command.format(GIT_CLONE_COMMAND, url, target));
+            }
+            return execute(Command.format(GIT_CLONE_REFERENCE_COMMAND, mirror, url, target));
+        }
+    }
+
+    /**
+     * Returns the path of the mirror of a repository inside the cache directory.
+     *
+     * @param url The url of the repository.
+     * @return The path of the mirror.
+     */
+    Path mirrorPath(String url) {
+        try {
+            byte[] hash = MessageDigest.getInstance("SHA-256").digest(url.getBytes(StandardCharsets.UTF_8));
+            return cacheDirectory.resolve("mirrors").resolve(extractRepoName(url) + "-" + HexFormat.of().formatHex(hash, 0, 8) + ".git");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private boolean execute(Command command) {
+        var result = systemService.executeArgs(command.argv());
+        log.debug(LOG_DEBUG_GIT_CLONE_RESULT, result.content());
+        return result.exitCode() == 0;
     }
 
     /**
-     * Executes gitPull on a given path.
+     * Executes gitPull on a given path. Only fast-forwards are applied.
      *
      * @param path The path to the git repository.
+     * @return true when the repository was pulled.
      */
     public boolean gitPull(Path path) {
         try {
-            String execString = String.format(GIT_PULL_COMMAND, path.toRealPath());
-            var result = systemService.executeCommand(execString);
+            log.info(LOG_INFO_GIT_PULL, path);
+            var result = systemService.executeArgs(Command.format(GIT_PULL_COMMAND, path.toRealPath()).argv());
+            log.debug(LOG_DEBUG_GIT_PULL_RESULT, result.content());
+            if (result.exitCode() != 0) {
+                log.error(LOG_ERROR_GIT_PULL_FAILED, path);
+            }
             return result.exitCode() == 0;
         } catch (IOException e) {
             return false;
         }
     }
 
+    /**
+     * Fetches and fast-forwards a repository and determines the files changed by the update.
+     *
+     * @param path The path to the git repository.
+     * @return The update, or an empty optional when the repository could not be fast-forwarded.
+     */
+    public Optional<GitUpdate> update(Path path) {
+        Optional<String> oldHead = head(path);
+        if (oldHead.isEmpty() || !gitPull(path)) {
+            return Optional.empty();
+        }
+        Optional<String> newHead = head(path);
+        if (newHead.isEmpty()) {
+            return Optional.empty();
+        }
+        if (oldHead.get().equals(newHead.get())) {
+            return Optional.of(new GitUpdate(oldHead.get(), newHead.get(), List.of()));
+        }
+        var result = systemService.executeArgs(Command.format(GIT_DIFF_NAMES_COMMAND, path, oldHead.get(), newHead.get()).argv());
+        if (result.exitCode() != 0) {
+            return Optional.empty();
+        }
+        List<String> changedFiles = result.content().lines().filter(line -> !line.isBlank()).toList();
+        return Optional.of(new GitUpdate(oldHead.get(), newHead.get(), changedFiles));
+    }
+
+    /**
+     * Returns the commit checked out in a repository.
+     *
+     * @param path The path to the git repository.
+     * @return The commit hash, or an empty optional when the path is no repository.
+     */
+    public Optional<String> head(Path path) {
+        var result = systemService.executeArgs(Command.format(GIT_HEAD_COMMAND, path).argv());
+        return result.exitCode() == 0 ? Optional.of(result.content().trim()) : Optional.empty();
+    }
+
+    /**
+     * Returns the url a repository was cloned from.
+     *
+     * @param path The path to the git repository.
+     * @return The url of the origin remote, or an empty optional when it has none.
+     */
+    public Optional<String> remoteUrl(Path path) {
+        var result = systemService.executeArgs(Command.format(GIT_REMOTE_URL_COMMAND, path).argv());
+        return result.exitCode() == 0 ? Optional.of(result.content().trim()) : Optional.empty();
+    }
+
     /**
      * Check if a plugin folder is a git repository.
      *
@@ -83,9 +294,7 @@ public class GitService {
      */
     public boolean isGitRepository(Path path) {
         try {
-            String execString = String.format(GIT_IS_REPOSITORY_COMMAND, path.toRealPath());
-
-            var result = systemService.executeCommand(execString);
+            var result = systemService.executeArgs(Command.format(GIT_IS_REPOSITORY_COMMAND, path.toRealPath()).argv());
             if (result.exitCode() != 0) {
                 return false;
             }
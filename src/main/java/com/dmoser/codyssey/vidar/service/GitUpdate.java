@@ -0,0 +1,22 @@
+package com.dmoser.codyssey.vidar.service;
+
+import java.util.List;
+
+/**
+ * A record containing the result of fast-forwarding a repository.
+ *
+ * @param oldHead      The commit checked out before the update.
+ * @param newHead      The commit checked out after the update.
+ * @param changedFiles The paths of all files that differ between both commits, relative to the repository root.
+ */
+public record GitUpdate(String oldHead, String newHead, List<String> changedFiles) {
+
+    /**
+     * Checks if the update moved the repository to another commit.
+     *
+     * @return true when the head changed.
+     */
+    public boolean isChanged() {
+        return !oldHead.equals(newHead);
+    }
+}
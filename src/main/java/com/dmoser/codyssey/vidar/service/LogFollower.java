@@ -0,0 +1,232 @@
+package com.dmoser.codyssey.vidar.service;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Flow;
+import java.util.concurrent.SubmissionPublisher;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+/**
+ * Follows the logs of a service or container by streaming the output of a `docker logs --follow` process line by line.
+ * Lines are never collected into one string. Memory is bounded by a ring buffer of the last lines, kept for tailing,
+ * a buffer of {@link Flow#defaultBufferSize()} lines per subscriber and a maximum line length of {@value #MAX_LINE_LENGTH} bytes.
+ * When a subscriber falls behind, lines are dropped for it or the follower waits for it, depending on the
+ * {@link OverflowPolicy}. Closing the follower kills the process and completes all subscribers.
+ */
+public class LogFollower implements Flow.Publisher<LogLine>, AutoCloseable {
+
+    private static final Logger log = LogManager.getLogger(LogFollower.class);
+    private static final String LOG_WARN_START_FAILED = "Could not follow the logs of {}: {}";
+    private static final String LOG_DEBUG_ENDED = "Logs of {} ended, {} lines were dropped for slow subscribers";
+
+    /**
+     * The number of bytes after which a line is cut off. The rest of the line is skipped.
+     */
+    public static final int MAX_LINE_LENGTH = 16 * 1024;
+
+    /**
+     * The default number of lines kept for tailing.
+     */
+    public static final int DEFAULT_BUFFER_SIZE = 1000;
+
+    private static final Executor SUBSCRIBER_EXECUTOR = runnable -> Thread.ofVirtual().name("vidar-logs-subscriber").start(runnable);
+
+    /**
+     * What happens when the buffer of a subscriber is full.
+     */
+    public enum OverflowPolicy {
+        /**
+         * The line is dropped for the slow subscriber and counted in {@link #dropped()}. Other subscribers still get it.
+         */
+        DROP,
+        /**
+         * Reading waits until the slow subscriber caught up. The pipe of the docker process fills up, so docker stops
+         * reading the logs as well. All subscribers and the ring buffer wait for the slowest subscriber.
+         */
+        BLOCK
+    }
+
+    private final String source;
+    private final Process process;
+    private final int bufferSize;
+    private final OverflowPolicy policy;
+    private final Deque<LogLine> buffer;
+    private final SubmissionPublisher<LogLine> publisher = new SubmissionPublisher<>(SUBSCRIBER_EXECUTOR, Flow.defaultBufferSize());
+    private final LongAdder dropped = new LongAdder();
+    private final AtomicInteger openStreams = new AtomicInteger(2);
+
+    private LogFollower(String source, Process process, int bufferSize, OverflowPolicy policy) {
+        this.source = source;
+        this.process = process;
+        this.bufferSize = bufferSize;
+        this.policy = policy;
+        this.buffer = new ArrayDeque<>(Math.min(bufferSize, DEFAULT_BUFFER_SIZE));
+    }
+
+    /**
+     * Starts a process printing logs and follows its stdout and stderr.
+     * Lines starting with an RFC 3339 timestamp, as printed by `docker logs --timestamps`, are stamped with it.
+     *
+     * @param source     The name of the service or container, used as the source of every line.
+     * @param command    The program printing the logs and its arguments. It is not interpreted by a shell.
+     * @param bufferSize The number of lines kept for tailing.
+     * @param policy     What happens when a subscriber falls behind.
+     * @return The started follower.
+     * @throws UncheckedIOException When the process could not be started.
+     */
+    public static LogFollower start(String source, List<String> command, int bufferSize, OverflowPolicy policy) {
+        if (bufferSize < 1) {
+            throw new IllegalArgumentException("bufferSize must be at least 1 but was " + bufferSize);
+        }
+        Process process;
+        try {
+            process = new ProcessBuilder(command).start();
+            process.getOutputStream().close();
+        } catch (IOException e) {
+            log.warn(LOG_WARN_START_FAILED, source, e.getMessage());
+            throw new UncheckedIOException(e);
+        }
+        LogFollower follower = new LogFollower(source, process, bufferSize, policy);
+        Thread.ofVirtual().name("vidar-logs-" + source).start(() -> follower.read(process.getInputStream(), false));
+        Thread.ofVirtual().name("vidar-logs-" + source).start(() -> follower.read(process.getErrorStream(), true));
+        return follower;
+    }
+
+    /**
+     * Subscribes to the lines read from now on. Earlier lines can be taken from {@link #tail()}.
+     *
+     * @param subscriber The subscriber.
+     */
+    @Override
+    public void subscribe(Flow.Subscriber<? super LogLine> subscriber) {
+        publisher.subscribe(subscriber);
+    }
+
+    /**
+     * Calls a consumer with every line read from now on, on a virtual thread.
+     *
+     * @param consumer The consumer.
+     * @return A future completing when the logs ended or the follower was closed.
+     */
+    public CompletableFuture<Void> subscribe(Consumer<LogLine> consumer) {
+        return publisher.consume(consumer);
+    }
+
+    /**
+     * Returns the last lines, oldest first.
+     *
+     * @return At most the configured buffer size of lines.
+     */
+    public List<LogLine> tail() {
+        synchronized (buffer) {
+            return List.copyOf(buffer);
+        }
+    }
+
+    /**
+     * Returns the number of lines dropped for subscribers that fell behind.
+     *
+     * @return The number of dropped lines. Always 0 with {@link OverflowPolicy#BLOCK}.
+     */
+    public long dropped() {
+        return dropped.sum();
+    }
+
+    /**
+     * Checks if the logs are still followed.
+     *
+     * @return true while the process is running.
+     */
+    public boolean isAlive() {
+        return process.isAlive();
+    }
+
+    /**
+     * Kills the process and completes all subscribers. Lines that were not delivered yet are still delivered.
+     */
+    @Override
+    public void close() {
+        ProcessExecutor.destroyTree(process);
+        publisher.close();
+    }
+
+    /**
+     * Reads a stream line by line. At most {@value #MAX_LINE_LENGTH} bytes of a line are kept in memory.
+     */
+    private void read(InputStream stream, boolean stderr) {
+        byte[] chunk = new byte[8192];
+        byte[] line = new byte[MAX_LINE_LENGTH];
+        int length = 0;
+        try (stream) {
+            int read;
+            while ((read = stream.read(chunk)) >= 0) {
+                for (int i = 0; i < read; i++) {
+                    if (chunk[i] == '\n') {
+                        publish(parse(line, length, stderr));
+                        length = 0;
+                    } else if (length < line.length) {
+                        line[length++] = chunk[i];
+                    }
+                }
+            }
+            if (length > 0) {
+                publish(parse(line, length, stderr));
+            }
+        } catch (IOException | IllegalStateException e) {
+            // The process was killed or the publisher was closed
+        } finally {
+            if (openStreams.decrementAndGet() == 0) {
+                log.debug(LOG_DEBUG_ENDED, source, dropped());
+                publisher.close();
+            }
+        }
+    }
+
+    private LogLine parse(byte[] line, int length, boolean stderr) {
+        if (length > 0 && line[length - 1] == '\r') {
+            length--;
+        }
+        String text = new String(line, 0, length, StandardCharsets.UTF_8);
+        int separator = text.indexOf(' ');
+        // Timestamps look like 2024-05-01T12:00:00.123456789Z
+        if (separator >= 20 && text.charAt(4) == '-' && text.charAt(10) == 'T') {
+            try {
+                return new LogLine(source, Instant.parse(text.substring(0, separator)), text.substring(separator + 1), stderr);
+            } catch (DateTimeParseException ignored) {
+                // Not a timestamp but text that looks like one
+            }
+        }
+        return new LogLine(source, Instant.now(), text, stderr);
+    }
+
+    private void publish(LogLine line) {
+        synchronized (buffer) {
+            if (buffer.size() == bufferSize) {
+                buffer.pollFirst();
+            }
+            buffer.addLast(line);
+        }
+        if (policy == OverflowPolicy.BLOCK) {
+            publisher.submit(line);
+        } else {
+            publisher.offer(line, (subscriber, item) -> {
+                this.dropped.increment();
+                return false;
+            });
+        }
+    }
+}
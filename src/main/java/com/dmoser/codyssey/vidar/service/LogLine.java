@@ -0,0 +1,14 @@
+package com.dmoser.codyssey.vidar.service;
+
+import java.time.Instant;
+
+/**
+ * A record containing a single line of the logs of a service or container.
+ *
+ * @param source    The name of the service or container the line was written by.
+ * @param timestamp The time docker received the line, or the time it was read when docker did not print one.
+ * @param text      The line without its timestamp and line break. Cut off after {@value LogFollower#MAX_LINE_LENGTH} bytes.
+ * @param stderr    true when the line was written to stderr.
+ */
+public record LogLine(String source, Instant timestamp, String text, boolean stderr) {
+}
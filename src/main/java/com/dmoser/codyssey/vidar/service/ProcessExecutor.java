@@ -0,0 +1,143 @@
+package com.dmoser.codyssey.vidar.service;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Runs processes without blocking on full pipe buffers.
+ * Stdout and stderr are drained concurrently, every call can have a deadline and the whole process tree is killed
+ * when the deadline passes or the calling thread is interrupted.
+ * Shell commands are started as a new `/bin/sh -c` process each, argument vectors are started directly.
+ */
+public class ProcessExecutor implements CommandExecutor {
+
+    private static final Logger log = LogManager.getLogger(ProcessExecutor.class);
+    private static final String LOG_WARN_START_FAILED = "Could not start process {}: {}";
+    private static final String LOG_WARN_TIMED_OUT = "Process {} did not finish within {} and was killed";
+    private static final String LOG_WARN_INTERRUPTED = "Interrupted while waiting for process {}, killing it";
+
+    /**
+     * Time given to the stream drainers after a process tree was killed.
+     */
+    private static final Duration DRAIN_GRACE = Duration.ofSeconds(1);
+
+    @Override
+    public ProcessResult execute(String command, Duration timeout) {
+        return execute(List.of("/bin/sh", "-c", command), timeout);
+    }
+
+    /**
+     * Executes a process directly, without a shell in between.
+     *
+     * @param command The program and its arguments.
+     * @param timeout The deadline of the process, or null to wait until it exits.
+     * @return The ProcessResult of the process.
+     */
+    @Override
+    public ProcessResult execute(List<String> command, Duration timeout) {
+        long start = System.nanoTime();
+        long deadline = timeout == null ? Long.MAX_VALUE : start + timeout.toNanos();
+
+        Process process;
+        try {
+            process = new ProcessBuilder(command).start();
+            process.getOutputStream().close();
+        } catch (IOException e) {
+            log.warn(LOG_WARN_START_FAILED, command, e.getMessage());
+            return new ProcessResult("", String.valueOf(e.getMessage()), ProcessResult.EXIT_CODE_START_FAILED, elapsed(start), false);
+        }
+
+        CompletableFuture<String> stdout = drain(process.getInputStream());
+        CompletableFuture<String> stderr = drain(process.getErrorStream());
+
+        try {
+            boolean exited = process.waitFor(remaining(deadline), TimeUnit.NANOSECONDS);
+            if (exited) {
+                // Streams can stay open when a background child inherited them, so they share the deadline.
+                String out = stdout.get(remaining(deadline), TimeUnit.NANOSECONDS);
+                String err = stderr.get(remaining(deadline), TimeUnit.NANOSECONDS);
+                return new ProcessResult(out, err, process.exitValue(), elapsed(start), false);
+            }
+        } catch (TimeoutException e) {
+            // Fall through to the timeout handling below.
+        } catch (InterruptedException e) {
+            log.warn(LOG_WARN_INTERRUPTED, command);
+            destroyTree(process);
+            ProcessResult result = new ProcessResult(collect(process, stdout), collect(process, stderr), ProcessResult.EXIT_CODE_INTERRUPTED, elapsed(start), false);
+            Thread.currentThread().interrupt(); // Preserve interrupt status
+            return result;
+        } catch (ExecutionException e) {
+            throw new IllegalStateException(e.getCause());
+        }
+
+        log.warn(LOG_WARN_TIMED_OUT, command, timeout);
+        destroyTree(process);
+        return new ProcessResult(collect(process, stdout), collect(process, stderr), ProcessResult.EXIT_CODE_TIMEOUT, elapsed(start), true);
+    }
+
+    /**
+     * Kills a process and all of its descendants.
+     *
+     * @param process The root of the process tree.
+     */
+    public static void destroyTree(Process process) {
+        // Descendants have to be collected before the parent dies, afterward they are reparented.
+        List<ProcessHandle> descendants = process.descendants().toList();
+        process.destroyForcibly();
+        descendants.forEach(ProcessHandle::destroyForcibly);
+    }
+
+    private static CompletableFuture<String> drain(InputStream stream) {
+        CompletableFuture<String> future = new CompletableFuture<>();
+        Thread.ofVirtual().start(() -> {
+            try (stream) {
+                future.complete(new String(stream.readAllBytes(), StandardCharsets.UTF_8).trim());
+            } catch (IOException e) {
+                // The stream was closed after the process was killed.
+                future.complete("");
+            }
+        });
+        return future;
+    }
+
+    /**
+     * Collects the output of a drainer of a killed process.
+     * When a process escaped the kill and still holds the pipe, the pipes are closed after a grace period.
+     */
+    private static String collect(Process process, CompletableFuture<String> drainer) {
+        try {
+            return drainer.get(DRAIN_GRACE.toNanos(), TimeUnit.NANOSECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException | TimeoutException ignored) {
+        }
+        closeQuietly(process.getInputStream());
+        closeQuietly(process.getErrorStream());
+        return drainer.getNow("");
+    }
+
+    private static void closeQuietly(InputStream stream) {
+        try {
+            stream.close();
+        } catch (IOException ignored) {
+        }
+    }
+
+    private static long remaining(long deadline) {
+        return deadline == Long.MAX_VALUE ? Long.MAX_VALUE : Math.max(0, deadline - System.nanoTime());
+    }
+
+    private static Duration elapsed(long start) {
+        return Duration.ofNanos(System.nanoTime() - start);
+    }
+}
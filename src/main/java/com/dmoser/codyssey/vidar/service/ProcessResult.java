@@ -0,0 +1,39 @@
+package com.dmoser.codyssey.vidar.service;
+
+import java.time.Duration;
+
+/**
+ * A record containing the full result of a called process.
+ *
+ * @param stdout   The contents of stdout.
+ * @param stderr   The contents of stderr.
+ * @param exitCode The exitCode of this process. {@value #EXIT_CODE_TIMEOUT} when the process was killed after its deadline.
+ * @param duration The wall time from starting the process until its streams were drained.
+ * @param timedOut true when the process did not finish before its deadline and was killed.
+ */
+public record ProcessResult(String stdout, String stderr, int exitCode, Duration duration, boolean timedOut) {
+
+    /**
+     * The exit code used when the process could not be started.
+     */
+    public static final int EXIT_CODE_START_FAILED = 5;
+
+    /**
+     * The exit code used when the calling thread was interrupted.
+     */
+    public static final int EXIT_CODE_INTERRUPTED = 4;
+
+    /**
+     * The exit code used when the process was killed after its deadline.
+     */
+    public static final int EXIT_CODE_TIMEOUT = 124;
+
+    /**
+     * Converts this result to a CommandResult.
+     *
+     * @return The CommandResult containing stdout when the process exited with 0 and stderr otherwise.
+     */
+    public CommandResult toCommandResult() {
+        return new CommandResult(exitCode == 0 ? stdout : stderr, exitCode);
+    }
+}
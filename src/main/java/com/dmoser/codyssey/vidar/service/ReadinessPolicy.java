@@ -0,0 +1,90 @@
+package com.dmoser.codyssey.vidar.service;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * How long and how often to wait for services to become ready.
+ * Readiness is checked with exponential backoff, starting with the initial delay and doubling up to the maximum delay.
+ * Every delay is randomized by the jitter, so that many waiting callers do not query docker in lockstep.
+ *
+ * @param initialDelay The delay before the second check. The first check is done right away.
+ * @param maxDelay     The maximum delay between two checks.
+ * @param jitter       The fraction a delay is randomly shortened or lengthened by, between 0 and 1.
+ * @param deadline     The time a service is given to become ready, unless it has its own deadline.
+ * @param deadlines    The deadlines of single services, keyed by service name.
+ */
+public record ReadinessPolicy(Duration initialDelay, Duration maxDelay, double jitter, Duration deadline,
+                              Map<String, Duration> deadlines) {
+
+    public ReadinessPolicy {
+        if (initialDelay.isNegative() || initialDelay.isZero() || maxDelay.compareTo(initialDelay) < 0) {
+            throw new IllegalArgumentException("Delays must be positive and maxDelay at least initialDelay but were "
+                    + initialDelay + " and " + maxDelay);
+        }
+        if (jitter < 0 || jitter > 1) {
+            throw new IllegalArgumentException("jitter must be between 0 and 1 but was " + jitter);
+        }
+        deadlines = Map.copyOf(deadlines);
+    }
+
+    /**
+     * The default policy: first delay 250ms, at most 5s between checks, 20% jitter and a deadline of 2 minutes.
+     *
+     * @return The policy.
+     */
+    public static ReadinessPolicy defaults() {
+        return new ReadinessPolicy(Duration.ofMillis(250), Duration.ofSeconds(5), 0.2, Duration.ofMinutes(2), Map.of());
+    }
+
+    /**
+     * Returns a copy of this policy with a default deadline.
+     *
+     * @param deadline The time a service is given to become ready.
+     * @return The new policy.
+     */
+    public ReadinessPolicy withDeadline(Duration deadline) {
+        return new ReadinessPolicy(initialDelay, maxDelay, jitter, deadline, deadlines);
+    }
+
+    /**
+     * Returns a copy of this policy with a deadline for a single service.
+     *
+     * @param service  The name of the service.
+     * @param deadline The time the service is given to become ready.
+     * @return The new policy.
+     */
+    public ReadinessPolicy withDeadline(String service, Duration deadline) {
+        Map<String, Duration> newDeadlines = new HashMap<>(deadlines);
+        newDeadlines.put(service, deadline);
+        return new ReadinessPolicy(initialDelay, maxDelay, jitter, this.deadline, newDeadlines);
+    }
+
+    /**
+     * Returns the deadline of a service.
+     *
+     * @param service The name of the service.
+     * @return The deadline of the service, or the default deadline.
+     */
+    public Duration deadline(String service) {
+        return deadlines.getOrDefault(service, deadline);
+    }
+
+    /**
+     * Returns the randomized delay after a number of checks.
+     *
+     * @param attempt The number of checks done so far, starting with 1.
+     * @return The delay before the next check.
+     */
+    public Duration delay(int attempt) {
+        long base = initialDelay.toNanos();
+        long max = maxDelay.toNanos();
+        for (int i = 1; i < attempt && base < max; i++) {
+            base = Math.min(max, base * 2);
+        }
+        double factor = jitter == 0 ? 1 : 1 + ThreadLocalRandom.current().nextDouble(-jitter, jitter);
+        return Duration.ofNanos((long) (base * factor));
+    }
+}
@@ -0,0 +1,75 @@
+package com.dmoser.codyssey.vidar.service;
+
+/**
+ * A record containing the status of a compose service.
+ *
+ * @param service   The name of the service.
+ * @param container The name of the container of the service. Empty when the service has no container.
+ * @param state     The state of the container. Either running, exited, created, ... or none when there is no container.
+ * @param health    The health of the container. Empty when the container has no healthcheck.
+ * @param exitCode  The exit code of the container. 0 when it did not exit.
+ */
+public record ServiceStatus(String service, String container, String state, String health, int exitCode) {
+
+    /**
+     * The state of a service without a container.
+     */
+    public static final String STATE_NONE = "none";
+
+    /**
+     * Create the status of a service without a container.
+     *
+     * @param service The name of the service.
+     * @return The status.
+     */
+    public static ServiceStatus none(String service) {
+        return new ServiceStatus(service, "", STATE_NONE, "", 0);
+    }
+
+    /**
+     * Checks if the container of the service is running.
+     *
+     * @return true when the state is running.
+     */
+    public boolean isRunning() {
+        return state.equals("running");
+    }
+
+    /**
+     * Checks if the container started and did not fail, which satisfies the default `depends_on` condition
+     * `service_started`. The conditions `service_healthy` and `service_completed_successfully` correspond to
+     * {@link #isReady()} and {@link #isCompleted()}.
+     *
+     * @return true when the container is running or exited successfully.
+     */
+    public boolean isUp() {
+        return isRunning() || isCompleted();
+    }
+
+    /**
+     * Checks if the container ran to completion successfully.
+     *
+     * @return true when the container exited with code 0.
+     */
+    public boolean isCompleted() {
+        return state.equals("exited") && exitCode == 0;
+    }
+
+    /**
+     * Checks if the service is ready to be used.
+     *
+     * @return true when the container is healthy, or running when it has no healthcheck.
+     */
+    public boolean isReady() {
+        return isRunning() && (health.isEmpty() || health.equals("healthy"));
+    }
+
+    /**
+     * Checks if the container stopped, so that it will not become ready without being started again.
+     *
+     * @return true when the container exited or is dead.
+     */
+    public boolean isStopped() {
+        return state.equals("exited") || state.equals("dead");
+    }
+}
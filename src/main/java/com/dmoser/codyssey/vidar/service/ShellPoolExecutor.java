@@ -0,0 +1,251 @@
+package com.dmoser.codyssey.vidar.service;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Deque;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Runs shell commands in a pool of long-lived `/bin/sh` coprocesses instead of starting a new process per command.
+ * Every command runs in a subshell of an idle coprocess, so `cd`, `exit` or syntax errors do not affect later
+ * commands. The end of its stdout and stderr and its exit code are marked with a sentinel that is unique per command.
+ * A coprocess is killed together with its children when a command passes its deadline, the calling thread is
+ * interrupted or the coprocess died, and it is replaced after {@value #MAX_COMMANDS_PER_SHELL} commands.
+ * Background processes of a command must not keep writing to stdout or stderr, as their output would be attributed
+ * to later commands of the same coprocess.
+ */
+public class ShellPoolExecutor implements CommandExecutor, AutoCloseable {
+
+    private static final Logger log = LogManager.getLogger(ShellPoolExecutor.class);
+    private static final String LOG_WARN_START_FAILED = "Could not start shell coprocess: {}";
+    private static final String LOG_WARN_TIMED_OUT = "Command {} did not finish within {}, killing its shell";
+    private static final String LOG_WARN_INTERRUPTED = "Interrupted while waiting for command {}, killing its shell";
+    private static final String LOG_WARN_SHELL_DIED = "Shell coprocess died while running command {}";
+    private static final String LOG_DEBUG_SHELL_STARTED = "Started shell coprocess {}";
+
+    private static final String SHELL = "/bin/sh";
+    private static final String COMMAND_FRAME = "( eval %s ) </dev/null; printf '\\n%s %%d\\n' \"$?\"; printf '\\n%s \\n' >&2\n";
+
+    /**
+     * Number of commands after which a coprocess is replaced, to bound whatever state it accumulates.
+     */
+    static final int MAX_COMMANDS_PER_SHELL = 1000;
+
+    /**
+     * Time given to the readers after a coprocess was killed.
+     */
+    private static final Duration DRAIN_GRACE = Duration.ofSeconds(1);
+
+    private final Deque<Shell> idle = new ConcurrentLinkedDeque<>();
+    private final int maxIdle;
+    private volatile boolean closed;
+
+    /**
+     * Create a pool of shell coprocesses.
+     * Coprocesses are started on demand, so more than maxIdle commands can run at the same time.
+     *
+     * @param maxIdle The maximum number of idle coprocesses that are kept for later commands.
+     */
+    public ShellPoolExecutor(int maxIdle) {
+        if (maxIdle < 1) {
+            throw new IllegalArgumentException("maxIdle must be at least 1 but was " + maxIdle);
+        }
+        this.maxIdle = maxIdle;
+    }
+
+    @Override
+    public ProcessResult execute(String command, Duration timeout) {
+        long start = System.nanoTime();
+        long deadline = timeout == null ? Long.MAX_VALUE : start + timeout.toNanos();
+
+        Shell shell;
+        try {
+            shell = acquire();
+        } catch (IOException e) {
+            log.warn(LOG_WARN_START_FAILED, e.getMessage());
+            return new ProcessResult("", String.valueOf(e.getMessage()), ProcessResult.EXIT_CODE_START_FAILED, elapsed(start), false);
+        }
+
+        String sentinel = "__VIDAR_" + UUID.randomUUID().toString().replace("-", "") + "__";
+        StringBuilder out = new StringBuilder();
+        StringBuilder err = new StringBuilder();
+        CompletableFuture<String> stdout = read(shell.stdout, sentinel, out);
+        CompletableFuture<String> stderr = read(shell.stderr, sentinel, err);
+
+        try {
+            shell.stdin.write(COMMAND_FRAME.formatted(quote(command), sentinel, sentinel));
+            shell.stdin.flush();
+            String status = stdout.get(remaining(deadline), TimeUnit.NANOSECONDS);
+            String errorStatus = stderr.get(remaining(deadline), TimeUnit.NANOSECONDS);
+            if (status == null || errorStatus == null) {
+                log.warn(LOG_WARN_SHELL_DIED, command);
+                shell.destroy();
+                return new ProcessResult(collect(stdout, out), collect(stderr, err), shell.exitCode(), elapsed(start), false);
+            }
+            release(shell);
+            return new ProcessResult(out.toString().trim(), err.toString().trim(), Integer.parseInt(status), elapsed(start), false);
+        } catch (TimeoutException e) {
+            log.warn(LOG_WARN_TIMED_OUT, command, timeout);
+            shell.destroy();
+            return new ProcessResult(collect(stdout, out), collect(stderr, err), ProcessResult.EXIT_CODE_TIMEOUT, elapsed(start), true);
+        } catch (InterruptedException e) {
+            log.warn(LOG_WARN_INTERRUPTED, command);
+            shell.destroy();
+            ProcessResult result = new ProcessResult(collect(stdout, out), collect(stderr, err), ProcessResult.EXIT_CODE_INTERRUPTED, elapsed(start), false);
+            Thread.currentThread().interrupt(); // Preserve interrupt status
+            return result;
+        } catch (IOException e) {
+            // The shell closed its stdin, so it died before the command was sent
+            log.warn(LOG_WARN_SHELL_DIED, command);
+            shell.destroy();
+            return new ProcessResult("", String.valueOf(e.getMessage()), ProcessResult.EXIT_CODE_START_FAILED, elapsed(start), false);
+        } catch (ExecutionException e) {
+            shell.destroy();
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+    /**
+     * Kills all idle coprocesses. Coprocesses that are running a command are killed when they are released.
+     * Coprocesses also exit on their own when the JVM exits, as their stdin is closed.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        Shell shell;
+        while ((shell = idle.poll()) != null) {
+            shell.destroy();
+        }
+    }
+
+    private Shell acquire() throws IOException {
+        if (closed) {
+            throw new IOException("The shell pool is closed");
+        }
+        Shell shell;
+        while ((shell = idle.pollFirst()) != null) {
+            if (shell.process.isAlive()) {
+                return shell;
+            }
+            shell.destroy();
+        }
+        return new Shell(new ProcessBuilder(SHELL).start());
+    }
+
+    private void release(Shell shell) {
+        // Most recently used shells are reused first, so rarely needed shells can be dropped
+        if (closed || ++shell.commands >= MAX_COMMANDS_PER_SHELL || idle.size() >= maxIdle) {
+            shell.destroy();
+        } else {
+            idle.offerFirst(shell);
+        }
+    }
+
+    /**
+     * Reads a stream up to the sentinel of a command on a virtual thread.
+     * The future completes with the text after the sentinel, or null when the stream ended before it.
+     */
+    private static CompletableFuture<String> read(Reader reader, String sentinel, StringBuilder output) {
+        CompletableFuture<String> future = new CompletableFuture<>();
+        String marker = "\n" + sentinel + " ";
+        Thread.ofVirtual().start(() -> {
+            char[] buffer = new char[8192];
+            int searchFrom = 0;
+            try {
+                int read;
+                while ((read = reader.read(buffer)) >= 0) {
+                    synchronized (output) {
+                        output.append(buffer, 0, read);
+                        int index = output.indexOf(marker, searchFrom);
+                        if (index < 0) {
+                            searchFrom = Math.max(0, output.length() - marker.length());
+                            continue;
+                        }
+                        searchFrom = index;
+                        int lineEnd = output.indexOf("\n", index + marker.length());
+                        if (lineEnd >= 0) {
+                            String status = output.substring(index + marker.length(), lineEnd).trim();
+                            output.setLength(index);
+                            future.complete(status);
+                            return;
+                        }
+                    }
+                }
+            } catch (IOException e) {
+                // The stream was closed after the shell was killed.
+            }
+            future.complete(null);
+        });
+        return future;
+    }
+
+    /**
+     * Collects the output a reader of a killed shell read so far.
+     */
+    private static String collect(CompletableFuture<String> reader, StringBuilder output) {
+        try {
+            reader.get(DRAIN_GRACE.toNanos(), TimeUnit.NANOSECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException | TimeoutException ignored) {
+        }
+        synchronized (output) {
+            return output.toString().trim();
+        }
+    }
+
+    /**
+     * Quotes a command as a single shell word, so the coprocess itself never parses it.
+     */
+    static String quote(String command) {
+        return "'" + command.replace("'", "'\\''") + "'";
+    }
+
+    private static long remaining(long deadline) {
+        return deadline == Long.MAX_VALUE ? Long.MAX_VALUE : Math.max(0, deadline - System.nanoTime());
+    }
+
+    private static Duration elapsed(long start) {
+        return Duration.ofNanos(System.nanoTime() - start);
+    }
+
+    /**
+     * A running shell coprocess and its streams.
+     */
+    private static final class Shell {
+        private final Process process;
+        private final Writer stdin;
+        private final Reader stdout;
+        private final Reader stderr;
+        private int commands;
+
+        private Shell(Process process) {
+            this.process = process;
+            this.stdin = new OutputStreamWriter(process.getOutputStream(), StandardCharsets.UTF_8);
+            this.stdout = new InputStreamReader(process.getInputStream(), StandardCharsets.UTF_8);
+            this.stderr = new InputStreamReader(process.getErrorStream(), StandardCharsets.UTF_8);
+            log.debug(LOG_DEBUG_SHELL_STARTED, process.pid());
+        }
+
+        private void destroy() {
+            ProcessExecutor.destroyTree(process);
+        }
+
+        private int exitCode() throws InterruptedException {
+            return process.waitFor(DRAIN_GRACE.toNanos(), TimeUnit.NANOSECONDS) ? process.exitValue() : ProcessResult.EXIT_CODE_START_FAILED;
+        }
+    }
+}
@@ -1,89 +1,366 @@
 package com.dmoser.codyssey.vidar.service;
 
+import com.dmoser.codyssey.vidar.metrics.CommandKind;
+import com.dmoser.codyssey.vidar.metrics.CommandMetrics;
+import com.dmoser.codyssey.vidar.metrics.MetricsRegistry;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
-import java.io.BufferedReader;
 import java.io.IOException;
-import java.io.InputStreamReader;
-import java.nio.file.NoSuchFileException;
 import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
-import java.util.stream.Collectors;
-import java.util.stream.Stream;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.function.Supplier;
 
 public class SystemService {
 
+    private static final String LOG_DEBUG_COMMAND_SUCCEEDED = "Command {} did succeed in {}. Output is {}";
     private static final String LOG_DEBUG_COMMAND_EXIT_CODE_NOT_0 = "Command {} did exit with code {}. ErrorOutput is {}";
-    private static final String LOG_DEBUG_COMMAND_THREW_EXCEPTION = "Command {} did throw an exception. ErrorOutput is {}";
 
 
-    private static final String LS_COMMAND = "ls -1 %s";
-    private static final String RM_COMMAND = "rm -r %s";
 
+    /**
+     * System property for the maximum number of commands that are executed at the same time by the async api.
+     */
+    public static final String CONCURRENCY_PROPERTY = "vidar.command.concurrency";
+    private static final int DEFAULT_CONCURRENCY = 16;
+
+    /**
+     * System property for the default deadline of a command in seconds. Commands have no deadline when it is not set or 0.
+     */
+    public static final String TIMEOUT_PROPERTY = "vidar.command.timeout";
+
+    /**
+     * System property for the Vidar cache directory. Defaults to `$XDG_CACHE_HOME/vidar` or `~/.cache/vidar`.
+     */
+    public static final String CACHE_DIRECTORY_PROPERTY = "vidar.cache.dir";
+
+    /**
+     * System property selecting how commands are started. `process` starts a new process per command, through
+     * `/bin/sh -c` for shell commands and directly for {@link #executeArgs(List) argument vectors}. `shell` runs
+     * commands in a pool of long-lived shell coprocesses, quoting argument vectors. Defaults to `process`.
+     */
+    public static final String EXECUTOR_PROPERTY = "vidar.command.executor";
+    static final String EXECUTOR_PROCESS = "process";
+    static final String EXECUTOR_SHELL = "shell";
+
+    /**
+     * System property for the number of idle shell coprocesses kept by the `shell` executor. Defaults to 4.
+     */
+    public static final String SHELLS_PROPERTY = "vidar.command.shells";
+    private static final int DEFAULT_SHELLS = 4;
+
+    private static final ExecutorService EXECUTOR = Executors.newVirtualThreadPerTaskExecutor();
+    private static SystemService instance;
+
+    private final Semaphore permits;
+    private final Duration defaultTimeout;
+    private final CommandExecutor commandExecutor;
+    private final MetricsRegistry metrics;
     Logger log = LogManager.getLogger(SystemService.class);
 
+    /**
+     * Create a SystemService with the concurrency limit from the {@value CONCURRENCY_PROPERTY} system property.
+     */
+    public SystemService() {
+        this(Integer.getInteger(CONCURRENCY_PROPERTY, DEFAULT_CONCURRENCY));
+    }
 
-    public static SystemService get() {
-        return new SystemService();
+    /**
+     * Create a SystemService with a given concurrency limit and the executor from the {@value EXECUTOR_PROPERTY}
+     * system property.
+     *
+     * @param maxConcurrency The maximum number of commands that are executed at the same time by the async api.
+     */
+    public SystemService(int maxConcurrency) {
+        this(maxConcurrency, createExecutor(System.getProperty(EXECUTOR_PROPERTY, EXECUTOR_PROCESS)));
+    }
+
+    /**
+     * Create a SystemService with a given concurrency limit and executor.
+     *
+     * @param maxConcurrency  The maximum number of commands that are executed at the same time by the async api.
+     * @param commandExecutor The executor running the commands.
+     */
+    public SystemService(int maxConcurrency, CommandExecutor commandExecutor) {
+        this(maxConcurrency, commandExecutor, CommandMetrics.get());
+    }
+
+    /**
+     * Create a SystemService with a given concurrency limit, executor and metrics registry.
+     *
+     * @param maxConcurrency  The maximum number of commands that are executed at the same time by the async api.
+     * @param commandExecutor The executor running the commands.
+     * @param metrics         The registry receiving the measurements of every command.
+     */
+    public SystemService(int maxConcurrency, CommandExecutor commandExecutor, MetricsRegistry metrics) {
+        if (maxConcurrency < 1) {
+            throw new IllegalArgumentException("maxConcurrency must be at least 1 but was " + maxConcurrency);
+        }
+        this.commandExecutor = commandExecutor;
+        this.metrics = metrics;
+        this.permits = new Semaphore(maxConcurrency);
+        long timeoutSeconds = Long.getLong(TIMEOUT_PROPERTY, 0);
+        this.defaultTimeout = timeoutSeconds > 0 ? Duration.ofSeconds(timeoutSeconds) : null;
+    }
+
+    private static CommandExecutor createExecutor(String name) {
+        return switch (name) {
+            case EXECUTOR_PROCESS -> new ProcessExecutor();
+            case EXECUTOR_SHELL -> new ShellPoolExecutor(Integer.getInteger(SHELLS_PROPERTY, DEFAULT_SHELLS));
+            default -> throw new IllegalArgumentException("Unknown " + EXECUTOR_PROPERTY + " " + name);
+        };
+    }
+
+    /**
+     * Get the shared SystemService, so that the concurrency limit applies to all services using it.
+     *
+     * @return The shared instance.
+     */
+    public static synchronized SystemService get() {
+        if (instance == null) {
+            instance = new SystemService();
+        }
+        return instance;
     }
 
     /**
      * Executes a command.
-     * Command will be prefixed with /bin/sh -c.
+     * Command will be interpreted by /bin/sh, in a new process or a shell coprocess depending on {@value EXECUTOR_PROPERTY}.
+     * The deadline is taken from the {@value TIMEOUT_PROPERTY} system property.
      *
      * @param command The command to be executed.
      * @return The CommandResult containing the stdout or stderr output and the exit code.
      */
     public CommandResult executeCommand(String command) {
-        ProcessBuilder builder = new ProcessBuilder("/bin/sh", "-c", command);
-        String error = "";
+        return executeCommand(command, defaultTimeout);
+    }
+
+    /**
+     * Executes a command with a deadline.
+     * Command will be interpreted by /bin/sh, in a new process or a shell coprocess depending on {@value EXECUTOR_PROPERTY}.
+     *
+     * @param command The command to be executed.
+     * @param timeout The deadline of the command, or null to wait until it exits.
+     * @return The CommandResult containing the stdout or stderr output and the exit code.
+     */
+    public CommandResult executeCommand(String command, Duration timeout) {
+        return toCommandResult(command, execute(command, timeout));
+    }
+
+    /**
+     * Executes a program without a shell.
+     * The arguments are passed to the program as they are, so they never have to be quoted. The deadline is taken
+     * from the {@value TIMEOUT_PROPERTY} system property.
+     *
+     * @param argv The program and its arguments, e.g. from {@link Command#argv()}.
+     * @return The CommandResult containing the stdout or stderr output and the exit code.
+     */
+    public CommandResult executeArgs(List<String> argv) {
+        return executeArgs(argv, defaultTimeout);
+    }
+
+    /**
+     * Executes a program without a shell and with a deadline.
+     *
+     * @param argv    The program and its arguments, e.g. from {@link Command#argv()}.
+     * @param timeout The deadline of the command, or null to wait until it exits.
+     * @return The CommandResult containing the stdout or stderr output and the exit code.
+     */
+    public CommandResult executeArgs(List<String> argv, Duration timeout) {
+        return toCommandResult(Command.join(argv), execute(argv, timeout));
+    }
 
+    private CommandResult toCommandResult(String command, ProcessResult result) {
+        if (result.exitCode() == 0) {
+            log.debug(LOG_DEBUG_COMMAND_SUCCEEDED, command, result.duration(), result.stdout());
+        } else {
+            log.warn(LOG_DEBUG_COMMAND_EXIT_CODE_NOT_0, command, result.exitCode(), result.stderr());
+        }
+        return result.toCommandResult();
+    }
+
+    /**
+     * Executes a command with a deadline and returns the full result.
+     * Command will be interpreted by /bin/sh. Stdout and stderr are drained concurrently, and the process tree is
+     * killed when the deadline passes or the calling thread is interrupted. The command is measured in the metrics registry.
+     *
+     * @param command The command to be executed.
+     * @param timeout The deadline of the command, or null to wait until it exits.
+     * @return The ProcessResult containing stdout, stderr, exit code and duration.
+     */
+    public ProcessResult execute(String command, Duration timeout) {
+        return measure(CommandKind.of(command), () -> commandExecutor.execute(command, timeout));
+    }
+
+    /**
+     * Executes a program with a deadline and returns the full result.
+     * The arguments are passed to the program as they are, without /bin/sh interpreting them. Like
+     * {@link #execute(String, Duration)} the process tree is killed when the deadline passes or the calling thread is
+     * interrupted, and the command is measured in the metrics registry.
+     *
+     * @param argv    The program and its arguments, e.g. from {@link Command#argv()}.
+     * @param timeout The deadline of the command, or null to wait until it exits.
+     * @return The ProcessResult containing stdout, stderr, exit code and duration.
+     */
+    public ProcessResult execute(List<String> argv, Duration timeout) {
+        return measure(CommandKind.of(String.join(" ", argv)), () -> commandExecutor.execute(argv, timeout));
+    }
+
+    private ProcessResult measure(String kind, Supplier<ProcessResult> command) {
+        metrics.commandStarted(kind);
+        long start = System.nanoTime();
+        ProcessResult result;
         try {
-            Process process = builder.start();
-            try (BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream()))) {
-                BufferedReader r2 = new BufferedReader(new InputStreamReader(process.getErrorStream()));
-                String output = reader.lines()
-                        .collect(Collectors.joining("\n"))
-                        .trim();
-
-                error = r2.lines()
-                        .collect(Collectors.joining("\n"))
-                        .trim();
-                int exitCode = process.waitFor();
-
-                if (exitCode == 0) {
-                    log.debug(LOG_DEBUG_COMMAND_EXIT_CODE_NOT_0, command, output);
-                    return new CommandResult(output, exitCode);
-
-                }
-                log.warn(LOG_DEBUG_COMMAND_THREW_EXCEPTION, command, exitCode, error);
-                return new CommandResult(error, exitCode);
+            result = command.get();
+        } catch (RuntimeException e) {
+            metrics.commandFinished(kind, CommandMetrics.EXIT_CODE_EXCEPTION, Duration.ofNanos(System.nanoTime() - start), 0);
+            throw e;
+        }
+        metrics.commandFinished(kind, result.exitCode(), result.duration(), utf8Length(result.stdout()) + utf8Length(result.stderr()));
+        return result;
+    }
+
+    /**
+     * Returns the registry receiving the measurements of every command.
+     *
+     * @return The registry.
+     */
+    public MetricsRegistry metrics() {
+        return metrics;
+    }
+
+    /**
+     * Executes a command on a virtual thread.
+     * At most the configured number of commands run at the same time, further commands wait for a free slot.
+     * Cancelling the future kills the process tree.
+     *
+     * @param command The command to be executed.
+     * @param timeout The deadline of the command, or null to wait until it exits.
+     * @return A future completing with the ProcessResult of the command.
+     */
+    public CompletableFuture<ProcessResult> executeAsync(String command, Duration timeout) {
+        return submit(() -> execute(command, timeout));
+    }
+
+    /**
+     * Executes a command on a virtual thread.
+     * At most the configured number of commands run at the same time, further commands wait for a free slot.
+     * Cancelling the future kills the process tree.
+     *
+     * @param command The command to be executed.
+     * @return A future completing with the CommandResult of the command.
+     */
+    public CompletableFuture<CommandResult> executeCommandAsync(String command) {
+        return submit(() -> executeCommand(command));
+    }
+
+    /**
+     * Executes a program without a shell on a virtual thread.
+     * At most the configured number of commands run at the same time, further commands wait for a free slot.
+     * Cancelling the future kills the process tree.
+     *
+     * @param argv The program and its arguments, e.g. from {@link Command#argv()}.
+     * @return A future completing with the CommandResult of the command.
+     */
+    public CompletableFuture<CommandResult> executeArgsAsync(List<String> argv) {
+        return submit(() -> executeArgs(argv));
+    }
+
+    /**
+     * Runs a task on a virtual thread once a permit is free. Cancelling the returned future interrupts the task.
+     */
+    private <T> CompletableFuture<T> submit(Supplier<T> task) {
+        CompletableFuture<T> future = new CompletableFuture<>();
+        Future<?> worker = EXECUTOR.submit(() -> {
+            try {
+                permits.acquire();
+            } catch (InterruptedException e) {
+                future.cancel(false);
+                return;
+            }
+            try {
+                future.complete(task.get());
+            } catch (Throwable t) {
+                future.completeExceptionally(t);
+            } finally {
+                permits.release();
+            }
+        });
+        future.whenComplete((result, throwable) -> {
+            if (future.isCancelled()) {
+                worker.cancel(true);
             }
+        });
+        return future;
+    }
 
-        } catch (IOException e) {
-            return new CommandResult("", 5);
-        } catch (InterruptedException e) {
-            Thread.currentThread().interrupt(); // Preserve interrupt status
-            return new CommandResult("", 4);
+    /**
+     * Counts the UTF-8 bytes of a string without encoding it.
+     */
+    private static long utf8Length(String text) {
+        long length = 0;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c < 0x80) {
+                length++;
+            } else if (c < 0x800) {
+                length += 2;
+            } else if (Character.isHighSurrogate(c) && i + 1 < text.length() && Character.isLowSurrogate(text.charAt(i + 1))) {
+                length += 4;
+                i++;
+            } else {
+                length += 3;
+            }
         }
+        return length;
     }
 
-    // Lists all folders in directory
+    /**
+     * Returns the Vidar cache directory, shared by all projects of the user.
+     * It is taken from the {@value CACHE_DIRECTORY_PROPERTY} system property, `$XDG_CACHE_HOME/vidar` or `~/.cache/vidar`.
+     *
+     * @return The path of the cache directory. It might not exist yet.
+     */
+    public static Path cacheDirectory() {
+        String cacheDirectory = System.getProperty(CACHE_DIRECTORY_PROPERTY);
+        if (cacheDirectory != null && !cacheDirectory.isBlank()) {
+            return Path.of(cacheDirectory);
+        }
+        String xdgCacheHome = System.getenv("XDG_CACHE_HOME");
+        if (xdgCacheHome != null && !xdgCacheHome.isBlank()) {
+            return Path.of(xdgCacheHome, "vidar");
+        }
+        return Path.of(System.getProperty("user.home"), ".cache", "vidar");
+    }
+
+    /**
+     * Lists all entries of a directory.
+     *
+     * @param path The directory.
+     * @return The names of the entries. Empty when the directory does not exist.
+     * @see FileService#list(Path)
+     */
     public Set<String> ls(String path) {
-        String execString = String.format(LS_COMMAND, path);
-        var result = executeCommand(execString)
-                .content()
-                .split("\n");
-        return Stream.of(result).filter(s -> !s.isBlank()).collect(Collectors.toSet());
+        return FileService.get().list(Path.of(path));
     }
 
+    /**
+     * Deletes a file or a directory with everything inside.
+     *
+     * @param path The file or directory.
+     * @see FileService#delete(Path)
+     */
     public void rm(Path path) {
         try {
-            String execString = String.format(RM_COMMAND, path.toRealPath());
-            executeCommand(execString);
-        } catch (NoSuchFileException e) {
+            FileService.get().delete(path);
         } catch (IOException e) {
             throw new RuntimeException(e);
         }
@@ -0,0 +1,59 @@
+package com.dmoser.codyssey.vidar;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.List;
+import java.util.Optional;
+
+public class PluginRegistryTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void test_putAndRemove_persisted() {
+        PluginRegistry registry = PluginRegistry.of(tempDir);
+        Assertions.assertFalse(registry.exists());
+        Assertions.assertEquals(0, registry.all().size());
+
+        PluginInfo web = new PluginInfo("web", "https://example.com/web.git", "abc", "hash", List.of("nginx"));
+        PluginInfo db = new PluginInfo("db", "https://example.com/db.git", "def", "hash", List.of("postgres"));
+        registry.putAll(List.of(web, db));
+
+        Assertions.assertTrue(Files.exists(tempDir.resolve(PluginRegistry.INDEX_FILE)));
+        Assertions.assertEquals(List.of("db", "web"), List.copyOf(registry.all().keySet()));
+        Assertions.assertEquals(Optional.of(web), registry.get("web"));
+
+        registry.removeAll(List.of("db"));
+        Assertions.assertEquals(List.of("web"), List.copyOf(registry.all().keySet()));
+    }
+
+    @Test
+    void test_all_reloadsChangedFile() throws IOException {
+        PluginRegistry registry = PluginRegistry.of(tempDir);
+        registry.putAll(List.of(new PluginInfo("web", "", "", "", List.of())));
+        Path file = tempDir.resolve(PluginRegistry.INDEX_FILE);
+
+        Files.writeString(file, """
+                [{"name":"other","repository":"","commit":"","composeHash":"","services":["app"]}]
+                """);
+        Files.setLastModifiedTime(file, FileTime.fromMillis(0));
+
+        Assertions.assertEquals(List.of("other"), List.copyOf(registry.all().keySet()));
+        Assertions.assertEquals(List.of("app"), registry.get("other").orElseThrow().services());
+    }
+
+    @Test
+    void test_hash() throws IOException {
+        Path file = Files.writeString(tempDir.resolve("docker-compose.yml"), "services: {}\n");
+
+        Assertions.assertEquals(64, PluginRegistry.hash(file).length());
+        Assertions.assertEquals("", PluginRegistry.hash(tempDir.resolve("missing.yml")));
+    }
+}
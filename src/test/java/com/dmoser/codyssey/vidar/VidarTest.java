@@ -0,0 +1,125 @@
+package com.dmoser.codyssey.vidar;
+
+import com.dmoser.codyssey.vidar.service.ComposeService;
+import com.dmoser.codyssey.vidar.service.EnvironmentService;
+import com.dmoser.codyssey.vidar.service.GitService;
+import com.dmoser.codyssey.vidar.service.ProcessResult;
+import com.dmoser.codyssey.vidar.service.SystemService;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.stream.Collectors;
+
+public class VidarTest {
+
+    @TempDir
+    Path tempDir;
+
+    private final List<String> downCommands = new CopyOnWriteArrayList<>();
+    private final Set<String> runningServices = new CopyOnWriteArraySet<>();
+    private final List<Boolean> pluginsPresentOnDown = new CopyOnWriteArrayList<>();
+    private Vidar vidar;
+
+    /**
+     * Answers the git and compose commands of plugins. A clone of `broken` fails, a clone of `docs` contains no
+     * docker-compose.yml and every other clone contains the service `<plugin>-app`.
+     */
+    private ProcessResult execute(String command) {
+        String[] arguments = command.split(" ");
+        if (command.startsWith("git clone")) {
+            Path target = Path.of(arguments[arguments.length - 1]);
+            String plugin = target.getFileName().toString();
+            if (plugin.equals("broken")) {
+                return new ProcessResult("", "repository not found", 128, Duration.ZERO, false);
+            }
+            try {
+                Files.createDirectories(target);
+                if (!plugin.equals("docs")) {
+                    Files.writeString(target.resolve("docker-compose.yml"), "services:\n  " + plugin + "-app:\n    image: nginx\n");
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            return new ProcessResult("", "", 0, Duration.ZERO, false);
+        }
+        if (command.contains(" down ")) {
+            downCommands.add(command);
+            pluginsPresentOnDown.add(vidar.rootCompose.includes().stream().allMatch(include -> Files.exists(tempDir.resolve(include))));
+            return new ProcessResult("", "", 0, Duration.ZERO, false);
+        }
+        if (command.contains(" ps ")) {
+            String status = runningServices.stream()
+                    .filter(service -> List.of(arguments).contains(service))
+                    .map(service -> "{\"Service\":\"" + service + "\",\"Name\":\"" + service + "\",\"State\":\"running\"}")
+                    .collect(Collectors.joining("\n"));
+            return new ProcessResult(status, "", 0, Duration.ZERO, false);
+        }
+        return new ProcessResult("abc", "", 0, Duration.ZERO, false);
+    }
+
+    @BeforeEach
+    void setUp() throws IOException {
+        Files.createDirectories(tempDir.resolve("apps"));
+        Files.writeString(tempDir.resolve("docker-compose.yml"), "name: vidar\n");
+        SystemService systemService = new SystemService(4, (command, timeout) -> execute(command));
+        vidar = new Vidar(tempDir);
+        vidar.systemService = systemService;
+        vidar.gitService = new GitService(systemService);
+        vidar.composeService = new ComposeService(tempDir.toRealPath().toString(), systemService, new EnvironmentService(systemService));
+    }
+
+    @Test
+    void test_addAll_reportsFailedPlugins() {
+        List<PluginResult> results = vidar.addAll(List.of(
+                "https://example.com/web.git", "https://example.com/docs.git", "https://example.com/broken.git"));
+
+        Assertions.assertEquals(List.of("web", "docs", "broken"), results.stream().map(PluginResult::plugin).toList());
+        Assertions.assertEquals(List.of(true, false, false), results.stream().map(PluginResult::successful).toList());
+        Assertions.assertFalse(Files.exists(tempDir.resolve("apps/docs")));
+        Assertions.assertEquals(List.of("apps/web/docker-compose.yml"), vidar.rootCompose.includes());
+        Assertions.assertEquals(Set.of("web"), vidar.registry.all().keySet());
+        Assertions.assertEquals(List.of("web-app"), vidar.registry.get("web").orElseThrow().services());
+    }
+
+    @Test
+    void test_removeAll_stopsBeforeDeleting() {
+        vidar.addAll(List.of("https://example.com/web.git", "https://example.com/db.git"));
+
+        List<PluginResult> results = vidar.removeAll(List.of("web", "db"));
+
+        Assertions.assertTrue(results.stream().allMatch(PluginResult::successful));
+        Assertions.assertEquals(1, downCommands.size());
+        Assertions.assertTrue(downCommands.getFirst().endsWith(" down web-app db-app"));
+        Assertions.assertEquals(List.of(true), pluginsPresentOnDown);
+        Assertions.assertFalse(Files.exists(tempDir.resolve("apps/web")));
+        Assertions.assertFalse(Files.exists(tempDir.resolve("apps/db")));
+        Assertions.assertEquals(List.of(), vidar.rootCompose.includes());
+        Assertions.assertEquals(Set.of(), vidar.registry.all().keySet());
+    }
+
+    @Test
+    void test_removeAll_keepsPluginsThatDidNotStop() {
+        vidar.addAll(List.of("https://example.com/web.git", "https://example.com/db.git"));
+        runningServices.add("db-app");
+
+        List<PluginResult> results = vidar.removeAll(List.of("web", "db"));
+
+        Assertions.assertEquals(PluginResult.success("web"), results.get(0));
+        Assertions.assertFalse(results.get(1).successful());
+        Assertions.assertFalse(Files.exists(tempDir.resolve("apps/web")));
+        Assertions.assertTrue(Files.exists(tempDir.resolve("apps/db")));
+        Assertions.assertEquals(List.of("apps/db/docker-compose.yml"), vidar.rootCompose.includes());
+        Assertions.assertEquals(Set.of("db"), vidar.registry.all().keySet());
+    }
+}
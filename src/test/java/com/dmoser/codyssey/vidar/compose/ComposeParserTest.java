@@ -0,0 +1,146 @@
+package com.dmoser.codyssey.vidar.compose;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Set;
+
+public class ComposeParserTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void test_parse_includeExtendsAndOverride() throws IOException {
+        Files.createDirectories(tempDir.resolve("apps/plugin"));
+        Files.writeString(tempDir.resolve("docker-compose.yml"), """
+                name: project
+                include:
+                  - apps/plugin/docker-compose.yml
+                services:
+                  proxy:
+                    image: nginx
+                    ports:
+                      - "80:80"
+                    depends_on:
+                      - web
+                networks:
+                  frontend:
+                """);
+        Files.writeString(tempDir.resolve("apps/plugin/docker-compose.yml"), """
+                services:
+                  base:
+                    image: alpine
+                    volumes:
+                      - data:/data
+                  web:
+                    extends: base
+                    build: ./web
+                    ports:
+                      - target: 8080
+                        published: 8081
+                        protocol: tcp
+                    networks: [frontend]
+                volumes:
+                  data:
+                """);
+        Files.writeString(tempDir.resolve("override.yml"), """
+                services:
+                  proxy:
+                    ports:
+                      - "443:443"
+                """);
+
+        ComposeModel model = new ComposeParser().parse(tempDir.resolve("docker-compose.yml"), tempDir.resolve("override.yml"));
+
+        Assertions.assertEquals("project", model.name());
+        Assertions.assertEquals(Set.of("proxy", "base", "web"), model.serviceNames());
+        Assertions.assertEquals(List.of("80:80", "443:443"), model.services().get("proxy").ports());
+        Assertions.assertEquals(List.of("web"), model.services().get("proxy").dependsOn());
+
+        ServiceDefinition web = model.services().get("web");
+        Assertions.assertEquals("alpine", web.image());
+        Assertions.assertEquals(tempDir.resolve("apps/plugin/web").toString(), web.build());
+        Assertions.assertEquals(List.of("data:/data"), web.volumes());
+        Assertions.assertEquals(List.of("8081:8080/tcp"), web.ports());
+        Assertions.assertEquals(List.of("frontend"), web.networks());
+
+        Assertions.assertEquals(Set.of("frontend"), model.networks());
+        Assertions.assertEquals(Set.of("data"), model.volumes());
+        Assertions.assertEquals(3, model.sources().size());
+    }
+
+    @Test
+    void test_parse_buildMapWithoutContext() throws IOException {
+        Files.createDirectories(tempDir.resolve("apps/plugin"));
+        Files.writeString(tempDir.resolve("apps/plugin/docker-compose.yml"), """
+                services:
+                  app:
+                    build:
+                      dockerfile: docker/App.Dockerfile
+                """);
+
+        ComposeModel model = new ComposeParser().parse(tempDir.resolve("apps/plugin/docker-compose.yml"));
+
+        Assertions.assertEquals(tempDir.resolve("apps/plugin").toString(), model.services().get("app").build());
+    }
+
+    @Test
+    void test_parse_elementsWithoutValueAreEmpty() throws IOException {
+        Path file = tempDir.resolve("docker-compose.yml");
+        Files.writeString(file, """
+                name:
+                services:
+                  app:
+                    image:
+                    build: .
+                """);
+
+        ComposeModel model = new ComposeParser().parse(file);
+
+        Assertions.assertEquals("", model.name());
+        Assertions.assertEquals("", model.services().get("app").image());
+    }
+
+    @Test
+    void test_parse_cachedUntilFileChanges() throws IOException {
+        Path file = tempDir.resolve("docker-compose.yml");
+        Files.writeString(file, "services:\n  one:\n    image: a\n");
+        ComposeParser parser = new ComposeParser();
+
+        ComposeModel first = parser.parse(file);
+        Assertions.assertSame(first, parser.parse(file));
+
+        Files.writeString(file, "services:\n  one:\n    image: a\n  two:\n    image: b\n");
+        ComposeModel changed = parser.parse(file);
+        Assertions.assertNotSame(first, changed);
+        Assertions.assertEquals(Set.of("one", "two"), changed.serviceNames());
+    }
+
+    @Test
+    void test_variableReferences_cachedWithModel() throws IOException {
+        Path file = tempDir.resolve("docker-compose.yml");
+        Files.writeString(file, "services:\n  one:\n    image: ${IMAGE}\n");
+        ComposeParser parser = new ComposeParser();
+
+        List<VariableReference> first = parser.variableReferences(file);
+        Assertions.assertEquals(List.of("IMAGE"), first.stream().map(VariableReference::name).toList());
+        Assertions.assertSame(first, parser.variableReferences(file));
+
+        Files.writeString(file, "services:\n  one:\n    image: ${IMAGE}:${TAG}\n");
+        Assertions.assertEquals(List.of("IMAGE", "TAG"), parser.variableReferences(file).stream().map(VariableReference::name).toList());
+    }
+
+    @Test
+    void test_parse_cyclicInclude() throws IOException {
+        Files.writeString(tempDir.resolve("a.yml"), "include:\n  - b.yml\n");
+        Files.writeString(tempDir.resolve("b.yml"), "include:\n  - a.yml\n");
+
+        Assertions.assertThrows(IOException.class, () -> new ComposeParser().parse(tempDir.resolve("a.yml")));
+    }
+}
@@ -3,14 +3,29 @@ package com.dmoser.codyssey.vidar.compose;
 import com.dmoser.codyssey.vidar.service.CommandResult;
 import com.dmoser.codyssey.vidar.service.ComposeService;
 import com.dmoser.codyssey.vidar.service.EnvironmentService;
+import com.dmoser.codyssey.vidar.service.ProcessResult;
+import com.dmoser.codyssey.vidar.service.ReadinessPolicy;
+import com.dmoser.codyssey.vidar.service.ServiceStatus;
 import com.dmoser.codyssey.vidar.service.SystemService;
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
 
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
 
 import static org.mockito.Mockito.when;
 
@@ -20,10 +35,13 @@ public class ComposeTest {
     @Mock
     SystemService systemService;
 
+    @TempDir
+    Path tempDir;
+
     @Test
     void test_ls_noService() {
         ComposeService composeService = new ComposeService("./", systemService, new EnvironmentService(systemService));
-        when(systemService.executeCommand("docker compose --file .//docker-compose.yml config --services --no-interpolate")).thenReturn(new CommandResult("", 0));
+        when(systemService.executeArgs(List.of("docker", "compose", "--file", ".//docker-compose.yml", "config", "--services", "--no-interpolate"))).thenReturn(new CommandResult("", 0));
 
         Set<String> result = composeService.ls();
         Assertions.assertEquals(0, result.size());
@@ -32,7 +50,7 @@ public class ComposeTest {
     @Test
     void test_ls_MultipleServices() {
         ComposeService composeService = new ComposeService("./", systemService, new EnvironmentService(systemService));
-        when(systemService.executeCommand("docker compose --file .//docker-compose.yml config --services --no-interpolate"))
+        when(systemService.executeArgs(List.of("docker", "compose", "--file", ".//docker-compose.yml", "config", "--services", "--no-interpolate")))
                 .thenReturn(new CommandResult("service1\nservice2", 0));
 
         Set<String> result = composeService.ls();
@@ -41,5 +59,142 @@ public class ComposeTest {
         Assertions.assertTrue(result.contains("service2"));
     }
 
+    @Test
+    void test_upBatch_singleUpAndStatusQuery() {
+        ComposeService composeService = new ComposeService("./", systemService, new EnvironmentService(systemService));
+        when(systemService.executeArgs(List.of("docker", "compose", "--file", ".//docker-compose.yml", "up", "-d", "--no-deps", "service1", "service2")))
+                .thenReturn(new CommandResult("", 0));
+        when(systemService.executeArgs(List.of("docker", "compose", "--file", ".//docker-compose.yml", "ps", "service1", "service2", "--all", "--format", "json")))
+                .thenReturn(new CommandResult("{\"Service\":\"service1\",\"Name\":\"p-service1-1\",\"State\":\"running\",\"Health\":\"healthy\",\"ExitCode\":0}", 0));
+
+        Map<String, ServiceStatus> result = composeService.upBatch(List.of("service1", "service2"));
+        Assertions.assertEquals(2, result.size());
+        Assertions.assertTrue(result.get("service1").isRunning());
+        Assertions.assertEquals("healthy", result.get("service1").health());
+        Assertions.assertEquals(ServiceStatus.STATE_NONE, result.get("service2").state());
+    }
+
+    @Test
+    void test_status_legacyArrayFormat() {
+        ComposeService composeService = new ComposeService("./", systemService, new EnvironmentService(systemService));
+        when(systemService.executeArgs(List.of("docker", "compose", "--file", ".//docker-compose.yml", "ps", "service1", "service2", "--all", "--format", "json")))
+                .thenReturn(new CommandResult("[{\"Service\":\"service1\",\"State\":\"running\"},{\"Service\":\"service2\",\"State\":\"exited\",\"ExitCode\":1}]", 0));
+
+        Map<String, ServiceStatus> result = composeService.status(List.of("service1", "service2"));
+        Assertions.assertEquals("running", result.get("service1").state());
+        Assertions.assertEquals("exited", result.get("service2").state());
+        Assertions.assertEquals(1, result.get("service2").exitCode());
+    }
+
+    @Test
+    void test_upDetached_completesWhenHealthyOrRunning() throws Exception {
+        List<String> commands = Collections.synchronizedList(new ArrayList<>());
+        Iterator<String> statusOutputs = List.of(
+                "{\"Service\":\"db\",\"State\":\"running\",\"Health\":\"starting\"}\n{\"Service\":\"web\",\"State\":\"running\"}",
+                "{\"Service\":\"db\",\"State\":\"running\",\"Health\":\"starting\"}",
+                "{\"Service\":\"db\",\"State\":\"running\",\"Health\":\"healthy\"}").iterator();
+        SystemService scripted = new SystemService(4, (command, timeout) -> {
+            commands.add(command);
+            String stdout = command.contains(" ps ") ? statusOutputs.next() : "";
+            return new ProcessResult(stdout, "", 0, Duration.ZERO, false);
+        });
+        ComposeService composeService = new ComposeService("./", scripted, new EnvironmentService(scripted));
+        ReadinessPolicy policy = new ReadinessPolicy(Duration.ofMillis(10), Duration.ofMillis(20), 0.5, Duration.ofSeconds(10), Map.of());
 
+        Map<String, ServiceStatus> result = composeService.upDetached(List.of("db", "web"), policy).get(5, TimeUnit.SECONDS);
+        Assertions.assertTrue(result.get("db").isReady());
+        Assertions.assertTrue(result.get("web").isReady());
+        // Ready services are no longer queried
+        Assertions.assertEquals(List.of(
+                "docker compose --file .//docker-compose.yml up -d --no-deps db web",
+                "docker compose --file .//docker-compose.yml ps db web --all --format json",
+                "docker compose --file .//docker-compose.yml ps db --all --format json",
+                "docker compose --file .//docker-compose.yml ps db --all --format json"), commands);
+    }
+
+    @Test
+    void test_awaitReady_stopsAtDeadlineAndOnExit() throws Exception {
+        SystemService scripted = new SystemService(4, (command, timeout) -> new ProcessResult(
+                "{\"Service\":\"slow\",\"State\":\"running\",\"Health\":\"starting\"}\n{\"Service\":\"crash\",\"State\":\"exited\",\"ExitCode\":1}",
+                "", 0, Duration.ZERO, false));
+        ComposeService composeService = new ComposeService("./", scripted, new EnvironmentService(scripted));
+        ReadinessPolicy policy = new ReadinessPolicy(Duration.ofMillis(10), Duration.ofMillis(50), 0, Duration.ofMinutes(10), Map.of())
+                .withDeadline("slow", Duration.ofMillis(200));
+
+        long start = System.nanoTime();
+        Map<String, ServiceStatus> result = composeService.awaitReady(List.of("slow", "crash"), policy).get(5, TimeUnit.SECONDS);
+        Assertions.assertTrue(Duration.ofNanos(System.nanoTime() - start).compareTo(Duration.ofMillis(200)) >= 0);
+        Assertions.assertFalse(result.get("slow").isReady());
+        Assertions.assertEquals("starting", result.get("slow").health());
+        Assertions.assertTrue(result.get("crash").isStopped());
+    }
+
+    @Test
+    void test_upInWaves_waitsForDependsOnConditions() throws IOException {
+        Files.writeString(tempDir.resolve("docker-compose.yml"), """
+                services:
+                  db:
+                    image: postgres
+                    healthcheck:
+                      test: pg_isready
+                  migrate:
+                    image: migrate
+                  app:
+                    image: app
+                    depends_on:
+                      db:
+                        condition: service_healthy
+                      migrate:
+                        condition: service_completed_successfully
+                """);
+        ReadinessPolicy policy = new ReadinessPolicy(Duration.ofMillis(10), Duration.ofMillis(20), 0, Duration.ofSeconds(10), Map.of());
+
+        List<String> commands = Collections.synchronizedList(new ArrayList<>());
+        SystemService scripted = conditionScript(commands, 0);
+        ComposeService composeService = new ComposeService(tempDir.toString(), scripted, new EnvironmentService(scripted));
+        Map<String, ServiceStatus> result = composeService.upInWaves(List.of("app"), policy);
+        Assertions.assertTrue(result.get("app").isRunning());
+        // app is only started after db reported healthy and migrate reported its exit
+        int upApp = commands.indexOf("up app");
+        Assertions.assertTrue(upApp > commands.indexOf("db healthy"), commands.toString());
+        Assertions.assertTrue(upApp > commands.indexOf("migrate exited 0"), commands.toString());
+
+        commands.clear();
+        scripted = conditionScript(commands, 1);
+        composeService = new ComposeService(tempDir.toString(), scripted, new EnvironmentService(scripted));
+        result = composeService.upInWaves(List.of("app"), policy);
+        Assertions.assertEquals(ServiceStatus.STATE_NONE, result.get("app").state());
+        Assertions.assertFalse(commands.contains("up app"), commands.toString());
+    }
+
+    /**
+     * Scripts compose for db, migrate and app. db becomes healthy and migrate exits with the given code on their
+     * third status query. Started services and reported states are recorded.
+     */
+    private static SystemService conditionScript(List<String> commands, int migrateExitCode) {
+        Map<String, Integer> queries = new ConcurrentHashMap<>();
+        return new SystemService(4, (command, timeout) -> {
+            List<String> arguments = List.of(command.split(" "));
+            if (arguments.contains("up")) {
+                commands.add("up " + String.join(" ", arguments.subList(arguments.indexOf("--no-deps") + 1, arguments.size())));
+                return new ProcessResult("", "", 0, Duration.ZERO, false);
+            }
+            StringBuilder stdout = new StringBuilder();
+            for (String service : arguments.subList(arguments.indexOf("ps") + 1, arguments.indexOf("--all"))) {
+                boolean done = queries.merge(service, 1, Integer::sum) >= 3;
+                String status = switch (service) {
+                    case "db" -> done ? "\"State\":\"running\",\"Health\":\"healthy\"" : "\"State\":\"running\",\"Health\":\"starting\"";
+                    case "migrate" -> done ? "\"State\":\"exited\",\"ExitCode\":" + migrateExitCode : "\"State\":\"running\"";
+                    default -> "\"State\":\"running\"";
+                };
+                if (done && service.equals("db")) {
+                    commands.add("db healthy");
+                } else if (done && service.equals("migrate")) {
+                    commands.add("migrate exited " + migrateExitCode);
+                }
+                stdout.append("{\"Service\":\"").append(service).append("\",").append(status).append("}\n");
+            }
+            return new ProcessResult(stdout.toString(), "", 0, Duration.ZERO, false);
+        });
+    }
 }
@@ -0,0 +1,131 @@
+package com.dmoser.codyssey.vidar.compose;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.stream.IntStream;
+
+public class EnvStoreTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void test_parse_dotenvSyntax() {
+        EnvStore.EnvFile envFile = EnvStore.parse("""
+                # comment
+                PLAIN=value # inline comment
+                export EXPORTED=yes
+                SINGLE='$NOT_INTERPOLATED # kept'
+                DOUBLE="line1\\nline2 \\"quoted\\""
+                MULTI="first
+                second"
+
+                not a variable
+                EMPTY=
+                """);
+
+        Assertions.assertEquals(List.of("PLAIN", "EXPORTED", "SINGLE", "DOUBLE", "MULTI", "EMPTY"), List.copyOf(envFile.values().keySet()));
+        Assertions.assertEquals("value", envFile.values().get("PLAIN"));
+        Assertions.assertEquals("yes", envFile.values().get("EXPORTED"));
+        Assertions.assertEquals("$NOT_INTERPOLATED # kept", envFile.values().get("SINGLE"));
+        Assertions.assertEquals("line1\nline2 \"quoted\"", envFile.values().get("DOUBLE"));
+        Assertions.assertEquals("first\nsecond", envFile.values().get("MULTI"));
+        Assertions.assertEquals("", envFile.values().get("EMPTY"));
+    }
+
+    @Test
+    void test_setAll_preservesLayoutAndWritesAtomically() throws IOException {
+        Path file = tempDir.resolve(".env");
+        Files.writeString(file, """
+                # database
+                export DB_USER=admin
+                DB_PASSWORD=old # rotate me
+
+                # web
+                PORT=80
+                """);
+        EnvStore store = EnvStore.of(file);
+
+        Map<String, String> variables = new LinkedHashMap<>();
+        variables.put("DB_PASSWORD", "new secret");
+        variables.put("PORT", "8080");
+        variables.put("MOTD", "it's \"fine\"\nreally");
+        store.setAll(variables);
+
+        Assertions.assertEquals("""
+                # database
+                export DB_USER=admin
+                DB_PASSWORD='new secret'
+
+                # web
+                PORT=8080
+                MOTD="it's \\"fine\\"\\nreally"
+                """, Files.readString(file));
+        Assertions.assertEquals(Map.of("DB_USER", "admin", "DB_PASSWORD", "new secret", "PORT", "8080", "MOTD", "it's \"fine\"\nreally"),
+                store.values());
+        try (var files = Files.list(tempDir)) {
+            Assertions.assertEquals(List.of(file), files.toList());
+        }
+
+        store.remove("PORT");
+        Assertions.assertFalse(Files.readString(file).contains("PORT"));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> store.set("NOT VALID", "x"));
+    }
+
+    @Test
+    void test_set_duplicateKeyRewritesTheEntryThatIsRead() throws IOException {
+        Path file = tempDir.resolve(".env");
+        Files.writeString(file, """
+                PORT=80
+                HOST=localhost
+                export PORT=8080
+                """);
+        EnvStore store = EnvStore.of(file);
+        Assertions.assertEquals("8080", store.get("PORT").orElseThrow());
+
+        store.set("PORT", "9090");
+
+        Assertions.assertEquals("""
+                HOST=localhost
+                export PORT=9090
+                """, Files.readString(file));
+        Assertions.assertEquals("9090", store.get("PORT").orElseThrow());
+    }
+
+    @Test
+    void test_values_invalidatedByExternalChange() throws Exception {
+        Path file = tempDir.resolve(".env");
+        Files.writeString(file, "KEY=first\n");
+        EnvStore store = EnvStore.of(file);
+        Assertions.assertEquals("first", store.get("KEY").orElseThrow());
+
+        Files.writeString(file, "KEY=second\n");
+
+        long deadline = System.currentTimeMillis() + 10_000;
+        while (!store.get("KEY").orElseThrow().equals("second") && System.currentTimeMillis() < deadline) {
+            Thread.sleep(20);
+        }
+        Assertions.assertEquals("second", store.get("KEY").orElseThrow());
+    }
+
+    @Test
+    void test_set_concurrentWriters() {
+        EnvStore store = EnvStore.of(tempDir.resolve(".env"));
+
+        CompletableFuture.allOf(IntStream.range(0, 50)
+                .mapToObj(i -> CompletableFuture.runAsync(() -> store.set("KEY_" + i, String.valueOf(i))))
+                .toArray(CompletableFuture[]::new)).join();
+
+        Assertions.assertEquals(50, store.values().size());
+        IntStream.range(0, 50).forEach(i -> Assertions.assertEquals(String.valueOf(i), store.get("KEY_" + i).orElseThrow()));
+    }
+}
@@ -0,0 +1,91 @@
+package com.dmoser.codyssey.vidar.compose;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+public class InterpolationTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void test_interpolate_fullSyntax() {
+        Map<String, String> env = Map.of("SET", "value", "EMPTY", "");
+
+        Assertions.assertEquals("value-value", Interpolation.interpolate("$SET-${SET}", env::get));
+        Assertions.assertEquals("a", Interpolation.interpolate("${UNSET:-a}", env::get));
+        Assertions.assertEquals("b", Interpolation.interpolate("${EMPTY:-b}", env::get));
+        Assertions.assertEquals("", Interpolation.interpolate("${EMPTY-c}", env::get));
+        Assertions.assertEquals("r", Interpolation.interpolate("${SET:+r}", env::get));
+        Assertions.assertEquals("", Interpolation.interpolate("${EMPTY:+r}", env::get));
+        Assertions.assertEquals("r", Interpolation.interpolate("${EMPTY+r}", env::get));
+        Assertions.assertEquals("$SET and $", Interpolation.interpolate("$$SET and $", env::get));
+        Assertions.assertEquals("value", Interpolation.interpolate("${UNSET:-${SET}}", env::get));
+        Assertions.assertEquals("value", Interpolation.interpolate("${SET:?${MISSING:?never evaluated}}", env::get));
+
+        InterpolationException required = Assertions.assertThrows(InterpolationException.class,
+                () -> Interpolation.interpolate("${UNSET:?must be set}", env::get));
+        Assertions.assertTrue(required.getMessage().contains("must be set"));
+        Assertions.assertThrows(InterpolationException.class, () -> Interpolation.interpolate("${SET", env::get));
+        Assertions.assertThrows(InterpolationException.class, () -> Interpolation.interpolate("${SET!x}", env::get));
+    }
+
+    @Test
+    void test_scan_nestedAndEscaped() {
+        List<VariableReference> references = Interpolation.scan("$$NOT ${A:-${B}} $C ${D:?missing}", null);
+
+        Assertions.assertEquals(List.of("B", "A", "C", "D"), references.stream().map(VariableReference::name).toList());
+        Assertions.assertEquals("${B}", references.get(1).defaultValue().orElseThrow());
+        Assertions.assertTrue(references.get(3).isRequired());
+    }
+
+    @Test
+    void test_resolve_layeredSourcesAcrossIncludes() throws IOException {
+        Files.createDirectories(tempDir.resolve("sub"));
+        Path root = tempDir.resolve("docker-compose.yml");
+        Path sub = tempDir.resolve("sub/docker-compose.yml");
+        Files.writeString(root, """
+                # $COMMENTED is not interpolated
+                include:
+                  - sub/docker-compose.yml
+                services:
+                  web:
+                    image: "nginx:${TAG:-latest}"
+                    environment:
+                      PASSWORD: ${PASSWORD:?set a password}
+                """);
+        Files.writeString(sub, """
+                services:
+                  db:
+                    image: postgres
+                    environment:
+                      USER: $USER_NAME
+                      PORT: ${PORT-5432}
+                """);
+
+        List<VariableReference> references = Interpolation.scan(List.of(root, sub));
+        Map<String, VariableInfo> variables = new VariableSources()
+                .with(VariableSources.OVERRIDES, Map.of("PORT", "6543"))
+                .with(VariableSources.ENVIRONMENT, Map.of("USER_NAME", "env"))
+                .with(VariableSources.DOT_ENV, Map.of("USER_NAME", "dotenv", "PASSWORD", "secret"))
+                .resolve(references);
+
+        Assertions.assertEquals(List.of("PASSWORD", "PORT", "TAG", "USER_NAME"), List.copyOf(variables.keySet()));
+        Assertions.assertEquals(new VariableInfo("TAG", "latest", VariableInfo.SOURCE_DEFAULT, "latest", false, Set.of(root)),
+                variables.get("TAG"));
+        Assertions.assertEquals(new VariableInfo("PASSWORD", "secret", VariableSources.DOT_ENV, "", true, Set.of(root)),
+                variables.get("PASSWORD"));
+        Assertions.assertEquals(new VariableInfo("USER_NAME", "env", VariableSources.ENVIRONMENT, "", false, Set.of(sub)),
+                variables.get("USER_NAME"));
+        Assertions.assertEquals(new VariableInfo("PORT", "6543", VariableSources.OVERRIDES, "5432", false, Set.of(sub)),
+                variables.get("PORT"));
+    }
+}
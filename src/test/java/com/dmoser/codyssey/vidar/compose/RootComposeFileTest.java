@@ -0,0 +1,80 @@
+package com.dmoser.codyssey.vidar.compose;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.stream.IntStream;
+
+public class RootComposeFileTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void test_update_keepsOtherElements() throws IOException {
+        Path file = tempDir.resolve("docker-compose.yml");
+        Files.writeString(file, """
+                name: vidar
+                include:
+                  - apps/a/docker-compose.yml
+                  - path: apps/b/docker-compose.yml
+                    env_file: apps/b/.env
+                services:
+                  proxy:
+                    image: nginx
+                """);
+        RootComposeFile root = RootComposeFile.of(file);
+
+        root.update(List.of("apps/c/docker-compose.yml", "apps/a/docker-compose.yml"), List.of("apps/b/docker-compose.yml"));
+
+        Assertions.assertEquals(List.of("apps/a/docker-compose.yml", "apps/c/docker-compose.yml"), root.includes());
+        Map<?, ?> tree = ComposeParser.MAPPER.readValue(file.toFile(), Map.class);
+        Assertions.assertEquals("vidar", tree.get("name"));
+        Assertions.assertEquals(Map.of("proxy", Map.of("image", "nginx")), tree.get("services"));
+    }
+
+    @Test
+    void test_update_keepsNumericStringsQuoted() throws IOException {
+        Path file = tempDir.resolve("docker-compose.yml");
+        Files.writeString(file, """
+                version: "3.8"
+                services:
+                  proxy:
+                    image: nginx
+                    user: "1000"
+                    environment:
+                      UMASK: "0755"
+                      DEBUG: "true"
+                """);
+        RootComposeFile root = RootComposeFile.of(file);
+
+        root.update(List.of("apps/a/docker-compose.yml"), List.of());
+
+        Map<?, ?> tree = ComposeParser.MAPPER.readValue(file.toFile(), Map.class);
+        Assertions.assertEquals("3.8", tree.get("version"));
+        Map<?, ?> proxy = (Map<?, ?>) ((Map<?, ?>) tree.get("services")).get("proxy");
+        Assertions.assertEquals("1000", proxy.get("user"));
+        Assertions.assertEquals(Map.of("UMASK", "0755", "DEBUG", "true"), proxy.get("environment"));
+    }
+
+    @Test
+    void test_include_concurrentCallersAreNotLost() {
+        Path file = tempDir.resolve("docker-compose.yml");
+        RootComposeFile root = RootComposeFile.of(file);
+
+        CompletableFuture.allOf(IntStream.range(0, 50)
+                .mapToObj(i -> CompletableFuture.runAsync(() -> root.include(List.of("apps/" + i + "/docker-compose.yml"))))
+                .toArray(CompletableFuture[]::new)).join();
+
+        Assertions.assertEquals(50, root.includes().size());
+        Assertions.assertEquals(50, Set.copyOf(root.includes()).size());
+    }
+}
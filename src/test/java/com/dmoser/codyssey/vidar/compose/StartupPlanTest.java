@@ -0,0 +1,92 @@
+package com.dmoser.codyssey.vidar.compose;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+public class StartupPlanTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void test_of_wavesFollowDependenciesAcrossIncludes() throws IOException {
+        Files.createDirectories(tempDir.resolve("apps/shop"));
+        Files.createDirectories(tempDir.resolve("apps/auth"));
+        Files.writeString(tempDir.resolve("docker-compose.yml"), """
+                include:
+                  - apps/shop/docker-compose.yml
+                  - apps/auth/docker-compose.yml
+                """);
+        Files.writeString(tempDir.resolve("apps/shop/docker-compose.yml"), """
+                services:
+                  shop:
+                    image: shop
+                    depends_on:
+                      - shop-db
+                      - auth
+                  shop-db:
+                    image: postgres
+                  shop-worker:
+                    image: shop
+                    depends_on:
+                      shop-db:
+                        condition: service_healthy
+                """);
+        Files.writeString(tempDir.resolve("apps/auth/docker-compose.yml"), """
+                services:
+                  auth:
+                    image: auth
+                    depends_on:
+                      - auth-db
+                  auth-db:
+                    image: postgres
+                  unrelated:
+                    image: alpine
+                """);
+        ComposeModel model = ComposeParser.get().parse(tempDir.resolve("docker-compose.yml"));
+
+        StartupPlan plan = StartupPlan.of(model.services(), List.of("shop", "shop-worker"));
+
+        Assertions.assertEquals(List.of(
+                List.of("auth-db", "shop-db"),
+                List.of("auth", "shop-worker"),
+                List.of("shop")), plan.waves());
+        Assertions.assertEquals(Set.of("auth", "shop-db"), plan.prerequisites().get("shop"));
+        Assertions.assertEquals(ServiceDefinition.CONDITION_HEALTHY, plan.condition("shop-worker", "shop-db"));
+        Assertions.assertEquals(ServiceDefinition.CONDITION_STARTED, plan.condition("shop", "auth"));
+        Assertions.assertFalse(plan.services().contains("unrelated"));
+    }
+
+    @Test
+    void test_of_detectsCycles() {
+        Map<String, ServiceDefinition> services = Map.of(
+                "a", service("a", "b"),
+                "b", service("b", "c"),
+                "c", service("c", "a"),
+                "d", service("d"));
+
+        DependencyCycleException e = Assertions.assertThrows(DependencyCycleException.class,
+                () -> StartupPlan.of(services, List.of("a", "d")));
+        Assertions.assertEquals(List.of("a", "b", "c", "a"), e.cycle());
+    }
+
+    @Test
+    void test_of_ignoresUndefinedDependencies() {
+        Map<String, ServiceDefinition> services = Map.of("a", service("a", "external"));
+
+        Assertions.assertEquals(List.of(List.of("a")), StartupPlan.of(services, List.of("a")).waves());
+        Assertions.assertThrows(IllegalArgumentException.class, () -> StartupPlan.of(services, List.of("missing")));
+    }
+
+    private static ServiceDefinition service(String name, String... dependsOn) {
+        return new ServiceDefinition(name, "alpine", "", List.of(dependsOn), List.of(), List.of(), List.of(), Map.of());
+    }
+}
@@ -0,0 +1,44 @@
+package com.dmoser.codyssey.vidar.docker;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.util.Map;
+
+public class ContainerInventoryTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void test_inventory_singleRequest() throws Exception {
+        try (EngineStub stub = new EngineStub(tempDir);
+             EngineClient client = new EngineClient(stub.socket())) {
+            stub.on("GET /containers/json?all=true", 200, """
+                    [{"Id":"a1","Names":["/app-web-1"],"Image":"nginx","State":"running",
+                      "Labels":{"com.docker.compose.project":"app","com.docker.compose.service":"web"}},
+                     {"Id":"b2","Names":["/db"],"Image":"postgres","State":"exited","Labels":{}}]""");
+            Container container = new Container(client);
+
+            ContainerInventory inventory = container.inventory();
+            Assertions.assertEquals(2, inventory.size());
+            Assertions.assertTrue(container.isRunning("app-web-1", inventory));
+            Assertions.assertTrue(container.exists("db", inventory));
+            Assertions.assertFalse(container.isRunning("db", inventory));
+            Assertions.assertFalse(container.exists("missing", inventory));
+            Assertions.assertEquals("a1", inventory.service("app", "web").getFirst().id());
+            Assertions.assertEquals(1, stub.requests().size());
+        }
+    }
+
+    @Test
+    void test_parseLabels_commaInValue() {
+        Map<String, String> labels = ContainerInventory.parseLabels("a=1,com.docker.compose.config-files=/x.yml,/y.yml,b=2");
+
+        Assertions.assertEquals("1", labels.get("a"));
+        Assertions.assertEquals("/x.yml,/y.yml", labels.get("com.docker.compose.config-files"));
+        Assertions.assertEquals("2", labels.get("b"));
+    }
+}
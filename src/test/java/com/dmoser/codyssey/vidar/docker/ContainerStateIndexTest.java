@@ -0,0 +1,192 @@
+package com.dmoser.codyssey.vidar.docker;
+
+import com.dmoser.codyssey.vidar.service.ComposeService;
+import com.dmoser.codyssey.vidar.service.EnvironmentService;
+import com.dmoser.codyssey.vidar.service.ProcessResult;
+import com.dmoser.codyssey.vidar.service.SystemService;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.BooleanSupplier;
+
+public class ContainerStateIndexTest {
+
+    private static final String LISTING = """
+            [{"Names":["/web"],"State":"running","Labels":{"com.docker.compose.project":"app","com.docker.compose.service":"web"}},
+             {"Names":["/db"],"State":"exited","Labels":{}}]""";
+
+    @TempDir
+    Path tempDir;
+
+    private static void await(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (!condition.getAsBoolean() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        Assertions.assertTrue(condition.getAsBoolean());
+    }
+
+    private static String event(String action, String name) {
+        return "{\"Type\":\"container\",\"Action\":\"" + action + "\",\"Actor\":{\"ID\":\"id\",\"Attributes\":{\"name\":\"" + name + "\"}}}";
+    }
+
+    @Test
+    void test_apply_events() {
+        ContainerStateIndex index = new ContainerStateIndex(null, SystemService.get(), Duration.ofSeconds(1));
+
+        index.apply(event("create", "web"));
+        Assertions.assertEquals(Optional.of("created"), index.state("web"));
+        index.apply(event("start", "web"));
+        Assertions.assertTrue(index.isRunning("web"));
+        index.apply(event("health_status: healthy", "web"));
+        Assertions.assertTrue(index.isRunning("web"));
+        index.apply("{\"Action\":\"rename\",\"Actor\":{\"Attributes\":{\"name\":\"api\",\"oldName\":\"/web\"}}}");
+        Assertions.assertFalse(index.exists("web"));
+        Assertions.assertTrue(index.isRunning("api"));
+        index.apply(event("die", "api"));
+        Assertions.assertEquals(Optional.of("exited"), index.state("api"));
+        index.apply(event("destroy", "api"));
+        Assertions.assertFalse(index.exists("api"));
+    }
+
+    @Test
+    void test_seedAndEvents() throws Exception {
+        try (EngineStub stub = new EngineStub(tempDir);
+             EngineClient client = new EngineClient(stub.socket())) {
+            stub.on("GET /containers/json?all=true", 200, LISTING);
+            stub.onStream("GET /events?since=", List.of(event("start", "db"), event("create", "cache")), false);
+
+            ContainerStateIndex index = new ContainerStateIndex(client, SystemService.get(), Duration.ofMinutes(1));
+            index.start();
+            try {
+                await(() -> index.isRunning("db") && index.exists("cache"));
+                Assertions.assertTrue(index.isRunning("web"));
+                Assertions.assertEquals(Optional.of("running"), index.state("app", "web"));
+                Assertions.assertFalse(index.exists("missing"));
+            } finally {
+                index.close();
+            }
+        }
+    }
+
+    @Test
+    void test_resyncAfterStreamDropped() throws Exception {
+        try (EngineStub stub = new EngineStub(tempDir);
+             EngineClient client = new EngineClient(stub.socket())) {
+            stub.on("GET /containers/json?all=true", 200, LISTING);
+            stub.onStream("GET /events?since=", List.of(), true);
+
+            ContainerStateIndex index = new ContainerStateIndex(client, SystemService.get(), Duration.ofMillis(50));
+            index.start();
+            try {
+                await(() -> stub.requests().stream().filter(r -> r.startsWith("GET /containers/json")).count() >= 2);
+                Assertions.assertTrue(index.isRunning("web"));
+            } finally {
+                index.close();
+            }
+        }
+    }
+
+    @Test
+    void test_containerUsesSyncedIndex() throws Exception {
+        try (EngineStub stub = new EngineStub(tempDir);
+             EngineClient client = new EngineClient(stub.socket())) {
+            stub.on("GET /containers/json?all=true", 200, LISTING);
+            stub.onStream("GET /events?since=", List.of(event("start", "db")), false);
+            Container container = new Container(client);
+
+            ContainerStateIndex index = container.watch();
+            try {
+                await(() -> index.isSynced() && index.isRunning("db"));
+                int before = stub.requests().size();
+                Assertions.assertTrue(container.isRunning("web"));
+                Assertions.assertTrue(container.exists("db"));
+                Assertions.assertFalse(container.exists("missing"));
+                Assertions.assertEquals(before, stub.requests().size());
+            } finally {
+                index.close();
+            }
+        }
+    }
+
+    @Test
+    void test_composeServiceUsesSyncedIndex() throws Exception {
+        Path project = Files.createDirectories(tempDir.resolve("app"));
+        Files.writeString(project.resolve("docker-compose.yml"), "services:\n  web:\n    image: nginx\n  cache:\n    image: redis\n");
+        List<String> commands = new CopyOnWriteArrayList<>();
+        SystemService systemService = new SystemService(1, (command, timeout) -> {
+            commands.add(command);
+            return new ProcessResult("exited", "", 0, Duration.ZERO, false);
+        });
+        ComposeService composeService = new ComposeService(project.toString(), systemService, new EnvironmentService(systemService));
+
+        try (EngineStub stub = new EngineStub(tempDir);
+             EngineClient client = new EngineClient(stub.socket())) {
+            stub.on("GET /containers/json?all=true", 200, LISTING);
+            stub.onStream("GET /events?since=", List.of(), false);
+            ContainerStateIndex index = new ContainerStateIndex(client, systemService, Duration.ofMinutes(1));
+            composeService.watch(index);
+
+            Assertions.assertEquals("exited", composeService.state("web"));
+            Assertions.assertEquals(1, commands.size());
+
+            index.start();
+            try {
+                await(index::isSynced);
+                Assertions.assertEquals("running", composeService.state("web"));
+                Assertions.assertEquals("none", composeService.stateAsync("cache").join());
+                Assertions.assertEquals(1, commands.size());
+            } finally {
+                index.close();
+            }
+        }
+    }
+
+    @Test
+    void test_composeServiceResolvesProjectNameLikeCompose() throws Exception {
+        Path fromDotEnv = Files.createDirectories(tempDir.resolve("other"));
+        Files.writeString(fromDotEnv.resolve("docker-compose.yml"), "services:\n  web:\n    image: nginx\n");
+        Files.writeString(fromDotEnv.resolve(".env"), "COMPOSE_PROJECT_NAME=app\n");
+        Path interpolated = Files.createDirectories(tempDir.resolve("interpolated"));
+        Files.writeString(interpolated.resolve("docker-compose.yml"), "name: ${PROJECT:-app}\nservices:\n  web:\n    image: nginx\n");
+        Path unresolved = Files.createDirectories(tempDir.resolve("unresolved"));
+        Files.writeString(unresolved.resolve("docker-compose.yml"), "name: ${PROJECT_NAME_NOT_SET:?required}\nservices:\n  web:\n    image: nginx\n");
+        List<String> commands = new CopyOnWriteArrayList<>();
+        SystemService systemService = new SystemService(1, (command, timeout) -> {
+            commands.add(command);
+            return new ProcessResult("exited", "", 0, Duration.ZERO, false);
+        });
+        EnvironmentService environmentService = new EnvironmentService(systemService);
+
+        try (EngineStub stub = new EngineStub(tempDir);
+             EngineClient client = new EngineClient(stub.socket())) {
+            stub.on("GET /containers/json?all=true", 200, LISTING);
+            stub.onStream("GET /events?since=", List.of(), false);
+            ContainerStateIndex index = new ContainerStateIndex(client, systemService, Duration.ofMinutes(1));
+            index.start();
+            try {
+                await(index::isSynced);
+                for (Path project : List.of(fromDotEnv, interpolated)) {
+                    ComposeService composeService = new ComposeService(project.toString(), systemService, environmentService);
+                    composeService.watch(index);
+                    Assertions.assertEquals("running", composeService.state("web"));
+                }
+                Assertions.assertEquals(List.of(), commands);
+
+                ComposeService composeService = new ComposeService(unresolved.toString(), systemService, environmentService);
+                composeService.watch(index);
+                Assertions.assertEquals("exited", composeService.state("web"));
+                Assertions.assertEquals(1, commands.size());
+            } finally {
+                index.close();
+            }
+        }
+    }
+}
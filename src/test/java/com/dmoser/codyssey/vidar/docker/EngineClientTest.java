@@ -0,0 +1,161 @@
+package com.dmoser.codyssey.vidar.docker;
+
+import com.dmoser.codyssey.vidar.service.ProcessResult;
+import com.dmoser.codyssey.vidar.service.SystemService;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+public class EngineClientTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void test_request_connectionIsReused() throws Exception {
+        try (EngineStub stub = new EngineStub(tempDir);
+             EngineClient client = new EngineClient(stub.socket())) {
+            stub.on("GET /_ping", 200, "OK");
+
+            for (int i = 0; i < 5; i++) {
+                Assertions.assertTrue(client.ping());
+            }
+            Assertions.assertEquals(1, stub.connections());
+        }
+    }
+
+    @Test
+    void test_request_chunkedBody() throws Exception {
+        try (EngineStub stub = new EngineStub(tempDir);
+             EngineClient client = new EngineClient(stub.socket())) {
+            stub.onChunked("GET /version", 200, "{\"Version\":\"28.1.1\"}");
+
+            Assertions.assertEquals("28.1.1", Docker.create(client).getVersion());
+            Assertions.assertEquals("28.1.1", Docker.create(client).getVersion());
+            Assertions.assertEquals(1, stub.connections());
+        }
+    }
+
+    @Test
+    void test_request_onlyRetriesWhenTheDaemonCanNotHaveActed() throws Exception {
+        try (EngineStub stub = new EngineStub(tempDir);
+             EngineClient client = new EngineClient(stub.socket())) {
+            stub.on("GET /_ping", 200, "OK")
+                    .onDrop("POST /containers/web/start")
+                    .onDrop("GET /containers/web/json");
+
+            Assertions.assertTrue(client.ping());
+            Assertions.assertEquals(0, client.post("/containers/web/start", null).status());
+            Assertions.assertEquals(1, stub.requests().stream().filter(r -> r.startsWith("POST")).count());
+
+            Assertions.assertTrue(client.ping());
+            Assertions.assertEquals(0, client.get("/containers/web/json").status());
+            Assertions.assertEquals(2, stub.requests().stream().filter(r -> r.startsWith("GET /containers")).count());
+        }
+    }
+
+    @Test
+    void test_request_hungDaemonPassesTheDeadline() throws Exception {
+        try (EngineStub stub = new EngineStub(tempDir);
+             EngineClient client = new EngineClient(stub.socket(), Duration.ofMillis(200))) {
+            stub.on("GET /_ping", 200, "OK").onHang("GET /version");
+
+            Assertions.assertTrue(client.ping());
+            Assertions.assertTimeoutPreemptively(Duration.ofSeconds(5),
+                    () -> Assertions.assertEquals(0, client.get("/version").status()));
+            Assertions.assertEquals(1, stub.requests().stream().filter(r -> r.startsWith("GET /version")).count());
+            Assertions.assertTrue(client.ping());
+        }
+    }
+
+    @Test
+    void test_request_daemonNotReachable() {
+        EngineClient client = new EngineClient(tempDir.resolve("missing.sock"));
+        EngineResponse response = client.get("/_ping");
+        Assertions.assertEquals(0, response.status());
+        Assertions.assertFalse(response.isSuccessful());
+    }
+
+    @Test
+    void test_container_existsAndIsRunning() throws Exception {
+        try (EngineStub stub = new EngineStub(tempDir);
+             EngineClient client = new EngineClient(stub.socket())) {
+            stub.on("GET /containers/web/json", 200, "{\"Name\":\"/web\",\"State\":{\"Running\":true}}");
+            stub.on("GET /containers/db/json", 200, "{\"Name\":\"/db\",\"State\":{\"Running\":false}}");
+            Container container = new Container(client);
+
+            Assertions.assertTrue(container.exists("web"));
+            Assertions.assertTrue(container.isRunning("web"));
+            Assertions.assertTrue(container.exists("db"));
+            Assertions.assertFalse(container.isRunning("db"));
+            Assertions.assertFalse(container.exists("missing"));
+        }
+    }
+
+    @Test
+    void test_container_rmIsOneRequest() throws Exception {
+        try (EngineStub stub = new EngineStub(tempDir);
+             EngineClient client = new EngineClient(stub.socket())) {
+            stub.on("DELETE /containers/web?force=true", 204, "");
+
+            Assertions.assertTrue(new Container(client).rm("web"));
+            Assertions.assertEquals(List.of("DELETE /containers/web?force=true"), stub.requests());
+        }
+    }
+
+    @Test
+    void test_container_createSendsPortsAndNetworks() throws Exception {
+        try (EngineStub stub = new EngineStub(tempDir);
+             EngineClient client = new EngineClient(stub.socket())) {
+            stub.on("POST /containers/create?name=web", 201, "{\"Id\":\"abc\"}");
+            stub.on("POST /networks/backend/connect", 200, "");
+
+            boolean created = new Container(client).create("nginx", "web",
+                    List.of("data:/data"), List.of("8080:80"), List.of("A=1"), List.of("frontend", "backend"));
+
+            Assertions.assertTrue(created);
+            Assertions.assertEquals(2, stub.requests().size());
+            String create = stub.requests().getFirst();
+            Assertions.assertTrue(create.contains("\"Binds\":[\"data:/data\"]"));
+            Assertions.assertTrue(create.contains("\"80/tcp\":[{\"HostIp\":\"\",\"HostPort\":\"8080\"}]"));
+            Assertions.assertTrue(create.contains("\"NetworkMode\":\"frontend\""));
+            Assertions.assertEquals("POST /networks/backend/connect {\"Container\":\"web\"}", stub.requests().get(1));
+        }
+    }
+
+    @Test
+    void test_container_createPullsMissingImage() throws Exception {
+        try (EngineStub stub = new EngineStub(tempDir);
+             EngineClient client = new EngineClient(stub.socket())) {
+            stub.on("POST /containers/create?name=web", 404, "{\"message\":\"No such image: nginx:latest\"}");
+            List<String> commands = new CopyOnWriteArrayList<>();
+            Container container = new Container(client);
+            container.systemService = new SystemService(1, (command, timeout) -> {
+                commands.add(command);
+                stub.on("POST /containers/create?name=web", 201, "{\"Id\":\"abc\"}");
+                return new ProcessResult("", "", 0, Duration.ZERO, false);
+            });
+
+            Assertions.assertTrue(container.create("nginx", "web", List.of(), List.of(), List.of(), List.of()));
+            Assertions.assertEquals(List.of("docker pull nginx"), commands);
+            Assertions.assertEquals(2, stub.requests().size());
+        }
+    }
+
+    @Test
+    void test_network_existsComparesName() throws Exception {
+        try (EngineStub stub = new EngineStub(tempDir);
+             EngineClient client = new EngineClient(stub.socket())) {
+            stub.on("GET /networks/backend", 200, "{\"Name\":\"backend\"}");
+            stub.on("GET /networks/back", 200, "{\"Name\":\"backend\"}");
+
+            Assertions.assertTrue(new Network(client).exists("backend"));
+            Assertions.assertFalse(new Network(client).exists("back"));
+        }
+    }
+}
@@ -0,0 +1,215 @@
+package com.dmoser.codyssey.vidar.docker;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A local unix socket server that serves canned Docker Engine API responses.
+ */
+class EngineStub implements AutoCloseable {
+
+    private final Path socket;
+    private final ServerSocketChannel server;
+    private final Map<String, String[]> responses = new ConcurrentHashMap<>();
+    private final Map<String, List<String>> streams = new ConcurrentHashMap<>();
+    private final List<String> heldStreams = new CopyOnWriteArrayList<>();
+    private final List<String> requests = new CopyOnWriteArrayList<>();
+    private final AtomicInteger connections = new AtomicInteger();
+
+    EngineStub(Path directory) throws IOException {
+        socket = directory.resolve("docker.sock");
+        Files.deleteIfExists(socket);
+        server = ServerSocketChannel.open(StandardProtocolFamily.UNIX);
+        server.bind(UnixDomainSocketAddress.of(socket));
+        Thread.ofVirtual().start(this::acceptLoop);
+    }
+
+    /**
+     * Register a response for a request.
+     *
+     * @param request The request in the form `METHOD /path`.
+     * @param status  The status code.
+     * @param body    The body of the response.
+     */
+    EngineStub on(String request, int status, String body) {
+        responses.put(request, new String[]{String.valueOf(status), body, "fixed"});
+        return this;
+    }
+
+    /**
+     * Register a response that is sent with chunked transfer encoding.
+     */
+    EngineStub onChunked(String request, int status, String body) {
+        responses.put(request, new String[]{String.valueOf(status), body, "chunked"});
+        return this;
+    }
+
+    /**
+     * Register a request that the stub reads and then closes the connection without answering.
+     */
+    EngineStub onDrop(String request) {
+        responses.put(request, new String[]{"0", "", "drop"});
+        return this;
+    }
+
+    /**
+     * Register a request that the stub reads and then never answers, until the client disconnects.
+     */
+    EngineStub onHang(String request) {
+        responses.put(request, new String[]{"0", "", "hang"});
+        return this;
+    }
+
+    /**
+     * Register a streamed response for all requests starting with a prefix.
+     * Every line is sent as its own chunk.
+     *
+     * @param endStream true to end the stream after the lines, false to keep it open until the client disconnects.
+     */
+    EngineStub onStream(String requestPrefix, List<String> lines, boolean endStream) {
+        streams.put(requestPrefix, lines);
+        if (!endStream) {
+            heldStreams.add(requestPrefix);
+        }
+        return this;
+    }
+
+    Path socket() {
+        return socket;
+    }
+
+    List<String> requests() {
+        return requests;
+    }
+
+    int connections() {
+        return connections.get();
+    }
+
+    private void acceptLoop() {
+        while (server.isOpen()) {
+            try {
+                SocketChannel channel = server.accept();
+                connections.incrementAndGet();
+                Thread.ofVirtual().start(() -> serve(channel));
+            } catch (IOException e) {
+                return;
+            }
+        }
+    }
+
+    private void serve(SocketChannel channel) {
+        try (channel) {
+            InputStream in = new BufferedInputStream(Channels.newInputStream(channel));
+            OutputStream out = Channels.newOutputStream(channel);
+            while (true) {
+                String requestLine = readLine(in);
+                if (requestLine == null || requestLine.isEmpty()) {
+                    return;
+                }
+                int contentLength = 0;
+                String header;
+                while (!(header = readLine(in)).isEmpty()) {
+                    if (header.toLowerCase().startsWith("content-length:")) {
+                        contentLength = Integer.parseInt(header.substring(15).trim());
+                    }
+                }
+                String body = new String(in.readNBytes(contentLength), StandardCharsets.UTF_8);
+                String request = requestLine.substring(0, requestLine.lastIndexOf(' '));
+                requests.add(body.isEmpty() ? request : request + " " + body);
+
+                String streamPrefix = streams.keySet().stream()
+                        .filter(request::startsWith)
+                        .findFirst()
+                        .orElse(null);
+                if (streamPrefix != null) {
+                    out.write("HTTP/1.1 200 OK\r\nTransfer-Encoding: chunked\r\n\r\n".getBytes(StandardCharsets.US_ASCII));
+                    for (String line : streams.get(streamPrefix)) {
+                        byte[] payload = (line + "\n").getBytes(StandardCharsets.UTF_8);
+                        writeChunk(out, payload, 0, payload.length);
+                        out.flush();
+                    }
+                    if (heldStreams.contains(streamPrefix)) {
+                        // Wait until the client disconnects
+                        in.transferTo(OutputStream.nullOutputStream());
+                        return;
+                    }
+                    out.write("0\r\n\r\n".getBytes(StandardCharsets.US_ASCII));
+                    out.flush();
+                    continue;
+                }
+
+                String[] response = responses.getOrDefault(request, new String[]{"404", "{\"message\":\"not found\"}", "fixed"});
+                if (response[2].equals("drop")) {
+                    return;
+                }
+                if (response[2].equals("hang")) {
+                    in.transferTo(OutputStream.nullOutputStream());
+                    return;
+                }
+                byte[] payload = response[1].getBytes(StandardCharsets.UTF_8);
+                StringBuilder head = new StringBuilder("HTTP/1.1 " + response[0] + " Stub\r\n");
+                head.append("Content-Type: application/json\r\n");
+                if (response[2].equals("chunked")) {
+                    head.append("Transfer-Encoding: chunked\r\n\r\n");
+                    out.write(head.toString().getBytes(StandardCharsets.US_ASCII));
+                    int half = payload.length / 2;
+                    writeChunk(out, payload, 0, half);
+                    writeChunk(out, payload, half, payload.length - half);
+                    out.write("0\r\n\r\n".getBytes(StandardCharsets.US_ASCII));
+                } else {
+                    head.append("Content-Length: ").append(payload.length).append("\r\n\r\n");
+                    out.write(head.toString().getBytes(StandardCharsets.US_ASCII));
+                    out.write(payload);
+                }
+                out.flush();
+            }
+        } catch (IOException ignored) {
+        }
+    }
+
+    private static void writeChunk(OutputStream out, byte[] payload, int offset, int length) throws IOException {
+        if (length == 0) {
+            return;
+        }
+        out.write((Integer.toHexString(length) + "\r\n").getBytes(StandardCharsets.US_ASCII));
+        out.write(payload, offset, length);
+        out.write("\r\n".getBytes(StandardCharsets.US_ASCII));
+    }
+
+    private static String readLine(InputStream in) throws IOException {
+        ByteArrayOutputStream line = new ByteArrayOutputStream();
+        int c;
+        while ((c = in.read()) != '\n') {
+            if (c < 0) {
+                return line.size() == 0 ? null : line.toString(StandardCharsets.US_ASCII);
+            }
+            if (c != '\r') {
+                line.write(c);
+            }
+        }
+        return line.toString(StandardCharsets.US_ASCII);
+    }
+
+    @Override
+    public void close() throws IOException {
+        server.close();
+        Files.deleteIfExists(socket);
+    }
+}
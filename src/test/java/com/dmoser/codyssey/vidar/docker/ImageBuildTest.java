@@ -0,0 +1,113 @@
+package com.dmoser.codyssey.vidar.docker;
+
+import com.dmoser.codyssey.vidar.service.ProcessResult;
+import com.dmoser.codyssey.vidar.service.SystemService;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+public class ImageBuildTest {
+
+    @TempDir
+    Path tempDir;
+
+    private Path context() throws IOException {
+        Path context = Files.createDirectories(tempDir.resolve("context"));
+        Files.writeString(context.resolve("Dockerfile"), "FROM alpine\nCOPY . /app\n");
+        Files.writeString(context.resolve("app.sh"), "echo hello\n");
+        Files.createDirectories(context.resolve("logs"));
+        Files.writeString(context.resolve("logs").resolve("debug.log"), "noise\n");
+        Files.writeString(context.resolve(".dockerignore"), "logs\n*.tmp\nDockerfile\n");
+        return context;
+    }
+
+    @Test
+    void test_hash_onlyCoversFilesSentToTheDaemon() throws Exception {
+        Path context = context();
+        String hash = BuildContext.hash(context);
+
+        Files.writeString(context.resolve("logs").resolve("debug.log"), "more noise\n");
+        Files.writeString(context.resolve("scratch.tmp"), "temp\n");
+        Files.setLastModifiedTime(context.resolve("app.sh"), Files.getLastModifiedTime(context.resolve("app.sh")));
+        Assertions.assertEquals(hash, BuildContext.hash(context));
+
+        // The Dockerfile is always sent, even when it is ignored
+        Files.writeString(context.resolve("Dockerfile"), "FROM alpine:3\nCOPY . /app\n");
+        String changedDockerfile = BuildContext.hash(context);
+        Assertions.assertNotEquals(hash, changedDockerfile);
+
+        Files.writeString(context.resolve("app.sh"), "echo bye\n");
+        Assertions.assertNotEquals(changedDockerfile, BuildContext.hash(context));
+    }
+
+    @Test
+    void test_dockerIgnore_patterns() {
+        DockerIgnore ignore = DockerIgnore.parse(List.of("# comment", "**/*.log", "!important.log", "/build/", "node_modules", "src/*/gen?"));
+
+        Assertions.assertTrue(ignore.isExcluded("debug.log"));
+        Assertions.assertTrue(ignore.isExcluded("a/b/debug.log"));
+        Assertions.assertFalse(ignore.isExcluded("important.log"));
+        Assertions.assertTrue(ignore.isExcluded("build/out.jar"));
+        Assertions.assertTrue(ignore.isExcluded("node_modules/x/index.js"));
+        Assertions.assertFalse(ignore.isExcluded("lib/node_modules"));
+        Assertions.assertTrue(ignore.isExcluded("src/main/gen1"));
+        Assertions.assertFalse(ignore.isExcluded("src/main/java/gen1"));
+        Assertions.assertFalse(ignore.isExcluded("main.java"));
+    }
+
+    @Test
+    void test_build_skipsAndTagsUnchangedContexts() throws Exception {
+        Path context = context();
+        String hash = BuildContext.hash(context);
+        List<String> commands = Collections.synchronizedList(new ArrayList<>());
+        try (EngineStub stub = new EngineStub(tempDir);
+             EngineClient client = new EngineClient(stub.socket())) {
+            stub.on("GET /images/app:1/json", 200, """
+                    {"Id":"sha256:abc","Config":{"Labels":{"%s":"%s"}}}""".formatted(Image.LABEL_CONTEXT_HASH, hash));
+            stub.on("POST /images/sha256:abc/tag?repo=registry%3A5000%2Fother&tag=2", 201, "");
+            ImageBuildIndex index = new ImageBuildIndex(tempDir.resolve("index.json"));
+            Image image = new Image(client, index);
+            image.systemService = new SystemService(1, (command, timeout) -> {
+                commands.add(command);
+                return new ProcessResult("", "", 0, Duration.ZERO, false);
+            });
+
+            Assertions.assertTrue(image.build(context.toString(), "app:1"));
+            Assertions.assertEquals("sha256:abc", new ImageBuildIndex(tempDir.resolve("index.json")).get(hash).orElseThrow());
+            Assertions.assertTrue(image.build(context.toString(), "registry:5000/other:2"));
+            Assertions.assertEquals(List.of(), commands);
+        }
+    }
+
+    @Test
+    void test_build_labelsNewImages() throws Exception {
+        Path context = context();
+        String hash = BuildContext.hash(context);
+        List<String> commands = Collections.synchronizedList(new ArrayList<>());
+        ImageBuildIndex index = new ImageBuildIndex(null);
+        Image image = new Image(null, index);
+        image.systemService = new SystemService(1, (command, timeout) -> {
+            commands.add(command);
+            boolean built = commands.stream().anyMatch(executed -> executed.startsWith("docker build"));
+            if (command.startsWith("docker image inspect") && built) {
+                return new ProcessResult("sha256:new " + hash, "", 0, Duration.ZERO, false);
+            }
+            return command.startsWith("docker image inspect")
+                    ? new ProcessResult("", "No such image", 1, Duration.ZERO, false)
+                    : new ProcessResult("", "", 0, Duration.ZERO, false);
+        });
+
+        Assertions.assertTrue(image.buildAll(Map.of("app:1", context.toString()), 2).get("app:1"));
+        Assertions.assertEquals("docker build --label %s=%s -t app:1 %s".formatted(Image.LABEL_CONTEXT_HASH, hash, context), commands.get(1));
+        Assertions.assertEquals("sha256:new", index.get(hash).orElseThrow());
+    }
+}
@@ -0,0 +1,63 @@
+package com.dmoser.codyssey.vidar.docker;
+
+import com.dmoser.codyssey.vidar.service.ProcessResult;
+import com.dmoser.codyssey.vidar.service.SystemService;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class ImagePullerTest {
+
+    @Test
+    void test_normalize_equalSpellings() {
+        Assertions.assertEquals("nginx:latest", ImagePuller.normalize("nginx"));
+        Assertions.assertEquals("nginx:1.27", ImagePuller.normalize("docker.io/library/nginx:1.27"));
+        Assertions.assertEquals("org/app:latest", ImagePuller.normalize("docker.io/org/app"));
+        Assertions.assertEquals("registry:5000/app:latest", ImagePuller.normalize("registry:5000/app"));
+        Assertions.assertEquals("ghcr.io/org/app@sha256:abc", ImagePuller.normalize("ghcr.io/org/app:1@sha256:abc"));
+    }
+
+    @Test
+    void test_pullAll_dedupesSkipsPresentAndLimitsConcurrency() {
+        List<String> pulls = Collections.synchronizedList(new ArrayList<>());
+        AtomicInteger running = new AtomicInteger();
+        AtomicInteger maxRunning = new AtomicInteger();
+        ImagePuller puller = new ImagePuller();
+        // Stands in for the docker CLI: postgres is present, pulls take a while and broken fails
+        puller.systemService = new SystemService(16, (command, timeout) -> {
+            if (command.startsWith("docker images")) {
+                return new ProcessResult("postgres:16@sha256:1\n<none>:<none>@sha256:2\nredis:7@<none>", "", 0, Duration.ZERO, false);
+            }
+            pulls.add(command);
+            maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+            try {
+                Thread.sleep(50);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            running.decrementAndGet();
+            boolean broken = command.contains("broken");
+            return new ProcessResult("", broken ? "not found" : "", broken ? 1 : 0, Duration.ZERO, false);
+        });
+        List<ImagePuller.PullProgress> progress = Collections.synchronizedList(new ArrayList<>());
+
+        Map<String, ImagePuller.PullStatus> result = puller.pullAll(List.of("nginx", "docker.io/library/nginx:latest",
+                "postgres:16", "redis:7", "app:1", "app:2", "broken:1", "ghcr.io/org/tool"), 2, progress::add);
+
+        Assertions.assertEquals(7, result.size());
+        Assertions.assertEquals(ImagePuller.PullStatus.PRESENT, result.get("postgres:16"));
+        Assertions.assertEquals(ImagePuller.PullStatus.PRESENT, result.get("redis:7"));
+        Assertions.assertEquals(ImagePuller.PullStatus.PULLED, result.get("nginx:latest"));
+        Assertions.assertEquals(ImagePuller.PullStatus.FAILED, result.get("broken:1"));
+        Assertions.assertEquals(5, pulls.size());
+        Assertions.assertTrue(maxRunning.get() <= 2, "At most 2 pulls should run at the same time but were " + maxRunning.get());
+        Assertions.assertEquals(7, progress.size());
+        Assertions.assertEquals(7, progress.stream().mapToInt(ImagePuller.PullProgress::finished).max().orElseThrow());
+    }
+}
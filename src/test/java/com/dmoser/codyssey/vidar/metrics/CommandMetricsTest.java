@@ -0,0 +1,67 @@
+package com.dmoser.codyssey.vidar.metrics;
+
+import com.dmoser.codyssey.vidar.service.ProcessExecutor;
+import com.dmoser.codyssey.vidar.service.SystemService;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import javax.management.MBeanServer;
+import java.lang.management.ManagementFactory;
+import java.time.Duration;
+import java.util.Map;
+
+public class CommandMetricsTest {
+
+    @Test
+    void testKind_dropsOptionsAndArguments() {
+        Assertions.assertEquals("git clone", CommandKind.of("git clone --depth 1 https://host/repo.git /tmp/apps/repo"));
+        Assertions.assertEquals("git pull", CommandKind.of("git -C /tmp/apps/repo pull --ff-only --quiet"));
+        Assertions.assertEquals("git sparse-checkout add", CommandKind.of("git -C /tmp/repo sparse-checkout add build"));
+        Assertions.assertEquals("docker compose up", CommandKind.of("docker compose --file /tmp/docker-compose.yml up -d service"));
+        Assertions.assertEquals("docker ps", CommandKind.of("docker ps -a --format json"));
+        Assertions.assertEquals("echo", CommandKind.of("/bin/echo hello"));
+        Assertions.assertEquals("docker", CommandKind.of("docker --version"));
+    }
+
+    @Test
+    void testCommandFinished_aggregatesPerKind() {
+        CommandMetrics metrics = new CommandMetrics();
+        for (int i = 1; i <= 100; i++) {
+            metrics.commandStarted("git pull");
+            metrics.commandFinished("git pull", i == 100 ? 1 : 0, Duration.ofMillis(i), 10);
+        }
+        metrics.commandStarted("git pull");
+
+        CommandStats stats = metrics.snapshot().get("git pull");
+        Assertions.assertEquals(100, stats.count());
+        Assertions.assertEquals(1, stats.inFlight());
+        Assertions.assertEquals(1000, stats.outputBytes());
+        Assertions.assertEquals(Map.of(0, 99L, 1, 1L), stats.exitCodes());
+        Assertions.assertEquals(50, stats.p50().toMillis(), 50 * 0.1);
+        Assertions.assertEquals(99, stats.p99().toMillis(), 99 * 0.1);
+
+        String text = metrics.prometheus();
+        Assertions.assertTrue(text.contains("vidar_commands_total{kind=\"git pull\"} 100\n"), text);
+        Assertions.assertTrue(text.contains("vidar_command_exit_codes_total{kind=\"git pull\",code=\"1\"} 1\n"), text);
+        Assertions.assertTrue(text.contains("vidar_commands_in_flight{kind=\"git pull\"} 1\n"), text);
+        Assertions.assertTrue(text.contains("vidar_command_duration_seconds_count{kind=\"git pull\"} 100\n"), text);
+    }
+
+    @Test
+    void testExecute_isMeasuredAndExposedOverJmx() throws Exception {
+        CommandMetrics metrics = new CommandMetrics();
+        metrics.registerMBeans();
+        SystemService systemService = new SystemService(4, new ProcessExecutor(), metrics);
+
+        // Two bytes for the umlaut and one for the b
+        systemService.executeCommand("printf '\\303\\244b'");
+        systemService.executeCommand("false");
+
+        Map<String, CommandStats> snapshot = metrics.snapshot();
+        Assertions.assertEquals(3, snapshot.get("printf").outputBytes());
+        Assertions.assertEquals(Map.of(1, 1L), snapshot.get("false").exitCodes());
+
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        Assertions.assertEquals(1L, server.getAttribute(CommandMetrics.objectName("printf"), "Count"));
+    }
+}
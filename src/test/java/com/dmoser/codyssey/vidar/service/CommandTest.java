@@ -0,0 +1,50 @@
+package com.dmoser.codyssey.vidar.service;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+
+public class CommandTest {
+
+    @Test
+    void test_format_keepsValuesAsSingleArguments() {
+        Command command = Command.format("git -C %s diff --name-only %s %s", "/tmp/my repo", "a; rm -rf /", "$(id)");
+        Assertions.assertEquals(List.of("git", "-C", "/tmp/my repo", "diff", "--name-only", "a; rm -rf /", "$(id)"), command.argv());
+        Assertions.assertEquals(List.of("git", "--git-dir", "/tmp/repo/.git", "rev-parse"),
+                Command.format("git --git-dir %s/.git rev-parse", "/tmp/repo").argv());
+        Assertions.assertEquals(List.of("docker", "compose", "up", "web", "db", "--build"),
+                Command.format("docker compose up %s --build", List.of("web", "db")).argv());
+        Assertions.assertThrows(IllegalArgumentException.class, () -> Command.format("docker rm %s"));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> Command.format("docker ps", "extra"));
+    }
+
+    @Test
+    void test_join_quotesOnlyWhereNeeded() {
+        Assertions.assertEquals("docker compose --file ./docker-compose.yml ps --format json",
+                Command.of("docker", "compose", "--file", "./docker-compose.yml", "ps", "--format", "json").toString());
+        Assertions.assertEquals("docker inspect --format '{{.State.Status}} {{.Name}}' 'it'\\''s'",
+                Command.of("docker", "inspect", "--format", "{{.State.Status}} {{.Name}}", "it's").toString());
+    }
+
+    @Test
+    void test_executeArgs_bypassesTheShell() {
+        SystemService systemService = new SystemService(1, new ProcessExecutor());
+        CommandResult result = systemService.executeArgs(List.of("printf", "%s|", "a b", "$(echo injected)", "*"));
+        Assertions.assertEquals(0, result.exitCode());
+        Assertions.assertEquals("a b|$(echo injected)|*|", result.content());
+    }
+
+    @Test
+    void test_executeArgs_quotesForShellExecutors() {
+        AtomicReference<String> executed = new AtomicReference<>();
+        SystemService systemService = new SystemService(1, (command, timeout) -> {
+            executed.set(command);
+            return new ProcessResult("", "", 0, Duration.ZERO, false);
+        });
+        systemService.executeArgs(List.of("docker", "network", "rm", "net; reboot"));
+        Assertions.assertEquals("docker network rm 'net; reboot'", executed.get());
+    }
+}
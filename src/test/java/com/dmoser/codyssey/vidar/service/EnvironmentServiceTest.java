@@ -2,11 +2,19 @@ package com.dmoser.codyssey.vidar.service;
 
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
 
+import java.nio.file.Files;
+import java.nio.file.Path;
+
 import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
 import static org.mockito.Mockito.when;
 
 @ExtendWith(MockitoExtension.class)
@@ -77,4 +85,45 @@ public class EnvironmentServiceTest {
         assertTrue(result);
     }
 
+    @Test
+    void test_validateEnvironment_probesOnce() {
+        EnvironmentService environmentService = new EnvironmentService(mockService);
+        when(mockService.executeCommand("docker --version")).thenReturn(new CommandResult("1.0.0", 0));
+        when(mockService.executeCommand("docker compose version --short")).thenReturn(new CommandResult("99.99.99", 0));
+        when(mockService.executeCommand("git --version")).thenReturn(new CommandResult("1.0.0", 0));
+
+        assertTrue(environmentService.validateEnvironment());
+        assertTrue(environmentService.validateEnvironment());
+        assertTrue(environmentService.isDockerComposeMinimumVersion());
+
+        verify(mockService, times(1)).executeCommand("docker --version");
+        verify(mockService, times(1)).executeCommand("docker compose version --short");
+        verify(mockService, times(1)).executeCommand("git --version");
+    }
+
+    @Test
+    void test_isGitInstalled_persistedResultIsReused(@TempDir Path tempDir) {
+        Path cacheFile = tempDir.resolve("environment.json");
+        when(mockService.executeCommand("git --version")).thenReturn(new CommandResult("1.0.0", 0));
+        assertTrue(new EnvironmentService(mockService, cacheFile).isGitInstalled());
+        assertTrue(Files.exists(cacheFile));
+
+        SystemService unusedService = mock(SystemService.class);
+        assertTrue(new EnvironmentService(unusedService, cacheFile).isGitInstalled());
+        verifyNoInteractions(unusedService);
+    }
+
+    @Test
+    void test_isGitInstalled_failedProbeIsNotPersisted(@TempDir Path tempDir) {
+        Path cacheFile = tempDir.resolve("environment.json");
+        when(mockService.executeCommand("git --version")).thenReturn(new CommandResult("", 124));
+        assertFalse(new EnvironmentService(mockService, cacheFile).isGitInstalled());
+        assertFalse(Files.exists(cacheFile));
+
+        SystemService retryService = mock(SystemService.class);
+        when(retryService.executeCommand("git --version")).thenReturn(new CommandResult("1.0.0", 0));
+        assertTrue(new EnvironmentService(retryService, cacheFile).isGitInstalled());
+        verify(retryService, times(1)).executeCommand("git --version");
+    }
+
 }
@@ -0,0 +1,51 @@
+package com.dmoser.codyssey.vidar.service;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Set;
+
+public class FileServiceTest {
+
+    @TempDir
+    Path tempDir;
+
+    FileService fileService = FileService.get();
+
+    @Test
+    void testList_skipsHiddenEntries() throws IOException {
+        Files.createDirectories(tempDir.resolve("plugin-a"));
+        Files.createDirectories(tempDir.resolve(".hidden"));
+        Files.writeString(tempDir.resolve("notes.txt"), "");
+
+        Assertions.assertEquals(Set.of("plugin-a", "notes.txt"), fileService.list(tempDir));
+        Assertions.assertEquals(Set.of("plugin-a"), fileService.listDirectories(tempDir));
+        Assertions.assertEquals(Set.of(), fileService.list(tempDir.resolve("missing")));
+    }
+
+    @Test
+    void testDelete_removesTreeWithoutFollowingLinks() throws IOException {
+        Path outside = Files.createDirectories(tempDir.resolve("outside"));
+        Files.writeString(outside.resolve("keep.txt"), "keep");
+
+        Path plugin = tempDir.resolve("plugin");
+        for (int i = 0; i < 20; i++) {
+            Path directory = Files.createDirectories(plugin.resolve("dir" + i).resolve("nested"));
+            Files.writeString(directory.resolve("file.txt"), "content");
+        }
+        Path readOnly = Files.writeString(plugin.resolve(".git-pack"), "pack");
+        readOnly.toFile().setReadOnly();
+        Files.createSymbolicLink(plugin.resolve("link"), outside);
+
+        fileService.delete(plugin);
+
+        Assertions.assertFalse(Files.exists(plugin));
+        Assertions.assertTrue(Files.exists(outside.resolve("keep.txt")));
+        // Deleting a missing path does nothing
+        fileService.delete(plugin);
+    }
+}
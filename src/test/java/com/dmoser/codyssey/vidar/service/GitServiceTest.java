@@ -0,0 +1,143 @@
+package com.dmoser.codyssey.vidar.service;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+public class GitServiceTest {
+
+    @TempDir
+    Path tempDir;
+
+    SystemService systemService = new SystemService();
+    GitService gitService;
+    Path apps;
+    String url;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        gitService = new GitService(systemService, tempDir.resolve("cache"));
+        apps = Files.createDirectories(tempDir.resolve("apps"));
+
+        // A bare repository with two commits, a build context and an unrelated directory
+        Path work = Files.createDirectories(tempDir.resolve("work"));
+        Files.createDirectories(work.resolve("web"));
+        Files.createDirectories(work.resolve("docs"));
+        Files.writeString(work.resolve("docker-compose.yml"), """
+                services:
+                  web:
+                    build: ./web
+                """);
+        Files.writeString(work.resolve("web/Dockerfile"), "FROM alpine\n");
+        Files.writeString(work.resolve("docs/manual.md"), "# Manual\n");
+        git(work, "init -q");
+        git(work, "add .");
+        git(work, "commit -q -m first");
+        Files.writeString(work.resolve("docs/manual.md"), "# Manual v2\n");
+        git(work, "commit -q -am second");
+        git(tempDir, "clone -q --bare work plugin.git");
+        git(tempDir.resolve("plugin.git"), "config uploadpack.allowFilter true");
+        url = "file://" + tempDir.resolve("plugin.git");
+    }
+
+    @Test
+    void testClone_shallow() {
+        Assertions.assertTrue(gitService.clone(url, apps, CloneStrategy.SHALLOW));
+
+        Path plugin = apps.resolve("plugin");
+        Assertions.assertEquals("true", git(plugin, "rev-parse --is-shallow-repository"));
+        Assertions.assertEquals("1", git(plugin, "rev-list --count HEAD"));
+        Assertions.assertTrue(Files.exists(plugin.resolve("docs/manual.md")));
+    }
+
+    @Test
+    void testClone_sparseChecksOutComposePathsOnly() {
+        Assertions.assertTrue(gitService.clone(url, apps, CloneStrategy.SPARSE));
+
+        Path plugin = apps.resolve("plugin");
+        Assertions.assertTrue(Files.exists(plugin.resolve("docker-compose.yml")));
+        Assertions.assertTrue(Files.exists(plugin.resolve("web/Dockerfile")));
+        Assertions.assertFalse(Files.exists(plugin.resolve("docs")));
+    }
+
+    @Test
+    void testClone_sparseChecksOutEverythingForRootBuildContext() throws IOException {
+        Path work = Files.createDirectories(tempDir.resolve("root-context"));
+        Files.createDirectories(work.resolve("src"));
+        Files.writeString(work.resolve("docker-compose.yml"), """
+                services:
+                  app:
+                    build: .
+                """);
+        Files.writeString(work.resolve("Dockerfile"), "FROM alpine\nCOPY src /src\n");
+        Files.writeString(work.resolve("src/app.py"), "print('app')\n");
+        git(work, "init -q");
+        git(work, "add .");
+        git(work, "commit -q -m first");
+        git(tempDir, "clone -q --bare root-context app.git");
+        git(tempDir.resolve("app.git"), "config uploadpack.allowFilter true");
+
+        Assertions.assertTrue(gitService.clone("file://" + tempDir.resolve("app.git"), apps, CloneStrategy.SPARSE));
+
+        Path app = apps.resolve("app");
+        Assertions.assertTrue(Files.exists(app.resolve("Dockerfile")));
+        Assertions.assertTrue(Files.exists(app.resolve("src/app.py")));
+    }
+
+    @Test
+    void testClone_referenceReusesMirror() throws IOException {
+        Assertions.assertTrue(gitService.clone(url, apps, CloneStrategy.REFERENCE));
+
+        Path mirror = gitService.mirrorPath(url);
+        Assertions.assertTrue(Files.isDirectory(mirror));
+        Path plugin = apps.resolve("plugin");
+        Assertions.assertEquals("2", git(plugin, "rev-list --count HEAD"));
+        // Dissociated clones do not depend on the mirror
+        Assertions.assertFalse(Files.exists(plugin.resolve(".git/objects/info/alternates")));
+
+        // A second project root updates and reuses the existing mirror
+        Path otherApps = Files.createDirectories(tempDir.resolve("other/apps"));
+        Assertions.assertTrue(gitService.clone(url, otherApps, CloneStrategy.REFERENCE));
+        Assertions.assertEquals("2", git(otherApps.resolve("plugin"), "rev-list --count HEAD"));
+    }
+
+    @Test
+    void testUpdate_fastForwardsAndListsChangedFiles() throws IOException {
+        Assertions.assertTrue(gitService.clone(url, apps, CloneStrategy.SHALLOW));
+        Path plugin = apps.resolve("plugin");
+        String oldHead = gitService.head(plugin).orElseThrow();
+
+        GitUpdate unchanged = gitService.update(plugin).orElseThrow();
+        Assertions.assertFalse(unchanged.isChanged());
+        Assertions.assertEquals(List.of(), unchanged.changedFiles());
+
+        Path work = tempDir.resolve("work");
+        Files.writeString(work.resolve("web/Dockerfile"), "FROM alpine:3\n");
+        git(work, "commit -q -am third");
+        git(work, "push -q " + tempDir.resolve("plugin.git") + " HEAD");
+
+        GitUpdate update = gitService.update(plugin).orElseThrow();
+        Assertions.assertTrue(update.isChanged());
+        Assertions.assertEquals(oldHead, update.oldHead());
+        Assertions.assertEquals(git(work, "rev-parse HEAD"), update.newHead());
+        Assertions.assertEquals(List.of("web/Dockerfile"), update.changedFiles());
+    }
+
+    @Test
+    void testClone_failsForMissingRepository() {
+        Assertions.assertFalse(gitService.clone("file://" + tempDir.resolve("missing.git"), apps, CloneStrategy.SHALLOW));
+    }
+
+    private String git(Path directory, String arguments) {
+        CommandResult result = systemService.executeCommand(
+                "git -C " + directory + " -c user.name=test -c user.email=test@localhost " + arguments);
+        Assertions.assertEquals(0, result.exitCode(), result.content());
+        return result.content();
+    }
+}
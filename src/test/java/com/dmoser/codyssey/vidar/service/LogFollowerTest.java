@@ -0,0 +1,74 @@
+package com.dmoser.codyssey.vidar.service;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.concurrent.Flow;
+import java.util.concurrent.TimeUnit;
+
+public class LogFollowerTest {
+
+    @Test
+    void test_tail_keepsLastLinesWithTimestamps() throws Exception {
+        LogFollower follower = LogFollower.start("web", List.of("/bin/sh", "-c",
+                "for i in 1 2 3 4; do echo \"2024-05-01T12:00:0${i}.123456789Z line $i\"; done; sleep 0.2; echo 'no timestamp' >&2"),
+                3, LogFollower.OverflowPolicy.DROP);
+        follower.subscribe(line -> {
+        }).get(5, TimeUnit.SECONDS);
+
+        List<LogLine> tail = follower.tail();
+        Assertions.assertEquals(3, tail.size());
+        List<LogLine> stdout = tail.stream().filter(line -> !line.stderr()).toList();
+        Assertions.assertEquals("line 4", stdout.getLast().text());
+        Assertions.assertEquals(Instant.parse("2024-05-01T12:00:04.123456789Z"), stdout.getLast().timestamp());
+        LogLine stderr = tail.stream().filter(LogLine::stderr).findFirst().orElseThrow();
+        Assertions.assertEquals("no timestamp", stderr.text());
+        Assertions.assertEquals("web", stderr.source());
+    }
+
+    @Test
+    void test_drop_slowSubscriberDoesNotBlockReading() throws Exception {
+        LogFollower follower = LogFollower.start("web", List.of("/bin/sh", "-c", "sleep 0.2; seq 1 5000"),
+                10, LogFollower.OverflowPolicy.DROP);
+        follower.subscribe(new Flow.Subscriber<>() {
+            @Override
+            public void onSubscribe(Flow.Subscription subscription) {
+                // Never requests anything, so its buffer fills up
+            }
+
+            @Override
+            public void onNext(LogLine item) {
+            }
+
+            @Override
+            public void onError(Throwable throwable) {
+            }
+
+            @Override
+            public void onComplete() {
+            }
+        });
+        follower.subscribe(line -> {
+        }).get(5, TimeUnit.SECONDS);
+
+        Assertions.assertTrue(follower.dropped() >= 5000 - Flow.defaultBufferSize());
+        Assertions.assertEquals("5000", follower.tail().getLast().text());
+        Assertions.assertEquals(10, follower.tail().size());
+    }
+
+    @Test
+    void test_read_cutsOffLongLines() throws Exception {
+        LogFollower follower = LogFollower.start("web", List.of("/bin/sh", "-c", "head -c 100000 /dev/zero | tr '\\0' a; echo; echo next"),
+                10, LogFollower.OverflowPolicy.BLOCK);
+        follower.subscribe(line -> {
+        }).get(5, TimeUnit.SECONDS);
+
+        List<LogLine> tail = follower.tail();
+        Assertions.assertEquals(LogFollower.MAX_LINE_LENGTH, tail.getFirst().text().length());
+        Assertions.assertEquals("next", tail.getLast().text());
+        follower.close();
+        Assertions.assertFalse(follower.isAlive());
+    }
+}
@@ -0,0 +1,76 @@
+package com.dmoser.codyssey.vidar.service;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+public class ProcessExecutorTest {
+
+    private final ProcessExecutor executor = new ProcessExecutor();
+
+    private static List<String> sh(String command) {
+        return List.of("/bin/sh", "-c", command);
+    }
+
+    @Test
+    void testExecute_separateStreams() {
+        ProcessResult result = executor.execute(sh("echo out; echo err >&2; exit 3"), Duration.ofSeconds(10));
+
+        Assertions.assertEquals("out", result.stdout());
+        Assertions.assertEquals("err", result.stderr());
+        Assertions.assertEquals(3, result.exitCode());
+        Assertions.assertFalse(result.timedOut());
+        Assertions.assertEquals("err", result.toCommandResult().content());
+    }
+
+    @Test
+    void testExecute_fullStderrPipeDoesNotBlock() {
+        // 1 MiB on stderr is far more than a pipe buffer holds
+        ProcessResult result = executor.execute(sh("head -c 1048576 /dev/zero | tr '\\0' x >&2; echo done"), Duration.ofSeconds(10));
+
+        Assertions.assertFalse(result.timedOut());
+        Assertions.assertEquals("done", result.stdout());
+        Assertions.assertEquals(1048576, result.stderr().length());
+    }
+
+    @Test
+    void testExecute_timeoutKillsProcessTree() throws Exception {
+        Path marker = Files.createTempDirectory("vidar").resolve("marker");
+        // The background child would create the marker if it survived the kill
+        ProcessResult result = executor.execute(sh("(sleep 1; touch " + marker + ") & wait"), Duration.ofMillis(300));
+
+        Assertions.assertTrue(result.timedOut());
+        Assertions.assertEquals(ProcessResult.EXIT_CODE_TIMEOUT, result.exitCode());
+        Assertions.assertTrue(result.duration().compareTo(Duration.ofSeconds(1)) < 0);
+
+        Thread.sleep(1500);
+        Assertions.assertFalse(Files.exists(marker));
+        Files.delete(marker.getParent());
+    }
+
+    @Test
+    void testExecuteAsync_cancelKillsProcess() throws Exception {
+        SystemService systemService = new SystemService();
+        Path pidFile = Files.createTempFile("vidar", ".pid");
+
+        CompletableFuture<ProcessResult> future = systemService.executeAsync("echo $$ > " + pidFile + "; exec sleep 30", null);
+        long deadline = System.currentTimeMillis() + 5000;
+        while (Files.size(pidFile) == 0 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(20);
+        }
+        long pid = Long.parseLong(Files.readString(pidFile).trim());
+
+        future.cancel(true);
+        deadline = System.currentTimeMillis() + 5000;
+        while (ProcessHandle.of(pid).map(ProcessHandle::isAlive).orElse(false) && System.currentTimeMillis() < deadline) {
+            Thread.sleep(20);
+        }
+        Assertions.assertFalse(ProcessHandle.of(pid).map(ProcessHandle::isAlive).orElse(false));
+        Files.delete(pidFile);
+    }
+}
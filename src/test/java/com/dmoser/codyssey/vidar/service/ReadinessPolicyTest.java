@@ -0,0 +1,38 @@
+package com.dmoser.codyssey.vidar.service;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.Map;
+
+public class ReadinessPolicyTest {
+
+    @Test
+    void test_delay_doublesUpToMaximum() {
+        ReadinessPolicy policy = new ReadinessPolicy(Duration.ofMillis(100), Duration.ofMillis(500), 0, Duration.ofMinutes(1), Map.of());
+        Assertions.assertEquals(Duration.ofMillis(100), policy.delay(1));
+        Assertions.assertEquals(Duration.ofMillis(200), policy.delay(2));
+        Assertions.assertEquals(Duration.ofMillis(400), policy.delay(3));
+        Assertions.assertEquals(Duration.ofMillis(500), policy.delay(4));
+        Assertions.assertEquals(Duration.ofMillis(500), policy.delay(100));
+    }
+
+    @Test
+    void test_delay_staysWithinJitter() {
+        ReadinessPolicy policy = new ReadinessPolicy(Duration.ofMillis(100), Duration.ofMillis(100), 0.2, Duration.ofMinutes(1), Map.of());
+        for (int i = 0; i < 1000; i++) {
+            long millis = policy.delay(1).toMillis();
+            Assertions.assertTrue(millis >= 80 && millis <= 120, "Delay " + millis + " is outside of the jitter");
+        }
+    }
+
+    @Test
+    void test_deadline_perService() {
+        ReadinessPolicy policy = ReadinessPolicy.defaults().withDeadline("db", Duration.ofMinutes(5));
+        Assertions.assertEquals(Duration.ofMinutes(5), policy.deadline("db"));
+        Assertions.assertEquals(Duration.ofMinutes(2), policy.deadline("web"));
+        Assertions.assertThrows(IllegalArgumentException.class,
+                () -> new ReadinessPolicy(Duration.ZERO, Duration.ofSeconds(1), 0, Duration.ofMinutes(1), Map.of()));
+    }
+}
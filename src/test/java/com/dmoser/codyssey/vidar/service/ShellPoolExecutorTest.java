@@ -0,0 +1,71 @@
+package com.dmoser.codyssey.vidar.service;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.stream.IntStream;
+
+public class ShellPoolExecutorTest {
+
+    private final ShellPoolExecutor executor = new ShellPoolExecutor(2);
+
+    @AfterEach
+    void tearDown() {
+        executor.close();
+    }
+
+    @Test
+    void testExecute_separateStreamsAndExitCode() {
+        ProcessResult result = executor.execute("echo out; printf 'no newline'; echo err >&2; exit 3", Duration.ofSeconds(10));
+
+        Assertions.assertEquals("out\nno newline", result.stdout());
+        Assertions.assertEquals("err", result.stderr());
+        Assertions.assertEquals(3, result.exitCode());
+        Assertions.assertFalse(result.timedOut());
+    }
+
+    @Test
+    void testExecute_reusesShellAndIsolatesCommands() {
+        String shell = executor.execute("echo $$", Duration.ofSeconds(10)).stdout();
+        String directory = executor.execute("pwd", Duration.ofSeconds(10)).stdout();
+
+        executor.execute("cd /; FOO=bar; exit 7", Duration.ofSeconds(10));
+        ProcessResult syntaxError = executor.execute("if then fi 'unterminated", Duration.ofSeconds(10));
+        Assertions.assertNotEquals(0, syntaxError.exitCode());
+
+        Assertions.assertEquals(shell, executor.execute("echo $$", Duration.ofSeconds(10)).stdout());
+        Assertions.assertEquals(directory, executor.execute("pwd", Duration.ofSeconds(10)).stdout());
+        Assertions.assertEquals("", executor.execute("echo ${FOO:-}", Duration.ofSeconds(10)).stdout());
+    }
+
+    @Test
+    void testExecute_timeoutReplacesShell() {
+        String shell = executor.execute("echo $$", Duration.ofSeconds(10)).stdout();
+
+        ProcessResult result = executor.execute("echo started; sleep 10", Duration.ofMillis(300));
+        Assertions.assertTrue(result.timedOut());
+        Assertions.assertEquals(ProcessResult.EXIT_CODE_TIMEOUT, result.exitCode());
+        Assertions.assertEquals("started", result.stdout());
+
+        ProcessResult next = executor.execute("echo $$", Duration.ofSeconds(10));
+        Assertions.assertEquals(0, next.exitCode());
+        Assertions.assertNotEquals(shell, next.stdout());
+    }
+
+    @Test
+    void testExecute_concurrentCommands() throws Exception {
+        SystemService systemService = new SystemService(8, executor);
+        List<CompletableFuture<ProcessResult>> futures = IntStream.range(0, 20)
+                .mapToObj(i -> systemService.executeAsync("echo " + i + "; echo " + i + " >&2", Duration.ofSeconds(10)))
+                .toList();
+        for (int i = 0; i < futures.size(); i++) {
+            ProcessResult result = futures.get(i).get();
+            Assertions.assertEquals(String.valueOf(i), result.stdout());
+            Assertions.assertEquals(String.valueOf(i), result.stderr());
+        }
+    }
+}
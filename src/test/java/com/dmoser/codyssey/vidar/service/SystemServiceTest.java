@@ -4,6 +4,9 @@ package com.dmoser.codyssey.vidar.service;
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.Test;
 
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
 public class SystemServiceTest {
 
     @Test
@@ -41,4 +44,30 @@ public class SystemServiceTest {
         CommandResult result = systemService.executeCommand(command);
         Assertions.assertEquals(127, result.exitCode());
     }
+
+    @Test
+    void testExecuteCommandAsync_result() {
+        SystemService systemService = new SystemService();
+
+        CommandResult result = systemService.executeCommandAsync("echo foobar").join();
+        Assertions.assertEquals(0, result.exitCode());
+        Assertions.assertEquals("foobar", result.content());
+    }
+
+    @Test
+    void testExecuteCommandAsync_concurrencyLimit() {
+        SystemService systemService = new SystemService(2);
+
+        long start = System.nanoTime();
+        List<CompletableFuture<CommandResult>> futures = List.of(
+                systemService.executeCommandAsync("sleep 0.3"),
+                systemService.executeCommandAsync("sleep 0.3"),
+                systemService.executeCommandAsync("sleep 0.3"),
+                systemService.executeCommandAsync("sleep 0.3"));
+        futures.forEach(CompletableFuture::join);
+        long millis = (System.nanoTime() - start) / 1_000_000;
+
+        // Two waves of two commands each
+        Assertions.assertTrue(millis >= 600, "took " + millis + "ms");
+    }
 }